@@ -60,6 +60,7 @@ graph.location=${GRAPH_DIR}measurement-small-gh \
 prepare.min_network_size=10000 \
 measurement.json=true \
 measurement.count=5000 \
+measurement.throughput.threads=8 \
 measurement.use_measurement_time_as_ref_time=${USE_MEASUREMENT_TIME_AS_REF_TIME}
 
 echo "2 - big map: node-based CH + landmarks (edge- & node-based for LM) + slow routing"
@@ -87,6 +88,7 @@ graph.location=${GRAPH_DIR}measurement-big-gh \
 prepare.min_network_size=10000 \
 measurement.json=true \
 measurement.count=5000 \
+measurement.throughput.threads=8 \
 measurement.use_measurement_time_as_ref_time=${USE_MEASUREMENT_TIME_AS_REF_TIME}
 
 echo "3 - big map with a custom model that is 'very customized', i.e. has many custom weighting rules"
@@ -0,0 +1,66 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.benchmark;
+
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.PMap;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Calculates the CustomWeighting of the profile 'car' for random edges, i.e. what every non-CH search does for every
+ * visited edge.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CustomWeightingBenchmark {
+    private static final int EDGES = 1024;
+
+    private Weighting weighting;
+    private EdgeIteratorState[] edges;
+
+    @Setup
+    public void setUp(MapState map) {
+        weighting = map.hopper.createWeighting(map.hopper.getProfile(MapState.PROFILE), new PMap());
+        BaseGraph graph = map.hopper.getBaseGraph();
+        Random random = new Random(MapState.SEED);
+        edges = new EdgeIteratorState[EDGES];
+        for (int i = 0; i < EDGES; i++)
+            edges[i] = graph.getEdgeIteratorState(random.nextInt(graph.getEdges()), Integer.MIN_VALUE);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EDGES)
+    public double calcEdgeWeight() {
+        double sum = 0;
+        for (int i = 0; i < EDGES; i++) {
+            double weight = weighting.calcEdgeWeight(edges[i], i % 2 == 0);
+            if (!Double.isInfinite(weight))
+                sum += weight;
+        }
+        return sum;
+    }
+}
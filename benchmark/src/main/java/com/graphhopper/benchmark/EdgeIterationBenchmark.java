@@ -0,0 +1,100 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.benchmark;
+
+import com.graphhopper.routing.ev.VehicleAccess;
+import com.graphhopper.routing.util.AccessFilter;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.RoutingCHEdgeExplorer;
+import com.graphhopper.storage.RoutingCHEdgeIterator;
+import com.graphhopper.storage.RoutingCHGraph;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Iterates the adjacent edges of random nodes in the BaseGraph and in the RoutingCHGraph, i.e. the inner loop of
+ * every search.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EdgeIterationBenchmark {
+    private static final int NODES = 1024;
+
+    private int[] nodes;
+    private EdgeExplorer allExplorer;
+    private EdgeExplorer outExplorer;
+    private RoutingCHEdgeExplorer chOutExplorer;
+
+    @Setup
+    public void setUp(MapState map) {
+        BaseGraph graph = map.hopper.getBaseGraph();
+        allExplorer = graph.createEdgeExplorer();
+        outExplorer = graph.createEdgeExplorer(AccessFilter.outEdges(
+                map.hopper.getEncodingManager().getBooleanEncodedValue(VehicleAccess.key("car"))));
+        RoutingCHGraph chGraph = map.hopper.getCHGraphs().get(MapState.PROFILE);
+        chOutExplorer = chGraph.createOutEdgeExplorer();
+        Random random = new Random(MapState.SEED);
+        nodes = new int[NODES];
+        for (int i = 0; i < NODES; i++)
+            nodes[i] = random.nextInt(graph.getNodes());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NODES)
+    public int baseGraphAllEdges() {
+        int sum = 0;
+        for (int node : nodes) {
+            EdgeIterator iter = allExplorer.setBaseNode(node);
+            while (iter.next())
+                sum += iter.getAdjNode();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NODES)
+    public int baseGraphOutEdges() {
+        int sum = 0;
+        for (int node : nodes) {
+            EdgeIterator iter = outExplorer.setBaseNode(node);
+            while (iter.next())
+                sum += iter.getAdjNode();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NODES)
+    public double chGraphOutEdges() {
+        double sum = 0;
+        for (int node : nodes) {
+            RoutingCHEdgeIterator iter = chOutExplorer.setBaseNode(node);
+            while (iter.next())
+                sum += iter.getAdjNode() + iter.getWeight(false);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.benchmark;
+
+import com.graphhopper.routing.ev.BooleanEncodedValue;
+import com.graphhopper.routing.ev.DecimalEncodedValue;
+import com.graphhopper.routing.ev.EdgeIntAccess;
+import com.graphhopper.routing.ev.EncodedValue;
+import com.graphhopper.routing.ev.EnumEncodedValue;
+import com.graphhopper.routing.ev.IntEncodedValue;
+import com.graphhopper.routing.ev.IntsRefEdgeIntAccess;
+import com.graphhopper.routing.ev.Lanes;
+import com.graphhopper.routing.ev.RoadClass;
+import com.graphhopper.routing.ev.VehicleAccess;
+import com.graphhopper.routing.ev.VehicleSpeed;
+import com.graphhopper.storage.IntsRef;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads encoded values of a typical car profile from the IntsRef of many edges, i.e. the bit operations that every
+ * edge of a search goes through. Does not need a map.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EncodedValueBenchmark {
+    private static final int EDGES = 1024;
+
+    private BooleanEncodedValue accessEnc;
+    private DecimalEncodedValue speedEnc;
+    private EnumEncodedValue<RoadClass> roadClassEnc;
+    private IntEncodedValue lanesEnc;
+    private EdgeIntAccess[] edgeIntAccesses;
+
+    @Setup
+    public void setUp() {
+        accessEnc = VehicleAccess.create("car");
+        speedEnc = VehicleSpeed.create("car", 5, 5, true);
+        roadClassEnc = RoadClass.create();
+        lanesEnc = Lanes.create();
+        EncodedValue.InitializerConfig config = new EncodedValue.InitializerConfig();
+        accessEnc.init(config);
+        speedEnc.init(config);
+        roadClassEnc.init(config);
+        lanesEnc.init(config);
+
+        Random random = new Random(MapState.SEED);
+        RoadClass[] roadClasses = RoadClass.values();
+        edgeIntAccesses = new EdgeIntAccess[EDGES];
+        for (int i = 0; i < EDGES; i++) {
+            EdgeIntAccess edgeIntAccess = new IntsRefEdgeIntAccess(new IntsRef(config.getRequiredInts()));
+            accessEnc.setBool(false, i, edgeIntAccess, random.nextBoolean());
+            accessEnc.setBool(true, i, edgeIntAccess, random.nextBoolean());
+            speedEnc.setDecimal(false, i, edgeIntAccess, random.nextInt(30) * 5);
+            speedEnc.setDecimal(true, i, edgeIntAccess, random.nextInt(30) * 5);
+            roadClassEnc.setEnum(false, i, edgeIntAccess, roadClasses[random.nextInt(roadClasses.length)]);
+            lanesEnc.setInt(false, i, edgeIntAccess, 1 + random.nextInt(4));
+            edgeIntAccesses[i] = edgeIntAccess;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EDGES)
+    public int readBoolean() {
+        int sum = 0;
+        for (int i = 0; i < EDGES; i++)
+            if (accessEnc.getBool(false, i, edgeIntAccesses[i]))
+                sum++;
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EDGES)
+    public double readDecimal() {
+        double sum = 0;
+        for (int i = 0; i < EDGES; i++)
+            sum += speedEnc.getDecimal(i % 2 == 0, i, edgeIntAccesses[i]);
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EDGES)
+    public int readEnum() {
+        int sum = 0;
+        for (int i = 0; i < EDGES; i++)
+            sum += roadClassEnc.getEnum(false, i, edgeIntAccesses[i]).ordinal();
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EDGES)
+    public int readInt() {
+        int sum = 0;
+        for (int i = 0; i < EDGES; i++)
+            sum += lanesEnc.getInt(false, i, edgeIntAccesses[i]);
+        return sum;
+    }
+}
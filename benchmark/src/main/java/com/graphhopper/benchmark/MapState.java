@@ -0,0 +1,110 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.benchmark;
+
+import com.graphhopper.GHRequest;
+import com.graphhopper.GraphHopper;
+import com.graphhopper.config.CHProfile;
+import com.graphhopper.config.LMProfile;
+import com.graphhopper.routing.TestProfiles;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.storage.index.Snap;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.shapes.BBox;
+import com.graphhopper.util.shapes.GHPoint;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Imports a small map once per benchmark run, with a CH and an LM preparation for the profile 'car'. The map is read
+ * from the path of the 'osmFile' parameter, the default is the Monaco extract of the core tests and requires that the
+ * benchmarks are started from the root directory of the repository.
+ */
+@State(Scope.Benchmark)
+public class MapState {
+    public static final String PROFILE = "car";
+    static final long SEED = 123;
+
+    @Param("core/files/monaco.osm.gz")
+    public String osmFile;
+
+    public GraphHopper hopper;
+    private File graphDir;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        graphDir = Files.createTempDirectory("graphhopper-benchmark").toFile();
+        hopper = new GraphHopper();
+        hopper.setOSMFile(osmFile);
+        hopper.setGraphHopperLocation(graphDir.getAbsolutePath());
+        hopper.setEncodedValuesString("car_access, car_average_speed");
+        hopper.setProfiles(TestProfiles.accessAndSpeed(PROFILE, "car"));
+        hopper.getCHPreparationHandler().setCHProfiles(new CHProfile(PROFILE));
+        hopper.getLMPreparationHandler().setLMProfiles(new LMProfile(PROFILE));
+        hopper.importOrLoad();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        hopper.close();
+        Helper.removeDir(graphDir);
+    }
+
+    /**
+     * @return random points within the bounds of the map that snap to an edge. The same seed always returns the same
+     * points.
+     */
+    public List<Snap> randomSnaps(int count, long seed) {
+        Random random = new Random(seed);
+        List<Snap> snaps = new ArrayList<>(count);
+        while (snaps.size() < count) {
+            GHPoint point = randomPoint(random);
+            Snap snap = hopper.getLocationIndex().findClosest(point.lat, point.lon, EdgeFilter.ALL_EDGES);
+            if (snap.isValid())
+                snaps.add(snap);
+        }
+        return snaps;
+    }
+
+    /**
+     * @return requests between random points within the bounds of the map for which a route exists. The same seed
+     * always returns the same requests.
+     */
+    public List<GHRequest> randomRequests(int count, long seed) {
+        Random random = new Random(seed);
+        List<GHRequest> requests = new ArrayList<>(count);
+        while (requests.size() < count) {
+            GHRequest request = new GHRequest(randomPoint(random), randomPoint(random)).setProfile(PROFILE);
+            if (!hopper.route(request).hasErrors())
+                requests.add(request);
+        }
+        return requests;
+    }
+
+    private GHPoint randomPoint(Random random) {
+        BBox bounds = hopper.getBaseGraph().getBounds();
+        return new GHPoint(bounds.minLat + random.nextDouble() * (bounds.maxLat - bounds.minLat),
+                bounds.minLon + random.nextDouble() * (bounds.maxLon - bounds.minLon));
+    }
+}
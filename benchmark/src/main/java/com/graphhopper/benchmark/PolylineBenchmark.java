@@ -0,0 +1,65 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.benchmark;
+
+import com.graphhopper.GHRequest;
+import com.graphhopper.jackson.ResponsePathSerializer;
+import com.graphhopper.util.PointList;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encodes the points of a route with the polyline encoding of the JSON response, with and without elevation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PolylineBenchmark {
+    @Param({"false", "true"})
+    public boolean elevation;
+
+    private PointList points;
+
+    @Setup
+    public void setUp(MapState map) {
+        // the longest of some random routes
+        PointList routePoints = new PointList();
+        for (GHRequest request : map.randomRequests(10, MapState.SEED)) {
+            PointList candidate = map.hopper.route(request).getBest().getPoints();
+            if (candidate.size() > routePoints.size())
+                routePoints = candidate;
+        }
+        // the map has no elevation data, so we add some to measure the 3D encoding
+        points = new PointList(routePoints.size(), elevation);
+        for (int i = 0; i < routePoints.size(); i++) {
+            if (elevation)
+                points.add(routePoints.getLat(i), routePoints.getLon(i), 100 + i % 50);
+            else
+                points.add(routePoints.getLat(i), routePoints.getLon(i));
+        }
+    }
+
+    @Benchmark
+    public String encodePolyline() {
+        return ResponsePathSerializer.encodePolyline(points, elevation, 1e5);
+    }
+}
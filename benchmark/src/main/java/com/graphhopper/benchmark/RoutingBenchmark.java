@@ -0,0 +1,68 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.benchmark;
+
+import com.graphhopper.GHRequest;
+import com.graphhopper.GHResponse;
+import com.graphhopper.util.Parameters;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Calculates routes between random points with the different solvers, including snapping, the QueryGraph and the
+ * path extraction but without instructions. The sample mode reports percentiles, because the durations depend
+ * heavily on the distance of the points.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoutingBenchmark {
+    private static final int REQUESTS = 1000;
+
+    @Param({"ch", "lm", "flex"})
+    public String solver;
+
+    private MapState map;
+    private List<GHRequest> requests;
+    private int index;
+
+    @Setup
+    public void setUp(MapState map) {
+        this.map = map;
+        requests = map.randomRequests(REQUESTS, MapState.SEED);
+        for (GHRequest request : requests) {
+            request.putHint(Parameters.Routing.INSTRUCTIONS, false);
+            request.putHint(Parameters.CH.DISABLE, !solver.equals("ch"));
+            request.putHint(Parameters.Landmark.DISABLE, !solver.equals("lm"));
+        }
+    }
+
+    @Benchmark
+    public GHResponse route() {
+        index = (index + 1) % REQUESTS;
+        GHResponse rsp = map.hopper.route(requests.get(index));
+        if (rsp.hasErrors())
+            throw new IllegalStateException("Could not calculate the route: " + rsp.getErrors());
+        return rsp;
+    }
+}
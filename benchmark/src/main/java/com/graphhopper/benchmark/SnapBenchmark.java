@@ -0,0 +1,92 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.benchmark;
+
+import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.storage.index.LocationIndex;
+import com.graphhopper.storage.index.Snap;
+import com.graphhopper.util.shapes.BBox;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Snaps random points to the closest edge with LocationIndexTree.findClosest and creates the QueryGraph for two
+ * snapped points, i.e. the steps of a route request before the search.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SnapBenchmark {
+    private static final int POINTS = 1000;
+
+    private MapState map;
+    private LocationIndex locationIndex;
+    private double[] lats;
+    private double[] lons;
+    private List<Snap> snaps;
+    private int index;
+
+    @Setup
+    public void setUp(MapState map) {
+        this.map = map;
+        locationIndex = map.hopper.getLocationIndex();
+        BBox bounds = map.hopper.getBaseGraph().getBounds();
+        Random random = new Random(MapState.SEED);
+        lats = new double[POINTS];
+        lons = new double[POINTS];
+        for (int i = 0; i < POINTS; i++) {
+            lats[i] = bounds.minLat + random.nextDouble() * (bounds.maxLat - bounds.minLat);
+            lons[i] = bounds.minLon + random.nextDouble() * (bounds.maxLon - bounds.minLon);
+        }
+        snaps = map.randomSnaps(POINTS, MapState.SEED);
+    }
+
+    @Benchmark
+    public Snap findClosest() {
+        index = (index + 1) % POINTS;
+        return locationIndex.findClosest(lats[index], lons[index], EdgeFilter.ALL_EDGES);
+    }
+
+    @Benchmark
+    public QueryGraph createQueryGraph() {
+        index = (index + 1) % POINTS;
+        return QueryGraph.create(map.hopper.getBaseGraph(), copy(snaps.get(index)), copy(snaps.get((index + 1) % POINTS)));
+    }
+
+    /**
+     * QueryGraph.create modifies the snaps, so every invocation needs fresh copies. Copying is cheap compared to
+     * snapping them again.
+     */
+    private static Snap copy(Snap snap) {
+        Snap copy = new Snap(snap.getQueryPoint().lat, snap.getQueryPoint().lon);
+        copy.setClosestEdge(snap.getClosestEdge());
+        copy.setClosestNode(snap.getClosestNode());
+        copy.setQueryDistance(snap.getQueryDistance());
+        copy.setWayIndex(snap.getWayIndex());
+        copy.setSnappedPosition(snap.getSnappedPosition());
+        copy.setSnappedPoint(snap.getSnappedPoint());
+        return copy;
+    }
+}
@@ -27,6 +27,7 @@ import com.graphhopper.GHResponse;
 import com.graphhopper.ResponsePath;
 import com.graphhopper.jackson.Jackson;
 import com.graphhopper.jackson.ResponsePathDeserializerHelper;
+import com.graphhopper.protobuf.RouteResponseProtobuf;
 import com.graphhopper.util.CustomModel;
 import com.graphhopper.util.Helper;
 import com.graphhopper.util.PMap;
@@ -64,11 +65,14 @@ public class GraphHopperWeb {
     private boolean elevation = false;
     private String optimize = "false";
     private boolean postRequest = true;
+    private boolean protobuf = false;
     private int maxUnzippedLength = 1000;
     private final Set<String> ignoreSetForGet;
     private final Set<String> ignoreSetForPost;
 
     public static final String TIMEOUT = "timeout";
+    // JSON is still necessary for the error response
+    private static final String ACCEPT_PROTOBUF = RouteResponseProtobuf.MEDIA_TYPE + ", application/json";
     private final long DEFAULT_TIMEOUT = 5000;
 
     public GraphHopperWeb() {
@@ -146,6 +150,15 @@ public class GraphHopperWeb {
         return this;
     }
 
+    /**
+     * If true the route response is requested in the binary protobuf format instead of JSON, which is smaller and
+     * faster to decode for long routes. The server needs to support it. The default is false.
+     */
+    public GraphHopperWeb setProtobuf(boolean protobuf) {
+        this.protobuf = protobuf;
+        return this;
+    }
+
     /**
      * Enable or disable calculating points for the way. The default is true.
      */
@@ -193,6 +206,16 @@ public class GraphHopperWeb {
             Request okRequest = postRequest ? createPostRequest(ghRequest) : createGetRequest(ghRequest);
             Response rsp = getClientForRequest(ghRequest).newCall(okRequest).execute();
             rspBody = rsp.body();
+            MediaType contentType = rspBody.contentType();
+            if (contentType != null && RouteResponseProtobuf.MEDIA_TYPE.equals(contentType.type() + "/" + contentType.subtype())) {
+                GHResponse res = RouteResponseProtobuf.read(rspBody.byteStream(), tmpTurnDescription);
+                for (Map.Entry<String, List<String>> entry : rsp.headers().toMultimap().entrySet()) {
+                    res.getHints().putObject(entry.getKey(), entry.getValue());
+                }
+                return res;
+            }
+
+            // errors are always returned as JSON
             JsonNode json = objectMapper.reader().readTree(rspBody.byteStream());
 
             GHResponse res = new GHResponse();
@@ -249,6 +272,8 @@ public class GraphHopperWeb {
         }
         Request.Builder builder = new Request.Builder().url(url).post(RequestBody.create(MT_JSON, body));
         builder.header(X_GH_CLIENT_VERSION, GH_VERSION_FROM_MAVEN);
+        if (protobuf)
+            builder.header("Accept", ACCEPT_PROTOBUF);
         // force avoiding our GzipRequestInterceptor for smaller requests ~30 locations
         if (body.length() < maxUnzippedLength)
             builder.header("Content-Encoding", "identity");
@@ -378,9 +403,12 @@ public class GraphHopperWeb {
             }
         }
 
-        return new Request.Builder().url(url)
-                .header(X_GH_CLIENT_VERSION, GH_VERSION_FROM_MAVEN)
-                .build();
+        Request.Builder builder = new Request.Builder().url(url)
+                .header(X_GH_CLIENT_VERSION, GH_VERSION_FROM_MAVEN);
+        // GPX is requested via the type parameter
+        if (protobuf && "json".equals(type))
+            builder.header("Accept", ACCEPT_PROTOBUF);
+        return builder.build();
     }
 
     public String export(GHRequest ghRequest) {
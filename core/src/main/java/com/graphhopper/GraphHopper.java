@@ -18,6 +18,7 @@
 package com.graphhopper;
 
 import com.bedatadriven.jackson.datatype.jts.JtsModule;
+import com.carrotsearch.hppc.IntIntHashMap;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.graphhopper.config.CHProfile;
 import com.graphhopper.config.LMProfile;
@@ -28,6 +29,8 @@ import com.graphhopper.reader.osm.OSMReader;
 import com.graphhopper.reader.osm.RestrictionTagParser;
 import com.graphhopper.reader.osm.conditional.DateRangeParser;
 import com.graphhopper.routing.*;
+import com.graphhopper.routing.ch.CHCore;
+import com.graphhopper.routing.ch.CHCustomizer;
 import com.graphhopper.routing.ch.CHPreparationHandler;
 import com.graphhopper.routing.ch.PrepareContractionHierarchies;
 import com.graphhopper.routing.ev.*;
@@ -43,7 +46,12 @@ import com.graphhopper.routing.util.parsers.OSMBikeNetworkTagParser;
 import com.graphhopper.routing.util.parsers.OSMFootNetworkTagParser;
 import com.graphhopper.routing.util.parsers.OSMMtbNetworkTagParser;
 import com.graphhopper.routing.util.parsers.TagParser;
+import com.graphhopper.routing.weighting.MaterializedWeights;
+import com.graphhopper.routing.weighting.SpeedProfiles;
+import com.graphhopper.routing.weighting.TrafficOverlay;
+import com.graphhopper.routing.weighting.TrafficWeighting;
 import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.routing.weighting.custom.AreaEdgeCache;
 import com.graphhopper.routing.weighting.custom.CustomModelParser;
 import com.graphhopper.routing.weighting.custom.CustomWeighting;
 import com.graphhopper.routing.weighting.custom.NameValidator;
@@ -64,7 +72,12 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.text.DateFormat;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -109,8 +122,14 @@ public class GraphHopper {
     private final RouterConfig routerConfig = new RouterConfig();
     // for index
     private LocationIndex locationIndex;
+    private SnapCache snapCache;
+    private RouteCache routeCache;
+    private ExecutorService legExecutor;
+    private RouteListener routeListener;
+    private AreaEdgeCache areaEdgeCache;
     private int preciseIndexResolution = 300;
     private int maxRegionSearch = 4;
+    private int indexThreads = 1;
     // subnetworks
     private int minNetworkSize = 200;
     private int subnetworksThreads = 1;
@@ -124,8 +143,17 @@ public class GraphHopper {
     // preparation handlers
     private final LMPreparationHandler lmPreparationHandler = new LMPreparationHandler();
     private final CHPreparationHandler chPreparationHandler = new CHPreparationHandler();
-    private Map<String, RoutingCHGraph> chGraphs = Collections.emptyMap();
+    private volatile Map<String, RoutingCHGraph> chGraphs = Collections.emptyMap();
+    private final Map<String, CHCustomizer> chCustomizers = new HashMap<>();
+    private volatile Set<String> customizedCHProfiles = Collections.emptySet();
     private Map<String, LandmarkStorage> landmarks = Collections.emptyMap();
+    private List<String> materializedWeightsProfiles = Collections.emptyList();
+    private Map<String, MaterializedWeights> materializedWeights = Collections.emptyMap();
+    private String speedProfilesFile = "";
+    private ZoneId speedProfilesZoneId = ZoneOffset.UTC;
+    private SpeedProfiles speedProfiles;
+    private boolean trafficOverlayEnabled = false;
+    private TrafficOverlay trafficOverlay;
 
     // for data reader
     private String osmFile;
@@ -179,6 +207,15 @@ public class GraphHopper {
         return pathBuilderFactory;
     }
 
+    /**
+     * Sets the listener that is notified about the time spent in the different phases of every route request, see
+     * {@link RouteListener}.
+     */
+    public GraphHopper setRouteListener(RouteListener routeListener) {
+        this.routeListener = routeListener;
+        return this;
+    }
+
     /**
      * Precise location resolution index means also more space (disc/RAM) could be consumed and
      * probably slower query times, which would be e.g. not suitable for Android. The resolution
@@ -190,6 +227,120 @@ public class GraphHopper {
         return this;
     }
 
+    /**
+     * Precalculates the edge weights of the given profiles and stores them next to the graph. This makes the
+     * evaluation of the weighting cheaper for routing requests that do not use a custom model, which is especially
+     * useful for flexible and LM routing with complex custom models.
+     */
+    public GraphHopper setMaterializedWeightsProfiles(List<String> profileNames) {
+        ensureNotLoaded();
+        this.materializedWeightsProfiles = profileNames;
+        return this;
+    }
+
+    /**
+     * Reads historic speed profiles from the given CSV file, which are used for routing requests with a departure
+     * time. Every line contains an OSM way id followed by the speeds in percent of the free-flow speed for the 96 bins
+     * of 15 minutes of a day or for the 672 bins of a week starting on Monday, see {@link SpeedProfiles}. The first line
+     * can be a header and lines starting with # are ignored. This requires the encoded value osm_way_id.
+     */
+    public GraphHopper setSpeedProfilesFile(String speedProfilesFile) {
+        ensureNotLoaded();
+        this.speedProfilesFile = speedProfilesFile;
+        return this;
+    }
+
+    /**
+     * The time zone of the bins of the speed profiles, UTC by default.
+     */
+    public GraphHopper setSpeedProfilesZoneId(ZoneId speedProfilesZoneId) {
+        ensureNotLoaded();
+        this.speedProfilesZoneId = speedProfilesZoneId;
+        return this;
+    }
+
+    /**
+     * @return the speed profiles or null if no speed profiles are configured
+     */
+    public SpeedProfiles getSpeedProfiles() {
+        return speedProfiles;
+    }
+
+    /**
+     * Enables live traffic speeds that can be updated at runtime, see {@link #applyTrafficUpdates(InputStream)}. They
+     * are used by flexible and LM requests, and by the speed mode after {@link #customizeCHForTraffic()}.
+     */
+    public GraphHopper setTrafficOverlayEnabled(boolean trafficOverlayEnabled) {
+        ensureNotLoaded();
+        this.trafficOverlayEnabled = trafficOverlayEnabled;
+        return this;
+    }
+
+    /**
+     * @return the live traffic speeds or null if they are disabled, see routing.traffic_overlay
+     */
+    public TrafficOverlay getTrafficOverlay() {
+        return trafficOverlay;
+    }
+
+    /**
+     * Reads a binary batch of live traffic speeds, see {@link TrafficOverlay#applyUpdates(InputStream, long)}, and
+     * clears the snap and route caches. Cached routes that depend on the live traffic also expire together with the
+     * traffic entries.
+     *
+     * @return the number of updated edge directions
+     */
+    public int applyTrafficUpdates(InputStream in) throws IOException {
+        if (trafficOverlay == null)
+            throw new IllegalStateException("The traffic overlay is not enabled, see routing.traffic_overlay");
+        int updated = trafficOverlay.applyUpdates(in, System.currentTimeMillis());
+        clearCaches();
+        return updated;
+    }
+
+    /**
+     * Recalculates the shortcut weights of the CH preparations for the current live traffic speeds, so that the speed
+     * mode considers them until the next call. This keeps the node ordering and the shortcuts, see {@link CHCustomizer}.
+     */
+    public void customizeCHForTraffic() {
+        if (trafficOverlay == null)
+            throw new IllegalStateException("The traffic overlay is not enabled, see routing.traffic_overlay");
+        long now = System.currentTimeMillis();
+        for (CHProfile chProfile : chPreparationHandler.getCHProfiles()) {
+            Profile profile = profilesByName.get(chProfile.getProfile());
+            customizeCH(profile.getName(), new TrafficWeighting(createWeighting(profile, new PMap()), trafficOverlay, now));
+        }
+    }
+
+    /**
+     * Recalculates the shortcut weights of the CH preparation of the given profile for the given weighting, which
+     * is then used by the speed mode requests of this profile. Customizing with the weighting of the profile restores
+     * the original weights.
+     */
+    public synchronized void customizeCH(String profileName, Weighting weighting) {
+        RoutingCHGraph chGraph = chGraphs.get(profileName);
+        if (chGraph == null)
+            throw new IllegalArgumentException("There is no CH preparation for the profile: " + profileName);
+        CHStorage chStorage = ((RoutingCHGraphImpl) chGraph).getCHStorage();
+        chCustomizers.computeIfAbsent(profileName, p -> new CHCustomizer(baseGraph.getBaseGraph(), chStorage)
+                .setThreads(chPreparationHandler.getCustomizationThreads())).customize(weighting);
+        Map<String, RoutingCHGraph> customizedCHGraphs = new LinkedHashMap<>(chGraphs);
+        customizedCHGraphs.put(profileName, chGraph instanceof CoreRoutingCHGraph
+                ? ((CoreRoutingCHGraph) chGraph).withWeighting(weighting)
+                : new RoutingCHGraphImpl(baseGraph.getBaseGraph(), chStorage, weighting));
+        chGraphs = customizedCHGraphs;
+        customizedCHProfiles = Set.copyOf(chCustomizers.keySet());
+        // the CH solver snaps with the weighting of the CH graph
+        clearCaches();
+    }
+
+    private void clearCaches() {
+        if (snapCache != null)
+            snapCache.clear();
+        if (routeCache != null)
+            routeCache.clear();
+    }
+
     public GraphHopper setMinNetworkSize(int minNetworkSize) {
         ensureNotLoaded();
         this.minNetworkSize = minNetworkSize;
@@ -569,6 +720,14 @@ public class GraphHopper {
         // index
         preciseIndexResolution = ghConfig.getInt("index.high_resolution", preciseIndexResolution);
         maxRegionSearch = ghConfig.getInt("index.max_region_search", maxRegionSearch);
+        indexThreads = ghConfig.getInt("index.threads", indexThreads);
+
+        String materializedWeightsStr = ghConfig.getString("routing.materialized_weights", "");
+        if (!materializedWeightsStr.isEmpty())
+            materializedWeightsProfiles = Arrays.stream(materializedWeightsStr.split(",")).map(String::trim).collect(Collectors.toList());
+        speedProfilesFile = ghConfig.getString("speed_profiles.file", speedProfilesFile);
+        speedProfilesZoneId = ZoneId.of(ghConfig.getString("speed_profiles.time_zone", speedProfilesZoneId.getId()));
+        trafficOverlayEnabled = ghConfig.getBool("routing.traffic_overlay", trafficOverlayEnabled);
 
         // urban density calculation
         residentialAreaRadius = ghConfig.getDouble("graph.urban_density.residential_radius", residentialAreaRadius);
@@ -579,10 +738,19 @@ public class GraphHopper {
 
         // routing
         routerConfig.setMaxVisitedNodes(ghConfig.getInt(Routing.INIT_MAX_VISITED_NODES, routerConfig.getMaxVisitedNodes()));
+        routerConfig.setMaxVisitedNodesPerRequest(ghConfig.getInt("routing.max_visited_nodes_per_request", routerConfig.getMaxVisitedNodesPerRequest()));
         routerConfig.setTimeoutMillis(ghConfig.getLong(Routing.INIT_TIMEOUT_MS, routerConfig.getTimeoutMillis()));
         routerConfig.setMaxRoundTripRetries(ghConfig.getInt(RoundTrip.INIT_MAX_RETRIES, routerConfig.getMaxRoundTripRetries()));
         routerConfig.setNonChMaxWaypointDistance(ghConfig.getInt(Parameters.NON_CH.MAX_NON_CH_POINT_DISTANCE, routerConfig.getNonChMaxWaypointDistance()));
         routerConfig.setInstructionsEnabled(ghConfig.getBool(Routing.INIT_INSTRUCTIONS, routerConfig.isInstructionsEnabled()));
+        routerConfig.setSnapCacheSize(ghConfig.getInt("routing.snap_cache.size", routerConfig.getSnapCacheSize()));
+        routerConfig.setRouteCacheSize(ghConfig.getInt("routing.route_cache.size", routerConfig.getRouteCacheSize()));
+        routerConfig.setRouteCacheTtlMillis(ghConfig.getLong("routing.route_cache.ttl_ms", routerConfig.getRouteCacheTtlMillis()));
+        routerConfig.setAreaCacheSize(ghConfig.getInt("routing.area_cache.size", routerConfig.getAreaCacheSize()));
+        routerConfig.setLegThreads(ghConfig.getInt("routing.leg_threads", routerConfig.getLegThreads()));
+        routerConfig.setMaxParallelLegs(ghConfig.getInt("routing.max_parallel_legs", routerConfig.getMaxParallelLegs()));
+        if (ghConfig.has("routing.custom_model.background_compilation"))
+            CustomModelParser.setBackgroundCompilation(ghConfig.getBool("routing.custom_model.background_compilation", false));
         int activeLandmarkCount = ghConfig.getInt(Landmark.ACTIVE_COUNT_DEFAULT, Math.min(8, lmPreparationHandler.getLandmarks()));
         if (activeLandmarkCount > lmPreparationHandler.getLandmarks())
             throw new IllegalArgumentException("Default value for active landmarks " + activeLandmarkCount
@@ -1059,6 +1227,7 @@ public class GraphHopper {
             postProcessing(false);
             directory.loadMMap();
             setFullyLoaded();
+            logMemoryReport();
             return true;
         } finally {
             if (lock != null)
@@ -1130,15 +1299,28 @@ public class GraphHopper {
         List<CHConfig> chConfigs = new ArrayList<>();
         for (CHProfile chProfile : chProfiles) {
             Profile profile = profilesByName.get(chProfile.getProfile());
-            if (profile.hasTurnCosts()) {
-                chConfigs.add(CHConfig.edgeBased(profile.getName(), createWeighting(profile, new PMap())));
-            } else {
-                chConfigs.add(CHConfig.nodeBased(profile.getName(), createWeighting(profile, new PMap())));
-            }
+            CHConfig chConfig = profile.hasTurnCosts()
+                    ? CHConfig.edgeBased(profile.getName(), createWeighting(profile, new PMap()))
+                    : CHConfig.nodeBased(profile.getName(), createWeighting(profile, new PMap()));
+            if (!chProfile.getCoreEncodedValues().isEmpty())
+                chConfig = chConfig.withCore(createCHCore(chProfile));
+            chConfigs.add(chConfig);
         }
         return chConfigs;
     }
 
+    private CHCore createCHCore(CHProfile chProfile) {
+        if (!CustomWeighting.NAME.equals(profilesByName.get(chProfile.getProfile()).getWeighting()))
+            throw new IllegalArgumentException("CH profile '" + chProfile.getProfile() + "' has core_encoded_values, but its profile does not use a custom model");
+        for (String name : chProfile.getCoreEncodedValues())
+            if (!encodingManager.hasEncodedValue(name))
+                throw new IllegalArgumentException("CH profile '" + chProfile.getProfile() + "' uses the core encoded value '" + name
+                        + "', which does not exist. Available: " + encodingManager.getEncodedValues().stream().map(EncodedValue::getName).collect(Collectors.toList()));
+        CHCore core = CHCore.fromGraph(baseGraph.getBaseGraph(), encodingManager, chProfile.getCoreEncodedValues());
+        logger.info("CH profile " + chProfile.getProfile() + ": " + core);
+        return core;
+    }
+
     public final LMPreparationHandler getLMPreparationHandler() {
         return lmPreparationHandler;
     }
@@ -1167,7 +1349,9 @@ public class GraphHopper {
      */
     protected void postProcessing(boolean closeEarly) {
         calcChecksums();
+        initTurnCostIndex();
         initLocationIndex();
+        initAreaEdgeCache();
         importPublicTransit();
 
         if (closeEarly) {
@@ -1178,6 +1362,13 @@ public class GraphHopper {
                 baseGraph.flushAndCloseGeometryAndNameStorage();
         }
 
+        // the materialized weights are also used by the following preparations
+        if (!materializedWeightsProfiles.isEmpty())
+            loadOrPrepareMaterializedWeights();
+
+        if (!speedProfilesFile.isEmpty())
+            loadOrCreateSpeedProfiles();
+
         if (lmPreparationHandler.isEnabled())
             loadOrPrepareLM(closeEarly);
 
@@ -1187,6 +1378,120 @@ public class GraphHopper {
 
         if (chPreparationHandler.isEnabled())
             loadOrPrepareCH(closeEarly);
+
+        if (closeEarly)
+            materializedWeights.values().forEach(MaterializedWeights::close);
+    }
+
+    /**
+     * Builds the hash table for the turn cost lookups unless it was loaded with the graph.
+     */
+    protected void initTurnCostIndex() {
+        TurnCostStorage turnCostStorage = baseGraph.getTurnCostStorage();
+        if (turnCostStorage == null || turnCostStorage.isIndexed() || !allowWrites)
+            return;
+        StopWatch sw = new StopWatch().start();
+        turnCostStorage.buildIndex();
+        // when the graph was loaded it is not flushed again, so we write the index now to not build it on every start
+        turnCostStorage.flushIndex();
+        logger.info("Built turn cost index, took: " + sw.stop().getSeconds() + "s");
+    }
+
+    /**
+     * Calculates the edges inside the areas of the profile custom models, which are also used for the preparations.
+     */
+    protected void initAreaEdgeCache() {
+        StopWatch sw = new StopWatch().start();
+        areaEdgeCache = new AreaEdgeCache(baseGraph.getBaseGraph(), locationIndex, routerConfig.getAreaCacheSize());
+        for (Profile profile : profilesByName.values())
+            if (profile.getCustomModel() != null)
+                areaEdgeCache.addProfileAreas(profile.getCustomModel());
+        if (areaEdgeCache.getProfileAreaCount() > 0)
+            logger.info("Calculated the edges of " + areaEdgeCache.getProfileAreaCount() + " areas, took: " + sw.stop().getSeconds() + "s");
+    }
+
+    protected void loadOrPrepareMaterializedWeights() {
+        materializedWeights = new LinkedHashMap<>();
+        for (String profileName : materializedWeightsProfiles) {
+            Profile profile = profilesByName.get(profileName);
+            if (profile == null)
+                throw new IllegalArgumentException("Cannot materialize the weights of unknown profile '" + profileName + "'");
+            MaterializedWeights weights = new MaterializedWeights(baseGraph.getDirectory(), profileName);
+            if (!weights.loadExisting(baseGraph, profile.getVersion())) {
+                ensureWriteAccess();
+                StopWatch sw = new StopWatch().start();
+                weights.build(baseGraph, createWeighting(profile, new PMap()), profile.getVersion());
+                weights.flush();
+                logger.info("Materialized weights for profile '" + profileName + "', took: " + sw.stop().getSeconds() + "s");
+            }
+            materializedWeights.put(profileName, weights);
+        }
+    }
+
+    protected void loadOrCreateSpeedProfiles() {
+        speedProfiles = new SpeedProfiles(baseGraph.getDirectory()).setZoneId(speedProfilesZoneId);
+        if (speedProfiles.loadExisting(baseGraph.getBaseGraph()))
+            return;
+        ensureWriteAccess();
+        if (!encodingManager.hasEncodedValue(OSMWayID.KEY))
+            throw new IllegalArgumentException("Speed profiles require the encoded value " + OSMWayID.KEY + ", add it to graph.encoded_values");
+        StopWatch sw = new StopWatch().start();
+        speedProfiles.create(baseGraph.getBaseGraph());
+        IntIntHashMap profilesByWayId;
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(speedProfilesFile), StandardCharsets.UTF_8)) {
+            profilesByWayId = readSpeedProfiles(reader, speedProfilesFile, speedProfiles);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Cannot read speed profiles from " + speedProfilesFile, ex);
+        }
+        IntEncodedValue wayIdEnc = encodingManager.getIntEncodedValue(OSMWayID.KEY);
+        AllEdgesIterator iter = baseGraph.getAllEdges();
+        int edges = 0;
+        while (iter.next()) {
+            int profile = profilesByWayId.getOrDefault(iter.get(wayIdEnc), SpeedProfiles.NO_PROFILE);
+            if (profile != SpeedProfiles.NO_PROFILE) {
+                speedProfiles.setProfile(iter.getEdge(), profile);
+                edges++;
+            }
+        }
+        speedProfiles.flush();
+        logger.info("Assigned " + speedProfiles.getProfileCount() + " speed profiles of " + profilesByWayId.size()
+                + " ways to " + edges + " edges, took: " + sw.stop().getSeconds() + "s");
+    }
+
+    /**
+     * Adds the speed profiles of the given CSV to the storage. The first line can be a header and lines starting with #
+     * are comments. All other lines must be 'way_id,v1,...,vN', otherwise an IllegalArgumentException with the file
+     * and line is thrown.
+     *
+     * @return the profile id for every way id
+     */
+    static IntIntHashMap readSpeedProfiles(BufferedReader reader, String fileName, SpeedProfiles speedProfiles) throws IOException {
+        IntIntHashMap profilesByWayId = new IntIntHashMap();
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.startsWith("#") || lineNumber == 1 && !line.isEmpty() && !Character.isDigit(line.charAt(0)))
+                continue;
+            try {
+                if (line.isEmpty())
+                    throw new IllegalArgumentException("empty line");
+                String[] values = line.split(",", -1);
+                if (values.length < 2)
+                    throw new IllegalArgumentException("no speed values");
+                int wayId = Integer.parseInt(values[0].trim());
+                if (profilesByWayId.containsKey(wayId))
+                    throw new IllegalArgumentException("duplicate way id " + wayId);
+                int[] speedPercents = new int[values.length - 1];
+                for (int i = 0; i < speedPercents.length; i++)
+                    speedPercents[i] = Integer.parseInt(values[i + 1].trim());
+                profilesByWayId.put(wayId, speedProfiles.addProfile(speedPercents));
+            } catch (IllegalArgumentException ex) {
+                throw new IllegalArgumentException("Invalid speed profile in " + fileName + ", line " + lineNumber + ": " + ex.getMessage(), ex);
+            }
+        }
+        return profilesByWayId;
     }
 
     protected void importPublicTransit() {
@@ -1218,7 +1523,8 @@ public class GraphHopper {
     }
 
     protected WeightingFactory createWeightingFactory() {
-        return new DefaultWeightingFactory(baseGraph.getBaseGraph(), getEncodingManager());
+        WeightingFactory weightingFactory = new DefaultWeightingFactory(baseGraph.getBaseGraph(), getEncodingManager(), areaEdgeCache);
+        return materializedWeights.isEmpty() ? weightingFactory : new MaterializedWeightingFactory(weightingFactory, materializedWeights);
     }
 
     public GHResponse route(GHRequest request) {
@@ -1234,7 +1540,9 @@ public class GraphHopper {
             throw new IllegalStateException("Location index not initialized");
 
         return doCreateRouter(baseGraph, encodingManager, locationIndex, profilesByName, pathBuilderFactory,
-                trMap, routerConfig, createWeightingFactory(), chGraphs, landmarks);
+                trMap, routerConfig, createWeightingFactory(), chGraphs, landmarks).setSnapCache(snapCache).setRouteCache(routeCache)
+                .setSpeedProfiles(speedProfiles).setTrafficOverlay(trafficOverlay).setCustomizedCHProfiles(customizedCHProfiles).setLegExecutor(legExecutor)
+                .setRouteListener(routeListener);
     }
 
     protected Router doCreateRouter(BaseGraph baseGraph, EncodingManager encodingManager, LocationIndex locationIndex, Map<String, Profile> profilesByName,
@@ -1249,6 +1557,7 @@ public class GraphHopper {
         LocationIndexTree tmpIndex = new LocationIndexTree(baseGraph, dir);
         tmpIndex.setResolution(preciseIndexResolution);
         tmpIndex.setMaxRegionSearch(maxRegionSearch);
+        tmpIndex.setThreads(indexThreads);
         if (!tmpIndex.loadExisting()) {
             ensureWriteAccess();
             tmpIndex.prepareIndex();
@@ -1306,6 +1615,14 @@ public class GraphHopper {
         properties.put("graph.profiles.ch." + profile + ".version", version);
     }
 
+    private String getCHProfileCore(String profile) {
+        return properties.get("graph.profiles.ch." + profile + ".core");
+    }
+
+    private void setCHProfileCore(CHProfile profile) {
+        properties.put("graph.profiles.ch." + profile.getProfile() + ".core", String.join(",", profile.getCoreEncodedValues()));
+    }
+
     private String getLMProfileVersion(String profile) {
         return properties.get("graph.profiles.lm." + profile + ".version");
     }
@@ -1319,6 +1636,11 @@ public class GraphHopper {
             if (!getCHProfileVersion(profile.getProfile()).isEmpty()
                     && !getCHProfileVersion(profile.getProfile()).equals("" + profilesByName.get(profile.getProfile()).getVersion()))
                 throw new IllegalArgumentException("CH preparation of " + profile.getProfile() + " already exists in storage and doesn't match configuration");
+        for (CHProfile profile : chPreparationHandler.getCHProfiles())
+            if (!getCHProfileVersion(profile.getProfile()).isEmpty()
+                    && !getCHProfileCore(profile.getProfile()).equals(String.join(",", profile.getCoreEncodedValues())))
+                throw new IllegalArgumentException("CH preparation of " + profile.getProfile() + " already exists in storage, but its core_encoded_values "
+                        + "were: [" + getCHProfileCore(profile.getProfile()) + "] instead of " + profile.getCoreEncodedValues());
 
         // we load ch graphs that already exist and prepare the other ones
         List<CHConfig> chConfigs = createCHConfigs(chPreparationHandler.getCHProfiles());
@@ -1333,6 +1655,7 @@ public class GraphHopper {
                 throw new IllegalStateException("CH graph should be either loaded or prepared, but not both: " + profile.getProfile());
             else if (prepared.containsKey(profile.getProfile())) {
                 setCHProfileVersion(profile.getProfile(), profilesByName.get(profile.getProfile()).getVersion());
+                setCHProfileCore(profile);
                 PrepareContractionHierarchies.Result res = prepared.get(profile.getProfile());
                 chGraphs.put(profile.getProfile(), RoutingCHGraphImpl.fromGraph(baseGraph.getBaseGraph(), res.getCHStorage(), res.getCHConfig()));
             } else if (loaded.containsKey(profile.getProfile())) {
@@ -1419,6 +1742,7 @@ public class GraphHopper {
         properties.flush();
         logger.info("flushed graph " + getMemInfo() + ")");
         setFullyLoaded();
+        logMemoryReport();
     }
 
     /**
@@ -1433,9 +1757,16 @@ public class GraphHopper {
 
         chGraphs.values().forEach(RoutingCHGraph::close);
         landmarks.values().forEach(LandmarkStorage::close);
+        materializedWeights.values().forEach(MaterializedWeights::close);
+        if (speedProfiles != null)
+            speedProfiles.close();
 
         if (locationIndex != null)
             locationIndex.close();
+        // cached snaps and routes refer to the closed graph
+        clearCaches();
+        if (legExecutor != null)
+            legExecutor.shutdownNow();
 
         try {
             lockFactory.forceRemove(fileLockName, true);
@@ -1466,14 +1797,71 @@ public class GraphHopper {
             throw new IllegalStateException("Writes are not allowed!");
     }
 
+    /**
+     * Creates the caches and executors that are used for routing. This is called after every load, import and
+     * setBaseGraph, so everything is only created once.
+     */
     private void setFullyLoaded() {
+        if (snapCache == null && routerConfig.getSnapCacheSize() > 0)
+            snapCache = new SnapCache(routerConfig.getSnapCacheSize());
+        if (routeCache == null && routerConfig.getRouteCacheSize() > 0)
+            routeCache = new RouteCache(routerConfig.getRouteCacheSize(), routerConfig.getRouteCacheTtlMillis());
+        // setBaseGraph can be called before the EncodingManager is created
+        if (trafficOverlay == null && trafficOverlayEnabled && encodingManager != null)
+            trafficOverlay = new TrafficOverlay(baseGraph.getBaseGraph(), encodingManager.hasEncodedValue(OSMWayID.KEY)
+                    ? encodingManager.getIntEncodedValue(OSMWayID.KEY) : null);
+        if (legExecutor == null && routerConfig.getLegThreads() > 0) {
+            AtomicInteger threadCount = new AtomicInteger();
+            legExecutor = Executors.newFixedThreadPool(routerConfig.getLegThreads(), r -> {
+                Thread thread = new Thread(r, "via-legs-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
         fullyLoaded = true;
     }
 
+    private void logMemoryReport() {
+        logger.info("memory usage of " + getProfiles().size() + " profiles, " + getMemoryReport());
+    }
+
     public boolean getFullyLoaded() {
         return fullyLoaded;
     }
 
+    /**
+     * @return the cache for snapped request points or null if it is disabled, see routing.snap_cache.size
+     */
+    public SnapCache getSnapCache() {
+        return snapCache;
+    }
+
+    /**
+     * @return the precalculated edges of custom model areas or null if the graph is not loaded yet
+     */
+    public AreaEdgeCache getAreaEdgeCache() {
+        return areaEdgeCache;
+    }
+
+    /**
+     * @return the capacity and resident bytes of every DataAccess of the graph, including the CH and LM
+     * preparations, and the estimated heap size of the caches. See MemoryReport.
+     */
+    public MemoryReport getMemoryReport() {
+        MemoryReport report = MemoryReport.create(baseGraph.getDirectory());
+        report.addCache("custom_model_classes", CustomModelParser.getEstimatedCacheBytes());
+        if (areaEdgeCache != null)
+            report.addCache("area_edges", areaEdgeCache.getEstimatedBytes());
+        return report;
+    }
+
+    /**
+     * @return the cache for route responses or null if it is disabled, see routing.route_cache.size
+     */
+    public RouteCache getRouteCache() {
+        return routeCache;
+    }
+
     public RouterConfig getRouterConfig() {
         return routerConfig;
     }
@@ -18,6 +18,10 @@
 
 package com.graphhopper.config;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 
 import static com.graphhopper.config.Profile.validateProfileName;
@@ -30,6 +34,7 @@ import static com.graphhopper.config.Profile.validateProfileName;
  */
 public class CHProfile {
     private String profile = "";
+    private List<String> coreEncodedValues = new ArrayList<>();
 
     private CHProfile() {
         // default constructor needed for jackson
@@ -37,6 +42,7 @@ public class CHProfile {
 
     public CHProfile(CHProfile profile) {
         this.profile = profile.profile;
+        this.coreEncodedValues = new ArrayList<>(profile.coreEncodedValues);
     }
 
     public CHProfile(String profile) {
@@ -52,9 +58,23 @@ public class CHProfile {
         this.profile = profile;
     }
 
+    public List<String> getCoreEncodedValues() {
+        return coreEncodedValues;
+    }
+
+    /**
+     * Nodes with an edge that has a non-default value for one of these encoded values are not contracted. Requests
+     * with a custom model that only changes the weight of such edges can then use the CH, see CHCore.
+     */
+    @JsonProperty("core_encoded_values")
+    public CHProfile setCoreEncodedValues(List<String> coreEncodedValues) {
+        this.coreEncodedValues = new ArrayList<>(coreEncodedValues);
+        return this;
+    }
+
     @Override
     public String toString() {
-        return profile;
+        return coreEncodedValues.isEmpty() ? profile : profile + "|core_encoded_values=" + coreEncodedValues;
     }
 
     @Override
@@ -62,7 +82,7 @@ public class CHProfile {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         CHProfile that = (CHProfile) o;
-        return Objects.equals(profile, that.profile);
+        return Objects.equals(profile, that.profile) && Objects.equals(coreEncodedValues, that.coreEncodedValues);
     }
 
     @Override
@@ -250,6 +250,13 @@ public abstract class AbstractBidirAlgo implements EdgeToEdgeRoutingAlgorithm {
         return visitedCountFrom + visitedCountTo;
     }
 
+    /**
+     * @return the nodes visited by the backward search, they are included in {@link #getVisitedNodes()}
+     */
+    public int getVisitedNodesBackward() {
+        return visitedCountTo;
+    }
+
     void setToDataStructures(AbstractBidirAlgo other) {
         to = other.to;
         toInEdge = other.toInEdge;
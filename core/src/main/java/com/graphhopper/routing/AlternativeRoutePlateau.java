@@ -0,0 +1,356 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntDoubleHashMap;
+import com.carrotsearch.hppc.IntHashSet;
+import com.carrotsearch.hppc.cursors.IntObjectCursor;
+import com.graphhopper.coll.GHIntObjectHashMap;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.BeelineWeightApproximator;
+import com.graphhopper.routing.weighting.WeightApproximator;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.util.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import static com.graphhopper.util.EdgeIterator.NO_EDGE;
+import static com.graphhopper.util.Parameters.Algorithms.AltRoute.*;
+
+/**
+ * This class implements the alternative paths search using the "plateau" method, see {@link AlternativeRoute} for the
+ * papers. Unlike AlternativeRoute it does not run a bidirectional search with a large exploration but builds the two
+ * shortest path trees once: an A* search from the start that explores all nodes that can be on a path that is at most
+ * max_exploration_factor times longer than the best path, and a search from the destination that only explores the
+ * nodes of the first tree and uses their exact weights as approximation. A plateau is a chain of nodes (or edges for
+ * edge-based traversal) where both trees agree, and every plateau yields one alternative: the shortest path to the
+ * start of the plateau, the plateau and the shortest path from its end. The alternatives are filtered like the ones of
+ * AlternativeRoute using max_weight_factor, max_share_factor and min_plateau_factor.
+ * <p>
+ * The start and the destination have to be connected, otherwise the first search explores the whole component of the
+ * start. This is no problem for routing requests, because we snap to the same subnetwork.
+ */
+public class AlternativeRoutePlateau extends AbstractRoutingAlgorithm {
+    private static final Comparator<Candidate> CANDIDATE_COMPARATOR = Comparator.comparingDouble(c -> c.sortBy);
+    private final int maxPaths;
+    private final double explorationFactor;
+    private final double maxWeightFactor;
+    private final double maxShareFactor;
+    private final double minPlateauFactor;
+    private final GHIntObjectHashMap<Entry> fwdMap = new GHIntObjectHashMap<>();
+    private final GHIntObjectHashMap<Entry> bwdMap = new GHIntObjectHashMap<>();
+    private WeightApproximator weightApprox;
+    private Entry bestFwdEntry;
+    private Entry bwdRoot;
+    private int visitedNodes;
+
+    public AlternativeRoutePlateau(Graph graph, Weighting weighting, TraversalMode traversalMode, PMap hints) {
+        super(graph, weighting, traversalMode);
+        this.maxPaths = hints.getInt(MAX_PATHS, 2);
+        if (this.maxPaths < 2)
+            throw new IllegalArgumentException("Use normal algorithm with less overhead instead if no alternatives are required");
+
+        this.maxWeightFactor = hints.getDouble(MAX_WEIGHT, 1.25);
+        this.explorationFactor = hints.getDouble("alternative_route.max_exploration_factor", maxWeightFactor);
+        this.maxShareFactor = hints.getDouble(MAX_SHARE, 0.6);
+        this.minPlateauFactor = hints.getDouble("alternative_route.min_plateau_factor", 0.1);
+        BeelineWeightApproximator defaultApprox = new BeelineWeightApproximator(nodeAccess, weighting);
+        defaultApprox.setDistanceCalc(DistancePlaneProjection.DIST_PLANE);
+        setApproximation(defaultApprox);
+    }
+
+    /**
+     * @param approx defines how the weight to the destination is approximated for the search from the start
+     */
+    public AlternativeRoutePlateau setApproximation(WeightApproximator approx) {
+        weightApprox = approx;
+        return this;
+    }
+
+    @Override
+    public Path calcPath(int from, int to) {
+        return calcPaths(from, to).get(0);
+    }
+
+    /**
+     * @return the best path followed by the alternatives sorted by their quality
+     */
+    @Override
+    public List<Path> calcPaths(int from, int to) {
+        checkAlreadyRun();
+        setupFinishTime();
+        if (!searchFromStart(from, to))
+            return Collections.singletonList(createEmptyPath());
+        searchFromDestination(to);
+        return extractPaths();
+    }
+
+    private boolean searchFromStart(int from, int to) {
+        weightApprox.setTo(to);
+        double weightToGoal = weightApprox.approximate(from);
+        if (Double.isInfinite(weightToGoal))
+            return false;
+        Entry root = new Entry(NO_EDGE, from, weightToGoal, 0, null, traversalMode.isEdgeBased() ? -1 : from);
+        if (!traversalMode.isEdgeBased())
+            fwdMap.put(from, root);
+        PriorityQueue<Entry> heap = new PriorityQueue<>();
+        heap.add(root);
+        double maxWeight = Double.POSITIVE_INFINITY;
+        while (!heap.isEmpty()) {
+            Entry curr = heap.poll();
+            if (curr.isDeleted())
+                continue;
+            // the weight for the heap is a lower bound of the weight of all paths via this entry
+            if (curr.weight > maxWeight)
+                break;
+            visitedNodes++;
+            if (isMaxVisitedNodesExceeded() || isTimeoutExceeded())
+                break;
+            if (bestFwdEntry == null && curr.adjNode == to) {
+                bestFwdEntry = curr;
+                maxWeight = explorationFactor * curr.getWeightOfVisitedPath();
+            }
+
+            EdgeIterator iter = edgeExplorer.setBaseNode(curr.adjNode);
+            while (iter.next()) {
+                if (!accept(iter, curr.edge))
+                    continue;
+                double weight = GHUtility.calcWeightWithTurnWeight(weighting, iter, false, curr.edge) + curr.getWeightOfVisitedPath();
+                if (Double.isInfinite(weight))
+                    continue;
+                int key = traversalMode.createTraversalId(iter, false);
+                Entry entry = fwdMap.get(key);
+                if (entry != null && entry.getWeightOfVisitedPath() <= weight)
+                    continue;
+                weightToGoal = weightApprox.approximate(iter.getAdjNode());
+                if (Double.isInfinite(weightToGoal))
+                    continue;
+                if (entry != null)
+                    entry.setDeleted();
+                entry = new Entry(iter.getEdge(), iter.getAdjNode(), weight + weightToGoal, weight, curr, key);
+                fwdMap.put(key, entry);
+                heap.add(entry);
+            }
+        }
+        return bestFwdEntry != null;
+    }
+
+    private void searchFromDestination(int to) {
+        double bestWeight = bestFwdEntry.getWeightOfVisitedPath();
+        bwdRoot = new Entry(NO_EDGE, to, bestWeight, 0, null, traversalMode.isEdgeBased() ? -1 : to);
+        if (!traversalMode.isEdgeBased())
+            bwdMap.put(to, bwdRoot);
+        PriorityQueue<Entry> heap = new PriorityQueue<>();
+        heap.add(bwdRoot);
+        double maxWeight = explorationFactor * bestWeight;
+        while (!heap.isEmpty()) {
+            Entry curr = heap.poll();
+            if (curr.isDeleted())
+                continue;
+            // the weight for the heap is the weight of the best path via this entry
+            if (curr.weight > maxWeight)
+                break;
+            visitedNodes++;
+            if (isMaxVisitedNodesExceeded() || isTimeoutExceeded())
+                break;
+
+            EdgeIterator iter = edgeExplorer.setBaseNode(curr.adjNode);
+            while (iter.next()) {
+                if (!accept(iter, curr.edge))
+                    continue;
+                int key = traversalMode.createTraversalId(iter, true);
+                // only the nodes of the first tree can be part of an alternative, and their weights are exact
+                Entry fwdEntry = fwdMap.get(key);
+                if (fwdEntry == null)
+                    continue;
+                double weight = GHUtility.calcWeightWithTurnWeight(weighting, iter, true, curr.edge) + curr.getWeightOfVisitedPath();
+                if (Double.isInfinite(weight))
+                    continue;
+                Entry entry = bwdMap.get(key);
+                if (entry != null && entry.getWeightOfVisitedPath() <= weight)
+                    continue;
+                // for edge-based traversal both trees include the weight of the edge
+                double pathWeight = weight + fwdEntry.getWeightOfVisitedPath()
+                        - (traversalMode.isEdgeBased() ? weighting.calcEdgeWeight(iter, true) : 0);
+                if (entry != null)
+                    entry.setDeleted();
+                entry = new Entry(iter.getEdge(), iter.getAdjNode(), pathWeight, weight, curr, key);
+                bwdMap.put(key, entry);
+                heap.add(entry);
+            }
+        }
+    }
+
+    private List<Path> extractPaths() {
+        double bestWeight = bestFwdEntry.getWeightOfVisitedPath();
+        double maxWeight = maxWeightFactor * bestWeight;
+        IntHashSet bestKeys = new IntHashSet();
+        for (Entry e = bestFwdEntry; e != null; e = (Entry) e.parent)
+            if (e.key >= 0)
+                bestKeys.add(e.key);
+        IntDoubleHashMap fwdShares = new IntDoubleHashMap();
+        IntDoubleHashMap bwdShares = new IntDoubleHashMap();
+
+        List<Candidate> candidates = new ArrayList<>();
+        for (IntObjectCursor<Entry> c : fwdMap) {
+            Entry bwdEntry = bwdMap.get(c.key);
+            // plateaus that start on the best path only exist for ties and would share most of it
+            if (bwdEntry == null || bestKeys.contains(c.key) || !isPlateauStart(c.value, bwdEntry))
+                continue;
+            Entry fwdEntry = c.value;
+            // for edge-based traversal both trees contain the edge, so we use its successor in the backward tree
+            SPTEntry toEntry = traversalMode.isEdgeBased() ? bwdEntry.parent : bwdEntry;
+            // skip u-turns
+            if (fwdEntry.edge == toEntry.edge)
+                continue;
+            double weight = fwdEntry.getWeightOfVisitedPath() + toEntry.getWeightOfVisitedPath()
+                    + weighting.calcTurnWeight(fwdEntry.edge, fwdEntry.adjNode, toEntry.edge);
+            if (weight > maxWeight)
+                continue;
+
+            double plateauWeight = calcPlateauWeight(fwdEntry, bwdEntry);
+            if (plateauWeight <= 0 || plateauWeight / weight < minPlateauFactor)
+                continue;
+
+            double shareWeight = calcShareWeight(fwdEntry, bestKeys, fwdShares) + calcShareWeight(bwdEntry, bestKeys, bwdShares);
+            if (shareWeight / bestWeight >= maxShareFactor)
+                continue;
+
+            // the same weights as for AlternativeRoute: small total weight, small share and big plateau
+            double sortBy = AlternativeRoute.calcSortBy(7, weight, 0.8, shareWeight, -0.2, plateauWeight);
+            candidates.add(new Candidate(sortBy, weight, fwdEntry, toEntry));
+        }
+        candidates.sort(CANDIDATE_COMPARATOR);
+
+        List<Path> paths = new ArrayList<>(maxPaths);
+        paths.add(extractPath(bestFwdEntry, bwdRoot, bestWeight));
+        for (Candidate candidate : candidates) {
+            if (paths.size() >= maxPaths)
+                break;
+            paths.add(extractPath(candidate.fwdEntry, candidate.bwdEntry, candidate.weight));
+        }
+        return paths;
+    }
+
+    /**
+     * A plateau starts at the given entries if the parent of the forward entry does not belong to the same plateau,
+     * i.e. the backward tree does not continue from it to the given entry.
+     */
+    private boolean isPlateauStart(Entry fwdEntry, Entry bwdEntry) {
+        Entry fwdParent = (Entry) fwdEntry.parent;
+        if (fwdParent == null || fwdParent.key < 0)
+            return true;
+        Entry bwdParent = bwdMap.get(fwdParent.key);
+        return bwdParent == null || bwdParent.parent != bwdEntry || !isSameEdge(fwdEntry, bwdParent);
+    }
+
+    /**
+     * For node-based traversal there can be several edges between two nodes, so we need to make sure the trees use
+     * the same. The keys of edge-based traversal already include the edge.
+     */
+    private boolean isSameEdge(Entry fwdEntry, Entry bwdEntry) {
+        return traversalMode.isEdgeBased() || fwdEntry.edge == bwdEntry.edge;
+    }
+
+    private double calcPlateauWeight(Entry fwdStart, Entry bwdStart) {
+        Entry fwdEntry = fwdStart, bwdEntry = bwdStart;
+        while (bwdEntry.parent != null) {
+            Entry bwdNext = (Entry) bwdEntry.parent;
+            if (bwdNext.key < 0)
+                break;
+            Entry fwdNext = fwdMap.get(bwdNext.key);
+            // end of the plateau
+            if (fwdNext == null || fwdNext.parent != fwdEntry || !isSameEdge(fwdNext, bwdEntry))
+                break;
+            fwdEntry = fwdNext;
+            bwdEntry = bwdNext;
+        }
+        return fwdEntry.getWeightOfVisitedPath() - fwdStart.getWeightOfVisitedPath();
+    }
+
+    /**
+     * @return the weight of the path of the given tree entry to its root that is shared with the best path. Once the
+     * path reached the best path it stays on it, as long as there are no ties, so we remember the result for all
+     * entries on the way.
+     */
+    private double calcShareWeight(Entry entry, IntHashSet bestKeys, IntDoubleHashMap shares) {
+        IntArrayList keys = new IntArrayList();
+        double share = 0;
+        for (Entry e = entry; e != null && e.key >= 0; e = (Entry) e.parent) {
+            if (bestKeys.contains(e.key)) {
+                share = e.getWeightOfVisitedPath();
+                break;
+            }
+            int index = shares.indexOf(e.key);
+            if (shares.indexExists(index)) {
+                share = shares.indexGet(index);
+                break;
+            }
+            keys.add(e.key);
+        }
+        for (int i = 0; i < keys.size(); i++)
+            shares.put(keys.get(i), share);
+        return share;
+    }
+
+    private Path extractPath(SPTEntry fwdEntry, SPTEntry bwdEntry, double weight) {
+        Path path = DefaultBidirPathExtractor.extractPath(graph, weighting, fwdEntry, bwdEntry, weight);
+        path.setDescription(AlternativeRoute.getAltNames(graph, fwdEntry));
+        return path;
+    }
+
+    @Override
+    public int getVisitedNodes() {
+        return visitedNodes;
+    }
+
+    @Override
+    public String getName() {
+        return Parameters.Algorithms.ALT_ROUTE + "|" + PLATEAU + "|" + weightApprox;
+    }
+
+    private static class Entry extends AStar.AStarEntry {
+        // the node for node-based traversal and the edge key otherwise, -1 for the roots of edge-based trees
+        final int key;
+
+        Entry(int edge, int adjNode, double weightForHeap, double weightOfVisitedPath, SPTEntry parent, int key) {
+            super(edge, adjNode, weightForHeap, weightOfVisitedPath, parent);
+            this.key = key;
+        }
+    }
+
+    private static class Candidate {
+        final double sortBy;
+        final double weight;
+        final SPTEntry fwdEntry;
+        final SPTEntry bwdEntry;
+
+        Candidate(double sortBy, double weight, SPTEntry fwdEntry, SPTEntry bwdEntry) {
+            this.sortBy = sortBy;
+            this.weight = weight;
+            this.fwdEntry = fwdEntry;
+            this.bwdEntry = bwdEntry;
+        }
+    }
+}
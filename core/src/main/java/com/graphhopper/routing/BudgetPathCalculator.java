@@ -0,0 +1,89 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.graphhopper.util.exceptions.MaximumNodesExceededException;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the visited nodes of all searches of a request and fails the request once they exceed its budget. The path
+ * calculators of the legs that are calculated in parallel share the same budget. Every search is limited to the
+ * remaining budget, so it stops as soon as the budget is used up.
+ */
+class BudgetPathCalculator implements PathCalculator {
+    private final PathCalculator delegate;
+    private final AtomicLong visitedNodesSum;
+    private final int maxVisitedNodes;
+    private final int maxVisitedNodesPerSearch;
+
+    /**
+     * @param maxVisitedNodesPerSearch the max_visited_nodes of the request, which applies to every single search
+     */
+    BudgetPathCalculator(PathCalculator delegate, AtomicLong visitedNodesSum, int maxVisitedNodes, int maxVisitedNodesPerSearch) {
+        this.delegate = delegate;
+        this.visitedNodesSum = visitedNodesSum;
+        this.maxVisitedNodes = maxVisitedNodes;
+        this.maxVisitedNodesPerSearch = maxVisitedNodesPerSearch;
+    }
+
+    @Override
+    public List<Path> calcPaths(int from, int to, EdgeRestrictions edgeRestrictions) {
+        // the path calculators fail a search that visits as many nodes as its limit, but the budget may be used up
+        // completely, hence the + 1
+        long remaining = maxVisitedNodes - visitedNodesSum.get();
+        int limit = (int) Math.min(maxVisitedNodesPerSearch, remaining + 1);
+        delegate.setMaxVisitedNodes(limit);
+        List<Path> paths;
+        try {
+            paths = delegate.calcPaths(from, to, edgeRestrictions);
+        } catch (MaximumNodesExceededException ex) {
+            if (limit < maxVisitedNodesPerSearch)
+                throw budgetExceeded();
+            throw ex;
+        }
+        if (visitedNodesSum.addAndGet(delegate.getVisitedNodes()) > maxVisitedNodes)
+            throw budgetExceeded();
+        return paths;
+    }
+
+    private MaximumNodesExceededException budgetExceeded() {
+        return new MaximumNodesExceededException("No path found due to maximum nodes per request exceeded " + maxVisitedNodes, maxVisitedNodes);
+    }
+
+    @Override
+    public String getDebugString() {
+        return delegate.getDebugString();
+    }
+
+    @Override
+    public int getVisitedNodes() {
+        return delegate.getVisitedNodes();
+    }
+
+    @Override
+    public int getVisitedNodesBackward() {
+        return delegate.getVisitedNodesBackward();
+    }
+
+    @Override
+    public void setMaxVisitedNodes(int maxVisitedNodes) {
+        throw new UnsupportedOperationException("The visited nodes are limited by the budget");
+    }
+}
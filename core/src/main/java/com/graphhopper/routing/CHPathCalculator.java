@@ -32,20 +32,39 @@ import static com.graphhopper.util.Parameters.Routing.MAX_VISITED_NODES;
 public class CHPathCalculator implements PathCalculator {
     private final CHRoutingAlgorithmFactory algoFactory;
     private final PMap algoOpts;
+    private PathCalculator fallback;
     private String debug;
     private int visitedNodes;
+    private int visitedNodesBackward;
 
     public CHPathCalculator(CHRoutingAlgorithmFactory algoFactory, PMap algoOpts) {
         this.algoFactory = algoFactory;
         this.algoOpts = algoOpts;
     }
 
+    /**
+     * Sets the path calculator that is used if the CH finds no route. This is needed for a CH that was customized
+     * for other weights than the ones of the preparation, because it can lack shortcuts, see
+     * {@link com.graphhopper.routing.ch.CHCustomizer}.
+     */
+    public CHPathCalculator setFallback(PathCalculator fallback) {
+        this.fallback = fallback;
+        return this;
+    }
+
     @Override
     public List<Path> calcPaths(int from, int to, EdgeRestrictions edgeRestrictions) {
         if (!edgeRestrictions.getUnfavoredEdges().isEmpty())
             throw new IllegalArgumentException("Using unfavored edges is currently not supported for CH");
         EdgeToEdgeRoutingAlgorithm algo = createAlgo();
-        return calcPaths(from, to, edgeRestrictions, algo);
+        List<Path> paths = calcPaths(from, to, edgeRestrictions, algo);
+        if (fallback == null || paths.stream().anyMatch(Path::isFound))
+            return paths;
+        paths = fallback.calcPaths(from, to, edgeRestrictions);
+        visitedNodes += fallback.getVisitedNodes();
+        visitedNodesBackward += fallback.getVisitedNodesBackward();
+        debug += ", fallback" + fallback.getDebugString();
+        return paths;
     }
 
     private EdgeToEdgeRoutingAlgorithm createAlgo() {
@@ -71,6 +90,7 @@ public class CHPathCalculator implements PathCalculator {
         if (algo.getVisitedNodes() >= maxVisitedNodes)
             throw new MaximumNodesExceededException("No path found due to maximum nodes exceeded " + maxVisitedNodes, maxVisitedNodes);
         visitedNodes = algo.getVisitedNodes();
+        visitedNodesBackward = algo instanceof AbstractBidirAlgo ? ((AbstractBidirAlgo) algo).getVisitedNodesBackward() : 0;
         debug += ", " + algo.getName() + "-routing:" + sw.stop().getMillis() + " ms";
         return paths;
     }
@@ -85,4 +105,15 @@ public class CHPathCalculator implements PathCalculator {
         return visitedNodes;
     }
 
+    @Override
+    public int getVisitedNodesBackward() {
+        return visitedNodesBackward;
+    }
+
+    @Override
+    public void setMaxVisitedNodes(int maxVisitedNodes) {
+        algoOpts.putObject(MAX_VISITED_NODES, maxVisitedNodes);
+        if (fallback != null)
+            fallback.setMaxVisitedNodes(maxVisitedNodes);
+    }
 }
\ No newline at end of file
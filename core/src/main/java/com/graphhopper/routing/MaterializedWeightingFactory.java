@@ -0,0 +1,50 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.graphhopper.config.Profile;
+import com.graphhopper.routing.weighting.MaterializedWeighting;
+import com.graphhopper.routing.weighting.MaterializedWeights;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.util.CustomModel;
+import com.graphhopper.util.PMap;
+
+import java.util.Map;
+
+/**
+ * Wraps the weightings of the given factory into a {@link MaterializedWeighting} for all profiles that have
+ * materialized weights, as long as the request does not change the edge weights, i.e. has no custom model.
+ */
+public class MaterializedWeightingFactory implements WeightingFactory {
+    private final WeightingFactory weightingFactory;
+    private final Map<String, MaterializedWeights> materializedWeights;
+
+    public MaterializedWeightingFactory(WeightingFactory weightingFactory, Map<String, MaterializedWeights> materializedWeights) {
+        this.weightingFactory = weightingFactory;
+        this.materializedWeights = materializedWeights;
+    }
+
+    @Override
+    public Weighting createWeighting(Profile profile, PMap hints, boolean disableTurnCosts) {
+        Weighting weighting = weightingFactory.createWeighting(profile, hints, disableTurnCosts);
+        MaterializedWeights weights = materializedWeights.get(profile.getName());
+        if (weights == null || hints.getObject(CustomModel.KEY, null) != null || hints.has("cm_version"))
+            return weighting;
+        return new MaterializedWeighting(weighting, weights);
+    }
+}
@@ -30,4 +30,19 @@ public interface PathCalculator {
 
     int getVisitedNodes();
 
+    /**
+     * @return the part of {@link #getVisitedNodes()} that was visited by the backward search of a bidirectional
+     * algorithm
+     */
+    default int getVisitedNodesBackward() {
+        return 0;
+    }
+
+    /**
+     * Sets the maximum number of nodes the following searches may visit. Implementations that cannot stop a search
+     * early ignore it.
+     */
+    default void setMaxVisitedNodes(int maxVisitedNodes) {
+    }
+
 }
@@ -130,6 +130,7 @@ public class RoundTripRouting {
             }
             result.wayPoints.add(path.graph.getNodeAccess(), endNode);
             result.visitedNodes += pathCalculator.getVisitedNodes();
+            result.visitedNodesBackward += pathCalculator.getVisitedNodesBackward();
             result.paths.add(path);
         }
 
@@ -140,6 +141,7 @@ public class RoundTripRouting {
         public List<Path> paths;
         public PointList wayPoints;
         public long visitedNodes;
+        public long visitedNodesBackward;
 
         Result(int legs) {
             paths = new ArrayList<>(legs);
@@ -0,0 +1,193 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.graphhopper.GHRequest;
+import com.graphhopper.GHResponse;
+import com.graphhopper.ResponsePath;
+import com.graphhopper.storage.index.Snap;
+import com.graphhopper.util.PMap;
+import com.graphhopper.util.shapes.GHPoint3D;
+
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * A bounded cache for the responses of {@link Router#route}. The key is built from the snapped positions of the
+ * request points and a canonical representation of all request parameters that influence the response (profile,
+ * algorithm, hints, custom model, headings, curbsides, path details and locale). This way requests for slightly
+ * different coordinates that snap to the same positions share the same entry. The least recently used entry is evicted
+ * once the cache is full and entries expire after the configured time to live.
+ * <p>
+ * The cache must be dropped when the graph changes, which is why it is owned by the GraphHopper instance. Every hit
+ * returns a new GHResponse, but the contained {@link ResponsePath}s are shared and must not be modified.
+ */
+public class RouteCache {
+    private static final double PRECISION = 1e6;
+    private final int maxSize;
+    private final long ttlMillis;
+    private final LongSupplier clock;
+    private final Map<String, Entry> cache;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public RouteCache(int maxSize, long ttlMillis) {
+        this(maxSize, ttlMillis, System::currentTimeMillis);
+    }
+
+    RouteCache(int maxSize, long ttlMillis, LongSupplier clock) {
+        if (maxSize <= 0)
+            throw new IllegalArgumentException("The size of the route cache must be positive, but was: " + maxSize);
+        if (ttlMillis <= 0)
+            throw new IllegalArgumentException("The time to live of the route cache must be positive, but was: " + ttlMillis);
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlMillis;
+        this.clock = clock;
+        // use accessOrder==true to remove the least recently accessed entry, not the oldest inserted
+        this.cache = Collections.synchronizedMap(new LinkedHashMap<>(Math.min(maxSize, 1 << 16), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > RouteCache.this.maxSize) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        });
+    }
+
+    /**
+     * Creates the key for the given request. The snaps must be the ones resolved for the request points, before they
+     * were used to create the query graph.
+     */
+    public static String createKey(GHRequest request, List<Snap> snaps) {
+        StringBuilder sb = new StringBuilder(128);
+        sb.append(request.getProfile()).append('|').append(request.getAlgorithm().toLowerCase(Locale.ROOT));
+        for (Snap snap : snaps) {
+            GHPoint3D p = snap.getSnappedPoint();
+            sb.append('|').append(snap.getClosestEdge().getEdgeKey()).append(',').append(snap.getWayIndex())
+                    .append(',').append(snap.getSnappedPosition())
+                    .append(',').append(Math.round(p.lat * PRECISION)).append(',').append(Math.round(p.lon * PRECISION));
+        }
+        // the order of the hints is not relevant
+        sb.append('|').append(new TreeMap<>(request.getHints().toMap()))
+                .append('|').append(request.getCustomModel())
+                .append('|').append(request.getHeadings())
+                .append('|').append(request.getCurbsides())
+                .append('|').append(request.getPathDetails())
+                .append('|').append(request.getLocale());
+        return sb.toString();
+    }
+
+    /**
+     * @return a copy of the cached response or null if there is no valid entry for the given key
+     */
+    public GHResponse get(String key) {
+        Entry entry = cache.get(key);
+        if (entry != null && clock.getAsLong() > entry.expires) {
+            cache.remove(key, entry);
+            evictions.increment();
+            entry = null;
+        }
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return copy(entry.response);
+    }
+
+    /**
+     * Stores the given response, responses with errors are ignored.
+     */
+    public void put(String key, GHResponse response) {
+        put(key, response, Long.MAX_VALUE);
+    }
+
+    /**
+     * Same as above, but the entry expires at the given time if that is before the end of the time to live, e.g. when
+     * the live traffic that the response depends on expires.
+     *
+     * @param validUntilMillis the time in milliseconds since the epoch from which on the response is outdated
+     */
+    public void put(String key, GHResponse response, long validUntilMillis) {
+        if (response.hasErrors())
+            return;
+        long now = clock.getAsLong();
+        if (validUntilMillis <= now)
+            return;
+        cache.put(key, new Entry(copy(response), Math.min(now + ttlMillis, validUntilMillis - 1)));
+    }
+
+    private static GHResponse copy(GHResponse response) {
+        GHResponse copy = new GHResponse();
+        for (ResponsePath path : response.getAll())
+            copy.add(path);
+        copy.setHints(new PMap(response.getHints()));
+        return copy;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    public int getSize() {
+        return cache.size();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return the fraction of lookups that were answered from the cache or 0 if there was no lookup yet
+     */
+    public double getHitRate() {
+        long h = hits.sum(), total = h + misses.sum();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    private static class Entry {
+        final GHResponse response;
+        // the last time in milliseconds at which the entry is valid
+        final long expires;
+
+        Entry(GHResponse response, long expires) {
+            this.response = response;
+            this.expires = expires;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.routing;
+
+/**
+ * Is notified by the {@link Router} about the time spent in the different phases of a route request, e.g. to record
+ * them as metrics. The methods are called from the request threads, so implementations need to be thread-safe.
+ */
+public interface RouteListener {
+
+    enum Phase {
+        /**
+         * finding the closest edges of the request points
+         */
+        SNAP,
+        /**
+         * creating the QueryGraph with the virtual nodes and edges of the snapped points
+         */
+        QUERY_GRAPH,
+        /**
+         * the shortest path search without the path extraction
+         */
+        SEARCH,
+        /**
+         * extracting the paths from the shortest path trees
+         */
+        PATH_EXTRACTION,
+        /**
+         * merging the legs into the response path and calculating the points, without instructions and details
+         */
+        PATH_MERGE,
+        INSTRUCTIONS,
+        PATH_DETAILS
+    }
+
+    /**
+     * @param profile the name of the profile of the request
+     * @param solver  the solver that calculated the route: ch, core, lm or flex
+     */
+    void onPhase(String profile, String solver, Phase phase, long nanos);
+
+    void onVisitedNodes(String profile, String solver, long visitedNodes);
+}
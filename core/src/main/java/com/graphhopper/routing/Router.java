@@ -22,19 +22,26 @@ import com.carrotsearch.hppc.cursors.IntCursor;
 import com.graphhopper.GHRequest;
 import com.graphhopper.GHResponse;
 import com.graphhopper.ResponsePath;
+import com.graphhopper.RouteStats;
 import com.graphhopper.config.Profile;
 import com.graphhopper.routing.ch.CHRoutingAlgorithmFactory;
 import com.graphhopper.routing.ev.BooleanEncodedValue;
 import com.graphhopper.routing.ev.EncodedValueLookup;
 import com.graphhopper.routing.ev.Subnetwork;
+import com.graphhopper.routing.lm.LMApproximator;
 import com.graphhopper.routing.lm.LMRoutingAlgorithmFactory;
 import com.graphhopper.routing.lm.LandmarkStorage;
 import com.graphhopper.routing.querygraph.QueryGraph;
 import com.graphhopper.routing.util.*;
+import com.graphhopper.routing.weighting.SpeedProfiles;
+import com.graphhopper.routing.weighting.TrafficOverlay;
+import com.graphhopper.routing.weighting.TrafficWeighting;
+import com.graphhopper.routing.weighting.WeightApproximator;
 import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.routing.weighting.custom.CustomWeighting;
 import com.graphhopper.routing.weighting.custom.FindMinMax;
 import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.CoreRoutingCHGraph;
 import com.graphhopper.storage.Graph;
 import com.graphhopper.storage.RoutingCHGraph;
 import com.graphhopper.storage.index.LocationIndex;
@@ -47,7 +54,11 @@ import com.graphhopper.util.exceptions.PointOutOfBoundsException;
 import com.graphhopper.util.shapes.BBox;
 import com.graphhopper.util.shapes.GHPoint;
 
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static com.graphhopper.util.DistanceCalcEarth.DIST_EARTH;
 import static com.graphhopper.util.Parameters.Algorithms.ALT_ROUTE;
@@ -68,6 +79,13 @@ public class Router {
     protected final Map<String, LandmarkStorage> landmarks;
     protected final boolean chEnabled;
     protected final boolean lmEnabled;
+    protected SnapCache snapCache;
+    protected RouteCache routeCache;
+    protected SpeedProfiles speedProfiles;
+    protected TrafficOverlay trafficOverlay;
+    protected Executor legExecutor;
+    protected Set<String> customizedCHProfiles = Collections.emptySet();
+    protected RouteListener routeListener;
 
     public Router(BaseGraph graph, EncodingManager encodingManager, LocationIndex locationIndex,
                   Map<String, Profile> profilesByName, PathDetailsBuilderFactory pathDetailsBuilderFactory,
@@ -94,6 +112,67 @@ public class Router {
         }
     }
 
+    /**
+     * Sets a cache that is shared between routers for the same graph and used to skip the location index lookup
+     * for points that were already snapped before. Pass null to disable it.
+     */
+    public Router setSnapCache(SnapCache snapCache) {
+        this.snapCache = snapCache;
+        return this;
+    }
+
+    /**
+     * Sets a cache for the responses of via and alternative route requests that is shared between routers for the same
+     * graph. Pass null to disable it.
+     */
+    public Router setRouteCache(RouteCache routeCache) {
+        this.routeCache = routeCache;
+        return this;
+    }
+
+    /**
+     * Sets the speed profiles that are used for requests with a departure time. Pass null if there are none.
+     */
+    public Router setSpeedProfiles(SpeedProfiles speedProfiles) {
+        this.speedProfiles = speedProfiles;
+        return this;
+    }
+
+    /**
+     * Sets the live traffic speeds that are considered by flexible and LM requests. Pass null if there are none.
+     */
+    public Router setTrafficOverlay(TrafficOverlay trafficOverlay) {
+        this.trafficOverlay = trafficOverlay;
+        return this;
+    }
+
+    /**
+     * Sets the profiles whose CH was customized for other weights than the ones of the preparation, see
+     * {@link com.graphhopper.routing.ch.CHCustomizer}. If such a CH finds no route a flexible search is used.
+     */
+    public Router setCustomizedCHProfiles(Set<String> customizedCHProfiles) {
+        this.customizedCHProfiles = customizedCHProfiles;
+        return this;
+    }
+
+    /**
+     * Sets the executor that calculates the legs of via routes in parallel, see {@link RouterConfig#setLegThreads}.
+     * Pass null to calculate them one after the other.
+     */
+    public Router setLegExecutor(Executor legExecutor) {
+        this.legExecutor = legExecutor;
+        return this;
+    }
+
+    /**
+     * Sets the listener that is notified about the time spent in the different phases of every request. Pass null if
+     * there is none.
+     */
+    public Router setRouteListener(RouteListener routeListener) {
+        this.routeListener = routeListener;
+        return this;
+    }
+
     public GHResponse route(GHRequest request) {
         try {
             checkNoLegacyParameters(request);
@@ -105,19 +184,24 @@ public class Router {
             checkNoBlockArea(request);
             checkCustomModel(request);
 
+            long start = System.nanoTime();
             Solver solver = createSolver(request);
             solver.checkRequest();
             solver.init();
 
+            GHResponse ghRsp;
             if (ROUND_TRIP.equalsIgnoreCase(request.getAlgorithm())) {
                 if (!(solver instanceof FlexSolver))
                     throw new IllegalArgumentException("algorithm=round_trip only works with a flexible algorithm");
-                return routeRoundTrip(request, (FlexSolver) solver);
+                ghRsp = routeRoundTrip(request, (FlexSolver) solver);
             } else if (ALT_ROUTE.equalsIgnoreCase(request.getAlgorithm())) {
-                return routeAlt(request, solver);
+                ghRsp = routeAlt(request, solver);
             } else {
-                return routeVia(request, solver);
+                ghRsp = routeVia(request, solver);
             }
+            if (ghRsp.getStats() != null)
+                ghRsp.getStats().setNanos(System.nanoTime() - start);
+            return ghRsp;
         } catch (MultiplePointsNotFoundException ex) {
             GHResponse ghRsp = new GHResponse();
             for (IntCursor p : ex.getPointsNotFound()) {
@@ -131,6 +215,38 @@ public class Router {
         }
     }
 
+    /**
+     * The snap filter depends on the weighting, so snaps can only be shared between requests that use the unmodified
+     * weighting of their profile and the same solver, see {@link #getSnapFilterKey}. With live traffic the weighting
+     * changes whenever an entry of the overlay expires, so these requests do not use the cache.
+     */
+    protected SnapCache getSnapCache(GHRequest request, Solver solver) {
+        return request.getCustomModel() == null && !usesTraffic(solver) ? snapCache : null;
+    }
+
+    /**
+     * The CH solver uses the weighting of its (possibly customized) CH graph and the other solvers the one of the
+     * profile, so we include the solver.
+     */
+    protected String getSnapFilterKey(GHRequest request, Solver solver) {
+        return request.getProfile() + "|" + solver.getName();
+    }
+
+    private boolean usesTraffic(Solver solver) {
+        return solver.weighting instanceof TrafficWeighting;
+    }
+
+    /**
+     * Caches the response of a route request. With live traffic the route can change once an entry of the overlay
+     * expires, so the cached response must not outlive it.
+     */
+    private void putRouteCache(String cacheKey, GHResponse ghRsp, Solver solver) {
+        if (usesTraffic(solver))
+            routeCache.put(cacheKey, ghRsp, trafficOverlay.getNextExpiryMillis(System.currentTimeMillis()));
+        else
+            routeCache.put(cacheKey, ghRsp);
+    }
+
     private void checkNoLegacyParameters(GHRequest request) {
         if (request.getHints().has("vehicle"))
             throw new IllegalArgumentException("GHRequest may no longer contain a vehicle, use the profile parameter instead, see docs/core/profiles.md");
@@ -190,6 +306,8 @@ public class Router {
         final boolean disableCH = getDisableCH(request.getHints());
         final boolean disableLM = getDisableLM(request.getHints());
         if (chEnabled && !disableCH) {
+            if (request.getCustomModel() != null && chGraphs.get(request.getProfile()) instanceof CoreRoutingCHGraph)
+                return new CoreSolver(request, profilesByName, routerConfig, encodingManager, chGraphs, weightingFactory, graph, landmarks);
             return createCHSolver(request, profilesByName, routerConfig, encodingManager, chGraphs);
         } else if (lmEnabled && !disableLM) {
             return createLMSolver(request, profilesByName, routerConfig, encodingManager, weightingFactory, graph, locationIndex, landmarks);
@@ -200,40 +318,53 @@ public class Router {
 
     protected Solver createCHSolver(GHRequest request, Map<String, Profile> profilesByName, RouterConfig routerConfig,
                                     EncodingManager encodingManager, Map<String, RoutingCHGraph> chGraphs) {
-        return new CHSolver(request, profilesByName, routerConfig, encodingManager, chGraphs);
+        return new CHSolver(request, profilesByName, routerConfig, encodingManager, chGraphs)
+                .setFallbackToFlexible(customizedCHProfiles.contains(request.getProfile()));
     }
 
     protected Solver createLMSolver(GHRequest request, Map<String, Profile> profilesByName, RouterConfig routerConfig,
                                     EncodingManager encodingManager, WeightingFactory weightingFactory, BaseGraph baseGraph,
                                     LocationIndex locationIndex, Map<String, LandmarkStorage> landmarks) {
-        return new LMSolver(request, profilesByName, routerConfig, encodingManager, weightingFactory, baseGraph, locationIndex, landmarks);
+        return new LMSolver(request, profilesByName, routerConfig, encodingManager, weightingFactory, baseGraph, locationIndex, landmarks)
+                .setSpeedProfiles(speedProfiles).setTrafficOverlay(trafficOverlay);
     }
 
     protected Solver createFlexSolver(GHRequest request, Map<String, Profile> profilesByName, RouterConfig routerConfig,
                                       EncodingManager encodingManager, WeightingFactory weightingFactory, BaseGraph baseGraph,
                                       LocationIndex locationIndex) {
-        return new FlexSolver(request, profilesByName, routerConfig, encodingManager, weightingFactory, baseGraph, locationIndex);
+        return new FlexSolver(request, profilesByName, routerConfig, encodingManager, weightingFactory, baseGraph, locationIndex)
+                .setSpeedProfiles(speedProfiles).setTrafficOverlay(trafficOverlay);
     }
 
     protected GHResponse routeRoundTrip(GHRequest request, FlexSolver solver) {
         GHResponse ghRsp = new GHResponse();
+        RouteStats stats = createStats(request, solver);
         StopWatch sw = new StopWatch().start();
         double startHeading = request.getHeadings().isEmpty() ? Double.NaN : request.getHeadings().get(0);
         RoundTripRouting.Params params = new RoundTripRouting.Params(request.getHints(), startHeading, routerConfig.getMaxRoundTripRetries());
         List<Snap> snaps = RoundTripRouting.lookup(request.getPoints(), solver.createSnapFilter(), locationIndex, params);
         ghRsp.addDebugInfo("idLookup:" + sw.stop().getSeconds() + "s");
+        onPhase(solver, stats, RouteListener.Phase.SNAP, sw.getNanos());
 
+        long start = System.nanoTime();
         QueryGraph queryGraph = QueryGraph.create(graph, snaps);
+        onQueryGraph(solver, stats, queryGraph, System.nanoTime() - start);
         FlexiblePathCalculator pathCalculator = solver.createPathCalculator(queryGraph);
 
+        start = System.nanoTime();
         RoundTripRouting.Result result = RoundTripRouting.calcPaths(snaps, pathCalculator);
+        onSearch(solver, stats, result.paths, result.visitedNodes, result.visitedNodesBackward, System.nanoTime() - start);
         // we merge the different legs of the roundtrip into one response path
         // note that the waypoints are not just the snapped points of the snaps, as usual, because we do some kind of tweak
         // to avoid 'unnecessary tails' in the roundtrip algo
-        ResponsePath responsePath = concatenatePaths(request, solver.weighting, queryGraph, result.paths, result.wayPoints);
+        start = System.nanoTime();
+        PathMerger pathMerger = createPathMerger(request, solver.weighting, queryGraph);
+        ResponsePath responsePath = pathMerger.doWork(result.wayPoints, result.paths, encodingManager, translationMap.getWithFallBack(request.getLocale()));
+        onPathMerge(solver, stats, pathMerger, System.nanoTime() - start);
         ghRsp.add(responsePath);
         ghRsp.getHints().putObject("visited_nodes.sum", result.visitedNodes);
         ghRsp.getHints().putObject("visited_nodes.average", (float) result.visitedNodes / (snaps.size() - 1));
+        ghRsp.setStats(stats);
         return ghRsp;
     }
 
@@ -244,10 +375,21 @@ public class Router {
         StopWatch sw = new StopWatch().start();
         DirectedEdgeFilter directedEdgeFilter = solver.createDirectedEdgeFilter();
         List<Snap> snaps = ViaRouting.lookup(encodingManager, request.getPoints(), solver.createSnapFilter(), locationIndex,
-                request.getSnapPreventions(), request.getPointHints(), directedEdgeFilter, request.getHeadings());
+                request.getSnapPreventions(), request.getPointHints(), directedEdgeFilter, request.getHeadings(),
+                getSnapCache(request, solver), getSnapFilterKey(request, solver));
+        String cacheKey = routeCache == null ? null : RouteCache.createKey(request, snaps);
+        if (cacheKey != null) {
+            GHResponse cached = routeCache.get(cacheKey);
+            if (cached != null)
+                return cached;
+        }
         ghRsp.addDebugInfo("idLookup:" + sw.stop().getSeconds() + "s");
+        RouteStats stats = createStats(request, solver);
+        onPhase(solver, stats, RouteListener.Phase.SNAP, sw.getNanos());
+        long start = System.nanoTime();
         QueryGraph queryGraph = QueryGraph.create(graph, snaps);
-        PathCalculator pathCalculator = solver.createPathCalculator(queryGraph);
+        onQueryGraph(solver, stats, queryGraph, System.nanoTime() - start);
+        PathCalculator pathCalculator = withBudget(solver.createPathCalculator(queryGraph), new AtomicLong(), solver);
         boolean passThrough = getPassThrough(request.getHints());
         String curbsideStrictness = getCurbsideStrictness(request.getHints());
         if (passThrough)
@@ -255,20 +397,27 @@ public class Router {
         if (!request.getCurbsides().isEmpty())
             throw new IllegalArgumentException("Alternative paths do not support the " + CURBSIDE + " parameter yet");
 
+        start = System.nanoTime();
         ViaRouting.Result result = ViaRouting.calcPaths(request.getPoints(), queryGraph, snaps, directedEdgeFilter,
                 pathCalculator, request.getCurbsides(), curbsideStrictness, request.getHeadings(), passThrough);
+        onSearch(solver, stats, result.paths, result.visitedNodes, result.visitedNodesBackward, System.nanoTime() - start);
         if (result.paths.isEmpty())
             throw new RuntimeException("Empty paths for alternative route calculation not expected");
 
         // each path represents a different alternative and we do the path merging for each of them
+        start = System.nanoTime();
         PathMerger pathMerger = createPathMerger(request, solver.weighting, queryGraph);
         for (Path path : result.paths) {
             PointList waypoints = getWaypoints(snaps);
             ResponsePath responsePath = pathMerger.doWork(waypoints, Collections.singletonList(path), encodingManager, translationMap.getWithFallBack(request.getLocale()));
             ghRsp.add(responsePath);
         }
+        onPathMerge(solver, stats, pathMerger, System.nanoTime() - start);
         ghRsp.getHints().putObject("visited_nodes.sum", result.visitedNodes);
         ghRsp.getHints().putObject("visited_nodes.average", (float) result.visitedNodes / (snaps.size() - 1));
+        if (cacheKey != null)
+            putRouteCache(cacheKey, ghRsp, solver);
+        ghRsp.setStats(stats);
         return ghRsp;
     }
 
@@ -277,29 +426,68 @@ public class Router {
         StopWatch sw = new StopWatch().start();
         DirectedEdgeFilter directedEdgeFilter = solver.createDirectedEdgeFilter();
         List<Snap> snaps = ViaRouting.lookup(encodingManager, request.getPoints(), solver.createSnapFilter(), locationIndex,
-                request.getSnapPreventions(), request.getPointHints(), directedEdgeFilter, request.getHeadings());
+                request.getSnapPreventions(), request.getPointHints(), directedEdgeFilter, request.getHeadings(),
+                getSnapCache(request, solver), getSnapFilterKey(request, solver));
+        String cacheKey = routeCache == null ? null : RouteCache.createKey(request, snaps);
+        if (cacheKey != null) {
+            GHResponse cached = routeCache.get(cacheKey);
+            if (cached != null)
+                return cached;
+        }
         ghRsp.addDebugInfo("idLookup:" + sw.stop().getSeconds() + "s");
+        RouteStats stats = createStats(request, solver);
+        onPhase(solver, stats, RouteListener.Phase.SNAP, sw.getNanos());
         // (base) query graph used to resolve headings, curbsides etc. this is not necessarily the same thing as
         // the (possibly implementation specific) query graph used by PathCalculator
+        long start = System.nanoTime();
         QueryGraph queryGraph = QueryGraph.create(graph, snaps);
-        PathCalculator pathCalculator = solver.createPathCalculator(queryGraph);
+        onQueryGraph(solver, stats, queryGraph, System.nanoTime() - start);
         boolean passThrough = getPassThrough(request.getHints());
         String curbsideStrictness = getCurbsideStrictness(request.getHints());
-        ViaRouting.Result result = ViaRouting.calcPaths(request.getPoints(), queryGraph, snaps, directedEdgeFilter,
-                pathCalculator, request.getCurbsides(), curbsideStrictness, request.getHeadings(), passThrough);
+        ViaRouting.Result result;
+        AtomicLong visitedNodesSum = new AtomicLong();
+        start = System.nanoTime();
+        if (request.getHints().has(DEPARTURE_TIME)) {
+            // the solvers that do not support a departure time reject it in checkRequest. every leg starts at the
+            // arrival time of the previous one, so the legs are calculated one after the other
+            PathCalculator pathCalculator = withBudget(((FlexSolver) solver).createTimeDependentPathCalculator(queryGraph), visitedNodesSum, solver);
+            result = ViaRouting.calcPaths(request.getPoints(), queryGraph, snaps, directedEdgeFilter,
+                    pathCalculator, request.getCurbsides(), curbsideStrictness, request.getHeadings(), passThrough);
+        } else {
+            result = ViaRouting.calcPaths(request.getPoints(), queryGraph, snaps, directedEdgeFilter,
+                    () -> withBudget(solver.createPathCalculator(queryGraph), visitedNodesSum, solver), request.getCurbsides(), curbsideStrictness,
+                    request.getHeadings(), passThrough, legExecutor, routerConfig.getMaxParallelLegs());
+        }
+        onSearch(solver, stats, result.paths, result.visitedNodes, result.visitedNodesBackward, System.nanoTime() - start);
 
         if (request.getPoints().size() != result.paths.size() + 1)
             throw new RuntimeException("There should be exactly one more point than paths. points:" + request.getPoints().size() + ", paths:" + result.paths.size());
 
         // here each path represents one leg of the via-route and we merge them all together into one response path
-        ResponsePath responsePath = concatenatePaths(request, solver.weighting, queryGraph, result.paths, getWaypoints(snaps));
+        start = System.nanoTime();
+        PathMerger pathMerger = createPathMerger(request, solver.weighting, queryGraph);
+        ResponsePath responsePath = pathMerger.doWork(getWaypoints(snaps), result.paths, encodingManager, translationMap.getWithFallBack(request.getLocale()));
+        onPathMerge(solver, stats, pathMerger, System.nanoTime() - start);
         responsePath.addDebugInfo(result.debug);
         ghRsp.add(responsePath);
         ghRsp.getHints().putObject("visited_nodes.sum", result.visitedNodes);
         ghRsp.getHints().putObject("visited_nodes.average", (float) result.visitedNodes / (snaps.size() - 1));
+        if (cacheKey != null)
+            putRouteCache(cacheKey, ghRsp, solver);
+        ghRsp.setStats(stats);
         return ghRsp;
     }
 
+    /**
+     * @param visitedNodesSum the visited nodes of all searches of the request, shared by its path calculators
+     */
+    private PathCalculator withBudget(PathCalculator pathCalculator, AtomicLong visitedNodesSum, Solver solver) {
+        if (routerConfig.getMaxVisitedNodesPerRequest() == Integer.MAX_VALUE)
+            return pathCalculator;
+        return new BudgetPathCalculator(pathCalculator, visitedNodesSum, routerConfig.getMaxVisitedNodesPerRequest(),
+                solver.getMaxVisitedNodes(solver.request.getHints()));
+    }
+
     private PathMerger createPathMerger(GHRequest request, Weighting weighting, Graph graph) {
         boolean enableInstructions = request.getHints().getBool(Parameters.Routing.INSTRUCTIONS, routerConfig.isInstructionsEnabled());
         boolean calcPoints = request.getHints().getBool(Parameters.Routing.CALC_POINTS, routerConfig.isCalcPoints());
@@ -321,9 +509,39 @@ public class Router {
         return pathMerger;
     }
 
-    private ResponsePath concatenatePaths(GHRequest request, Weighting weighting, QueryGraph queryGraph, List<Path> paths, PointList waypoints) {
-        PathMerger pathMerger = createPathMerger(request, weighting, queryGraph);
-        return pathMerger.doWork(waypoints, paths, encodingManager, translationMap.getWithFallBack(request.getLocale()));
+    private RouteStats createStats(GHRequest request, Solver solver) {
+        return new RouteStats(request, solver.profile.getName(), solver.getName());
+    }
+
+    private void onPhase(Solver solver, RouteStats stats, RouteListener.Phase phase, long nanos) {
+        stats.addPhaseNanos(phase.name().toLowerCase(Locale.ROOT), nanos);
+        if (routeListener != null)
+            routeListener.onPhase(solver.profile.getName(), solver.getName(), phase, nanos);
+    }
+
+    private void onQueryGraph(Solver solver, RouteStats stats, QueryGraph queryGraph, long nanos) {
+        stats.setVirtualNodes(queryGraph.getNodes() - graph.getNodes());
+        onPhase(solver, stats, RouteListener.Phase.QUERY_GRAPH, nanos);
+    }
+
+    /**
+     * The paths are extracted during the search, so we report the extraction separately and subtract it.
+     */
+    private void onSearch(Solver solver, RouteStats stats, List<Path> paths, long visitedNodes, long visitedNodesBackward, long nanos) {
+        long extractionNanos = 0;
+        for (Path path : paths)
+            extractionNanos += path.getExtractionNanos();
+        onPhase(solver, stats, RouteListener.Phase.SEARCH, Math.max(0, nanos - extractionNanos));
+        onPhase(solver, stats, RouteListener.Phase.PATH_EXTRACTION, extractionNanos);
+        stats.setVisitedNodes(visitedNodes - visitedNodesBackward, visitedNodesBackward);
+        if (routeListener != null)
+            routeListener.onVisitedNodes(solver.profile.getName(), solver.getName(), visitedNodes);
+    }
+
+    private void onPathMerge(Solver solver, RouteStats stats, PathMerger pathMerger, long nanos) {
+        onPhase(solver, stats, RouteListener.Phase.PATH_MERGE, Math.max(0, nanos - pathMerger.getInstructionsNanos() - pathMerger.getPathDetailsNanos()));
+        onPhase(solver, stats, RouteListener.Phase.INSTRUCTIONS, pathMerger.getInstructionsNanos());
+        onPhase(solver, stats, RouteListener.Phase.PATH_DETAILS, pathMerger.getPathDetailsNanos());
     }
 
     private PointList getWaypoints(List<Snap> snaps) {
@@ -342,6 +560,21 @@ public class Router {
         return hints.getBool(Parameters.CH.DISABLE, false);
     }
 
+    static long getDepartureTime(PMap hints) {
+        String departureTime = String.valueOf(hints.getObject(DEPARTURE_TIME, ""));
+        try {
+            return Long.parseLong(departureTime);
+        } catch (NumberFormatException ex) {
+            // no milliseconds
+        }
+        try {
+            return OffsetDateTime.parse(departureTime).toInstant().toEpochMilli();
+        } catch (DateTimeParseException ex) {
+            throw new IllegalArgumentException("Cannot parse " + DEPARTURE_TIME + "=" + departureTime
+                    + ", use an ISO-8601 date-time with offset like 2024-01-15T08:00:00+01:00 or milliseconds since the epoch");
+        }
+    }
+
     private static boolean getPassThrough(PMap hints) {
         return hints.getBool(PASS_THROUGH, false);
     }
@@ -412,6 +645,13 @@ public class Router {
 
         protected abstract Weighting createWeighting();
 
+        /**
+         * @return the name of this solver for metrics, e.g. ch or flex
+         */
+        protected String getName() {
+            return getClass().getSimpleName();
+        }
+
         protected EdgeFilter createSnapFilter() {
             return new DefaultSnapFilter(weighting, lookup.getBooleanEncodedValue(Subnetwork.key(profile.getName())));
         }
@@ -446,12 +686,23 @@ public class Router {
 
     private static class CHSolver extends Solver {
         private final Map<String, RoutingCHGraph> chGraphs;
+        private boolean fallbackToFlexible;
 
         CHSolver(GHRequest request, Map<String, Profile> profilesByName, RouterConfig routerConfig, EncodedValueLookup lookup, Map<String, RoutingCHGraph> chGraphs) {
             super(request, profilesByName, routerConfig, lookup);
             this.chGraphs = chGraphs;
         }
 
+        @Override
+        protected String getName() {
+            return "ch";
+        }
+
+        CHSolver setFallbackToFlexible(boolean fallbackToFlexible) {
+            this.fallbackToFlexible = fallbackToFlexible;
+            return this;
+        }
+
         @Override
         protected void checkRequest() {
             super.checkRequest();
@@ -461,11 +712,18 @@ public class Router {
             if (getPassThrough(request.getHints()))
                 throw new IllegalArgumentException("The '" + Parameters.Routing.PASS_THROUGH + "' parameter is currently not supported for speed mode, you need to disable speed mode with `ch.disable=true`. See issue #1765");
 
-            if (request.getCustomModel() != null)
-                throw new IllegalArgumentException("The 'custom_model' parameter is currently not supported for speed mode, you need to disable speed mode with `ch.disable=true`.");
+            checkCustomModel();
 
             if (ROUND_TRIP.equalsIgnoreCase(request.getAlgorithm()))
                 throw new IllegalArgumentException("algorithm=round_trip cannot be used with CH");
+
+            if (request.getHints().has(DEPARTURE_TIME))
+                throw new IllegalArgumentException("The '" + DEPARTURE_TIME + "' parameter is currently not supported for speed mode, you need to disable speed mode with `ch.disable=true`.");
+        }
+
+        protected void checkCustomModel() {
+            if (request.getCustomModel() != null)
+                throw new IllegalArgumentException("The 'custom_model' parameter is currently not supported for speed mode, you need to disable speed mode with `ch.disable=true`.");
         }
 
         @Override
@@ -481,14 +739,29 @@ public class Router {
 
         @Override
         protected PathCalculator createPathCalculator(QueryGraph queryGraph) {
+            RoutingCHGraph chGraph = getRoutingCHGraph(profile.getName());
+            CHPathCalculator pathCalculator = new CHPathCalculator(new CHRoutingAlgorithmFactory(chGraph, queryGraph), getAlgoOpts());
+            if (fallbackToFlexible) {
+                AlgorithmOptions algoOpts = new AlgorithmOptions().
+                        setAlgorithm(request.getAlgorithm()).
+                        setTraversalMode(chGraph.isEdgeBased() ? TraversalMode.EDGE_BASED : TraversalMode.NODE_BASED).
+                        setMaxVisitedNodes(getMaxVisitedNodes(request.getHints())).
+                        setTimeoutMillis(getTimeoutMillis(request.getHints())).
+                        setHints(request.getHints());
+                pathCalculator.setFallback(new FlexiblePathCalculator(queryGraph, new RoutingAlgorithmFactorySimple(), chGraph.getWeighting(), algoOpts));
+            }
+            return pathCalculator;
+        }
+
+        protected PMap getAlgoOpts() {
             PMap opts = new PMap(request.getHints());
             opts.putObject(ALGORITHM, request.getAlgorithm());
             opts.putObject(MAX_VISITED_NODES, getMaxVisitedNodes(request.getHints()));
             opts.putObject(TIMEOUT_MS, getTimeoutMillis(request.getHints()));
-            return new CHPathCalculator(new CHRoutingAlgorithmFactory(getRoutingCHGraph(profile.getName()), queryGraph), opts);
+            return opts;
         }
 
-        private RoutingCHGraph getRoutingCHGraph(String profileName) {
+        protected RoutingCHGraph getRoutingCHGraph(String profileName) {
             RoutingCHGraph chGraph = chGraphs.get(profileName);
             if (chGraph == null)
                 throw new IllegalArgumentException("Cannot find CH preparation for the requested profile: '" + profileName + "'" +
@@ -498,11 +771,74 @@ public class Router {
         }
     }
 
+    /**
+     * Uses a CH graph with a core for requests with a custom model. The custom model may only change the weights of
+     * the core edges, see {@link com.graphhopper.routing.ch.CHCore}, and the A* search through the core is guided by the landmarks of the profile
+     * if there are any.
+     */
+    private static class CoreSolver extends CHSolver {
+        private final WeightingFactory weightingFactory;
+        private final BaseGraph baseGraph;
+        private final Map<String, LandmarkStorage> landmarks;
+        private final RouterConfig routerConfig;
+
+        CoreSolver(GHRequest request, Map<String, Profile> profilesByName, RouterConfig routerConfig, EncodedValueLookup lookup,
+                   Map<String, RoutingCHGraph> chGraphs, WeightingFactory weightingFactory, BaseGraph baseGraph,
+                   Map<String, LandmarkStorage> landmarks) {
+            super(request, profilesByName, routerConfig, lookup, chGraphs);
+            this.weightingFactory = weightingFactory;
+            this.baseGraph = baseGraph;
+            this.landmarks = landmarks;
+            this.routerConfig = routerConfig;
+        }
+
+        @Override
+        protected String getName() {
+            return "core";
+        }
+
+        @Override
+        protected void checkCustomModel() {
+            // the custom model is checked against the core when we create the weighting
+        }
+
+        @Override
+        protected Weighting createWeighting() {
+            getCoreGraph().getCore().checkQueryModel(request.getCustomModel(), lookup, baseGraph);
+            if (landmarks.containsKey(profile.getName()))
+                FindMinMax.checkLMConstraints(profile.getCustomModel(), request.getCustomModel(), lookup);
+            // like for CH the request hints are ignored, only the custom model may change the weighting
+            PMap hints = new PMap().putObject(CustomModel.KEY, request.getCustomModel());
+            return weightingFactory.createWeighting(profile, hints, false);
+        }
+
+        @Override
+        protected PathCalculator createPathCalculator(QueryGraph queryGraph) {
+            PMap opts = getAlgoOpts();
+            if (Helper.isEmpty(request.getAlgorithm()))
+                opts.putObject(ALGORITHM, Parameters.Algorithms.ASTAR_BI);
+            CHRoutingAlgorithmFactory algoFactory = new CHRoutingAlgorithmFactory(getCoreGraph().withWeighting(weighting), queryGraph);
+            LandmarkStorage landmarkStorage = landmarks.get(profile.getName());
+            if (landmarkStorage != null) {
+                int activeLM = Math.max(1, request.getHints().getInt(Parameters.Landmark.ACTIVE_COUNT, routerConfig.getActiveLandmarkCount()));
+                Weighting queryGraphWeighting = queryGraph.wrapWeighting(weighting);
+                algoFactory.setApproximation(() -> LMApproximator.forLandmarks(queryGraph, queryGraphWeighting, landmarkStorage, activeLM));
+            }
+            return new CHPathCalculator(algoFactory, opts);
+        }
+
+        private CoreRoutingCHGraph getCoreGraph() {
+            return (CoreRoutingCHGraph) getRoutingCHGraph(profile.getName());
+        }
+    }
+
     public static class FlexSolver extends Solver {
         protected final RouterConfig routerConfig;
         private final WeightingFactory weightingFactory;
         private final BaseGraph baseGraph;
         private final LocationIndex locationIndex;
+        protected SpeedProfiles speedProfiles;
+        protected TrafficOverlay trafficOverlay;
 
         protected FlexSolver(GHRequest request, Map<String, Profile> profilesByName, RouterConfig routerConfig,
                              EncodedValueLookup lookup, WeightingFactory weightingFactory, BaseGraph graph, LocationIndex locationIndex) {
@@ -513,17 +849,41 @@ public class Router {
             this.locationIndex = locationIndex;
         }
 
+        @Override
+        protected String getName() {
+            return "flex";
+        }
+
+        public FlexSolver setSpeedProfiles(SpeedProfiles speedProfiles) {
+            this.speedProfiles = speedProfiles;
+            return this;
+        }
+
+        public FlexSolver setTrafficOverlay(TrafficOverlay trafficOverlay) {
+            this.trafficOverlay = trafficOverlay;
+            return this;
+        }
+
         @Override
         protected void checkRequest() {
             super.checkRequest();
             checkNonChMaxWaypointDistance(request.getPoints());
+            if (request.getHints().has(DEPARTURE_TIME)) {
+                if (speedProfiles == null)
+                    throw new IllegalArgumentException("The '" + DEPARTURE_TIME + "' parameter requires speed profiles, see speed_profiles.file");
+                if (ROUND_TRIP.equalsIgnoreCase(request.getAlgorithm()) || ALT_ROUTE.equalsIgnoreCase(request.getAlgorithm()))
+                    throw new IllegalArgumentException("The '" + DEPARTURE_TIME + "' parameter cannot be used with algorithm=" + request.getAlgorithm());
+                getDepartureTime(request.getHints());
+            }
         }
 
         @Override
         protected Weighting createWeighting() {
             PMap requestHints = new PMap(request.getHints());
             requestHints.putObject(CustomModel.KEY, request.getCustomModel());
-            return weightingFactory.createWeighting(profile, requestHints, false);
+            Weighting weighting = weightingFactory.createWeighting(profile, requestHints, false);
+            // the preparations use the weighting factory directly, so the traffic never ends up in CH or LM
+            return trafficOverlay == null ? weighting : new TrafficWeighting(weighting, trafficOverlay, System.currentTimeMillis());
         }
 
         @Override
@@ -532,6 +892,18 @@ public class Router {
             return new FlexiblePathCalculator(queryGraph, algorithmFactory, weighting, getAlgoOpts());
         }
 
+        /**
+         * Creates a path calculator that considers the speed profiles at the departure time of the request.
+         */
+        protected PathCalculator createTimeDependentPathCalculator(QueryGraph queryGraph) {
+            return new TimeDependentPathCalculator(queryGraph, weighting, speedProfiles, w -> createApproximation(queryGraph, w),
+                    getAlgoOpts(), getDepartureTime(request.getHints()));
+        }
+
+        protected WeightApproximator createApproximation(QueryGraph queryGraph, Weighting queryGraphWeighting) {
+            return RoutingAlgorithmFactorySimple.getApproximation(Parameters.Algorithms.ASTAR, request.getHints(), queryGraphWeighting, queryGraph.getNodeAccess());
+        }
+
         protected AlgorithmOptions getAlgoOpts() {
             AlgorithmOptions algoOpts = new AlgorithmOptions().
                     setAlgorithm(request.getAlgorithm()).
@@ -578,8 +950,26 @@ public class Router {
             this.landmarks = landmarks;
         }
 
+        @Override
+        protected String getName() {
+            return "lm";
+        }
+
         @Override
         protected FlexiblePathCalculator createPathCalculator(QueryGraph queryGraph) {
+            RoutingAlgorithmFactory routingAlgorithmFactory = new LMRoutingAlgorithmFactory(getLandmarkStorage()).setDefaultActiveLandmarks(routerConfig.getActiveLandmarkCount());
+            return new FlexiblePathCalculator(queryGraph, routingAlgorithmFactory, weighting, getAlgoOpts());
+        }
+
+        @Override
+        protected WeightApproximator createApproximation(QueryGraph queryGraph, Weighting queryGraphWeighting) {
+            // the landmarks were calculated for the free-flow weights, which are a lower bound of the time-dependent weights
+            int activeLM = Math.max(1, request.getHints().getInt(Parameters.Landmark.ACTIVE_COUNT, routerConfig.getActiveLandmarkCount()));
+            double epsilon = request.getHints().getDouble(Parameters.Algorithms.AStar.EPSILON, 1);
+            return LMApproximator.forLandmarks(queryGraph, queryGraphWeighting, getLandmarkStorage(), activeLM).setEpsilon(epsilon);
+        }
+
+        private LandmarkStorage getLandmarkStorage() {
             // for now do not allow mixing CH&LM #1082,#1889
             LandmarkStorage landmarkStorage = landmarks.get(profile.getName());
             if (landmarkStorage == null)
@@ -588,8 +978,7 @@ public class Router {
                         "\navailable LM profiles: " + landmarks.keySet());
             if (request.getCustomModel() != null)
                 FindMinMax.checkLMConstraints(profile.getCustomModel(), request.getCustomModel(), lookup);
-            RoutingAlgorithmFactory routingAlgorithmFactory = new LMRoutingAlgorithmFactory(landmarkStorage).setDefaultActiveLandmarks(routerConfig.getActiveLandmarkCount());
-            return new FlexiblePathCalculator(queryGraph, routingAlgorithmFactory, weighting, getAlgoOpts());
+            return landmarkStorage;
         }
     }
 }
@@ -23,6 +23,7 @@ package com.graphhopper.routing;
  */
 public class RouterConfig {
     private int maxVisitedNodes = Integer.MAX_VALUE;
+    private int maxVisitedNodesPerRequest = Integer.MAX_VALUE;
     private long timeoutMillis = Long.MAX_VALUE;
     private int maxRoundTripRetries = 3;
     private int nonChMaxWaypointDistance = Integer.MAX_VALUE;
@@ -31,6 +32,12 @@ public class RouterConfig {
     private boolean simplifyResponse = true;
     private double elevationWayPointMaxDistance = Double.MAX_VALUE;
     private int activeLandmarkCount = 8;
+    private int snapCacheSize = 0;
+    private int routeCacheSize = 0;
+    private long routeCacheTtlMillis = 10 * 60_000;
+    private int areaCacheSize = 0;
+    private int legThreads = 0;
+    private int maxParallelLegs = 4;
 
     public int getMaxVisitedNodes() {
         return maxVisitedNodes;
@@ -44,6 +51,20 @@ public class RouterConfig {
         this.maxVisitedNodes = maxVisitedNodes;
     }
 
+    public int getMaxVisitedNodesPerRequest() {
+        return maxVisitedNodesPerRequest;
+    }
+
+    /**
+     * Limits the sum of the visited nodes of all searches of one request, e.g. of all legs of a request with via points
+     * or of the searches for alternative routes. Unlike {@link #setMaxVisitedNodes(int)} this bounds the work and the
+     * memory of a request independent of its number of points. The limit is checked after every search, so a request
+     * can exceed it by at most the visited nodes of one search.
+     */
+    public void setMaxVisitedNodesPerRequest(int maxVisitedNodesPerRequest) {
+        this.maxVisitedNodesPerRequest = maxVisitedNodesPerRequest;
+    }
+
     public long getTimeoutMillis() {
         return timeoutMillis;
     }
@@ -119,4 +140,77 @@ public class RouterConfig {
     public void setElevationWayPointMaxDistance(double elevationWayPointMaxDistance) {
         this.elevationWayPointMaxDistance = elevationWayPointMaxDistance;
     }
+
+    public int getSnapCacheSize() {
+        return snapCacheSize;
+    }
+
+    /**
+     * Enables a cache for the snapped request points that holds up to the given number of entries. Use this if the
+     * same coordinates are requested over and over again. The default is 0, which disables the cache.
+     */
+    public void setSnapCacheSize(int snapCacheSize) {
+        this.snapCacheSize = snapCacheSize;
+    }
+
+    public int getRouteCacheSize() {
+        return routeCacheSize;
+    }
+
+    /**
+     * Enables a cache for the responses of via and alternative route requests that holds up to the given number of
+     * responses. Requests are considered equal if their points snap to the same positions and all other parameters
+     * are the same. The default is 0, which disables the cache.
+     */
+    public void setRouteCacheSize(int routeCacheSize) {
+        this.routeCacheSize = routeCacheSize;
+    }
+
+    public long getRouteCacheTtlMillis() {
+        return routeCacheTtlMillis;
+    }
+
+    /**
+     * Cached responses are discarded after the given amount of milliseconds.
+     */
+    public void setRouteCacheTtlMillis(long routeCacheTtlMillis) {
+        this.routeCacheTtlMillis = routeCacheTtlMillis;
+    }
+
+    public int getAreaCacheSize() {
+        return areaCacheSize;
+    }
+
+    /**
+     * The edges inside the areas of the profiles are always precalculated. This enables the same for up to the given
+     * number of areas from custom models of requests, which are calculated when they are used the second time. The
+     * default is 0, which disables it.
+     */
+    public void setAreaCacheSize(int areaCacheSize) {
+        this.areaCacheSize = areaCacheSize;
+    }
+
+    public int getLegThreads() {
+        return legThreads;
+    }
+
+    /**
+     * The legs of requests with via points are calculated in parallel using a pool with the given number of threads
+     * that is shared by all requests. The default is 0, which calculates all legs in the thread of the request.
+     */
+    public void setLegThreads(int legThreads) {
+        this.legThreads = legThreads;
+    }
+
+    public int getMaxParallelLegs() {
+        return maxParallelLegs;
+    }
+
+    /**
+     * Limits the number of legs of a single request that are calculated at the same time, including the thread of
+     * the request. The default is 4.
+     */
+    public void setMaxParallelLegs(int maxParallelLegs) {
+        this.maxParallelLegs = maxParallelLegs;
+    }
 }
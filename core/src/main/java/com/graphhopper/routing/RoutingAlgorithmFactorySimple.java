@@ -61,7 +61,10 @@ public class RoutingAlgorithmFactorySimple implements RoutingAlgorithmFactory {
             ra = aStar;
 
         } else if (ALT_ROUTE.equalsIgnoreCase(algoStr)) {
-            ra = new AlternativeRoute(g, weighting, opts.getTraversalMode(), opts.getHints());
+            if (AltRoute.PLATEAU.equalsIgnoreCase(opts.getHints().getString(AltRoute.METHOD, "")))
+                ra = new AlternativeRoutePlateau(g, weighting, opts.getTraversalMode(), opts.getHints());
+            else
+                ra = new AlternativeRoute(g, weighting, opts.getTraversalMode(), opts.getHints());
 
         } else {
             throw new IllegalArgumentException("Algorithm " + algoStr + " not found in " + getClass().getName());
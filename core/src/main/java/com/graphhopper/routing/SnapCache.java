@@ -0,0 +1,173 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.graphhopper.storage.index.Snap;
+import com.graphhopper.util.shapes.GHPoint;
+import com.graphhopper.util.shapes.GHPoint3D;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded cache for the results of the location index lookup done by {@link ViaRouting#lookup}. The key consists
+ * of the query coordinate rounded to 1e-6 degrees (~0.1m), the profile and all request parameters that influence the
+ * snapping (heading, point hint and snap preventions). The least recently used entry is evicted once the cache is full.
+ * <p>
+ * The cached snaps are kept in the state they have directly after the lookup and a new copy is returned for every hit,
+ * because {@link com.graphhopper.routing.querygraph.QueryGraph} modifies the snaps it is created with. Only the query
+ * point of the copy is set to the requested coordinate, the snapped point and query distance are the ones of the
+ * original lookup and can therefore differ by the rounding of the key.
+ */
+public class SnapCache {
+    private static final double PRECISION = 1e6;
+    private final int maxSize;
+    private final Map<Key, Snap> cache;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public SnapCache(int maxSize) {
+        if (maxSize <= 0)
+            throw new IllegalArgumentException("The size of the snap cache must be positive, but was: " + maxSize);
+        this.maxSize = maxSize;
+        // use accessOrder==true to remove the least recently accessed entry, not the oldest inserted
+        this.cache = Collections.synchronizedMap(new LinkedHashMap<>(Math.min(maxSize, 1 << 16), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Snap> eldest) {
+                if (size() > SnapCache.this.maxSize) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        });
+    }
+
+    public static Key createKey(String profile, GHPoint point, double heading, String pointHint, List<String> snapPreventions) {
+        return new Key(profile, Math.round(point.lat * PRECISION), Math.round(point.lon * PRECISION),
+                heading, pointHint, new ArrayList<>(snapPreventions));
+    }
+
+    /**
+     * @return a copy of the cached snap with the query point set to the given point or null if there is no entry for
+     * the given key
+     */
+    public Snap get(Key key, GHPoint queryPoint) {
+        Snap cached = cache.get(key);
+        if (cached == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return copy(cached, queryPoint);
+    }
+
+    /**
+     * Stores a copy of the given snap. Only valid snaps that were not yet used to create a query graph are accepted.
+     */
+    public void put(Key key, Snap snap) {
+        if (!snap.isValid())
+            throw new IllegalArgumentException("Only valid snaps can be cached");
+        cache.put(key, copy(snap, snap.getQueryPoint()));
+    }
+
+    private static Snap copy(Snap snap, GHPoint queryPoint) {
+        Snap copy = new Snap(queryPoint.lat, queryPoint.lon);
+        copy.setClosestNode(snap.getClosestNode());
+        copy.setClosestEdge(snap.getClosestEdge());
+        copy.setWayIndex(snap.getWayIndex());
+        copy.setSnappedPosition(snap.getSnappedPosition());
+        copy.setQueryDistance(snap.getQueryDistance());
+        GHPoint3D snappedPoint = snap.getSnappedPoint();
+        copy.setSnappedPoint(new GHPoint3D(snappedPoint.lat, snappedPoint.lon, snappedPoint.ele));
+        return copy;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int getSize() {
+        return cache.size();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return the fraction of lookups that were answered from the cache or 0 if there was no lookup yet
+     */
+    public double getHitRate() {
+        long h = hits.sum(), total = h + misses.sum();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    public static final class Key {
+        private final String profile;
+        private final long lat;
+        private final long lon;
+        private final double heading;
+        private final String pointHint;
+        private final List<String> snapPreventions;
+        private final int hashCode;
+
+        private Key(String profile, long lat, long lon, double heading, String pointHint, List<String> snapPreventions) {
+            this.profile = profile;
+            this.lat = lat;
+            this.lon = lon;
+            this.heading = heading;
+            this.pointHint = pointHint;
+            this.snapPreventions = snapPreventions;
+            this.hashCode = Objects.hash(profile, lat, lon, heading, pointHint, snapPreventions);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return lat == key.lat && lon == key.lon && Double.compare(heading, key.heading) == 0
+                    && profile.equals(key.profile) && Objects.equals(pointHint, key.pointHint)
+                    && snapPreventions.equals(key.snapPreventions);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.graphhopper.coll.GHIntObjectHashMap;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.BeelineWeightApproximator;
+import com.graphhopper.routing.weighting.SpeedProfiles;
+import com.graphhopper.routing.weighting.TimeDependentWeighting;
+import com.graphhopper.routing.weighting.WeightApproximator;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.util.DistancePlaneProjection;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.Parameters;
+
+import java.util.PriorityQueue;
+
+import static com.graphhopper.util.EdgeIterator.ANY_EDGE;
+import static com.graphhopper.util.EdgeIterator.NO_EDGE;
+
+/**
+ * A forward A* search where the weight of every edge is calculated for the time at which the edge is entered, i.e.
+ * the departure time plus the travel time of the path to the edge. The approximation must be a lower bound of the
+ * free-flow weights, which is also a lower bound for the time-dependent weights, see {@link TimeDependentWeighting}.
+ * <p>
+ * The result is only optimal if no path arrives earlier by departing later (FIFO property). This is not guaranteed
+ * for the {@link SpeedProfiles}, because the speed at the time an edge is entered is used for the entire edge. Where
+ * the speed increases fast enough, waiting before a long edge could be faster, and the search returns a route that is
+ * slightly slower than the optimal one.
+ */
+public class TimeDependentAStar extends AbstractRoutingAlgorithm implements EdgeToEdgeRoutingAlgorithm {
+    private final TimeDependentWeighting tdWeighting;
+    private final GHIntObjectHashMap<TimeDependentEntry> fromMap;
+    private final PriorityQueue<TimeDependentEntry> fromHeap;
+    private TimeDependentEntry currEdge;
+    private int visitedNodes;
+    private int to = -1;
+    private WeightApproximator weightApprox;
+    private long departureMillisOfWeek;
+    private int fromOutEdge;
+    private int toInEdge;
+
+    public TimeDependentAStar(Graph graph, TimeDependentWeighting weighting, TraversalMode tMode) {
+        super(graph, weighting, tMode);
+        this.tdWeighting = weighting;
+        int size = Math.min(Math.max(200, graph.getNodes() / 10), 2000);
+        fromMap = new GHIntObjectHashMap<>();
+        fromHeap = new PriorityQueue<>(size);
+        BeelineWeightApproximator defaultApprox = new BeelineWeightApproximator(nodeAccess, weighting);
+        defaultApprox.setDistanceCalc(DistancePlaneProjection.DIST_PLANE);
+        setApproximation(defaultApprox);
+    }
+
+    /**
+     * @param approx defines how distance to goal Node is approximated
+     */
+    public TimeDependentAStar setApproximation(WeightApproximator approx) {
+        weightApprox = approx;
+        return this;
+    }
+
+    /**
+     * @param epochMillis the time when the route starts at the from node
+     */
+    public TimeDependentAStar setDepartureTime(long epochMillis) {
+        departureMillisOfWeek = tdWeighting.getSpeedProfiles().getMillisOfWeek(epochMillis);
+        return this;
+    }
+
+    @Override
+    public Path calcPath(int from, int to) {
+        return calcPath(from, to, ANY_EDGE, ANY_EDGE);
+    }
+
+    @Override
+    public Path calcPath(int from, int to, int fromOutEdge, int toInEdge) {
+        if ((fromOutEdge != ANY_EDGE || toInEdge != ANY_EDGE) && !traversalMode.isEdgeBased()) {
+            throw new IllegalArgumentException("Restricting the start/target edges is only possible for edge-based graph traversal");
+        }
+        this.fromOutEdge = fromOutEdge;
+        this.toInEdge = toInEdge;
+        checkAlreadyRun();
+        setupFinishTime();
+        this.to = to;
+        if (fromOutEdge == NO_EDGE || toInEdge == NO_EDGE)
+            return extractPath();
+        weightApprox.setTo(to);
+        double weightToGoal = weightApprox.approximate(from);
+        if (Double.isInfinite(weightToGoal))
+            return extractPath();
+        TimeDependentEntry startEntry = new TimeDependentEntry(NO_EDGE, from, weightToGoal, 0, 0, null);
+        fromHeap.add(startEntry);
+        if (!traversalMode.isEdgeBased())
+            fromMap.put(from, startEntry);
+        runAlgo();
+        return extractPath();
+    }
+
+    private void runAlgo() {
+        while (!fromHeap.isEmpty()) {
+            currEdge = fromHeap.poll();
+            if (currEdge.isDeleted())
+                continue;
+            visitedNodes++;
+            if (isMaxVisitedNodesExceeded() || finished() || isTimeoutExceeded())
+                break;
+
+            EdgeIterator iter = edgeExplorer.setBaseNode(currEdge.adjNode);
+            while (iter.next()) {
+                if (!accept(iter, currEdge.edge) || (currEdge.edge == NO_EDGE && fromOutEdge != ANY_EDGE && iter.getEdge() != fromOutEdge))
+                    continue;
+
+                long entryTime = currEdge.time;
+                double turnWeight = 0;
+                if (EdgeIterator.Edge.isValid(currEdge.edge)) {
+                    turnWeight = weighting.calcTurnWeight(currEdge.edge, currEdge.adjNode, iter.getEdge());
+                    if (Double.isInfinite(turnWeight))
+                        continue;
+                    entryTime += weighting.calcTurnMillis(currEdge.edge, currEdge.adjNode, iter.getEdge());
+                }
+                long millisOfWeek = departureMillisOfWeek + entryTime;
+                double tmpWeight = tdWeighting.calcEdgeWeight(iter, false, millisOfWeek) + turnWeight + currEdge.weightOfVisitedPath;
+                if (Double.isInfinite(tmpWeight))
+                    continue;
+                int traversalId = traversalMode.createTraversalId(iter, false);
+
+                TimeDependentEntry entry = fromMap.get(traversalId);
+                if (entry == null || entry.weightOfVisitedPath > tmpWeight) {
+                    int neighborNode = iter.getAdjNode();
+                    double currWeightToGoal = weightApprox.approximate(neighborNode);
+                    if (Double.isInfinite(currWeightToGoal))
+                        continue;
+                    if (entry != null)
+                        entry.setDeleted();
+                    long time = entryTime + tdWeighting.calcEdgeMillis(iter, false, millisOfWeek);
+                    entry = new TimeDependentEntry(iter.getEdge(), neighborNode, tmpWeight + currWeightToGoal, tmpWeight, time, currEdge);
+                    fromMap.put(traversalId, entry);
+                    fromHeap.add(entry);
+                }
+            }
+        }
+    }
+
+    private boolean finished() {
+        return currEdge.adjNode == to && (toInEdge == ANY_EDGE || currEdge.edge == toInEdge) && (fromOutEdge == ANY_EDGE || currEdge.edge != NO_EDGE);
+    }
+
+    protected Path extractPath() {
+        if (currEdge == null || !finished())
+            return createEmptyPath();
+
+        // the path extractor sums up the free-flow times of the edges, but we already know the actual travel time
+        return PathExtractor.extractPath(graph, weighting, currEdge)
+                .setWeight(currEdge.getWeightOfVisitedPath())
+                .setTime(currEdge.time);
+    }
+
+    @Override
+    public int getVisitedNodes() {
+        return visitedNodes;
+    }
+
+    @Override
+    public String getName() {
+        return Parameters.Algorithms.ASTAR + "|time_dependent|" + weightApprox;
+    }
+
+    private static class TimeDependentEntry extends AStar.AStarEntry {
+        // the travel time since the departure at the time the adjacent node is reached
+        final long time;
+
+        TimeDependentEntry(int edgeId, int adjNode, double weightForHeap, double weightOfVisitedPath, long time, SPTEntry parent) {
+            super(edgeId, adjNode, weightForHeap, weightOfVisitedPath, parent);
+            this.time = time;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.carrotsearch.hppc.cursors.IntCursor;
+import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.weighting.SpeedProfiles;
+import com.graphhopper.routing.weighting.TimeDependentWeighting;
+import com.graphhopper.routing.weighting.WeightApproximator;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.util.StopWatch;
+import com.graphhopper.util.exceptions.MaximumNodesExceededException;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Calculates the paths with {@link TimeDependentAStar}. The legs of a via-route are calculated in order, and every leg
+ * departs at the arrival time of the previous one.
+ */
+public class TimeDependentPathCalculator implements PathCalculator {
+    private final QueryGraph queryGraph;
+    private final TimeDependentWeighting weighting;
+    private final Function<Weighting, WeightApproximator> approximationFactory;
+    private final AlgorithmOptions algoOpts;
+    private long departureTime;
+    private String debug;
+    private int visitedNodes;
+
+    /**
+     * @param approximationFactory creates the approximation for the weighting of the query graph
+     * @param departureTime        the departure time at the first point in milliseconds since the epoch
+     */
+    public TimeDependentPathCalculator(QueryGraph queryGraph, Weighting weighting, SpeedProfiles speedProfiles,
+                                       Function<Weighting, WeightApproximator> approximationFactory,
+                                       AlgorithmOptions algoOpts, long departureTime) {
+        this.queryGraph = queryGraph;
+        this.weighting = new TimeDependentWeighting(queryGraph.wrapWeighting(weighting), speedProfiles, queryGraph);
+        this.approximationFactory = approximationFactory;
+        this.algoOpts = algoOpts;
+        this.departureTime = departureTime;
+    }
+
+    @Override
+    public List<Path> calcPaths(int from, int to, EdgeRestrictions edgeRestrictions) {
+        StopWatch sw = new StopWatch().start();
+        TimeDependentAStar algo = new TimeDependentAStar(queryGraph, weighting, algoOpts.getTraversalMode());
+        algo.setApproximation(approximationFactory.apply(weighting));
+        algo.setDepartureTime(departureTime);
+        algo.setMaxVisitedNodes(algoOpts.getMaxVisitedNodes());
+        algo.setTimeoutMillis(algoOpts.getTimeoutMillis());
+        debug = ", algoInit:" + (sw.stop().getNanos() / 1000) + " μs";
+
+        sw = new StopWatch().start();
+        for (IntCursor c : edgeRestrictions.getUnfavoredEdges())
+            queryGraph.unfavorVirtualEdge(c.value);
+        Path path = algo.calcPath(from, to, edgeRestrictions.getSourceOutEdge(), edgeRestrictions.getTargetInEdge());
+        queryGraph.clearUnfavoredStatus();
+
+        if (algo.getVisitedNodes() >= algoOpts.getMaxVisitedNodes())
+            throw new MaximumNodesExceededException("No path found due to maximum nodes exceeded " + algoOpts.getMaxVisitedNodes(), algoOpts.getMaxVisitedNodes());
+        visitedNodes = algo.getVisitedNodes();
+        if (path.isFound())
+            departureTime += path.getTime();
+        debug += ", " + algo.getName() + "-routing:" + sw.stop().getMillis() + " ms";
+        return Collections.singletonList(path);
+    }
+
+    /**
+     * @return the departure time of the next path, i.e. the arrival time of the last path
+     */
+    @Override
+    public void setMaxVisitedNodes(int maxVisitedNodes) {
+        algoOpts.setMaxVisitedNodes(maxVisitedNodes);
+    }
+
+    public long getDepartureTime() {
+        return departureTime;
+    }
+
+    @Override
+    public String getDebugString() {
+        return debug;
+    }
+
+    @Override
+    public int getVisitedNodes() {
+        return visitedNodes;
+    }
+}
@@ -33,7 +33,12 @@ import com.graphhopper.util.Helper;
 import com.graphhopper.util.shapes.GHPoint;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 import static com.graphhopper.util.EdgeIterator.ANY_EDGE;
 import static com.graphhopper.util.EdgeIterator.NO_EDGE;
@@ -55,6 +60,20 @@ public class ViaRouting {
     public static List<Snap> lookup(EncodedValueLookup lookup, List<GHPoint> points, EdgeFilter snapFilter,
                                     LocationIndex locationIndex, List<String> snapPreventions, List<String> pointHints,
                                     DirectedEdgeFilter directedSnapFilter, List<Double> headings) {
+        return lookup(lookup, points, snapFilter, locationIndex, snapPreventions, pointHints, directedSnapFilter, headings, null, null);
+    }
+
+    /**
+     * Same as above, but uses the given cache (if not null) to skip the location index lookup for points that were
+     * already resolved for the given snap filter key with the same heading, point hint and snap preventions. The caller
+     * is responsible to only pass a cache if the snap filter is fully determined by this key.
+     *
+     * @throws MultiplePointsNotFoundException in case one or more points could not be resolved
+     */
+    public static List<Snap> lookup(EncodedValueLookup lookup, List<GHPoint> points, EdgeFilter snapFilter,
+                                    LocationIndex locationIndex, List<String> snapPreventions, List<String> pointHints,
+                                    DirectedEdgeFilter directedSnapFilter, List<Double> headings,
+                                    SnapCache snapCache, String snapFilterKey) {
         if (points.size() < 2)
             throw new IllegalArgumentException("At least 2 points have to be specified, but was:" + points.size());
 
@@ -67,15 +86,27 @@ public class ViaRouting {
         IntArrayList pointsNotFound = new IntArrayList();
         for (int placeIndex = 0; placeIndex < points.size(); placeIndex++) {
             GHPoint point = points.get(placeIndex);
+            double heading = placeIndex < headings.size() ? headings.get(placeIndex) : Double.NaN;
+            String pointHint = pointHints.isEmpty() ? null : pointHints.get(placeIndex);
+            if (!Double.isNaN(heading) && !Helper.isEmpty(pointHint))
+                throw new IllegalArgumentException("Cannot specify heading and point_hint at the same time. " +
+                        "Make sure you specify either an empty point_hint (String) or a NaN heading (double) for point " + placeIndex);
+            SnapCache.Key cacheKey = null;
+            if (snapCache != null) {
+                cacheKey = SnapCache.createKey(snapFilterKey, point, heading, pointHint, snapPreventions);
+                Snap cached = snapCache.get(cacheKey, point);
+                if (cached != null) {
+                    snaps.add(cached);
+                    continue;
+                }
+            }
+
             Snap snap = null;
-            if (placeIndex < headings.size() && !Double.isNaN(headings.get(placeIndex))) {
-                if (!pointHints.isEmpty() && !Helper.isEmpty(pointHints.get(placeIndex)))
-                    throw new IllegalArgumentException("Cannot specify heading and point_hint at the same time. " +
-                            "Make sure you specify either an empty point_hint (String) or a NaN heading (double) for point " + placeIndex);
-                snap = locationIndex.findClosest(point.lat, point.lon, new HeadingEdgeFilter(directedSnapFilter, headings.get(placeIndex), point));
+            if (!Double.isNaN(heading)) {
+                snap = locationIndex.findClosest(point.lat, point.lon, new HeadingEdgeFilter(directedSnapFilter, heading, point));
             } else if (!pointHints.isEmpty()) {
                 snap = locationIndex.findClosest(point.lat, point.lon, new NameSimilarityEdgeFilter(strictEdgeFilter,
-                        pointHints.get(placeIndex), point, 170));
+                        pointHint, point, 170));
             } else if (!snapPreventions.isEmpty()) {
                 snap = locationIndex.findClosest(point.lat, point.lon, strictEdgeFilter);
             }
@@ -84,6 +115,8 @@ public class ViaRouting {
                 snap = locationIndex.findClosest(point.lat, point.lon, snapFilter);
             if (!snap.isValid())
                 pointsNotFound.add(placeIndex);
+            else if (cacheKey != null)
+                snapCache.put(cacheKey, snap);
 
             snaps.add(snap);
         }
@@ -97,25 +130,10 @@ public class ViaRouting {
     public static Result calcPaths(List<GHPoint> points, QueryGraph queryGraph, List<Snap> snaps,
                                    DirectedEdgeFilter directedEdgeFilter, PathCalculator pathCalculator,
                                    List<String> curbsides, String curbsideStrictness, List<Double> headings, boolean passThrough) {
-        if (!curbsides.isEmpty() && curbsides.size() != points.size())
-            throw new IllegalArgumentException("If you pass " + CURBSIDE + ", you need to pass exactly one curbside for every point, empty curbsides will be ignored");
-        if (!curbsides.isEmpty() && !headings.isEmpty())
-            throw new IllegalArgumentException("You cannot use curbsides and headings or pass_through at the same time");
-
+        checkCurbsidesAndHeadings(points, curbsides, headings);
         final int legs = snaps.size() - 1;
         Result result = new Result(legs);
         for (int leg = 0; leg < legs; ++leg) {
-            Snap fromSnap = snaps.get(leg);
-            Snap toSnap = snaps.get(leg + 1);
-
-            // enforce headings
-            // at via-nodes and the target node the heading parameter is interpreted as the direction we want
-            // to enforce for arriving (not starting) at this node. the starting direction is not enforced at
-            // all for these points (unless using pass through). see this forum discussion:
-            // https://discuss.graphhopper.com/t/meaning-of-heading-parameter-for-via-routing/5643/6
-            double fromHeading = (leg == 0 && !headings.isEmpty()) ? headings.get(0) : Double.NaN;
-            double toHeading = (snaps.size() == headings.size() && !Double.isNaN(headings.get(leg + 1))) ? headings.get(leg + 1) : Double.NaN;
-
             // enforce pass-through
             int incomingEdge = NO_EDGE;
             if (leg != 0) {
@@ -124,49 +142,176 @@ public class ViaRouting {
                 if (prevRoute.getEdgeCount() > 0)
                     incomingEdge = prevRoute.getFinalEdge().getEdge();
             }
-
-            // enforce curbsides
-            final String fromCurbside = curbsides.isEmpty() ? CURBSIDE_ANY : curbsides.get(leg);
-            final String toCurbside = curbsides.isEmpty() ? CURBSIDE_ANY : curbsides.get(leg + 1);
-
-            EdgeRestrictions edgeRestrictions = buildEdgeRestrictions(queryGraph, fromSnap, toSnap,
-                    fromHeading, toHeading, incomingEdge, passThrough,
-                    fromCurbside, toCurbside, directedEdgeFilter);
-
-            edgeRestrictions.setSourceOutEdge(ignoreThrowOrAcceptImpossibleCurbsides(curbsides, edgeRestrictions.getSourceOutEdge(), leg, curbsideStrictness));
-            edgeRestrictions.setTargetInEdge(ignoreThrowOrAcceptImpossibleCurbsides(curbsides, edgeRestrictions.getTargetInEdge(), leg + 1, curbsideStrictness));
+            EdgeRestrictions edgeRestrictions = createEdgeRestrictions(queryGraph, snaps, leg, directedEdgeFilter,
+                    curbsides, curbsideStrictness, headings, incomingEdge, passThrough);
 
             // calculate paths
-            List<Path> paths = pathCalculator.calcPaths(fromSnap.getClosestNode(), toSnap.getClosestNode(), edgeRestrictions);
-            result.debug += pathCalculator.getDebugString();
+            List<Path> paths = pathCalculator.calcPaths(snaps.get(leg).getClosestNode(), snaps.get(leg + 1).getClosestNode(), edgeRestrictions);
+            result.add(paths, pathCalculator.getDebugString(), pathCalculator.getVisitedNodes(), pathCalculator.getVisitedNodesBackward());
+        }
 
-            // for alternative routing we get multiple paths and add all of them (which is ok, because we do not allow
-            // via-points for alternatives at the moment). otherwise we would have to return a list<list<path>> and find
-            // a good method to decide how to combine the different legs
-            for (int i = 0; i < paths.size(); i++) {
-                Path path = paths.get(i);
-                if (path.getTime() < 0)
-                    throw new RuntimeException("Time was negative " + path.getTime() + " for index " + i);
+        return result;
+    }
 
-                result.paths.add(path);
-                result.debug += ", " + path.getDebugInfo();
+    /**
+     * Same as above, but calculates up to maxParallelLegs legs at the same time. The calling thread calculates legs
+     * as well and the others are calculated by the given executor. Every thread uses its own path calculator created
+     * by the given supplier. With headings or pass_through the legs are calculated one after the other, because they
+     * depend on the previous leg and modify the query graph.
+     */
+    public static Result calcPaths(List<GHPoint> points, QueryGraph queryGraph, List<Snap> snaps,
+                                   DirectedEdgeFilter directedEdgeFilter, Supplier<PathCalculator> pathCalculators,
+                                   List<String> curbsides, String curbsideStrictness, List<Double> headings, boolean passThrough,
+                                   Executor executor, int maxParallelLegs) {
+        final int legs = snaps.size() - 1;
+        final int threads = Math.min(maxParallelLegs, legs);
+        if (executor == null || threads < 2 || passThrough || !headings.isEmpty())
+            return calcPaths(points, queryGraph, snaps, directedEdgeFilter, pathCalculators.get(), curbsides, curbsideStrictness, headings, passThrough);
+
+        checkCurbsidesAndHeadings(points, curbsides, headings);
+        // the restrictions can throw for impossible curbsides, so we determine them upfront and in order
+        EdgeRestrictions[] edgeRestrictions = new EdgeRestrictions[legs];
+        for (int leg = 0; leg < legs; ++leg)
+            edgeRestrictions[leg] = createEdgeRestrictions(queryGraph, snaps, leg, directedEdgeFilter,
+                    curbsides, curbsideStrictness, headings, NO_EDGE, false);
+
+        List<List<Path>> legPaths = new ArrayList<>(Collections.nCopies(legs, null));
+        String[] debugs = new String[legs];
+        int[] visitedNodes = new int[legs];
+        int[] visitedNodesBackward = new int[legs];
+        AtomicInteger nextLeg = new AtomicInteger();
+        AtomicBoolean failed = new AtomicBoolean();
+        List<Callable<Void>> tasks = new ArrayList<>(threads);
+        for (int t = 0; t < threads; t++) {
+            PathCalculator pathCalculator = pathCalculators.get();
+            tasks.add(() -> {
+                try {
+                    for (int leg = nextLeg.getAndIncrement(); leg < legs && !failed.get(); leg = nextLeg.getAndIncrement()) {
+                        List<Path> paths = pathCalculator.calcPaths(snaps.get(leg).getClosestNode(), snaps.get(leg + 1).getClosestNode(), edgeRestrictions[leg]);
+                        debugs[leg] = pathCalculator.getDebugString();
+                        visitedNodes[leg] = pathCalculator.getVisitedNodes();
+                        visitedNodesBackward[leg] = pathCalculator.getVisitedNodesBackward();
+                        legPaths.set(leg, paths);
+                    }
+                } catch (RuntimeException ex) {
+                    failed.set(true);
+                    throw ex;
+                }
+                return null;
+            });
+        }
+        // a helper only runs if it was not claimed by the calling thread before, see below
+        List<FutureTask<Void>> futures = new ArrayList<>(threads - 1);
+        List<AtomicBoolean> started = new ArrayList<>(threads - 1);
+        for (int t = 1; t < threads; t++) {
+            Callable<Void> task = tasks.get(t);
+            AtomicBoolean taskStarted = new AtomicBoolean();
+            FutureTask<Void> future = new FutureTask<>(() -> taskStarted.compareAndSet(false, true) ? task.call() : null);
+            executor.execute(future);
+            futures.add(future);
+            started.add(taskStarted);
+        }
+        RuntimeException error = null;
+        try {
+            tasks.get(0).call();
+        } catch (Exception ex) {
+            error = (RuntimeException) ex;
+        }
+        // all legs are taken now, so helpers that are still queued would not find any work: we cancel them instead
+        // of waiting until the executor gets to them and only wait for those that are already running
+        for (int t = 0; t < futures.size(); t++) {
+            FutureTask<Void> future = futures.get(t);
+            if (started.get(t).compareAndSet(false, true)) {
+                future.cancel(false);
+                continue;
+            }
+            try {
+                future.get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                failed.set(true);
+                if (error == null)
+                    error = new RuntimeException(ex);
+            } catch (ExecutionException ex) {
+                if (error == null)
+                    error = ex.getCause() instanceof RuntimeException ? (RuntimeException) ex.getCause() : new RuntimeException(ex.getCause());
             }
-
-            result.visitedNodes += pathCalculator.getVisitedNodes();
-            result.debug += ", visited nodes sum: " + result.visitedNodes;
         }
+        if (error != null)
+            throw error;
 
+        Result result = new Result(legs);
+        for (int leg = 0; leg < legs; ++leg)
+            result.add(legPaths.get(leg), debugs[leg], visitedNodes[leg], visitedNodesBackward[leg]);
         return result;
     }
 
+    private static void checkCurbsidesAndHeadings(List<GHPoint> points, List<String> curbsides, List<Double> headings) {
+        if (!curbsides.isEmpty() && curbsides.size() != points.size())
+            throw new IllegalArgumentException("If you pass " + CURBSIDE + ", you need to pass exactly one curbside for every point, empty curbsides will be ignored");
+        if (!curbsides.isEmpty() && !headings.isEmpty())
+            throw new IllegalArgumentException("You cannot use curbsides and headings or pass_through at the same time");
+    }
+
+    private static EdgeRestrictions createEdgeRestrictions(QueryGraph queryGraph, List<Snap> snaps, int leg,
+                                                           DirectedEdgeFilter directedEdgeFilter, List<String> curbsides,
+                                                           String curbsideStrictness, List<Double> headings,
+                                                           int incomingEdge, boolean passThrough) {
+        Snap fromSnap = snaps.get(leg);
+        Snap toSnap = snaps.get(leg + 1);
+
+        // enforce headings
+        // at via-nodes and the target node the heading parameter is interpreted as the direction we want
+        // to enforce for arriving (not starting) at this node. the starting direction is not enforced at
+        // all for these points (unless using pass through). see this forum discussion:
+        // https://discuss.graphhopper.com/t/meaning-of-heading-parameter-for-via-routing/5643/6
+        double fromHeading = (leg == 0 && !headings.isEmpty()) ? headings.get(0) : Double.NaN;
+        double toHeading = (snaps.size() == headings.size() && !Double.isNaN(headings.get(leg + 1))) ? headings.get(leg + 1) : Double.NaN;
+
+        // enforce curbsides
+        final String fromCurbside = curbsides.isEmpty() ? CURBSIDE_ANY : curbsides.get(leg);
+        final String toCurbside = curbsides.isEmpty() ? CURBSIDE_ANY : curbsides.get(leg + 1);
+
+        EdgeRestrictions edgeRestrictions = buildEdgeRestrictions(queryGraph, fromSnap, toSnap,
+                fromHeading, toHeading, incomingEdge, passThrough,
+                fromCurbside, toCurbside, directedEdgeFilter);
+
+        edgeRestrictions.setSourceOutEdge(ignoreThrowOrAcceptImpossibleCurbsides(curbsides, edgeRestrictions.getSourceOutEdge(), leg, curbsideStrictness));
+        edgeRestrictions.setTargetInEdge(ignoreThrowOrAcceptImpossibleCurbsides(curbsides, edgeRestrictions.getTargetInEdge(), leg + 1, curbsideStrictness));
+        return edgeRestrictions;
+    }
+
     public static class Result {
         public List<Path> paths;
         public long visitedNodes;
+        /**
+         * the part of visitedNodes that was visited by the backward searches
+         */
+        public long visitedNodesBackward;
         public String debug = "";
 
         Result(int legs) {
             paths = new ArrayList<>(legs);
         }
+
+        private void add(List<Path> legPaths, String legDebug, int legVisitedNodes, int legVisitedNodesBackward) {
+            debug += legDebug;
+            // for alternative routing we get multiple paths and add all of them (which is ok, because we do not allow
+            // via-points for alternatives at the moment). otherwise we would have to return a list<list<path>> and find
+            // a good method to decide how to combine the different legs
+            for (int i = 0; i < legPaths.size(); i++) {
+                Path path = legPaths.get(i);
+                if (path.getTime() < 0)
+                    throw new RuntimeException("Time was negative " + path.getTime() + " for index " + i);
+
+                paths.add(path);
+                debug += ", " + path.getDebugInfo();
+            }
+
+            visitedNodes += legVisitedNodes;
+            visitedNodesBackward += legVisitedNodesBackward;
+            debug += ", visited nodes sum: " + visitedNodes;
+        }
     }
 
     /**
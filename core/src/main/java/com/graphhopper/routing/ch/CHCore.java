@@ -0,0 +1,160 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.carrotsearch.hppc.IntIntHashMap;
+import com.carrotsearch.hppc.cursors.IntIntCursor;
+import com.graphhopper.coll.GHBitSet;
+import com.graphhopper.coll.GHBitSetImpl;
+import com.graphhopper.json.Statement;
+import com.graphhopper.routing.ev.EncodedValueLookup;
+import com.graphhopper.routing.ev.IntEncodedValue;
+import com.graphhopper.routing.util.AllEdgesIterator;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.routing.weighting.custom.CustomModelParser;
+import com.graphhopper.routing.weighting.custom.FindMinMax;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.util.CustomModel;
+import com.graphhopper.util.EdgeIteratorState;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.graphhopper.json.Statement.If;
+import static com.graphhopper.json.Statement.Op.LIMIT;
+import static com.graphhopper.json.Statement.Op.MULTIPLY;
+import static com.graphhopper.routing.weighting.TurnCostProvider.NO_TURN_COST_PROVIDER;
+
+/**
+ * The core of a CH preparation, i.e. the nodes that are not contracted. These are the nodes with an edge that has a
+ * non-default value for one of the core encoded values, e.g. max_height or hgv for trucks. The default value of an
+ * encoded value is the one most edges have. The weights of the core edges can be changed per request by a custom model
+ * whose conditions only use the core encoded values: the witness searches of the preparation do not use them, and
+ * the routing runs an A* search with landmarks through the core, see CoreRoutingCHGraph.
+ */
+public class CHCore {
+    private final List<String> encodedValues;
+    private final GHBitSet coreNodes;
+    private final int coreNodeCount;
+    // an edge outside the core, all of them have the default values for the core encoded values, -1 if there is none
+    private final int nonCoreEdge;
+
+    private CHCore(List<String> encodedValues, GHBitSet coreNodes, int nonCoreEdge) {
+        this.encodedValues = encodedValues;
+        this.coreNodes = coreNodes;
+        this.coreNodeCount = coreNodes.getCardinality();
+        this.nonCoreEdge = nonCoreEdge;
+    }
+
+    public static CHCore fromGraph(BaseGraph graph, EncodedValueLookup lookup, List<String> encodedValues) {
+        if (encodedValues.isEmpty())
+            throw new IllegalArgumentException("The core needs at least one encoded value");
+        List<IntEncodedValue> encs = new ArrayList<>(encodedValues.size());
+        for (String name : encodedValues)
+            encs.add(lookup.getEncodedValue(name, IntEncodedValue.class));
+        int[] defaults = new int[encs.size()];
+        for (int i = 0; i < encs.size(); i++)
+            defaults[i] = findMostFrequentValue(graph, encs.get(i));
+
+        GHBitSet coreNodes = new GHBitSetImpl(graph.getNodes());
+        int nonCoreEdge = -1;
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next()) {
+            if (isCoreEdge(iter, encs, defaults)) {
+                coreNodes.add(iter.getBaseNode());
+                coreNodes.add(iter.getAdjNode());
+            } else if (nonCoreEdge < 0) {
+                nonCoreEdge = iter.getEdge();
+            }
+        }
+        return new CHCore(new ArrayList<>(encodedValues), coreNodes, nonCoreEdge);
+    }
+
+    private static int findMostFrequentValue(BaseGraph graph, IntEncodedValue enc) {
+        IntIntHashMap counts = new IntIntHashMap();
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next()) {
+            counts.addTo(iter.get(enc), 1);
+            if (enc.isStoreTwoDirections())
+                counts.addTo(iter.getReverse(enc), 1);
+        }
+        int value = 0, count = -1;
+        for (IntIntCursor c : counts) {
+            if (c.value > count || c.value == count && c.key < value) {
+                value = c.key;
+                count = c.value;
+            }
+        }
+        return value;
+    }
+
+    private static boolean isCoreEdge(EdgeIteratorState edge, List<IntEncodedValue> encs, int[] defaults) {
+        for (int i = 0; i < encs.size(); i++)
+            if (edge.get(encs.get(i)) != defaults[i] || encs.get(i).isStoreTwoDirections() && edge.getReverse(encs.get(i)) != defaults[i])
+                return true;
+        return false;
+    }
+
+    public boolean isCoreNode(int node) {
+        return coreNodes.contains(node);
+    }
+
+    public int getCoreNodes() {
+        return coreNodeCount;
+    }
+
+    public List<String> getEncodedValues() {
+        return encodedValues;
+    }
+
+    /**
+     * Throws an IllegalArgumentException if the given query custom model could change the weight of edges outside
+     * the core. Its conditions must only use the core encoded values and none of its statements may apply to the
+     * default values of them.
+     */
+    public void checkQueryModel(CustomModel queryModel, EncodedValueLookup lookup, BaseGraph graph) {
+        FindMinMax.checkCoreConstraints(queryModel, encodedValues);
+        if (nonCoreEdge < 0)
+            return;
+        // all edges outside the core match the same statements, so we mark them with a priority of zero and try one
+        CustomModel markerModel = new CustomModel().addToSpeed(If("true", LIMIT, "1"));
+        for (Statement statement : queryModel.getPriority())
+            markerModel.addToPriority(toMarker(statement));
+        for (Statement statement : queryModel.getSpeed())
+            markerModel.addToPriority(toMarker(statement));
+        Weighting markerWeighting = CustomModelParser.createWeighting(lookup, NO_TURN_COST_PROVIDER, markerModel);
+        EdgeIteratorState edge = graph.getEdgeIteratorState(nonCoreEdge, Integer.MIN_VALUE);
+        if (Double.isInfinite(markerWeighting.calcEdgeWeight(edge, false)) || Double.isInfinite(markerWeighting.calcEdgeWeight(edge, true)))
+            throw new IllegalArgumentException("CustomModel in query must not apply to the default values of the core encoded values "
+                    + encodedValues + ", e.g. by an 'else' statement");
+    }
+
+    private static Statement toMarker(Statement statement) {
+        if (!statement.isBlock())
+            return new Statement(statement.keyword(), statement.condition(), MULTIPLY, "0", null);
+        List<Statement> block = new ArrayList<>(statement.doBlock().size());
+        for (Statement s : statement.doBlock())
+            block.add(toMarker(s));
+        return new Statement(statement.keyword(), statement.condition(), statement.operation(), null, block);
+    }
+
+    @Override
+    public String toString() {
+        return "core" + encodedValues + ", nodes: " + coreNodeCount;
+    }
+}
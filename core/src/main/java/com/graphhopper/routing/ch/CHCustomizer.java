@@ -0,0 +1,207 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.CHStorage;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.GHUtility;
+import com.graphhopper.util.StopWatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Recalculates the shortcut weights of an existing CH after the edge weights changed, e.g. because of traffic. This
+ * takes seconds instead of the hour a new preparation can take for large graphs, because the node ordering and the
+ * shortcuts are kept and every shortcut is only calculated from the two edges it skips. The price is that the
+ * hierarchy can become suboptimal: the shortcuts that were not needed for the old weights are missing, so queries
+ * can return slightly slower routes than a new preparation would.
+ * <p>
+ * The shortcuts are processed bottom-up in groups of the same depth, i.e. the shortcuts of one group only skip
+ * base edges and shortcuts of the previous groups. The shortcuts of a group are calculated in parallel.
+ * <p>
+ * A node-based shortcut has one weight for both directions. If the weights of the two directions differ after the
+ * customization the larger one is used, and if one direction becomes impassable, e.g. because of a road closure, the
+ * shortcut is only kept for the other direction. The directions of the preparation are restored by the following
+ * customizations. Shortcuts that were not added during the preparation, because a witness path was shorter, can
+ * still be missing when this witness path is closed. Then there are routes the CH does not find anymore, see
+ * {@link com.graphhopper.routing.CHPathCalculator#setFallback}.
+ * <p>
+ * The routing uses the weighting of the {@link com.graphhopper.storage.RoutingCHGraph} for the base edges, so this
+ * must be the weighting that was used for the customization. Queries that run during the customization can see a mix
+ * of the old and the new weights. The changes are written to the CHStorage, so a customized CHStorage should not be
+ * flushed.
+ */
+public class CHCustomizer {
+    private static final Logger logger = LoggerFactory.getLogger(CHCustomizer.class);
+    private final BaseGraph graph;
+    private final CHStorage chStore;
+    private final int baseEdges;
+    private int threads = 1;
+    // the shortcuts ordered by their depth and the start of every depth in this order
+    private int[] shortcutOrder;
+    private int[] depthStarts;
+    // the access flags of the shortcuts after the preparation
+    private boolean[] fwdAccess;
+    private boolean[] bwdAccess;
+
+    public CHCustomizer(BaseGraph graph, CHStorage chStore) {
+        this.graph = graph;
+        this.chStore = chStore;
+        this.baseEdges = graph.getEdges();
+    }
+
+    public CHCustomizer setThreads(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("threads must be positive, but was: " + threads);
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * Recalculates the weights of all shortcuts for the given weighting. Customizing with the weighting of the
+     * preparation restores the original weights.
+     */
+    public void customize(Weighting weighting) {
+        if (weighting.hasTurnCosts() && !chStore.isEdgeBased())
+            throw new IllegalArgumentException("Weighting has turn costs, but CHStorage is node-based");
+        StopWatch sw = new StopWatch().start();
+        if (shortcutOrder == null)
+            initShortcutOrder();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            for (int depth = 0; depth < depthStarts.length - 1; depth++) {
+                int start = depthStarts[depth], end = depthStarts[depth + 1];
+                if (threads == 1 || end - start < 1000) {
+                    for (int i = start; i < end; i++)
+                        customizeShortcut(shortcutOrder[i], weighting);
+                } else {
+                    pool.submit(() -> IntStream.range(start, end).parallel().forEach(i -> customizeShortcut(shortcutOrder[i], weighting))).get();
+                }
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException(e);
+        } finally {
+            pool.shutdown();
+        }
+        logger.info("Customized " + chStore.getShortcuts() + " shortcuts in " + (depthStarts.length - 1) + " groups for "
+                + weighting + ", threads: " + threads + ", took: " + sw.stop().getSeconds() + "s");
+    }
+
+    private void initShortcutOrder() {
+        // the skipped shortcuts were always added before the shortcut that skips them
+        int shortcuts = chStore.getShortcuts();
+        int[] depths = new int[shortcuts];
+        fwdAccess = new boolean[shortcuts];
+        bwdAccess = new boolean[shortcuts];
+        int maxDepth = 0;
+        for (int shortcut = 0; shortcut < shortcuts; shortcut++) {
+            long pointer = chStore.toShortcutPointer(shortcut);
+            fwdAccess[shortcut] = chStore.getFwdAccess(pointer);
+            bwdAccess[shortcut] = chStore.getBwdAccess(pointer);
+            depths[shortcut] = Math.max(getDepth(depths, chStore.getSkippedEdge1(pointer)), getDepth(depths, chStore.getSkippedEdge2(pointer))) + 1;
+            maxDepth = Math.max(maxDepth, depths[shortcut]);
+        }
+        // counting sort by depth, the base edges have depth 0 and the shortcuts of depth d form group d - 1
+        depthStarts = new int[maxDepth + 1];
+        for (int depth : depths)
+            depthStarts[depth]++;
+        for (int depth = 1; depth <= maxDepth; depth++)
+            depthStarts[depth] += depthStarts[depth - 1];
+        shortcutOrder = new int[shortcuts];
+        int[] next = depthStarts.clone();
+        for (int shortcut = 0; shortcut < shortcuts; shortcut++)
+            shortcutOrder[next[depths[shortcut] - 1]++] = shortcut;
+    }
+
+    private int getDepth(int[] depths, int chEdge) {
+        return chEdge < baseEdges ? 0 : depths[chEdge - baseEdges];
+    }
+
+    private void customizeShortcut(int shortcut, Weighting weighting) {
+        long pointer = chStore.toShortcutPointer(shortcut);
+        int nodeA = chStore.getNodeA(pointer);
+        int nodeB = chStore.getNodeB(pointer);
+        double fwdWeight = fwdAccess[shortcut] ? calcShortcutWeight(pointer, nodeA, nodeB, weighting) : Double.POSITIVE_INFINITY;
+        double bwdWeight = bwdAccess[shortcut] ? calcShortcutWeight(pointer, nodeB, nodeA, weighting) : Double.POSITIVE_INFINITY;
+        boolean fwd = !Double.isInfinite(fwdWeight);
+        boolean bwd = !Double.isInfinite(bwdWeight);
+        // if only one direction is passable we must not use the infinite weight of the other one
+        chStore.setWeight(pointer, fwd && bwd ? Math.max(fwdWeight, bwdWeight) : fwd ? fwdWeight : bwdWeight);
+        if (fwd != chStore.getFwdAccess(pointer) || bwd != chStore.getBwdAccess(pointer))
+            chStore.setAccess(pointer, fwd, bwd);
+    }
+
+    private double calcShortcutWeight(long pointer, int from, int to, Weighting weighting) {
+        int first = chStore.getSkippedEdge1(pointer);
+        int second = chStore.getSkippedEdge2(pointer);
+        if (!isAdjacentToNode(first, from)) {
+            int tmp = first;
+            first = second;
+            second = tmp;
+        }
+        int via = getOtherNode(first, from);
+        double weight = calcWeight(first, from, via, weighting) + calcWeight(second, via, to, weighting);
+        if (chStore.isEdgeBased() && !Double.isInfinite(weight))
+            weight += weighting.calcTurnWeight(getOrigEdge(first, false), via, getOrigEdge(second, true));
+        return weight;
+    }
+
+    private double calcWeight(int chEdge, int from, int to, Weighting weighting) {
+        if (chEdge < baseEdges) {
+            EdgeIteratorState edgeState = graph.getEdgeIteratorState(chEdge, to);
+            return weighting.calcEdgeWeight(edgeState, false);
+        }
+        long pointer = chStore.toShortcutPointer(chEdge - baseEdges);
+        int nodeA = chStore.getNodeA(pointer);
+        if (nodeA == from && chStore.getFwdAccess(pointer) || nodeA == to && chStore.getBwdAccess(pointer))
+            return chStore.getWeight(pointer);
+        return Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * @return the first or last original edge of the given edge or shortcut. Edge-based shortcuts are one-directional,
+     * so this is the first or last edge in the direction of travel.
+     */
+    private int getOrigEdge(int chEdge, boolean first) {
+        if (chEdge < baseEdges)
+            return chEdge;
+        long pointer = chStore.toShortcutPointer(chEdge - baseEdges);
+        return GHUtility.getEdgeFromEdgeKey(first ? chStore.getOrigEdgeKeyFirst(pointer) : chStore.getOrigEdgeKeyLast(pointer));
+    }
+
+    private boolean isAdjacentToNode(int chEdge, int node) {
+        if (chEdge < baseEdges)
+            return graph.isAdjacentToNode(chEdge, node);
+        long pointer = chStore.toShortcutPointer(chEdge - baseEdges);
+        return chStore.getNodeA(pointer) == node || chStore.getNodeB(pointer) == node;
+    }
+
+    private int getOtherNode(int chEdge, int node) {
+        if (chEdge < baseEdges)
+            return graph.getOtherNode(chEdge, node);
+        long pointer = chStore.toShortcutPointer(chEdge - baseEdges);
+        int nodeA = chStore.getNodeA(pointer);
+        return nodeA == node ? chStore.getNodeB(pointer) : nodeA;
+    }
+}
@@ -56,6 +56,7 @@ public class CHPreparationGraph {
     private OrigGraph.Builder origGraphBuilder;
     private int nextShortcutId;
     private boolean ready;
+    private CHCore core;
 
     public static CHPreparationGraph nodeBased(int nodes, int edges) {
         return new CHPreparationGraph(nodes, edges, false, (in, via, out) -> 0);
@@ -111,6 +112,18 @@ public class CHPreparationGraph {
         return nodes;
     }
 
+    /**
+     * Sets the nodes that will not be contracted. The witness searches must not use the edges between them, because
+     * their weights can change at query time, see {@link CHCore}.
+     */
+    public void setCore(CHCore core) {
+        this.core = core;
+    }
+
+    public boolean isCoreNode(int node) {
+        return core != null && core.isCoreNode(node);
+    }
+
     public int getOriginalEdges() {
         return edges;
     }
@@ -44,6 +44,7 @@ public class CHPreparationHandler {
     // the actual Weightings)
     private final List<CHProfile> chProfiles = new ArrayList<>();
     private int preparationThreads;
+    private int customizationThreads = 1;
     private PMap pMap = new PMap();
 
     public CHPreparationHandler() {
@@ -60,6 +61,7 @@ public class CHPreparationHandler {
             throw new IllegalStateException("Use profiles_ch instead of prepare.ch.edge_based, see #1922 and docs/core/profiles.md");
 
         setPreparationThreads(ghConfig.getInt(CH.PREPARE + "threads", getPreparationThreads()));
+        setCustomizationThreads(ghConfig.getInt(CH.PREPARE + "customization_threads", getCustomizationThreads()));
         setCHProfiles(ghConfig.getCHProfiles());
         pMap = ghConfig.asPMap();
     }
@@ -95,6 +97,18 @@ public class CHPreparationHandler {
         this.preparationThreads = preparationThreads;
     }
 
+    public int getCustomizationThreads() {
+        return customizationThreads;
+    }
+
+    /**
+     * The number of threads used to recalculate the shortcut weights of one CH preparation, see {@link CHCustomizer}.
+     * Default is 1.
+     */
+    public void setCustomizationThreads(int customizationThreads) {
+        this.customizationThreads = customizationThreads;
+    }
+
     public Map<String, RoutingCHGraph> load(BaseGraph graph, List<CHConfig> chConfigs) {
         Map<String, RoutingCHGraph> loaded = Collections.synchronizedMap(new LinkedHashMap<>());
         Stream<Runnable> runnables = chConfigs.stream()
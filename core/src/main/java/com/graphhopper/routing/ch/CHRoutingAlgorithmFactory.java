@@ -21,11 +21,14 @@ package com.graphhopper.routing.ch;
 import com.graphhopper.routing.*;
 import com.graphhopper.routing.querygraph.QueryGraph;
 import com.graphhopper.routing.querygraph.QueryRoutingCHGraph;
+import com.graphhopper.routing.weighting.WeightApproximator;
 import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.storage.RoutingCHGraph;
 import com.graphhopper.util.Helper;
 import com.graphhopper.util.PMap;
 
+import java.util.function.Supplier;
+
 import static com.graphhopper.util.Parameters.Algorithms.*;
 import static com.graphhopper.util.Parameters.Routing.*;
 
@@ -35,6 +38,7 @@ import static com.graphhopper.util.Parameters.Routing.*;
  */
 public class CHRoutingAlgorithmFactory {
     private final RoutingCHGraph routingCHGraph;
+    private Supplier<WeightApproximator> approximation;
 
     public CHRoutingAlgorithmFactory(RoutingCHGraph routingCHGraph, QueryGraph queryGraph) {
         this(new QueryRoutingCHGraph(routingCHGraph, queryGraph));
@@ -44,6 +48,15 @@ public class CHRoutingAlgorithmFactory {
         this.routingCHGraph = routingCHGraph;
     }
 
+    /**
+     * Sets the approximation that is used for {@code algorithm=astarbi} instead of the one given by the algorithm
+     * options, e.g. landmarks for a CH graph with a core. Every algorithm gets its own approximator.
+     */
+    public CHRoutingAlgorithmFactory setApproximation(Supplier<WeightApproximator> approximation) {
+        this.approximation = approximation;
+        return this;
+    }
+
     public EdgeToEdgeRoutingAlgorithm createAlgo(PMap opts) {
         EdgeToEdgeRoutingAlgorithm algo = routingCHGraph.isEdgeBased()
                 ? createAlgoEdgeBased(routingCHGraph, opts)
@@ -62,7 +75,7 @@ public class CHRoutingAlgorithmFactory {
             algo = defaultAlgo;
         if (ASTAR_BI.equals(algo)) {
             return new AStarBidirectionEdgeCHNoSOD(g)
-                    .setApproximation(RoutingAlgorithmFactorySimple.getApproximation(ASTAR_BI, opts, getWeighting(), g.getBaseGraph().getNodeAccess()));
+                    .setApproximation(getApproximation(g, opts));
         } else if (DIJKSTRA_BI.equals(algo)) {
             return new DijkstraBidirectionEdgeCHNoSOD(g);
         } else if (ALT_ROUTE.equalsIgnoreCase(algo)) {
@@ -80,7 +93,7 @@ public class CHRoutingAlgorithmFactory {
             algo = defaultAlgo;
         if (ASTAR_BI.equals(algo)) {
             return new AStarBidirectionCH(g)
-                    .setApproximation(RoutingAlgorithmFactorySimple.getApproximation(ASTAR_BI, opts, getWeighting(), g.getBaseGraph().getNodeAccess()));
+                    .setApproximation(getApproximation(g, opts));
         } else if (DIJKSTRA_BI.equals(algo) || Helper.isEmpty(algo)) {
             if (opts.getBool("stall_on_demand", true)) {
                 return new DijkstraBidirectionCH(g);
@@ -94,6 +107,12 @@ public class CHRoutingAlgorithmFactory {
         }
     }
 
+    private WeightApproximator getApproximation(RoutingCHGraph g, PMap opts) {
+        if (approximation != null)
+            return approximation.get();
+        return RoutingAlgorithmFactorySimple.getApproximation(ASTAR_BI, opts, getWeighting(), g.getBaseGraph().getNodeAccess());
+    }
+
     private Weighting getWeighting() {
         return routingCHGraph.getWeighting();
     }
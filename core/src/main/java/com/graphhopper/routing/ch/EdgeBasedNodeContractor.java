@@ -151,6 +151,12 @@ class EdgeBasedNodeContractor implements NodeContractor {
         return neighbors;
     }
 
+    @Override
+    public void insertCoreShortcuts(int node) {
+        insertShortcuts(node);
+        prepareGraph.disconnect(node);
+    }
+
     @Override
     public void finishContraction() {
         chBuilder.replaceSkippedEdges(prepareGraph::getShortcutForPrepareEdge);
@@ -187,6 +187,12 @@ class NodeBasedNodeContractor implements NodeContractor {
         }
     }
 
+    @Override
+    public void insertCoreShortcuts(int node) {
+        insertShortcuts(node);
+        prepareGraph.disconnect(node);
+    }
+
     @Override
     public void finishContraction() {
         // during contraction the skip1/2 edges of shortcuts refer to the prepare edge-ids *not* the final shortcut
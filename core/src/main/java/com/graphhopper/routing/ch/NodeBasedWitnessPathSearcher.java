@@ -33,10 +33,12 @@ public class NodeBasedWitnessPathSearcher {
     private final double[] weights;
     private final IntArrayList changedNodes;
     private final IntFloatBinaryHeap heap;
+    private final CHPreparationGraph graph;
     private int ignoreNode = -1;
     private int settledNodes = 0;
 
     public NodeBasedWitnessPathSearcher(CHPreparationGraph graph) {
+        this.graph = graph;
         outEdgeExplorer = graph.createOutEdgeExplorer();
         weights = new double[graph.getNodes()];
         Arrays.fill(weights, Double.POSITIVE_INFINITY);
@@ -87,6 +89,9 @@ public class NodeBasedWitnessPathSearcher {
                 int adjNode = iter.getAdjNode();
                 if (adjNode == ignoreNode)
                     continue;
+                // the weights of the edges within the core can change at query time
+                if (graph.isCoreNode(node) && graph.isCoreNode(adjNode))
+                    continue;
                 double weight = weights[node] + iter.getWeight();
                 if (Double.isInfinite(weight))
                     continue;
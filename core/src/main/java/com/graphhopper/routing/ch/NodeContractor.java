@@ -37,6 +37,12 @@ public interface NodeContractor {
      */
     IntContainer contractNode(int node);
 
+    /**
+     * Inserts the remaining shortcuts of a node that is not contracted, because it belongs to the core, and removes
+     * the node from the graph. Nodes with a smaller level must have been handled already.
+     */
+    void insertCoreShortcuts(int node);
+
     void finishContraction();
 
     long getAddedShortcutsCount();
@@ -51,8 +51,8 @@ import static com.graphhopper.util.Helper.nf;
 public class PrepareContractionHierarchies {
     private final Logger logger = LoggerFactory.getLogger(getClass());
     private final CHConfig chConfig;
-    private final CHStorage chStore;
-    private final CHStorageBuilder chBuilder;
+    private CHStorage chStore;
+    private CHStorageBuilder chBuilder;
     private final Random rand = new Random(123);
     private final StopWatch allSW = new StopWatch();
     private final StopWatch periodicUpdateSW = new StopWatch();
@@ -61,6 +61,7 @@ public class PrepareContractionHierarchies {
     private final StopWatch contractionSW = new StopWatch();
     private final Params params;
     private final BaseGraph graph;
+    private final CHCore core;
     private NodeContractor nodeContractor;
     private final int nodes;
     private NodeOrderingProvider nodeOrderingProvider;
@@ -79,11 +80,10 @@ public class PrepareContractionHierarchies {
         if (!graph.isFrozen())
             throw new IllegalStateException("BaseGraph must be frozen before creating CHs");
         this.graph = graph;
-        chStore = CHStorage.fromGraph(graph, chConfig);
-        chBuilder = new CHStorageBuilder(chStore);
         this.chConfig = chConfig;
         params = Params.forTraversalMode(chConfig.getTraversalMode());
         nodes = graph.getNodes();
+        core = chConfig.getCore();
         if (chConfig.getTraversalMode().isEdgeBased()) {
             TurnCostStorage turnCostStorage = graph.getTurnCostStorage();
             if (turnCostStorage == null) {
@@ -100,6 +100,9 @@ public class PrepareContractionHierarchies {
         params.setMaxNeighborUpdates(pMap.getInt(NEIGHBOR_UPDATES_MAX, params.getMaxNeighborUpdates()));
         params.setNodesContractedPercentage(pMap.getInt(CONTRACTED_NODES, params.getNodesContractedPercentage()));
         params.setLogMessagesPercentage(pMap.getInt(LOG_MESSAGES, params.getLogMessagesPercentage()));
+        if (core != null && params.getNodesContractedPercentage() != 100)
+            throw new IllegalArgumentException("A CH preparation with a core must contract all other nodes, but "
+                    + CONTRACTED_NODES + " was " + params.getNodesContractedPercentage());
         return this;
     }
 
@@ -125,9 +128,9 @@ public class PrepareContractionHierarchies {
         if (!graph.isFrozen()) {
             throw new IllegalStateException("Given BaseGraph has not been frozen yet");
         }
-        if (chStore.getShortcuts() > 0) {
-            throw new IllegalStateException("Given CHStore already contains shortcuts");
-        }
+        // we create the storage only now, because its layout depends on the parameters
+        chStore = CHStorage.fromGraph(graph, chConfig, pMap.getBool(COMPACT_STORAGE, false));
+        chBuilder = new CHStorageBuilder(chStore);
         allSW.start();
         initFromGraph();
         runGraphContraction();
@@ -182,6 +185,7 @@ public class PrepareContractionHierarchies {
             prepareGraph = CHPreparationGraph.nodeBased(graph.getNodes(), graph.getEdges());
             nodeContractor = new NodeBasedNodeContractor(prepareGraph, chBuilder, pMap);
         }
+        prepareGraph.setCore(core);
         maxLevel = nodes;
         // we need a memory-efficient priority queue with an efficient update method
         // TreeMap is not memory-efficient and PriorityQueue does not support an efficient update method
@@ -202,7 +206,7 @@ public class PrepareContractionHierarchies {
         periodicUpdateSW.start();
         sortedNodes.clear();
         for (int node = 0; node < nodes; node++) {
-            if (isContracted(node))
+            if (isContracted(node) || isCoreNode(node))
                 continue;
             float priority = calculatePriority(node);
             sortedNodes.push(node, priority);
@@ -286,6 +290,8 @@ public class PrepareContractionHierarchies {
             int neighborCount = 0;
             // there might be multiple edges going to the same neighbor nodes -> only calculate priority once per node
             for (IntCursor neighbor : neighbors) {
+                if (isCoreNode(neighbor.value))
+                    continue;
                 if (neighborUpdate && (params.getMaxNeighborUpdates() < 0 || neighborCount < params.getMaxNeighborUpdates()) && rand.nextInt(100) < params.getNeighborUpdatePercentage()) {
                     neighborCount++;
                     neighborUpdateSW.start();
@@ -296,6 +302,7 @@ public class PrepareContractionHierarchies {
             }
         }
 
+        insertCoreShortcuts(level);
         nodeContractor.finishContraction();
 
         logHeuristicStats(updateCounter);
@@ -321,16 +328,20 @@ public class PrepareContractionHierarchies {
         final int logSize = Math.max(10, (int) (params.getLogMessagesPercentage() / 100.0 * nodesToContract));
         StopWatch stopWatch = new StopWatch();
         stopWatch.start();
+        int level = 0;
         for (int i = 0; i < nodesToContract; ++i) {
             stopIfInterrupted();
             int node = nodeOrderingProvider.getNodeIdForLevel(i);
-            contractNode(node, i);
+            if (isCoreNode(node))
+                continue;
+            contractNode(node, level++);
             if (i % logSize == 0) {
                 stopWatch.stop();
                 logFixedNodeOrderingStats(i, logSize, stopWatch);
                 stopWatch.start();
             }
         }
+        insertCoreShortcuts(level);
         nodeContractor.finishContraction();
     }
 
@@ -350,6 +361,26 @@ public class PrepareContractionHierarchies {
         return neighbors;
     }
 
+    /**
+     * The core nodes are not contracted. They get the highest levels in the order of their ids and their shortcuts
+     * are stored like those of contracted nodes, but the routing treats them as if they all had the maximum level.
+     */
+    private void insertCoreShortcuts(int level) {
+        if (core == null)
+            return;
+        for (int node = 0; node < nodes; node++) {
+            if (!isCoreNode(node))
+                continue;
+            chBuilder.setLevel(node, level++);
+            nodeContractor.insertCoreShortcuts(node);
+        }
+        logger.info("Inserted the shortcuts of the {}, shortcuts: {}", core, nf(nodeContractor.getAddedShortcutsCount()));
+    }
+
+    private boolean isCoreNode(int node) {
+        return core != null && core.isCoreNode(node);
+    }
+
     private boolean isContracted(int node) {
         return chStore.getLevel(chStore.toNodePointer(node)) != maxLevel;
     }
@@ -62,6 +62,14 @@ public class LMRoutingAlgorithmFactory implements RoutingAlgorithmFactory {
             algo.setMaxVisitedNodes(opts.getMaxVisitedNodes());
             algo.setTimeoutMillis(opts.getTimeoutMillis());
             return algo;
+        } else if (ALT_ROUTE.equalsIgnoreCase(algoStr) && Parameters.Algorithms.AltRoute.PLATEAU.equalsIgnoreCase(
+                opts.getHints().getString(Parameters.Algorithms.AltRoute.METHOD, ""))) {
+            double epsilon = opts.getHints().getDouble(Parameters.Algorithms.AStar.EPSILON, 1);
+            AlternativeRoutePlateau algo = new AlternativeRoutePlateau(g, weighting, opts.getTraversalMode(), opts.getHints());
+            algo.setApproximation(getApproximator(g, weighting, activeLM, epsilon));
+            algo.setMaxVisitedNodes(opts.getMaxVisitedNodes());
+            algo.setTimeoutMillis(opts.getTimeoutMillis());
+            return algo;
         } else if (ALT_ROUTE.equalsIgnoreCase(algoStr)) {
             double epsilon = opts.getHints().getDouble(Parameters.Algorithms.AStarBi.EPSILON, 1);
             AlternativeRoute algo = new AlternativeRoute(g, weighting, opts.getTraversalMode(), opts.getHints());
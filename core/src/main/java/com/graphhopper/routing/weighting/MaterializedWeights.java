@@ -0,0 +1,126 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.weighting;
+
+import com.graphhopper.routing.util.AllEdgesIterator;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.storage.Directory;
+
+/**
+ * Stores the weight and the time of every edge of the base graph in both directions, so that they can be read by
+ * {@link MaterializedWeighting} instead of evaluating the weighting for every edge again and again. The entries are
+ * indexed by edge key, each entry has the format |weight (8 bytes)|millis (4 bytes)|.
+ *
+ * @see MaterializedWeighting
+ */
+public class MaterializedWeights {
+    static final int NO_MILLIS = -1;
+    private static final int E_WEIGHT = 0;
+    private static final int E_MILLIS = 8;
+    private static final int BYTES_PER_ENTRY = 12;
+
+    private final DataAccess da;
+    private int edges;
+    private int version;
+
+    public MaterializedWeights(Directory dir, String profileName) {
+        this.da = dir.create("weights_" + profileName);
+    }
+
+    public boolean loadExisting(BaseGraph graph, int version) {
+        if (!da.loadExisting())
+            return false;
+        if (da.getHeader(8) != BYTES_PER_ENTRY)
+            throw new IllegalStateException("Number of bytes per materialized weight entry does not match the current configuration: " + da.getHeader(8) + " vs. " + BYTES_PER_ENTRY);
+        if (da.getHeader(0) != version || da.getHeader(4) != graph.getEdges())
+            throw new IllegalStateException("The materialized weights " + da.getName() + " were created for a different profile or graph, " +
+                    "version: " + da.getHeader(0) + " vs. " + version + ", edges: " + da.getHeader(4) + " vs. " + graph.getEdges());
+        this.version = version;
+        this.edges = graph.getEdges();
+        return true;
+    }
+
+    /**
+     * Evaluates the given weighting for every edge of the graph. The version is used to detect changes of the
+     * weighting when loading the storage again, see {@link com.graphhopper.config.Profile#getVersion()}.
+     */
+    public MaterializedWeights build(BaseGraph graph, Weighting weighting, int version) {
+        this.version = version;
+        this.edges = graph.getEdges();
+        da.create((long) 2 * edges * BYTES_PER_ENTRY);
+        da.ensureCapacity((long) 2 * edges * BYTES_PER_ENTRY);
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next()) {
+            // the edge states of AllEdgesIterator are never reversed so reverse=true is the direction of the odd key
+            int edgeKey = iter.getEdgeKey();
+            set(edgeKey, weighting.calcEdgeWeight(iter, false), weighting.calcEdgeMillis(iter, false));
+            set(edgeKey ^ 1, weighting.calcEdgeWeight(iter, true), weighting.calcEdgeMillis(iter, true));
+        }
+        return this;
+    }
+
+    private void set(int edgeKey, double weight, long millis) {
+        long pointer = (long) edgeKey * BYTES_PER_ENTRY;
+        long bits = Double.doubleToRawLongBits(weight);
+        da.setInt(pointer + E_WEIGHT, (int) bits);
+        da.setInt(pointer + E_WEIGHT + 4, (int) (bits >>> 32));
+        // millis are only needed for post-processing, so we do not waste space for the rare edges that do not fit
+        da.setInt(pointer + E_MILLIS, millis >= 0 && millis < Integer.MAX_VALUE ? (int) millis : NO_MILLIS);
+    }
+
+    public double getWeight(int edgeKey) {
+        long pointer = (long) edgeKey * BYTES_PER_ENTRY;
+        long bits = ((long) da.getInt(pointer + E_WEIGHT + 4) << 32) | (da.getInt(pointer + E_WEIGHT) & 0xFFFF_FFFFL);
+        return Double.longBitsToDouble(bits);
+    }
+
+    /**
+     * @return the millis for the given edge key or {@link #NO_MILLIS} if they could not be stored
+     */
+    public int getMillis(int edgeKey) {
+        return da.getInt((long) edgeKey * BYTES_PER_ENTRY + E_MILLIS);
+    }
+
+    /**
+     * @return the number of edges covered by this storage. Edges with larger ids, like the virtual edges of a query
+     * graph, are not included.
+     */
+    public int getEdges() {
+        return edges;
+    }
+
+    public void flush() {
+        da.setHeader(0, version);
+        da.setHeader(4, edges);
+        da.setHeader(8, BYTES_PER_ENTRY);
+        da.flush();
+    }
+
+    public void close() {
+        da.close();
+    }
+
+    public boolean isClosed() {
+        return da.isClosed();
+    }
+
+    public long getCapacity() {
+        return da.getCapacity();
+    }
+}
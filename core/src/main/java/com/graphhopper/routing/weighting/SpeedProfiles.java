@@ -0,0 +1,210 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.weighting;
+
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.storage.Directory;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Stores historic speed profiles for the edges of the base graph. A profile describes the speed of an edge relative to
+ * its free-flow speed over one week in bins of 15 minutes, in percent from 1 to 100. Identical profiles are stored
+ * only once and every edge references one of them, or {@link #NO_PROFILE} for edges that are never slower.
+ * <p>
+ * The bins are in the local time of the configured time zone and the factor between two bins is interpolated linearly
+ * to avoid jumps at the boundary of a bin. The speed of an edge is the one at the time the edge is entered and it is
+ * used for the entire edge. So the FIFO property is not guaranteed: if the speed increases fast enough, e.g. at the end
+ * of a rush hour, entering a long edge later can lead to an earlier arrival.
+ *
+ * @see TimeDependentWeighting
+ */
+public class SpeedProfiles {
+    public static final int NO_PROFILE = 0;
+    public static final int BINS_PER_DAY = 24 * 4;
+    public static final int BINS_PER_WEEK = 7 * BINS_PER_DAY;
+    public static final long BIN_MILLIS = 15 * 60 * 1000L;
+    public static final long WEEK_MILLIS = BINS_PER_WEEK * BIN_MILLIS;
+    // 1970-01-01 was a Thursday, but the bins start on Monday
+    private static final long EPOCH_MILLIS_OF_WEEK = 3 * BINS_PER_DAY * BIN_MILLIS;
+
+    private final DataAccess profiles;
+    private final DataAccess edgeProfiles;
+    private final Map<ByteBuffer, Integer> profileIds = new HashMap<>();
+    private ZoneId zoneId = ZoneOffset.UTC;
+    private int profileCount;
+    private int edges;
+
+    public SpeedProfiles(Directory dir) {
+        this.profiles = dir.create("speed_profiles");
+        this.edgeProfiles = dir.create("speed_profile_edges");
+    }
+
+    /**
+     * Creates an empty storage, i.e. all edges of the given graph reference {@link #NO_PROFILE}.
+     */
+    public SpeedProfiles create(BaseGraph graph) {
+        edges = graph.getEdges();
+        edgeProfiles.create((long) edges * 4);
+        edgeProfiles.ensureCapacity((long) edges * 4);
+        for (long pointer = 0; pointer < (long) edges * 4; pointer += 4)
+            edgeProfiles.setInt(pointer, NO_PROFILE);
+        profiles.create(BINS_PER_WEEK);
+        byte[] free = new byte[BINS_PER_WEEK];
+        Arrays.fill(free, (byte) 100);
+        addBins(free);
+        return this;
+    }
+
+    public boolean loadExisting(BaseGraph graph) {
+        if (!profiles.loadExisting() || !edgeProfiles.loadExisting())
+            return false;
+        if (profiles.getHeader(0) != BINS_PER_WEEK)
+            throw new IllegalStateException("Number of bins per speed profile does not match the current configuration: " + profiles.getHeader(0) + " vs. " + BINS_PER_WEEK);
+        if (edgeProfiles.getHeader(0) != graph.getEdges())
+            throw new IllegalStateException("The speed profiles were created for a different graph, edges: " + edgeProfiles.getHeader(0) + " vs. " + graph.getEdges());
+        profileCount = profiles.getHeader(4);
+        edges = graph.getEdges();
+        return true;
+    }
+
+    /**
+     * The time zone of the bins, UTC by default.
+     */
+    public SpeedProfiles setZoneId(ZoneId zoneId) {
+        this.zoneId = zoneId;
+        return this;
+    }
+
+    public ZoneId getZoneId() {
+        return zoneId;
+    }
+
+    /**
+     * @param speedPercents the speed relative to the free-flow speed for every bin of the week starting on Monday
+     *                      00:00, or for every bin of a day if all days are the same
+     * @return the id of the profile, which is shared with identical profiles that were added before
+     */
+    public int addProfile(int[] speedPercents) {
+        if (speedPercents.length != BINS_PER_DAY && speedPercents.length != BINS_PER_WEEK)
+            throw new IllegalArgumentException("A speed profile needs " + BINS_PER_DAY + " or " + BINS_PER_WEEK + " values, but was: " + speedPercents.length);
+        byte[] bins = new byte[BINS_PER_WEEK];
+        for (int i = 0; i < BINS_PER_WEEK; i++) {
+            int percent = speedPercents[i % speedPercents.length];
+            if (percent < 1 || percent > 100)
+                throw new IllegalArgumentException("The values of a speed profile must be in [1, 100], but was: " + percent);
+            bins[i] = (byte) percent;
+        }
+        if (profileIds.isEmpty())
+            // after loading the dictionary is only needed if more profiles are added
+            for (int profile = 0; profile < profileCount; profile++) {
+                byte[] existing = new byte[BINS_PER_WEEK];
+                profiles.getBytes((long) profile * BINS_PER_WEEK, existing, BINS_PER_WEEK);
+                profileIds.putIfAbsent(ByteBuffer.wrap(existing), profile);
+            }
+        Integer profile = profileIds.get(ByteBuffer.wrap(bins));
+        return profile == null ? addBins(bins) : profile;
+    }
+
+    private int addBins(byte[] bins) {
+        int profile = profileCount;
+        profiles.ensureCapacity((long) (profile + 1) * BINS_PER_WEEK);
+        profiles.setBytes((long) profile * BINS_PER_WEEK, bins, BINS_PER_WEEK);
+        profileIds.put(ByteBuffer.wrap(bins), profile);
+        profileCount++;
+        return profile;
+    }
+
+    public void setProfile(int edge, int profile) {
+        if (profile < 0 || profile >= profileCount)
+            throw new IllegalArgumentException("Unknown speed profile: " + profile);
+        edgeProfiles.setInt((long) edge * 4, profile);
+    }
+
+    public int getProfile(int edge) {
+        return edgeProfiles.getInt((long) edge * 4);
+    }
+
+    /**
+     * @param millisOfWeek the local time since Monday 00:00, see {@link #getMillisOfWeek}
+     * @return the factor in (0, 1] by which the speed of the given edge is reduced at the given time
+     */
+    public double getSpeedFactor(int edge, long millisOfWeek) {
+        int profile = getProfile(edge);
+        if (profile == NO_PROFILE)
+            return 1;
+        // the values are located in the middle of their bins
+        double position = (double) Math.floorMod(millisOfWeek - BIN_MILLIS / 2, WEEK_MILLIS) / BIN_MILLIS;
+        int bin = (int) position;
+        long pointer = (long) profile * BINS_PER_WEEK;
+        int first = profiles.getByte(pointer + bin);
+        int second = profiles.getByte(pointer + (bin + 1) % BINS_PER_WEEK);
+        return (first + (second - first) * (position - bin)) / 100;
+    }
+
+    /**
+     * @return the local time since Monday 00:00 of the week of the given time
+     */
+    public long getMillisOfWeek(long epochMillis) {
+        long offsetMillis = zoneId.getRules().getOffset(Instant.ofEpochMilli(epochMillis)).getTotalSeconds() * 1000L;
+        return Math.floorMod(epochMillis + offsetMillis + EPOCH_MILLIS_OF_WEEK, WEEK_MILLIS);
+    }
+
+    /**
+     * @return the number of profiles including {@link #NO_PROFILE}
+     */
+    public int getProfileCount() {
+        return profileCount;
+    }
+
+    /**
+     * @return the number of edges covered by this storage. Edges with larger ids, like the virtual edges of a query
+     * graph, are not included.
+     */
+    public int getEdges() {
+        return edges;
+    }
+
+    public void flush() {
+        profiles.setHeader(0, BINS_PER_WEEK);
+        profiles.setHeader(4, profileCount);
+        profiles.flush();
+        edgeProfiles.setHeader(0, edges);
+        edgeProfiles.flush();
+    }
+
+    public void close() {
+        profiles.close();
+        edgeProfiles.close();
+    }
+
+    public boolean isClosed() {
+        return profiles.isClosed();
+    }
+
+    public long getCapacity() {
+        return profiles.getCapacity() + edgeProfiles.getCapacity();
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.weighting;
+
+import com.graphhopper.routing.querygraph.VirtualEdgeIteratorState;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.GHUtility;
+
+/**
+ * A weighting that slows down the edges according to their {@link SpeedProfiles} at the time the edge is entered. The
+ * methods without a time return the free-flow values of the given weighting.
+ * <p>
+ * The additional travel time is added to the weight in seconds. So the weight is never smaller than the free-flow
+ * weight and the weight approximators, including landmarks, built for the given weighting stay valid.
+ */
+public class TimeDependentWeighting implements Weighting {
+    private final Weighting weighting;
+    private final SpeedProfiles speedProfiles;
+    private final Graph graph;
+    private final int edges;
+
+    /**
+     * @param graph the graph the edges belong to, used to find the original edges of virtual edges
+     */
+    public TimeDependentWeighting(Weighting weighting, SpeedProfiles speedProfiles, Graph graph) {
+        this.weighting = weighting;
+        this.speedProfiles = speedProfiles;
+        this.graph = graph;
+        this.edges = speedProfiles.getEdges();
+    }
+
+    /**
+     * @param millisOfWeek the local time when the edge is entered, see {@link SpeedProfiles#getMillisOfWeek}
+     */
+    public long calcEdgeMillis(EdgeIteratorState edgeState, boolean reverse, long millisOfWeek) {
+        long millis = weighting.calcEdgeMillis(edgeState, reverse);
+        return Math.round(millis / getSpeedFactor(edgeState, millisOfWeek));
+    }
+
+    /**
+     * @param millisOfWeek the local time when the edge is entered, see {@link SpeedProfiles#getMillisOfWeek}
+     */
+    public double calcEdgeWeight(EdgeIteratorState edgeState, boolean reverse, long millisOfWeek) {
+        double weight = weighting.calcEdgeWeight(edgeState, reverse);
+        if (Double.isInfinite(weight))
+            return weight;
+        double factor = getSpeedFactor(edgeState, millisOfWeek);
+        if (factor == 1)
+            return weight;
+        long millis = weighting.calcEdgeMillis(edgeState, reverse);
+        return weight + (Math.round(millis / factor) - millis) / 1000.0;
+    }
+
+    private double getSpeedFactor(EdgeIteratorState edgeState, long millisOfWeek) {
+        int edge = edgeState.getEdge();
+        if (edge >= edges) {
+            EdgeIteratorState virtualEdge = graph.getEdgeIteratorState(edge, edgeState.getAdjNode());
+            if (!(virtualEdge instanceof VirtualEdgeIteratorState))
+                return 1;
+            edge = GHUtility.getEdgeFromEdgeKey(((VirtualEdgeIteratorState) virtualEdge).getOriginalEdgeKey());
+        }
+        return speedProfiles.getSpeedFactor(edge, millisOfWeek);
+    }
+
+    public SpeedProfiles getSpeedProfiles() {
+        return speedProfiles;
+    }
+
+    @Override
+    public double calcMinWeightPerDistance() {
+        return weighting.calcMinWeightPerDistance();
+    }
+
+    @Override
+    public double calcEdgeWeight(EdgeIteratorState edgeState, boolean reverse) {
+        return weighting.calcEdgeWeight(edgeState, reverse);
+    }
+
+    @Override
+    public long calcEdgeMillis(EdgeIteratorState edgeState, boolean reverse) {
+        return weighting.calcEdgeMillis(edgeState, reverse);
+    }
+
+    @Override
+    public double calcTurnWeight(int inEdge, int viaNode, int outEdge) {
+        return weighting.calcTurnWeight(inEdge, viaNode, outEdge);
+    }
+
+    @Override
+    public long calcTurnMillis(int inEdge, int viaNode, int outEdge) {
+        return weighting.calcTurnMillis(inEdge, viaNode, outEdge);
+    }
+
+    @Override
+    public boolean hasTurnCosts() {
+        return weighting.hasTurnCosts();
+    }
+
+    @Override
+    public String getName() {
+        return weighting.getName();
+    }
+
+    @Override
+    public String toString() {
+        return "time_dependent|" + weighting;
+    }
+}
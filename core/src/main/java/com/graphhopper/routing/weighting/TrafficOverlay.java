@@ -0,0 +1,226 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.weighting;
+
+import com.graphhopper.routing.ev.IntEncodedValue;
+import com.graphhopper.routing.util.AllEdgesIterator;
+import com.graphhopper.storage.BaseGraph;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Holds live traffic speeds for the edges of the base graph that can be updated while routing, without a reimport.
+ * Every edge direction has an optional entry with a speed in km/h, or {@link #BLOCKED}, and an expiry time after
+ * which the entry is ignored. The entries are stored in an {@link AtomicLongArray}, so updates need no locking and
+ * become visible to the following requests.
+ *
+ * @see TrafficWeighting
+ */
+public class TrafficOverlay {
+    public static final int BLOCKED = 0;
+    public static final int MAX_SPEED = 0xFFFF;
+    /**
+     * The flags of a record of a binary batch, see {@link #applyUpdates(InputStream, long)}
+     */
+    public static final int FORWARD = 1, BACKWARD = 2, WAY_ID = 4;
+    private static final long NO_ENTRY = 0;
+
+    private final BaseGraph graph;
+    private final IntEncodedValue wayIdEnc;
+    private final AtomicLongArray entries;
+    private final AtomicLong updates = new AtomicLong();
+    // the times at which entries expire, which can include entries that were overwritten or removed in the meantime
+    private final ConcurrentSkipListSet<Long> expiries = new ConcurrentSkipListSet<>();
+    // the sorted way ids in the upper and the edge ids in the lower 32 bits, created for the first update by way id
+    private volatile long[] wayEdges;
+
+    /**
+     * @param wayIdEnc the encoded value of the OSM way ids, null if the edges can only be updated by edge id
+     */
+    public TrafficOverlay(BaseGraph graph, IntEncodedValue wayIdEnc) {
+        this.graph = graph;
+        this.wayIdEnc = wayIdEnc;
+        this.entries = new AtomicLongArray(graph.getEdges() * 2);
+    }
+
+    /**
+     * @param speed        the speed in km/h, or {@link #BLOCKED}
+     * @param expiryMillis the time in milliseconds since the epoch after which the speed is no longer used
+     */
+    public void setSpeed(int edgeKey, int speed, long expiryMillis) {
+        if (speed < 0 || speed > MAX_SPEED)
+            throw new IllegalArgumentException("The speed must be in [0, " + MAX_SPEED + "], but was: " + speed);
+        if (expiryMillis <= 0)
+            throw new IllegalArgumentException("The expiry time must be positive, but was: " + expiryMillis);
+        long expirySeconds = expiryMillis / 1000 + 1;
+        entries.set(edgeKey, expirySeconds << 16 | speed);
+        expiries.add(expirySeconds * 1000);
+        updates.incrementAndGet();
+    }
+
+    public void removeSpeed(int edgeKey) {
+        entries.set(edgeKey, NO_ENTRY);
+        updates.incrementAndGet();
+    }
+
+    /**
+     * @return the speed in km/h for the given edge direction, {@link #BLOCKED} or NaN if there is no entry or it
+     * expired at the given time
+     */
+    public double getSpeed(int edgeKey, long nowMillis) {
+        long entry = entries.get(edgeKey);
+        if (entry == NO_ENTRY || (entry >>> 16) * 1000 <= nowMillis)
+            return Double.NaN;
+        return entry & 0xFFFF;
+    }
+
+    /**
+     * Reads a batch of updates from the given stream until it ends. Every record consists of
+     * <ul>
+     * <li>1 byte with the flags: {@link #FORWARD}, {@link #BACKWARD} and {@link #WAY_ID} if the id is an OSM way id
+     * instead of an edge id. The directions of a way id refer to the direction of the way.</li>
+     * <li>4 bytes with the edge or way id</li>
+     * <li>2 bytes with the unsigned speed in km/h, 0 blocks the edge</li>
+     * <li>4 bytes with the time to live in seconds, 0 removes the entry</li>
+     * </ul>
+     * All numbers are big-endian. Unknown edge or way ids are skipped and the records before an invalid record stay
+     * applied.
+     *
+     * @return the number of updated edge directions
+     */
+    public int applyUpdates(InputStream stream, long nowMillis) throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+        int updated = 0;
+        int flags;
+        while ((flags = in.read()) >= 0) {
+            int id, speed, ttlSeconds;
+            try {
+                id = in.readInt();
+                speed = in.readUnsignedShort();
+                ttlSeconds = in.readInt();
+            } catch (EOFException ex) {
+                throw new IllegalArgumentException("Incomplete traffic update record after " + updated + " updates");
+            }
+            if ((flags & ~(FORWARD | BACKWARD | WAY_ID)) != 0)
+                throw new IllegalArgumentException("Unknown flags in traffic update record: " + flags);
+            if (ttlSeconds < 0)
+                throw new IllegalArgumentException("The time to live must not be negative, but was: " + ttlSeconds);
+            if ((flags & WAY_ID) == 0) {
+                if (id >= 0 && id < graph.getEdges())
+                    updated += update(id, flags, speed, ttlSeconds, nowMillis);
+                continue;
+            }
+            long[] wayEdges = getWayEdges();
+            int index = Arrays.binarySearch(wayEdges, (long) id << 32);
+            // unless the way contains edge 0 this is the insertion point, i.e. the first edge of the way
+            for (index = index < 0 ? -index - 1 : index; index < wayEdges.length && wayEdges[index] >>> 32 == id; index++)
+                updated += update((int) wayEdges[index], flags, speed, ttlSeconds, nowMillis);
+        }
+        return updated;
+    }
+
+    private int update(int edge, int flags, int speed, int ttlSeconds, long nowMillis) {
+        int updated = 0;
+        if ((flags & FORWARD) != 0) {
+            update(edge * 2, speed, ttlSeconds, nowMillis);
+            updated++;
+        }
+        if ((flags & BACKWARD) != 0) {
+            update(edge * 2 + 1, speed, ttlSeconds, nowMillis);
+            updated++;
+        }
+        return updated;
+    }
+
+    private void update(int edgeKey, int speed, int ttlSeconds, long nowMillis) {
+        if (ttlSeconds == 0)
+            removeSpeed(edgeKey);
+        else
+            setSpeed(edgeKey, speed, nowMillis + ttlSeconds * 1000L);
+    }
+
+    private long[] getWayEdges() {
+        if (wayIdEnc == null)
+            throw new IllegalArgumentException("Traffic updates by way id require the encoded value osm_way_id");
+        long[] result = wayEdges;
+        if (result == null) {
+            synchronized (this) {
+                result = wayEdges;
+                if (result == null) {
+                    result = new long[graph.getEdges()];
+                    AllEdgesIterator iter = graph.getAllEdges();
+                    while (iter.next())
+                        result[iter.getEdge()] = (long) iter.get(wayIdEnc) << 32 | iter.getEdge();
+                    Arrays.sort(result);
+                    wayEdges = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of edge directions covered by the overlay, i.e. twice the number of edges of the base graph
+     */
+    public int getEdgeKeys() {
+        return entries.length();
+    }
+
+    /**
+     * @return the number of entries that were set or removed since the start
+     */
+    public long getUpdates() {
+        return updates.get();
+    }
+
+    /**
+     * Returns the earliest time after the given time at which an entry expires, and therefore the speeds change
+     * without an update. This is used to limit how long results that depend on the current speeds can be cached. The
+     * time is not exact: it can be earlier than necessary if the entry was overwritten or removed in the meantime.
+     *
+     * @return the time in milliseconds since the epoch or Long.MAX_VALUE if no entry expires after the given time
+     */
+    public long getNextExpiryMillis(long nowMillis) {
+        while (true) {
+            Long first = expiries.ceiling(Long.MIN_VALUE);
+            if (first == null)
+                return Long.MAX_VALUE;
+            if (first > nowMillis)
+                return first;
+            expiries.remove(first);
+        }
+    }
+
+    /**
+     * @return the number of edge directions with an entry that did not expire at the given time
+     */
+    public int getActiveEntries(long nowMillis) {
+        int count = 0;
+        for (int edgeKey = 0; edgeKey < entries.length(); edgeKey++)
+            if (!Double.isNaN(getSpeed(edgeKey, nowMillis)))
+                count++;
+        return count;
+    }
+}
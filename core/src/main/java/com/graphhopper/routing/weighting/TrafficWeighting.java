@@ -0,0 +1,108 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.weighting;
+
+import com.graphhopper.routing.querygraph.VirtualEdgeIteratorState;
+import com.graphhopper.util.EdgeIteratorState;
+
+/**
+ * A weighting that considers the live speeds of a {@link TrafficOverlay} that did not expire at the time the weighting
+ * was created. Edges are only slowed down, never sped up: the additional travel time is added to the weight in seconds
+ * and blocked edges get an infinite weight. So the weight approximators, including landmarks, built for the given
+ * weighting stay valid.
+ */
+public class TrafficWeighting implements Weighting {
+    private final static double SPEED_CONV = 3600;
+    private final Weighting weighting;
+    private final TrafficOverlay overlay;
+    private final long nowMillis;
+    private final int edgeKeys;
+
+    public TrafficWeighting(Weighting weighting, TrafficOverlay overlay, long nowMillis) {
+        this.weighting = weighting;
+        this.overlay = overlay;
+        this.nowMillis = nowMillis;
+        this.edgeKeys = overlay.getEdgeKeys();
+    }
+
+    @Override
+    public double calcMinWeightPerDistance() {
+        return weighting.calcMinWeightPerDistance();
+    }
+
+    @Override
+    public double calcEdgeWeight(EdgeIteratorState edgeState, boolean reverse) {
+        double weight = weighting.calcEdgeWeight(edgeState, reverse);
+        if (Double.isInfinite(weight))
+            return weight;
+        double speed = getSpeed(edgeState, reverse);
+        if (Double.isNaN(speed))
+            return weight;
+        if (speed == TrafficOverlay.BLOCKED)
+            return Double.POSITIVE_INFINITY;
+        long millis = weighting.calcEdgeMillis(edgeState, reverse);
+        long trafficMillis = Math.round(edgeState.getDistance() / speed * SPEED_CONV);
+        return trafficMillis > millis ? weight + (trafficMillis - millis) / 1000.0 : weight;
+    }
+
+    @Override
+    public long calcEdgeMillis(EdgeIteratorState edgeState, boolean reverse) {
+        long millis = weighting.calcEdgeMillis(edgeState, reverse);
+        double speed = getSpeed(edgeState, reverse);
+        if (Double.isNaN(speed) || speed == TrafficOverlay.BLOCKED)
+            return millis;
+        return Math.max(millis, Math.round(edgeState.getDistance() / speed * SPEED_CONV));
+    }
+
+    private double getSpeed(EdgeIteratorState edgeState, boolean reverse) {
+        int edgeKey = edgeState.getEdgeKey();
+        if (edgeKey >= edgeKeys) {
+            // the virtual edges of a query graph have the speed of the edge they were split from
+            EdgeIteratorState virtualEdge = edgeState.detach(false);
+            if (!(virtualEdge instanceof VirtualEdgeIteratorState))
+                return Double.NaN;
+            edgeKey = ((VirtualEdgeIteratorState) virtualEdge).getOriginalEdgeKey();
+        }
+        return overlay.getSpeed(reverse ? edgeKey ^ 1 : edgeKey, nowMillis);
+    }
+
+    @Override
+    public double calcTurnWeight(int inEdge, int viaNode, int outEdge) {
+        return weighting.calcTurnWeight(inEdge, viaNode, outEdge);
+    }
+
+    @Override
+    public long calcTurnMillis(int inEdge, int viaNode, int outEdge) {
+        return weighting.calcTurnMillis(inEdge, viaNode, outEdge);
+    }
+
+    @Override
+    public boolean hasTurnCosts() {
+        return weighting.hasTurnCosts();
+    }
+
+    @Override
+    public String getName() {
+        return weighting.getName();
+    }
+
+    @Override
+    public String toString() {
+        return "traffic|" + weighting;
+    }
+}
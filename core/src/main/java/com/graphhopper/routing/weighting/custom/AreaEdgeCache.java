@@ -0,0 +1,205 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.weighting.custom;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.cursors.IntCursor;
+import com.graphhopper.coll.GHBitSet;
+import com.graphhopper.coll.GHBitSetImpl;
+import com.graphhopper.coll.GHTBitSet;
+import com.graphhopper.json.Statement;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.index.LocationIndex;
+import com.graphhopper.util.CustomModel;
+import com.graphhopper.util.JsonFeature;
+import com.graphhopper.util.shapes.Polygon;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.Polygonal;
+import org.locationtech.jts.geom.prep.PreparedPolygon;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.graphhopper.routing.weighting.custom.CustomModelParser.IN_AREA_PREFIX;
+
+/**
+ * Stores the edges of the base graph that are inside the areas of custom models, so that the in_* conditions do not
+ * need to intersect the area with the geometry of every edge. The candidate edges are fetched from the location index
+ * for the bounding box of the area and are then checked with {@link CustomWeightingHelper#in}, i.e. the result is
+ * identical to the direct check.
+ * <p>
+ * The areas of the profiles are calculated once via {@link #addProfileArea} and kept. The areas of requests are
+ * calculated when they are used for the second time, so that areas that are used only once do not pay for it, and the
+ * least recently used ones are evicted. Small areas are stored as hash set, large areas as bit set.
+ */
+public class AreaEdgeCache {
+    private final BaseGraph graph;
+    private final LocationIndex locationIndex;
+    private final int edgeCount;
+    private final int maxSize;
+    private final Map<Geometry, GHBitSet> profileAreas = new ConcurrentHashMap<>();
+    private final Map<Geometry, Entry> requestAreas;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param maxSize the maximum number of request areas that are stored, 0 disables the cache for request areas
+     */
+    public AreaEdgeCache(BaseGraph graph, LocationIndex locationIndex, int maxSize) {
+        if (maxSize < 0)
+            throw new IllegalArgumentException("The size of the area cache must not be negative, but was: " + maxSize);
+        this.graph = graph;
+        this.locationIndex = locationIndex;
+        this.edgeCount = graph.getEdges();
+        this.maxSize = maxSize;
+        // use accessOrder==true to remove the least recently accessed entry, not the oldest inserted
+        this.requestAreas = Collections.synchronizedMap(new LinkedHashMap<>(Math.min(maxSize, 1 << 10), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Geometry, Entry> eldest) {
+                return size() > AreaEdgeCache.this.maxSize;
+            }
+        });
+    }
+
+    /**
+     * Calculates the edges inside all areas of the given custom model of a profile that are used in its statements.
+     */
+    public void addProfileAreas(CustomModel customModel) {
+        for (JsonFeature feature : customModel.getAreas().getFeatures()) {
+            String variable = IN_AREA_PREFIX + feature.getId();
+            if (feature.getGeometry() instanceof Polygonal
+                    && (isUsed(variable, customModel.getPriority()) || isUsed(variable, customModel.getSpeed())))
+                addProfileArea(feature.getGeometry());
+        }
+    }
+
+    private static boolean isUsed(String variable, List<Statement> statements) {
+        for (Statement statement : statements) {
+            // this can also match e.g. in_ab for in_a, which only costs a bit of memory
+            if (statement.condition() != null && statement.condition().contains(variable))
+                return true;
+            if (statement.isBlock() && isUsed(variable, statement.doBlock()))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Calculates the edges inside the given area of a profile. These are never evicted.
+     */
+    public void addProfileArea(Geometry geometry) {
+        profileAreas.computeIfAbsent(geometry, this::calcEdges);
+    }
+
+    /**
+     * @return the edges inside the given area or null if they were not calculated (yet)
+     */
+    public GHBitSet getEdges(Geometry geometry) {
+        GHBitSet edges = profileAreas.get(geometry);
+        if (edges == null && maxSize > 0) {
+            Entry entry = requestAreas.get(geometry);
+            if (entry == null) {
+                requestAreas.put(geometry, new Entry());
+            } else {
+                edges = entry.edges;
+                if (edges == null) {
+                    // used for the second time. We do not care if multiple threads calculate the same area here.
+                    edges = calcEdges(geometry);
+                    entry.edges = edges;
+                }
+            }
+        }
+        if (edges == null)
+            misses.increment();
+        else
+            hits.increment();
+        return edges;
+    }
+
+    private GHBitSet calcEdges(Geometry geometry) {
+        if (!(geometry instanceof Polygonal))
+            throw new IllegalArgumentException("Currently only type=Polygon is supported for areas but was " + geometry.getGeometryType());
+        Polygon polygon = new Polygon(new PreparedPolygon((Polygonal) geometry));
+        IntArrayList inside = new IntArrayList();
+        locationIndex.query(polygon.getBounds(), edgeId -> {
+            if (CustomWeightingHelper.in(polygon, graph.getEdgeIteratorState(edgeId, Integer.MIN_VALUE)))
+                inside.add(edgeId);
+        });
+        // a hash set needs roughly 8 bytes per entry and a bit set one bit per edge of the graph
+        GHBitSet edges = (long) inside.size() * 64 < edgeCount ? new GHTBitSet(inside.size()) : new GHBitSetImpl(edgeCount);
+        for (IntCursor cursor : inside)
+            edges.add(cursor.value);
+        return edges;
+    }
+
+    /**
+     * @return the number of edges the stored sets are valid for. Edges with a larger id are virtual edges.
+     */
+    public int getEdgeCount() {
+        return edgeCount;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int getProfileAreaCount() {
+        return profileAreas.size();
+    }
+
+    public int getRequestAreaCount() {
+        return requestAreas.size();
+    }
+
+    /**
+     * @return the estimated heap size of the stored edge sets
+     */
+    public long getEstimatedBytes() {
+        long bytes = 0;
+        for (GHBitSet edges : profileAreas.values())
+            bytes += estimateBytes(edges);
+        synchronized (requestAreas) {
+            for (Entry entry : requestAreas.values())
+                bytes += estimateBytes(entry.edges);
+        }
+        return bytes;
+    }
+
+    private static long estimateBytes(GHBitSet edges) {
+        if (edges == null)
+            return 0;
+        // see calcEdges
+        return edges instanceof GHBitSetImpl ? ((GHBitSetImpl) edges).size() / 8 : 8L * edges.getCardinality();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    private static class Entry {
+        volatile GHBitSet edges;
+    }
+}
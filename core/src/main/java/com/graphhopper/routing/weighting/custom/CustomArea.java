@@ -0,0 +1,58 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.weighting.custom;
+
+import com.graphhopper.coll.GHBitSet;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.shapes.Polygon;
+
+/**
+ * An area of a custom model that is used for the in_* conditions. If the edges of the base graph that are inside the
+ * area were precalculated (see {@link AreaEdgeCache}), the check is a bit lookup. Otherwise, e.g. for virtual edges,
+ * the geometry of the edge is intersected with the polygon.
+ */
+public final class CustomArea {
+    private final Polygon polygon;
+    private final GHBitSet edges;
+    private final int edgeCount;
+
+    /**
+     * @param edges     the edges that are inside the polygon or null if they are unknown
+     * @param edgeCount the number of edges for which the edges set is valid
+     */
+    public CustomArea(Polygon polygon, GHBitSet edges, int edgeCount) {
+        this.polygon = polygon;
+        this.edges = edges;
+        this.edgeCount = edgeCount;
+    }
+
+    public boolean contains(EdgeIteratorState edge) {
+        int edgeId = edge.getEdge();
+        if (edges != null && edgeId < edgeCount)
+            return edges.contains(edgeId);
+        return CustomWeightingHelper.in(polygon, edge);
+    }
+
+    public boolean isPrecalculated() {
+        return edges != null;
+    }
+
+    public Polygon getPolygon() {
+        return polygon;
+    }
+}
@@ -22,7 +22,6 @@ import com.graphhopper.routing.ev.*;
 import com.graphhopper.routing.weighting.TurnCostProvider;
 import com.graphhopper.util.*;
 import com.graphhopper.util.shapes.BBox;
-import com.graphhopper.util.shapes.Polygon;
 import org.codehaus.commons.compiler.CompileException;
 import org.codehaus.commons.compiler.Location;
 import org.codehaus.commons.compiler.io.Readers;
@@ -30,12 +29,13 @@ import org.codehaus.janino.Scanner;
 import org.codehaus.janino.*;
 import org.codehaus.janino.util.DeepCopier;
 import org.locationtech.jts.geom.Polygonal;
-import org.locationtech.jts.geom.prep.PreparedPolygon;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 import static com.graphhopper.json.Statement.Keyword.IF;
 
@@ -50,7 +50,7 @@ public class CustomModelParser {
     // CH requests and preparation is unaffected as cached weighting from preparation is used.
     // Use accessOrder==true to remove oldest accessed entry, not oldest inserted.
     private static final int CACHE_SIZE = Integer.getInteger("graphhopper.custom_weighting.cache_size", 1000);
-    private static final Map<String, Class<?>> CACHE = Collections.synchronizedMap(
+    private static final Map<ClassKey, Class<?>> CACHE = Collections.synchronizedMap(
             new LinkedHashMap<>(CACHE_SIZE, 0.75f, true) {
                 protected boolean removeEldestEntry(Map.Entry eldest) {
                     return size() > CACHE_SIZE;
@@ -61,7 +61,30 @@ public class CustomModelParser {
     // of how frequent other Weightings are created and accessed. We only need to synchronize the get and put methods alone.
     // E.g. we do not care for the race condition where two identical classes are requested and one of them is overwritten.
     // TODO perf compare with ConcurrentHashMap, but I guess, if there is a difference at all, it is not big for small maps
-    private static final Map<String, Class<?>> INTERNAL_CACHE = Collections.synchronizedMap(new HashMap<>());
+    private static final Map<ClassKey, Class<?>> INTERNAL_CACHE = Collections.synchronizedMap(new HashMap<>());
+
+    // With background compilation enabled a cache miss does not wait for Janino. Instead, the custom model is
+    // interpreted for this request and compiled in the background for the following requests. We limit the number of
+    // queued compilations: if clients send many different custom models the ones that are requested again are compiled
+    // later.
+    private static volatile boolean backgroundCompilation = Boolean.getBoolean("graphhopper.custom_weighting.background_compilation");
+    private static final int MAX_PENDING_COMPILATIONS = 100;
+    private static final Map<ClassKey, Future<Class<?>>> PENDING = new ConcurrentHashMap<>();
+    // custom models whose background compilation failed are always interpreted and not compiled again
+    private static final Set<ClassKey> FAILED = Collections.newSetFromMap(Collections.synchronizedMap(
+            new LinkedHashMap<>(16, 0.75f, true) {
+                protected boolean removeEldestEntry(Map.Entry eldest) {
+                    return size() > Math.max(CACHE_SIZE, MAX_PENDING_COMPILATIONS);
+                }
+            }));
+    private static ExecutorService compilationExecutor;
+
+    private static final LongAdder cacheHits = new LongAdder();
+    private static final LongAdder cacheMisses = new LongAdder();
+    private static final LongAdder compilations = new LongAdder();
+    private static final LongAdder compilationNanos = new LongAdder();
+    private static final LongAdder bytecodeBytes = new LongAdder();
+    private static final LongAdder interpretedWeightings = new LongAdder();
 
     private CustomModelParser() {
         // utility class
@@ -73,57 +96,206 @@ public class CustomModelParser {
      * an if-elseif-else group.
      */
     public static CustomWeighting createWeighting(EncodedValueLookup lookup, TurnCostProvider turnCostProvider, CustomModel customModel) {
+        return createWeighting(lookup, turnCostProvider, customModel, null);
+    }
+
+    /**
+     * @param areaEdgeCache the precalculated edges of the areas or null to intersect the areas with every edge
+     */
+    public static CustomWeighting createWeighting(EncodedValueLookup lookup, TurnCostProvider turnCostProvider, CustomModel customModel,
+                                                  AreaEdgeCache areaEdgeCache) {
         if (customModel == null)
             throw new IllegalStateException("CustomModel cannot be null");
-        CustomWeighting.Parameters parameters = createWeightingParameters(customModel, lookup);
+        CustomWeighting.Parameters parameters = createWeightingParameters(customModel, lookup, areaEdgeCache);
         return new CustomWeighting(turnCostProvider, parameters);
     }
 
     public static CustomWeighting2 createWeighting2(EncodedValueLookup lookup, TurnCostProvider turnCostProvider, CustomModel customModel) {
+        return createWeighting2(lookup, turnCostProvider, customModel, null);
+    }
+
+    public static CustomWeighting2 createWeighting2(EncodedValueLookup lookup, TurnCostProvider turnCostProvider, CustomModel customModel,
+                                                    AreaEdgeCache areaEdgeCache) {
         if (customModel == null)
             throw new IllegalStateException("CustomModel cannot be null");
-        CustomWeighting.Parameters parameters = createWeightingParameters(customModel, lookup);
+        CustomWeighting.Parameters parameters = createWeightingParameters(customModel, lookup, areaEdgeCache);
         return new CustomWeighting2(turnCostProvider, parameters);
     }
 
+    public static CustomWeighting.Parameters createWeightingParameters(CustomModel customModel, EncodedValueLookup lookup) {
+        return createWeightingParameters(customModel, lookup, null);
+    }
+
     /**
      * This method compiles a new subclass of CustomWeightingHelper composed of the provided CustomModel caches this
-     * and returns an instance.
+     * and returns an instance. If background compilation is enabled and the class is not yet cached, an interpreting
+     * CustomWeightingHelper is used instead while the class is compiled.
      */
-    public static CustomWeighting.Parameters createWeightingParameters(CustomModel customModel, EncodedValueLookup lookup) {
-        String key = customModel.toString();
+    public static CustomWeighting.Parameters createWeightingParameters(CustomModel customModel, EncodedValueLookup lookup,
+                                                                       AreaEdgeCache areaEdgeCache) {
+        ClassKey key = new ClassKey(customModel);
         Class<?> clazz = customModel.isInternal() ? INTERNAL_CACHE.get(key) : null;
         if (CACHE_SIZE > 0 && clazz == null)
             clazz = CACHE.get(key);
-        if (clazz == null) {
-            clazz = createClazz(customModel, lookup);
-            if (customModel.isInternal()) {
-                INTERNAL_CACHE.put(key, clazz);
-                if (INTERNAL_CACHE.size() > 100) {
-                    CACHE.putAll(INTERNAL_CACHE);
-                    INTERNAL_CACHE.clear();
-                    LoggerFactory.getLogger(CustomModelParser.class).warn("Internal cache must stay small but was "
-                            + INTERNAL_CACHE.size() + ". Cleared it. Misuse of CustomModel::internal?");
+
+        CustomWeightingHelper helper;
+        if (clazz != null) {
+            cacheHits.increment();
+            helper = createHelper(clazz);
+        } else {
+            cacheMisses.increment();
+            if (backgroundCompilation && CACHE_SIZE > 0 && !customModel.isInternal()) {
+                helper = createHelperWhileCompiling(key, customModel, lookup);
+            } else {
+                clazz = createClazz(customModel, lookup);
+                if (customModel.isInternal()) {
+                    INTERNAL_CACHE.put(key, clazz);
+                    if (INTERNAL_CACHE.size() > 100) {
+                        CACHE.putAll(INTERNAL_CACHE);
+                        INTERNAL_CACHE.clear();
+                        LoggerFactory.getLogger(CustomModelParser.class).warn("Internal cache must stay small but was "
+                                + INTERNAL_CACHE.size() + ". Cleared it. Misuse of CustomModel::internal?");
+                    }
+                } else if (CACHE_SIZE > 0) {
+                    CACHE.put(key, clazz);
                 }
-            } else if (CACHE_SIZE > 0) {
-                CACHE.put(key, clazz);
+                helper = createHelper(clazz);
             }
         }
 
+        helper.setAreaEdgeCache(areaEdgeCache);
+        helper.init(customModel, lookup, CustomModel.getAreasAsMap(customModel.getAreas()));
+        return new CustomWeighting.Parameters(
+                helper::getSpeed, helper::calcMaxSpeed,
+                helper::getPriority, helper::calcMaxPriority,
+                customModel.getDistanceInfluence() == null ? 0 : customModel.getDistanceInfluence(),
+                customModel.getHeadingPenalty() == null ? Parameters.Routing.DEFAULT_HEADING_PENALTY : customModel.getHeadingPenalty());
+    }
+
+    private static CustomWeightingHelper createHelper(Class<?> clazz) {
         try {
             // The class does not need to be thread-safe as we create an instance per request
-            CustomWeightingHelper prio = (CustomWeightingHelper) clazz.getDeclaredConstructor().newInstance();
-            prio.init(customModel, lookup, CustomModel.getAreasAsMap(customModel.getAreas()));
-            return new CustomWeighting.Parameters(
-                    prio::getSpeed, prio::calcMaxSpeed,
-                    prio::getPriority, prio::calcMaxPriority,
-                    customModel.getDistanceInfluence() == null ? 0 : customModel.getDistanceInfluence(),
-                    customModel.getHeadingPenalty() == null ? Parameters.Routing.DEFAULT_HEADING_PENALTY : customModel.getHeadingPenalty());
+            return (CustomWeightingHelper) clazz.getDeclaredConstructor().newInstance();
         } catch (ReflectiveOperationException ex) {
             throw new IllegalArgumentException("Cannot compile expression " + ex.getMessage(), ex);
         }
     }
 
+    private static CustomWeightingHelper createHelperWhileCompiling(ClassKey key, CustomModel customModel, EncodedValueLookup lookup) {
+        Future<Class<?>> pending = PENDING.get(key);
+        if (pending != null && pending.isDone()) {
+            PENDING.remove(key, pending);
+            try {
+                return createHelper(pending.get());
+            } catch (ExecutionException ex) {
+                // the failure was already logged and the custom model is interpreted, see below
+                pending = null;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(ex);
+            }
+        }
+
+        // parsing and verifying the expressions is cheap and rejects invalid custom models immediately
+        long counter = longVal.incrementAndGet();
+        Java.CompilationUnit cu = createCompilationUnit(counter, customModel, lookup);
+        if (pending == null && PENDING.size() < MAX_PENDING_COMPILATIONS && !FAILED.contains(key)) {
+            FutureTask<Class<?>> task = new FutureTask<>(() -> {
+                try {
+                    Class<?> clazz = compile(counter, cu);
+                    CACHE.put(key, clazz);
+                    return clazz;
+                } catch (RuntimeException ex) {
+                    FAILED.add(key);
+                    LoggerFactory.getLogger(CustomModelParser.class).warn("Background compilation failed, the custom model"
+                            + " will be interpreted: " + ex.getMessage(), ex);
+                    throw ex;
+                } finally {
+                    PENDING.remove(key);
+                }
+            });
+            // register the task before it is started so that it cannot finish before it is pending
+            if (PENDING.putIfAbsent(key, task) == null)
+                getCompilationExecutor().execute(task);
+        }
+        interpretedWeightings.increment();
+        return new InterpretedCustomWeightingHelper();
+    }
+
+    private static synchronized ExecutorService getCompilationExecutor() {
+        if (compilationExecutor == null)
+            compilationExecutor = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "custom-model-compiler");
+                thread.setDaemon(true);
+                return thread;
+            });
+        return compilationExecutor;
+    }
+
+    /**
+     * Enables or disables the background compilation for all following requests. The default can be set via the
+     * system property graphhopper.custom_weighting.background_compilation.
+     */
+    public static void setBackgroundCompilation(boolean enabled) {
+        backgroundCompilation = enabled;
+    }
+
+    public static boolean isBackgroundCompilation() {
+        return backgroundCompilation;
+    }
+
+    /**
+     * @return the number of custom models that are currently compiled in the background
+     */
+    public static int getPendingCompilations() {
+        return PENDING.size();
+    }
+
+    public static long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    public static long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    /**
+     * @return the number of custom models that were compiled to a class so far
+     */
+    public static long getCompilations() {
+        return compilations.sum();
+    }
+
+    /**
+     * @return the total time spent compiling custom models in nanoseconds
+     */
+    public static long getCompilationNanos() {
+        return compilationNanos.sum();
+    }
+
+    /**
+     * @return the number of classes in the cache including the ones of the profiles
+     */
+    public static int getCacheSize() {
+        return CACHE.size() + INTERNAL_CACHE.size();
+    }
+
+    /**
+     * @return a rough estimate of the memory used by the cached classes based on their average bytecode size. The
+     * metaspace of a loaded class is usually a few times larger than its bytecode.
+     */
+    public static long getEstimatedCacheBytes() {
+        long compiled = compilations.sum();
+        return compiled == 0 ? 0 : getCacheSize() * (bytecodeBytes.sum() / compiled);
+    }
+
+    /**
+     * @return the number of weightings that were interpreted because the compilation was not finished
+     */
+    public static long getInterpretedWeightings() {
+        return interpretedWeightings.sum();
+    }
+
     /**
      * This method does the following:
      * <ul>
@@ -138,6 +310,11 @@ public class CustomModelParser {
      * </ul>
      */
     private static Class<?> createClazz(CustomModel customModel, EncodedValueLookup lookup) {
+        long counter = longVal.incrementAndGet();
+        return compile(counter, createCompilationUnit(counter, customModel, lookup));
+    }
+
+    private static Java.CompilationUnit createCompilationUnit(long counter, CustomModel customModel, EncodedValueLookup lookup) {
         try {
             Set<String> priorityVariables = ValueExpressionVisitor.findVariables(customModel.getPriority(), lookup);
             List<Java.BlockStatement> priorityStatements = createGetPriorityStatements(priorityVariables, customModel, lookup);
@@ -162,16 +339,29 @@ public class CustomModelParser {
             // Create different class name, which is required only for debugging.
             // TODO does it improve performance too? I.e. it could be that the JIT is confused if different classes
             //  have the same name and it mixes performance stats. See https://github.com/janino-compiler/janino/issues/137
-            long counter = longVal.incrementAndGet();
             String classTemplate = createClassTemplate(counter, priorityVariables, speedVariables, lookup, CustomModel.getAreasAsMap(customModel.getAreas()));
             Java.CompilationUnit cu = (Java.CompilationUnit) new Parser(new Scanner("source", new StringReader(classTemplate))).
                     parseAbstractCompilationUnit();
-            cu = injectStatements(priorityStatements, speedStatements, cu);
+            return injectStatements(priorityStatements, speedStatements, cu);
+        } catch (Exception ex) {
+            String errString = "Cannot compile expression";
+            throw new IllegalArgumentException(errString + ": " + ex.getMessage(), ex);
+        }
+    }
+
+    private static Class<?> compile(long counter, Java.CompilationUnit cu) {
+        long start = System.nanoTime();
+        try {
             SimpleCompiler sc = createCompiler(counter, cu);
+            for (byte[] bytes : sc.getBytecodes().values())
+                bytecodeBytes.add(bytes.length);
             return sc.getClassLoader().loadClass("com.graphhopper.routing.weighting.custom.JaninoCustomWeightingHelperSubclass" + counter);
         } catch (Exception ex) {
             String errString = "Cannot compile expression";
             throw new IllegalArgumentException(errString + ": " + ex.getMessage(), ex);
+        } finally {
+            compilations.increment();
+            compilationNanos.add(System.nanoTime() - start);
         }
     }
 
@@ -346,10 +536,7 @@ public class CustomModelParser {
                 if (!includedAreaImports) {
                     importSourceCode.append("import " + BBox.class.getName() + ";\n");
                     importSourceCode.append("import " + GHUtility.class.getName() + ";\n");
-                    importSourceCode.append("import " + PreparedPolygon.class.getName() + ";\n");
-                    importSourceCode.append("import " + Polygonal.class.getName() + ";\n");
                     importSourceCode.append("import " + JsonFeature.class.getName() + ";\n");
-                    importSourceCode.append("import " + Polygon.class.getName() + ";\n");
                     includedAreaImports = true;
                 }
 
@@ -365,9 +552,9 @@ public class CustomModelParser {
                     throw new IllegalArgumentException("Currently only type=Polygon is supported for areas but was " + feature.getGeometry().getGeometryType());
                 if (feature.getBBox() != null)
                     throw new IllegalArgumentException("Bounding box of area " + id + " must be empty");
-                classSourceCode.append("protected " + Polygon.class.getSimpleName() + " " + arg + ";\n");
+                classSourceCode.append("protected " + CustomArea.class.getSimpleName() + " " + arg + ";\n");
                 initSourceCode.append("JsonFeature feature_" + id + " = (JsonFeature) areas.get(\"" + id + "\");\n");
-                initSourceCode.append("this." + arg + " = new Polygon(new PreparedPolygon((Polygonal) feature_" + id + ".getGeometry()));\n");
+                initSourceCode.append("this." + arg + " = createArea(feature_" + id + ");\n");
             } else {
                 if (!arg.startsWith(IN_AREA_PREFIX))
                     throw new IllegalArgumentException("Variable not supported: " + arg);
@@ -537,4 +724,42 @@ public class CustomModelParser {
             return compiler;
         }
     }
+
+    /**
+     * The key of the class cache. The compiled class only depends on the statements and the ids and types of the
+     * areas, but not on the area geometries, the distance influence or the heading penalty, which are only used when
+     * the class is initialized. Comparing the statements directly is a lot cheaper than building a string of the
+     * entire custom model including the area geometries for every request.
+     */
+    static final class ClassKey {
+        private final List<Statement> speed;
+        private final List<Statement> priority;
+        private final List<String> areas;
+        private final int hashCode;
+
+        ClassKey(CustomModel customModel) {
+            this.speed = new ArrayList<>(customModel.getSpeed());
+            this.priority = new ArrayList<>(customModel.getPriority());
+            List<JsonFeature> features = customModel.getAreas().getFeatures();
+            this.areas = new ArrayList<>(features.size());
+            for (JsonFeature feature : features)
+                areas.add(feature.getId() + "|" + (feature.getGeometry() == null ? null : feature.getGeometry().getGeometryType())
+                        + "|" + (feature.getBBox() != null));
+            this.hashCode = Objects.hash(speed, priority, areas);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof ClassKey)) return false;
+            ClassKey other = (ClassKey) o;
+            return hashCode == other.hashCode && speed.equals(other.speed) && priority.equals(other.priority)
+                    && areas.equals(other.areas);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
 }
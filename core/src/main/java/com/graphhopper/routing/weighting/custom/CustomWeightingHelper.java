@@ -24,6 +24,9 @@ import com.graphhopper.util.*;
 import com.graphhopper.util.shapes.BBox;
 import com.graphhopper.util.shapes.Polygon;
 
+import org.locationtech.jts.geom.Polygonal;
+import org.locationtech.jts.geom.prep.PreparedPolygon;
+
 import java.util.List;
 import java.util.Map;
 
@@ -37,6 +40,7 @@ public class CustomWeightingHelper {
 
     protected EncodedValueLookup lookup;
     protected CustomModel customModel;
+    protected AreaEdgeCache areaEdgeCache;
 
     protected CustomWeightingHelper() {
     }
@@ -46,6 +50,21 @@ public class CustomWeightingHelper {
         this.customModel = customModel;
     }
 
+    void setAreaEdgeCache(AreaEdgeCache areaEdgeCache) {
+        this.areaEdgeCache = areaEdgeCache;
+    }
+
+    /**
+     * Creates the area used for the in_* conditions. The edges inside the area are taken from the AreaEdgeCache if
+     * they were calculated before.
+     */
+    protected final CustomArea createArea(JsonFeature feature) {
+        Polygon polygon = new Polygon(new PreparedPolygon((Polygonal) feature.getGeometry()));
+        if (areaEdgeCache == null)
+            return new CustomArea(polygon, null, 0);
+        return new CustomArea(polygon, areaEdgeCache.getEdges(feature.getGeometry()), areaEdgeCache.getEdgeCount());
+    }
+
     public double getPriority(EdgeIteratorState edge, boolean reverse) {
         return getRawPriority(edge, reverse);
     }
@@ -91,6 +110,10 @@ public class CustomWeightingHelper {
         return minMaxPriority.max;
     }
 
+    public static boolean in(CustomArea area, EdgeIteratorState edge) {
+        return area.contains(edge);
+    }
+
     public static boolean in(Polygon p, EdgeIteratorState edge) {
         BBox edgeBBox = GHUtility.createBBox(edge);
         BBox polyBBOX = p.getBounds();
@@ -98,6 +121,6 @@ public class CustomWeightingHelper {
             return false;
         if (p.isRectangle() && polyBBOX.contains(edgeBBox))
             return true;
-        return p.intersects(edge.fetchWayGeometry(FetchMode.ALL).makeImmutable()); // TODO PERF: cache bbox and edge wayGeometry for multiple area
+        return p.intersects(edge.fetchWayGeometry(FetchMode.ALL).makeImmutable());
     }
 }
@@ -46,6 +46,30 @@ public class FindMinMax {
         checkMultiplyValue(queryModel.getSpeed(), lookup);
     }
 
+    /**
+     * This method throws an exception when the conditions of the queryModel could depend on other encoded values
+     * than the specified ones. For core routing this ensures that the statements have the same effect on all edges
+     * outside the core, see CHCore.
+     */
+    public static void checkCoreConstraints(CustomModel queryModel, Collection<String> coreEncodedValues) {
+        if (queryModel.getDistanceInfluence() != null)
+            throw new IllegalArgumentException("CustomModel in query cannot use distance_influence for core routing");
+        NameValidator validator = name -> Character.isUpperCase(name.charAt(0)) || coreEncodedValues.contains(
+                name.startsWith(CustomModelParser.BACKWARD_PREFIX) ? name.substring(CustomModelParser.BACKWARD_PREFIX.length()) : name);
+        checkConditions(queryModel.getPriority(), validator, coreEncodedValues);
+        checkConditions(queryModel.getSpeed(), validator, coreEncodedValues);
+    }
+
+    private static void checkConditions(List<Statement> list, NameValidator validator, Collection<String> coreEncodedValues) {
+        for (Statement statement : list) {
+            if (statement.keyword() != ELSE && !ConditionalExpressionVisitor.parse(statement.condition(), validator, s -> "").ok)
+                throw new IllegalArgumentException("conditions of the CustomModel in query can only use the core encoded values "
+                        + coreEncodedValues + ", but was: " + statement.condition());
+            if (statement.isBlock())
+                checkConditions(statement.doBlock(), validator, coreEncodedValues);
+        }
+    }
+
     private static void checkMultiplyValue(List<Statement> list, EncodedValueLookup lookup) {
         for (Statement statement : list) {
             if (statement.operation() == Statement.Op.MULTIPLY) {
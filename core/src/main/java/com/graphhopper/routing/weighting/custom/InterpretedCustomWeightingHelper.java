@@ -0,0 +1,395 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.weighting.custom;
+
+import com.graphhopper.json.Statement;
+import com.graphhopper.routing.ev.*;
+import com.graphhopper.util.CustomModel;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.JsonFeature;
+import org.codehaus.janino.Java;
+import org.codehaus.janino.Parser;
+import org.codehaus.janino.Scanner;
+import org.codehaus.janino.TokenType;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+
+import static com.graphhopper.routing.weighting.custom.CustomModelParser.BACKWARD_PREFIX;
+import static com.graphhopper.routing.weighting.custom.CustomModelParser.IN_AREA_PREFIX;
+
+/**
+ * This CustomWeightingHelper evaluates the statements of a CustomModel without compiling them. It is used while the
+ * class for the CustomModel is compiled in the background, see CustomModelParser. The expressions are parsed only once
+ * in init and are evaluated with the same semantics as the compiled code, but slower. The CustomModel must have been
+ * verified before.
+ */
+final class InterpretedCustomWeightingHelper extends CustomWeightingHelper {
+    private List<Node> speedStatements;
+    private List<Node> priorityStatements;
+
+    @Override
+    public void init(CustomModel customModel, EncodedValueLookup lookup, Map<String, JsonFeature> areas) {
+        super.init(customModel, lookup, areas);
+        ExpressionBuilder builder = new ExpressionBuilder(lookup, areas, this::createArea);
+        speedStatements = builder.build(customModel.getSpeed());
+        priorityStatements = builder.build(customModel.getPriority());
+    }
+
+    @Override
+    public double getPriority(EdgeIteratorState edge, boolean reverse) {
+        return evaluate(priorityStatements, GLOBAL_PRIORITY, edge, reverse);
+    }
+
+    @Override
+    public double getSpeed(EdgeIteratorState edge, boolean reverse) {
+        return evaluate(speedStatements, GLOBAL_MAX_SPEED, edge, reverse);
+    }
+
+    private static double evaluate(List<Node> statements, double value, EdgeIteratorState edge, boolean reverse) {
+        // a chain of if, else_if and else is finished as soon as one condition matched
+        boolean matched = false;
+        for (Node node : statements) {
+            switch (node.keyword) {
+                case IF:
+                    matched = asBoolean(node.condition.eval(edge, reverse));
+                    break;
+                case ELSEIF:
+                    if (matched) continue;
+                    matched = asBoolean(node.condition.eval(edge, reverse));
+                    break;
+                default:
+                    if (matched) continue;
+                    matched = true;
+            }
+            if (!matched)
+                continue;
+            if (node.doBlock != null) {
+                value = evaluate(node.doBlock, value, edge, reverse);
+            } else {
+                double result = asNumber(node.value.eval(edge, reverse)).doubleValue();
+                value = node.operation == Statement.Op.LIMIT ? Math.min(value, result) : value * result;
+            }
+        }
+        return value;
+    }
+
+    private static boolean asBoolean(Object o) {
+        if (o instanceof Boolean)
+            return (Boolean) o;
+        throw new IllegalArgumentException("Expected a boolean but was " + o);
+    }
+
+    private static Number asNumber(Object o) {
+        if (o instanceof Number)
+            return (Number) o;
+        throw new IllegalArgumentException("Expected a number but was " + o);
+    }
+
+    private static boolean isIntegral(Object o) {
+        return o instanceof Integer || o instanceof Long;
+    }
+
+    private static final class Node {
+        final Statement.Keyword keyword;
+        final Expression condition;
+        final Statement.Op operation;
+        final Expression value;
+        final List<Node> doBlock;
+
+        Node(Statement.Keyword keyword, Expression condition, Statement.Op operation, Expression value, List<Node> doBlock) {
+            this.keyword = keyword;
+            this.condition = condition;
+            this.operation = operation;
+            this.value = value;
+            this.doBlock = doBlock;
+        }
+    }
+
+    private interface Expression {
+        Object eval(EdgeIteratorState edge, boolean reverse);
+    }
+
+    /**
+     * Converts the Janino syntax tree of an expression into a tree of Expression objects. Only the subset of Java
+     * that is accepted by ConditionalExpressionVisitor and ValueExpressionVisitor is supported.
+     */
+    private static final class ExpressionBuilder {
+        private final EncodedValueLookup lookup;
+        private final Map<String, JsonFeature> areas;
+        private final Function<JsonFeature, CustomArea> areaFactory;
+
+        ExpressionBuilder(EncodedValueLookup lookup, Map<String, JsonFeature> areas, Function<JsonFeature, CustomArea> areaFactory) {
+            this.lookup = lookup;
+            this.areas = areas;
+            this.areaFactory = areaFactory;
+        }
+
+        List<Node> build(List<Statement> statements) {
+            List<Node> nodes = new ArrayList<>(statements.size());
+            for (Statement statement : statements) {
+                Expression condition = statement.keyword() == Statement.Keyword.ELSE ? null : parse(statement.condition());
+                if (statement.isBlock())
+                    nodes.add(new Node(statement.keyword(), condition, statement.operation(), null, build(statement.doBlock())));
+                else
+                    nodes.add(new Node(statement.keyword(), condition, statement.operation(), parse(statement.value()), null));
+            }
+            return nodes;
+        }
+
+        private Expression parse(String expression) {
+            try {
+                Parser parser = new Parser(new Scanner("ignore", new StringReader(expression)));
+                Java.Atom atom = parser.parseConditionalExpression();
+                if (parser.peek().type != TokenType.END_OF_INPUT)
+                    throw new IllegalArgumentException("Unexpected input after expression");
+                return create(atom.toRvalueOrCompileException());
+            } catch (Exception ex) {
+                throw new IllegalArgumentException("Cannot interpret expression '" + expression + "': " + ex.getMessage(), ex);
+            }
+        }
+
+        private Expression create(Java.Rvalue rv) throws Exception {
+            if (rv instanceof Java.ParenthesizedExpression)
+                return create(((Java.ParenthesizedExpression) rv).value);
+            if (rv instanceof Java.AmbiguousName)
+                return createVariable((Java.AmbiguousName) rv);
+            if (rv instanceof Java.Literal)
+                return createLiteral((Java.Literal) rv);
+            if (rv instanceof Java.UnaryOperation)
+                return createUnaryOperation((Java.UnaryOperation) rv);
+            if (rv instanceof Java.MethodInvocation)
+                return createMethodInvocation((Java.MethodInvocation) rv);
+            if (rv instanceof Java.BinaryOperation)
+                return createBinaryOperation((Java.BinaryOperation) rv);
+            throw new IllegalArgumentException("Unsupported expression " + rv);
+        }
+
+        private Expression createVariable(Java.AmbiguousName name) {
+            if (name.identifiers.length != 1)
+                throw new IllegalArgumentException("identifier " + name + " invalid");
+            String arg = name.identifiers[0];
+            if (arg.startsWith(IN_AREA_PREFIX)) {
+                JsonFeature feature = areas.get(arg.substring(IN_AREA_PREFIX.length()));
+                if (feature == null)
+                    throw new IllegalArgumentException("Area '" + arg.substring(IN_AREA_PREFIX.length()) + "' wasn't found");
+                CustomArea area = areaFactory.apply(feature);
+                return (edge, reverse) -> area.contains(edge);
+            }
+            if (lookup.hasEncodedValue(arg))
+                return createEncodedValue(lookup.getEncodedValue(arg, EncodedValue.class), false);
+            if (arg.startsWith(BACKWARD_PREFIX) && lookup.hasEncodedValue(arg.substring(BACKWARD_PREFIX.length())))
+                return createEncodedValue(lookup.getEncodedValue(arg.substring(BACKWARD_PREFIX.length()), EncodedValue.class), true);
+            throw new IllegalArgumentException("'" + arg + "' not available");
+        }
+
+        private Expression createEncodedValue(EncodedValue enc, boolean backward) {
+            // the order is important, see CustomModelParser.getReturnType
+            if (enc instanceof EnumEncodedValue) {
+                EnumEncodedValue<?> ev = (EnumEncodedValue<?>) enc;
+                return (edge, reverse) -> reverse != backward ? edge.getReverse(ev) : edge.get(ev);
+            }
+            // for StringEncodedValue the index is used like in the compiled class
+            if (enc instanceof StringEncodedValue) {
+                IntEncodedValue ev = (IntEncodedValue) enc;
+                return (edge, reverse) -> reverse != backward ? edge.getReverse(ev) : edge.get(ev);
+            }
+            if (enc instanceof DecimalEncodedValue) {
+                DecimalEncodedValue ev = (DecimalEncodedValue) enc;
+                return (edge, reverse) -> reverse != backward ? edge.getReverse(ev) : edge.get(ev);
+            }
+            if (enc instanceof BooleanEncodedValue) {
+                BooleanEncodedValue ev = (BooleanEncodedValue) enc;
+                return (edge, reverse) -> reverse != backward ? edge.getReverse(ev) : edge.get(ev);
+            }
+            if (enc instanceof IntEncodedValue) {
+                IntEncodedValue ev = (IntEncodedValue) enc;
+                return (edge, reverse) -> reverse != backward ? edge.getReverse(ev) : edge.get(ev);
+            }
+            throw new IllegalArgumentException("Unsupported EncodedValue: " + enc.getClass());
+        }
+
+        private Expression createLiteral(Java.Literal literal) {
+            Object value;
+            String str = literal.value;
+            if (literal instanceof Java.IntegerLiteral) {
+                value = str.endsWith("L") || str.endsWith("l")
+                        ? (Object) Long.decode(str.substring(0, str.length() - 1))
+                        : (Object) Integer.decode(str);
+            } else if (literal instanceof Java.FloatingPointLiteral) {
+                value = Double.parseDouble(str.endsWith("f") || str.endsWith("F") || str.endsWith("d") || str.endsWith("D")
+                        ? str.substring(0, str.length() - 1) : str);
+            } else if (literal instanceof Java.BooleanLiteral) {
+                value = Boolean.parseBoolean(str);
+            } else if (literal instanceof Java.StringLiteral) {
+                value = str.substring(1, str.length() - 1);
+            } else {
+                throw new IllegalArgumentException("Unsupported literal " + str);
+            }
+            return (edge, reverse) -> value;
+        }
+
+        private Expression createUnaryOperation(Java.UnaryOperation uo) throws Exception {
+            Expression operand = create(uo.operand);
+            switch (uo.operator) {
+                case "!":
+                    return (edge, reverse) -> !asBoolean(operand.eval(edge, reverse));
+                case "-":
+                    return (edge, reverse) -> {
+                        Number n = asNumber(operand.eval(edge, reverse));
+                        if (n instanceof Integer) return -n.intValue();
+                        if (n instanceof Long) return -n.longValue();
+                        return -n.doubleValue();
+                    };
+                default:
+                    throw new IllegalArgumentException("Unsupported operator " + uo.operator);
+            }
+        }
+
+        private Expression createMethodInvocation(Java.MethodInvocation mi) throws Exception {
+            if (mi.target == null || !(mi.target.toRvalue() instanceof Java.AmbiguousName))
+                throw new IllegalArgumentException(mi.methodName + " is an illegal method");
+            Java.AmbiguousName target = (Java.AmbiguousName) mi.target.toRvalue();
+            if (target.identifiers.length != 2)
+                throw new IllegalArgumentException(mi.methodName + " is an illegal method");
+            String parent = target.identifiers[0];
+            if ("edge".equals(parent) && mi.arguments.length == 0) {
+                if ("getDistance".equals(mi.methodName))
+                    return (edge, reverse) -> edge.getDistance();
+                if ("getName".equals(mi.methodName))
+                    return (edge, reverse) -> edge.getName();
+            } else if ("Math".equals(parent) && mi.arguments.length == 1) {
+                Expression arg = create(mi.arguments[0]);
+                if ("sqrt".equals(mi.methodName))
+                    return (edge, reverse) -> Math.sqrt(asNumber(arg.eval(edge, reverse)).doubleValue());
+                if ("abs".equals(mi.methodName))
+                    return (edge, reverse) -> {
+                        Number n = asNumber(arg.eval(edge, reverse));
+                        if (n instanceof Integer) return Math.abs(n.intValue());
+                        if (n instanceof Long) return Math.abs(n.longValue());
+                        return Math.abs(n.doubleValue());
+                    };
+            } else if ("ordinal".equals(mi.methodName) && mi.arguments.length == 0) {
+                Expression variable = createVariable(new Java.AmbiguousName(target.getLocation(), new String[]{parent}));
+                return (edge, reverse) -> ((Enum<?>) variable.eval(edge, reverse)).ordinal();
+            }
+            throw new IllegalArgumentException(mi.methodName + " is an illegal method");
+        }
+
+        private Expression createBinaryOperation(Java.BinaryOperation binOp) throws Exception {
+            String op = binOp.operator;
+            if (op.equals("==") || op.equals("!=")) {
+                // an upper case name like NO on one side is a constant of the enum on the other side
+                Expression lhs = createEnumConstant(binOp.lhs, binOp.rhs), rhs = createEnumConstant(binOp.rhs, binOp.lhs);
+                boolean equal = op.equals("==");
+                return (edge, reverse) -> isEqual(lhs.eval(edge, reverse), rhs.eval(edge, reverse)) == equal;
+            }
+            Expression lhs = create(binOp.lhs), rhs = create(binOp.rhs);
+            switch (op) {
+                case "&&":
+                    return (edge, reverse) -> asBoolean(lhs.eval(edge, reverse)) && asBoolean(rhs.eval(edge, reverse));
+                case "||":
+                    return (edge, reverse) -> asBoolean(lhs.eval(edge, reverse)) || asBoolean(rhs.eval(edge, reverse));
+                case "<":
+                    return (edge, reverse) -> compare(lhs.eval(edge, reverse), rhs.eval(edge, reverse)) < 0;
+                case "<=":
+                    return (edge, reverse) -> compare(lhs.eval(edge, reverse), rhs.eval(edge, reverse)) <= 0;
+                case ">":
+                    return (edge, reverse) -> compare(lhs.eval(edge, reverse), rhs.eval(edge, reverse)) > 0;
+                case ">=":
+                    return (edge, reverse) -> compare(lhs.eval(edge, reverse), rhs.eval(edge, reverse)) >= 0;
+                case "+":
+                case "-":
+                case "*":
+                case "/":
+                    return (edge, reverse) -> calc(op, asNumber(lhs.eval(edge, reverse)), asNumber(rhs.eval(edge, reverse)));
+                default:
+                    throw new IllegalArgumentException("Unsupported operator " + op);
+            }
+        }
+
+        private Expression createEnumConstant(Java.Rvalue constant, Java.Rvalue other) throws Exception {
+            if (constant instanceof Java.AmbiguousName && ((Java.AmbiguousName) constant).identifiers.length == 1
+                    && other instanceof Java.AmbiguousName && ((Java.AmbiguousName) other).identifiers.length == 1) {
+                String name = ((Java.AmbiguousName) constant).identifiers[0];
+                String variable = ((Java.AmbiguousName) other).identifiers[0];
+                if (variable.startsWith(BACKWARD_PREFIX) && !lookup.hasEncodedValue(variable))
+                    variable = variable.substring(BACKWARD_PREFIX.length());
+                if (name.toUpperCase(Locale.ROOT).equals(name) && lookup.hasEncodedValue(variable)) {
+                    EncodedValue enc = lookup.getEncodedValue(variable, EncodedValue.class);
+                    if (enc instanceof EnumEncodedValue) {
+                        Object value = toEnum(((EnumEncodedValue<?>) enc).getEnumType(), name);
+                        return (edge, reverse) -> value;
+                    }
+                }
+            }
+            return create(constant);
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private static Object toEnum(Class enumType, String name) {
+            return Enum.valueOf(enumType, name);
+        }
+    }
+
+    private static boolean isEqual(Object a, Object b) {
+        if (a instanceof Number && b instanceof Number)
+            return compare(a, b) == 0;
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private static int compare(Object a, Object b) {
+        Number n1 = asNumber(a), n2 = asNumber(b);
+        if (isIntegral(n1) && isIntegral(n2))
+            return Long.compare(n1.longValue(), n2.longValue());
+        return Double.compare(n1.doubleValue(), n2.doubleValue());
+    }
+
+    private static Number calc(String op, Number n1, Number n2) {
+        // follow the binary numeric promotion of Java
+        if (n1 instanceof Integer && n2 instanceof Integer) {
+            int a = n1.intValue(), b = n2.intValue();
+            switch (op) {
+                case "+": return a + b;
+                case "-": return a - b;
+                case "*": return a * b;
+                default: return a / b;
+            }
+        }
+        if (isIntegral(n1) && isIntegral(n2)) {
+            long a = n1.longValue(), b = n2.longValue();
+            switch (op) {
+                case "+": return a + b;
+                case "-": return a - b;
+                case "*": return a * b;
+                default: return a / b;
+            }
+        }
+        double a = n1.doubleValue(), b = n2.doubleValue();
+        switch (op) {
+            case "+": return a + b;
+            case "-": return a - b;
+            case "*": return a * b;
+            default: return a / b;
+        }
+    }
+}
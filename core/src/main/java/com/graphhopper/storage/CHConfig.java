@@ -1,5 +1,6 @@
 package com.graphhopper.storage;
 
+import com.graphhopper.routing.ch.CHCore;
 import com.graphhopper.routing.util.TraversalMode;
 import com.graphhopper.routing.weighting.Weighting;
 
@@ -17,6 +18,7 @@ public class CHConfig {
     private final String chGraphName;
     private final Weighting weighting;
     private final boolean edgeBased;
+    private final CHCore core;
 
     public static CHConfig nodeBased(String chGraphName, Weighting weighting) {
         return new CHConfig(chGraphName, weighting, false);
@@ -27,10 +29,29 @@ public class CHConfig {
     }
 
     public CHConfig(String chGraphName, Weighting weighting, boolean edgeBased) {
+        this(chGraphName, weighting, edgeBased, null);
+    }
+
+    private CHConfig(String chGraphName, Weighting weighting, boolean edgeBased, CHCore core) {
         validateProfileName(chGraphName);
         this.chGraphName = chGraphName;
         this.weighting = weighting;
         this.edgeBased = edgeBased;
+        this.core = core;
+    }
+
+    /**
+     * @return a copy of this config for which the given core nodes are not contracted
+     */
+    public CHConfig withCore(CHCore core) {
+        return new CHConfig(chGraphName, weighting, edgeBased, core);
+    }
+
+    /**
+     * @return the nodes that are not contracted or null if all nodes are contracted
+     */
+    public CHCore getCore() {
+        return core;
     }
 
     public Weighting getWeighting() {
@@ -37,6 +37,11 @@ import static com.graphhopper.util.Helper.nf;
  * <p>
  * This can be seen as an extension to a base graph: We assign a CH level to each node and add additional edges to
  * the graph ('shortcuts'). The shortcuts need to be ordered in a certain way, but this is not enforced here.
+ * <p>
+ * There is also a compact layout which does not store the lower level node of each shortcut ('nodeA'). Instead, we
+ * keep track of the shortcut range for each CH level and find nodeA via a binary search over these ranges. This
+ * requires that shortcuts are added in batches for one node at a time, ordered by the level of this node, which is
+ * what the node contractors do anyway.
  *
  * @see CHStorageBuilder to build a valid storage that can be used for routing
  */
@@ -49,20 +54,25 @@ public class CHStorage {
     // the maximum double weight we can store. if this is exceeded the shortcut will gain infinite weight, potentially yielding connection-not-found errors
     private static final double MAX_WEIGHT = MAX_STORED_INTEGER_WEIGHT / WEIGHT_FACTOR;
     private static final double MIN_WEIGHT = 1 / WEIGHT_FACTOR;
+    // for the compact layout we use the two lowest bits of nodeB for the access flags
+    private static final int MAX_COMPACT_NODES = 1 << 30;
 
     // shortcuts
     private final DataAccess shortcuts;
-    private final int S_NODEA, S_NODEB, S_WEIGHT, S_SKIP_EDGE1, S_SKIP_EDGE2, S_ORIG_KEY_FIRST, S_ORIG_KEY_LAST;
+    private int S_NODEA, S_NODEB, S_WEIGHT, S_SKIP_EDGE1, S_SKIP_EDGE2, S_ORIG_KEY_FIRST, S_ORIG_KEY_LAST;
     private int shortcutEntryBytes;
     private int shortcutCount = 0;
 
     // nodes
     private final DataAccess nodesCH;
-    private final int N_LEVEL, N_LAST_SC;
+    private int N_LEVEL, N_LAST_SC, N_LEVEL_NODE, N_LEVEL_SC_END;
     private int nodeCHEntryBytes;
     private int nodeCount = -1;
 
     private boolean edgeBased;
+    private boolean compact;
+    // for the compact layout: the level of the lower level node of the last shortcut we added
+    private int lastShortcutLevel = 0;
     // some shortcuts exceed the maximum storable weight, and we count them here
     private int numShortcutsExceedingWeight;
 
@@ -70,11 +80,15 @@ public class CHStorage {
     private Consumer<LowWeightShortcut> lowShortcutWeightConsumer;
 
     public static CHStorage fromGraph(BaseGraph baseGraph, CHConfig chConfig) {
+        return fromGraph(baseGraph, chConfig, false);
+    }
+
+    public static CHStorage fromGraph(BaseGraph baseGraph, CHConfig chConfig, boolean compact) {
         String name = chConfig.getName();
         boolean edgeBased = chConfig.isEdgeBased();
         if (!baseGraph.isFrozen())
             throw new IllegalStateException("graph must be frozen before we can create ch graphs");
-        CHStorage store = new CHStorage(baseGraph.getDirectory(), name, baseGraph.getSegmentSize(), edgeBased);
+        CHStorage store = new CHStorage(baseGraph.getDirectory(), name, baseGraph.getSegmentSize(), edgeBased, compact);
         store.setLowShortcutWeightConsumer(s -> {
             // we just log these to find mapping errors
             NodeAccess nodeAccess = baseGraph.getNodeAccess();
@@ -92,13 +106,34 @@ public class CHStorage {
     }
 
     public CHStorage(Directory dir, String name, int segmentSize, boolean edgeBased) {
-        this.edgeBased = edgeBased;
+        this(dir, name, segmentSize, edgeBased, false);
+    }
+
+    /**
+     * @param compact true if the compact layout shall be used, see {@link CHStorage}. When loading an existing storage
+     *                the layout is determined by the stored data and this flag is ignored.
+     */
+    public CHStorage(Directory dir, String name, int segmentSize, boolean edgeBased, boolean compact) {
         this.nodesCH = dir.create("nodes_ch_" + name, dir.getDefaultType("nodes_ch_" + name, true), segmentSize);
         this.shortcuts = dir.create("shortcuts_" + name, dir.getDefaultType("shortcuts_" + name, true), segmentSize);
-        // shortcuts are stored consecutively using this layout (the last two entries only exist for edge-based):
-        // NODEA | NODEB | WEIGHT | SKIP_EDGE1 | SKIP_EDGE2 | S_ORIG_FIRST | S_ORIG_LAST
-        S_NODEA = 0;
-        S_NODEB = S_NODEA + 4;
+        initLayout(edgeBased, compact);
+    }
+
+    private void initLayout(boolean edgeBased, boolean compact) {
+        this.edgeBased = edgeBased;
+        this.compact = compact;
+        if (compact) {
+            // shortcuts are stored consecutively using this layout (the last two entries only exist for edge-based),
+            // the access flags are stored in the two lowest bits of NODEB:
+            // NODEB | WEIGHT | SKIP_EDGE1 | SKIP_EDGE2 | S_ORIG_FIRST | S_ORIG_LAST
+            S_NODEA = -1;
+            S_NODEB = 0;
+        } else {
+            // shortcuts are stored consecutively using this layout (the last two entries only exist for edge-based):
+            // NODEA | NODEB | WEIGHT | SKIP_EDGE1 | SKIP_EDGE2 | S_ORIG_FIRST | S_ORIG_LAST
+            S_NODEA = 0;
+            S_NODEB = S_NODEA + 4;
+        }
         S_WEIGHT = S_NODEB + 4;
         S_SKIP_EDGE1 = S_WEIGHT + 4;
         S_SKIP_EDGE2 = S_SKIP_EDGE1 + 4;
@@ -106,11 +141,25 @@ public class CHStorage {
         S_ORIG_KEY_LAST = S_ORIG_KEY_FIRST + (edgeBased ? 4 : 0);
         shortcutEntryBytes = S_ORIG_KEY_LAST + 4;
 
-        // nodes/levels are stored consecutively using this layout:
-        // LEVEL | N_LAST_SC
-        N_LEVEL = 0;
-        N_LAST_SC = N_LEVEL + 4;
-        nodeCHEntryBytes = N_LAST_SC + 4;
+        if (compact) {
+            // nodes/levels are stored consecutively using this layout. LEVEL is indexed by node, while LEVEL_NODE
+            // (the node with this level, if it has shortcuts) and LEVEL_SC_END (the end of the shortcut range of all
+            // nodes up to this level, exclusive) are indexed by level:
+            // LEVEL | LEVEL_NODE | LEVEL_SC_END
+            N_LEVEL = 0;
+            N_LAST_SC = -1;
+            N_LEVEL_NODE = N_LEVEL + 4;
+            N_LEVEL_SC_END = N_LEVEL_NODE + 4;
+            nodeCHEntryBytes = N_LEVEL_SC_END + 4;
+        } else {
+            // nodes/levels are stored consecutively using this layout:
+            // LEVEL | N_LAST_SC
+            N_LEVEL = 0;
+            N_LAST_SC = N_LEVEL + 4;
+            N_LEVEL_NODE = -1;
+            N_LEVEL_SC_END = -1;
+            nodeCHEntryBytes = N_LAST_SC + 4;
+        }
     }
 
     /**
@@ -132,10 +181,13 @@ public class CHStorage {
             throw new IllegalStateException("CHStorage can only be created once");
         if (nodes < 0)
             throw new IllegalStateException("CHStorage must be created with a positive number of nodes");
+        if (compact && nodes > MAX_COMPACT_NODES)
+            throw new IllegalStateException("The compact CHStorage supports at most " + MAX_COMPACT_NODES + " nodes, but got: " + nodes);
         nodesCH.create((long) nodes * nodeCHEntryBytes);
         nodeCount = nodes;
-        for (int node = 0; node < nodes; node++)
-            setLastShortcut(toNodePointer(node), -1);
+        if (!compact)
+            for (int node = 0; node < nodes; node++)
+                setLastShortcut(toNodePointer(node), -1);
         shortcuts.create((long) expectedShortcuts * shortcutEntryBytes);
     }
 
@@ -152,6 +204,8 @@ public class CHStorage {
         shortcuts.setHeader(8, shortcutEntryBytes);
         shortcuts.setHeader(12, numShortcutsExceedingWeight);
         shortcuts.setHeader(16, edgeBased ? 1 : 0);
+        shortcuts.setHeader(20, compact ? 1 : 0);
+        shortcuts.setHeader(24, lastShortcutLevel);
         shortcuts.flush();
     }
 
@@ -163,15 +217,17 @@ public class CHStorage {
         int nodesCHVersion = nodesCH.getHeader(0);
         GHUtility.checkDAVersion(nodesCH.getName(), Constants.VERSION_NODE_CH, nodesCHVersion);
         nodeCount = nodesCH.getHeader(4);
-        nodeCHEntryBytes = nodesCH.getHeader(8);
 
         // shortcuts
         int shortcutsVersion = shortcuts.getHeader(0);
         GHUtility.checkDAVersion(shortcuts.getName(), Constants.VERSION_SHORTCUT, shortcutsVersion);
+        initLayout(shortcuts.getHeader(16) == 1, shortcuts.getHeader(20) == 1);
         shortcutCount = shortcuts.getHeader(4);
         shortcutEntryBytes = shortcuts.getHeader(8);
         numShortcutsExceedingWeight = shortcuts.getHeader(12);
-        edgeBased = shortcuts.getHeader(16) == 1;
+        lastShortcutLevel = shortcuts.getHeader(24);
+        if (nodeCHEntryBytes != nodesCH.getHeader(8))
+            throw new IllegalStateException("Inconsistent node entry size for " + nodesCH.getName() + ": " + nodesCH.getHeader(8));
 
         return true;
     }
@@ -204,6 +260,8 @@ public class CHStorage {
             throw new IllegalStateException("Maximum shortcut count exceeded: " + shortcutCount);
         if (lowShortcutWeightConsumer != null && weight < MIN_WEIGHT)
             lowShortcutWeightConsumer.accept(new LowWeightShortcut(nodeA, nodeB, shortcutCount, weight, MIN_WEIGHT));
+        if (compact)
+            updateLevelRanges(nodeA);
         long shortcutPointer = (long) shortcutCount * shortcutEntryBytes;
         shortcutCount++;
         shortcuts.ensureCapacity((long) shortcutCount * shortcutEntryBytes);
@@ -214,6 +272,43 @@ public class CHStorage {
         return shortcutCount - 1;
     }
 
+    private void updateLevelRanges(int nodeA) {
+        int level = getLevel(toNodePointer(nodeA));
+        if (level < 0 || level >= nodeCount)
+            throw new IllegalArgumentException("Invalid level for node " + nodeA + ": " + level + ". For the compact " +
+                    "layout nodeA must be assigned a level in [0, " + nodeCount + "[ before adding shortcuts");
+        if (shortcutCount > 0 && level == lastShortcutLevel) {
+            if (getLevelNode(level) != nodeA)
+                throw new IllegalArgumentException("Different nodes must not have the same level, got level " + level +
+                        " for nodes " + getLevelNode(level) + " and " + nodeA);
+            return;
+        }
+        if (shortcutCount > 0 && level < lastShortcutLevel)
+            throw new IllegalArgumentException("For the compact layout shortcuts must be added ordered by the level of " +
+                    "nodeA, but got level " + level + " for node " + nodeA + " after level " + lastShortcutLevel);
+        // the shortcut ranges of all levels in between are empty
+        for (int l = lastShortcutLevel; l < level; l++)
+            nodesCH.setInt(toLevelPointer(l) + N_LEVEL_SC_END, shortcutCount);
+        nodesCH.setInt(toLevelPointer(level) + N_LEVEL_NODE, nodeA);
+        lastShortcutLevel = level;
+    }
+
+    private long toLevelPointer(int level) {
+        return (long) level * nodeCHEntryBytes;
+    }
+
+    private int getLevelNode(int level) {
+        return nodesCH.getInt(toLevelPointer(level) + N_LEVEL_NODE);
+    }
+
+    /**
+     * @return the end (exclusive) of the shortcut range of all nodes with a level smaller or equal to the given one
+     */
+    private int getLevelShortcutEnd(int level) {
+        // the ranges for the level of the last shortcut and all higher levels are not stored explicitly
+        return level >= lastShortcutLevel ? shortcutCount : nodesCH.getInt(toLevelPointer(level) + N_LEVEL_SC_END);
+    }
+
     /**
      * The number of nodes of this storage.
      */
@@ -248,11 +343,39 @@ public class CHStorage {
         return edgeBased;
     }
 
+    public boolean isCompact() {
+        return compact;
+    }
+
     public int getLastShortcut(long nodePointer) {
+        if (compact) {
+            int level = getLevel(nodePointer);
+            if (level < 0 || level >= nodeCount)
+                return -1;
+            int end = getLevelShortcutEnd(level);
+            return end > getFirstShortcutOfLevel(level) ? end - 1 : -1;
+        }
         return nodesCH.getInt(nodePointer + N_LAST_SC);
     }
 
+    /**
+     * Returns the first shortcut of the given node. This is only available for the compact layout, because otherwise
+     * we do not know where the shortcuts of a node start without scanning them. The result is only meaningful if the
+     * node has shortcuts, i.e. {@link #getLastShortcut} is not negative.
+     */
+    public int getFirstShortcut(long nodePointer) {
+        if (!compact)
+            throw new IllegalStateException("The first shortcut of a node is only available for the compact layout");
+        return getFirstShortcutOfLevel(getLevel(nodePointer));
+    }
+
+    private int getFirstShortcutOfLevel(int level) {
+        return level == 0 ? 0 : getLevelShortcutEnd(level - 1);
+    }
+
     public void setLastShortcut(long nodePointer, int shortcut) {
+        if (compact)
+            throw new IllegalStateException("For the compact layout the shortcut ranges are maintained when adding shortcuts");
         nodesCH.setInt(nodePointer + N_LAST_SC, shortcut);
     }
 
@@ -265,10 +388,22 @@ public class CHStorage {
     }
 
     private void setNodesAB(long shortcutPointer, int nodeA, int nodeB, int accessFlags) {
+        if (compact) {
+            shortcuts.setInt(shortcutPointer + S_NODEB, nodeB << 2 | accessFlags & (PrepareEncoder.getScFwdDir() | PrepareEncoder.getScBwdDir()));
+            return;
+        }
         shortcuts.setInt(shortcutPointer + S_NODEA, nodeA << 1 | accessFlags & PrepareEncoder.getScFwdDir());
         shortcuts.setInt(shortcutPointer + S_NODEB, nodeB << 1 | (accessFlags & PrepareEncoder.getScBwdDir()) >> 1);
     }
 
+    /**
+     * Changes the directions in which the given shortcut can be used, e.g. when a customization blocks one of them.
+     */
+    public void setAccess(long shortcutPointer, boolean fwd, boolean bwd) {
+        int accessFlags = (fwd ? PrepareEncoder.getScFwdDir() : 0) | (bwd ? PrepareEncoder.getScBwdDir() : 0);
+        setNodesAB(shortcutPointer, compact ? 0 : getNodeA(shortcutPointer), getNodeB(shortcutPointer), accessFlags);
+    }
+
     public void setWeight(long shortcutPointer, double weight) {
         setWeightInt(shortcutPointer, weightFromDouble(weight));
     }
@@ -290,18 +425,38 @@ public class CHStorage {
     }
 
     public int getNodeA(long shortcutPointer) {
+        if (compact)
+            return findNodeA((int) (shortcutPointer / shortcutEntryBytes));
         return shortcuts.getInt(shortcutPointer + S_NODEA) >>> 1;
     }
 
+    private int findNodeA(int shortcut) {
+        // find the smallest level whose shortcut range ends after the given shortcut
+        int lo = 0;
+        int hi = lastShortcutLevel;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (getLevelShortcutEnd(mid) > shortcut)
+                hi = mid;
+            else
+                lo = mid + 1;
+        }
+        return getLevelNode(lo);
+    }
+
     public int getNodeB(long shortcutPointer) {
-        return shortcuts.getInt(shortcutPointer + S_NODEB) >>> 1;
+        return shortcuts.getInt(shortcutPointer + S_NODEB) >>> (compact ? 2 : 1);
     }
 
     public boolean getFwdAccess(long shortcutPointer) {
+        if (compact)
+            return (shortcuts.getInt(shortcutPointer + S_NODEB) & PrepareEncoder.getScFwdDir()) != 0;
         return (shortcuts.getInt(shortcutPointer + S_NODEA) & 0x1) != 0;
     }
 
     public boolean getBwdAccess(long shortcutPointer) {
+        if (compact)
+            return (shortcuts.getInt(shortcutPointer + S_NODEB) & PrepareEncoder.getScBwdDir()) != 0;
         return (shortcuts.getInt(shortcutPointer + S_NODEB) & 0x1) != 0;
     }
 
@@ -390,7 +545,7 @@ public class CHStorage {
     }
 
     public String toDetailsString() {
-        return "shortcuts:" + nf(shortcutCount) + " (" + nf(shortcuts.getCapacity() / Helper.MB) + "MB)" +
+        return "shortcuts:" + nf(shortcutCount) + " (" + nf(shortcuts.getCapacity() / Helper.MB) + "MB" + (compact ? ", compact" : "") + ")" +
                 ", nodesCH:" + nf(nodeCount) + " (" + nf(nodesCH.getCapacity() / Helper.MB) + "MB)";
     }
 
@@ -107,6 +107,9 @@ public class CHStorageBuilder {
     }
 
     private void setLastShortcut(int node, int shortcut) {
+        // the compact storage keeps track of the shortcut ranges itself
+        if (storage.isCompact())
+            return;
         storage.setLastShortcut(storage.toNodePointer(node), shortcut);
     }
 
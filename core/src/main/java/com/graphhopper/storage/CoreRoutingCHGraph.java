@@ -0,0 +1,203 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntObjectHashMap;
+import com.graphhopper.routing.ch.CHCore;
+import com.graphhopper.routing.weighting.Weighting;
+
+/**
+ * A CH graph whose core nodes were not contracted, see {@link CHCore}. All core nodes have the maximum level, so the
+ * bidirectional CH search explores the whole core once it reached it, and the edges between the core nodes are
+ * visible from both of their nodes. The weights of the base edges are calculated with the weighting of this graph, so
+ * it can be a per-request weighting that only differs from the one of the preparation within the core.
+ */
+public class CoreRoutingCHGraph extends RoutingCHGraphImpl {
+    private final BaseGraph baseGraph;
+    private final CHStorage chStorage;
+    private final CHCore core;
+    // the shortcuts between two core nodes by their nodeB, they are stored at nodeA only
+    private final IntObjectHashMap<IntArrayList> coreShortcuts;
+
+    public CoreRoutingCHGraph(BaseGraph baseGraph, CHStorage chStorage, Weighting weighting, CHCore core) {
+        this(baseGraph, chStorage, weighting, core, findCoreShortcuts(chStorage, core));
+    }
+
+    private CoreRoutingCHGraph(BaseGraph baseGraph, CHStorage chStorage, Weighting weighting, CHCore core,
+                               IntObjectHashMap<IntArrayList> coreShortcuts) {
+        super(baseGraph, chStorage, weighting);
+        this.baseGraph = baseGraph;
+        this.chStorage = chStorage;
+        this.core = core;
+        this.coreShortcuts = coreShortcuts;
+    }
+
+    private static IntObjectHashMap<IntArrayList> findCoreShortcuts(CHStorage chStorage, CHCore core) {
+        // the core nodes have the highest levels, so their shortcuts were added last
+        IntObjectHashMap<IntArrayList> coreShortcuts = new IntObjectHashMap<>();
+        for (int shortcut = chStorage.getShortcuts() - 1; shortcut >= 0; shortcut--) {
+            long pointer = chStorage.toShortcutPointer(shortcut);
+            int nodeA = chStorage.getNodeA(pointer);
+            if (!core.isCoreNode(nodeA))
+                break;
+            int nodeB = chStorage.getNodeB(pointer);
+            if (nodeA == nodeB)
+                continue;
+            IntArrayList shortcuts = coreShortcuts.get(nodeB);
+            if (shortcuts == null) {
+                shortcuts = new IntArrayList(2);
+                coreShortcuts.put(nodeB, shortcuts);
+            }
+            shortcuts.add(shortcut);
+        }
+        return coreShortcuts;
+    }
+
+    /**
+     * @return a graph that shares the preparation of this one, but calculates the weights of the base edges with the
+     * given weighting
+     */
+    public CoreRoutingCHGraph withWeighting(Weighting weighting) {
+        return new CoreRoutingCHGraph(baseGraph, chStorage, weighting, core, coreShortcuts);
+    }
+
+    public CHCore getCore() {
+        return core;
+    }
+
+    @Override
+    public int getLevel(int node) {
+        return core.isCoreNode(node) ? getNodes() : super.getLevel(node);
+    }
+
+    @Override
+    public RoutingCHEdgeExplorer createInEdgeExplorer() {
+        return new CoreEdgeIterator(super.createInEdgeExplorer(), false);
+    }
+
+    @Override
+    public RoutingCHEdgeExplorer createOutEdgeExplorer() {
+        return new CoreEdgeIterator(super.createOutEdgeExplorer(), true);
+    }
+
+    /**
+     * Iterates the edges of the underlying explorer and then the core shortcuts that are stored at the adjacent node.
+     */
+    private class CoreEdgeIterator implements RoutingCHEdgeExplorer, RoutingCHEdgeIterator {
+        private final RoutingCHEdgeExplorer explorer;
+        private final boolean outgoing;
+        private final RoutingCHEdgeIteratorStateImpl shortcutState;
+        private RoutingCHEdgeIterator iter;
+        private RoutingCHEdgeIteratorState current;
+        private IntArrayList shortcuts;
+        private int shortcutIndex;
+
+        CoreEdgeIterator(RoutingCHEdgeExplorer explorer, boolean outgoing) {
+            this.explorer = explorer;
+            this.outgoing = outgoing;
+            this.shortcutState = new RoutingCHEdgeIteratorStateImpl(chStorage, baseGraph,
+                    new BaseGraph.EdgeIteratorStateImpl(baseGraph), getWeighting());
+        }
+
+        @Override
+        public RoutingCHEdgeIterator setBaseNode(int baseNode) {
+            iter = explorer.setBaseNode(baseNode);
+            shortcuts = coreShortcuts.get(baseNode);
+            shortcutIndex = 0;
+            return this;
+        }
+
+        @Override
+        public boolean next() {
+            if (iter != null) {
+                if (iter.next()) {
+                    current = iter;
+                    return true;
+                }
+                iter = null;
+            }
+            while (shortcuts != null && shortcutIndex < shortcuts.size()) {
+                int shortcut = shortcuts.get(shortcutIndex++);
+                long pointer = chStorage.toShortcutPointer(shortcut);
+                // we are at nodeB, so the outgoing direction is the backward direction of the shortcut
+                if (outgoing ? chStorage.getBwdAccess(pointer) : chStorage.getFwdAccess(pointer)) {
+                    shortcutState.init(baseGraph.getEdges() + shortcut, chStorage.getNodeA(pointer));
+                    current = shortcutState;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public int getEdge() {
+            return current.getEdge();
+        }
+
+        @Override
+        public int getOrigEdge() {
+            return current.getOrigEdge();
+        }
+
+        @Override
+        public int getOrigEdgeKeyFirst() {
+            return current.getOrigEdgeKeyFirst();
+        }
+
+        @Override
+        public int getOrigEdgeKeyLast() {
+            return current.getOrigEdgeKeyLast();
+        }
+
+        @Override
+        public int getBaseNode() {
+            return current.getBaseNode();
+        }
+
+        @Override
+        public int getAdjNode() {
+            return current.getAdjNode();
+        }
+
+        @Override
+        public boolean isShortcut() {
+            return current.isShortcut();
+        }
+
+        @Override
+        public int getSkippedEdge1() {
+            return current.getSkippedEdge1();
+        }
+
+        @Override
+        public int getSkippedEdge2() {
+            return current.getSkippedEdge2();
+        }
+
+        @Override
+        public double getWeight(boolean reverse) {
+            return current.getWeight(reverse);
+        }
+
+        @Override
+        public String toString() {
+            return getEdge() + " " + getBaseNode() + "-" + getAdjNode();
+        }
+    }
+}
@@ -48,6 +48,8 @@ import java.util.List;
  */
 public final class MMapDataAccess extends AbstractDataAccess {
 
+    private static final int PAGE_SIZE = 4096;
+    private static final int RESIDENT_SAMPLES = 64;
     private final boolean allowWrites;
     private RandomAccessFile raFile;
     private final List<MappedByteBuffer> segments = new ArrayList<>();
@@ -387,6 +389,30 @@ public final class MMapDataAccess extends AbstractDataAccess {
         return segments.size();
     }
 
+    /**
+     * Estimates how many bytes of the mapped file are currently in physical memory. For every segment at most
+     * RESIDENT_SAMPLES pages are checked via MappedByteBuffer.isLoaded, which uses mincore on Linux and does not
+     * load the pages.
+     */
+    public long getResidentBytes() {
+        long resident = 0;
+        for (MappedByteBuffer bb : segments) {
+            int capacity = bb.capacity();
+            int pages = (capacity + PAGE_SIZE - 1) / PAGE_SIZE;
+            int step = Math.max(1, pages / RESIDENT_SAMPLES);
+            int sampled = 0, loaded = 0;
+            for (int page = 0; page < pages; page += step) {
+                int offset = page * PAGE_SIZE;
+                if (bb.slice(offset, Math.min(PAGE_SIZE, capacity - offset)).isLoaded())
+                    loaded++;
+                sampled++;
+            }
+            if (sampled > 0)
+                resident += (long) capacity * loaded / sampled;
+        }
+        return resident;
+    }
+
     /**
      * Cleans up MappedByteBuffers. Be sure you bring the segments list in a consistent state
      * afterwards.
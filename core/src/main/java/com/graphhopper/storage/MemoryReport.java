@@ -0,0 +1,168 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import com.graphhopper.util.Helper;
+
+import java.util.*;
+
+/**
+ * Lists the memory used by every DataAccess of a Directory and the estimated heap size of caches. Used for the
+ * startup log and the /memory admin endpoint to see how much memory the different profiles need.
+ * <p>
+ * DataAccess objects do not know how many of their bytes are actually in use, so only the capacity is reported, which
+ * is allocated in steps of the segment size. For heap DataAccess objects the capacity is always resident, for memory
+ * mapped ones the resident bytes are estimated via {@link MMapDataAccess#getResidentBytes()}.
+ */
+public class MemoryReport {
+    private final List<Entry> dataAccesses;
+    private final Map<String, Long> caches = new LinkedHashMap<>();
+
+    public MemoryReport(List<Entry> dataAccesses) {
+        this.dataAccesses = dataAccesses;
+    }
+
+    public static MemoryReport create(Directory directory) {
+        List<DataAccess> das;
+        synchronized (directory.getDAs()) {
+            das = new ArrayList<>(directory.getDAs().values());
+        }
+        List<Entry> entries = new ArrayList<>(das.size());
+        for (DataAccess da : das) {
+            if (da.isClosed())
+                continue;
+            long capacity = da.getCapacity();
+            long resident = da instanceof MMapDataAccess ? ((MMapDataAccess) da).getResidentBytes() : capacity;
+            entries.add(new Entry(da.getName(), da.getType(), capacity, resident, da.getSegments(), da.getSegmentSize()));
+        }
+        entries.sort(Comparator.comparingLong(Entry::getCapacity).reversed().thenComparing(Entry::getName));
+        return new MemoryReport(entries);
+    }
+
+    /**
+     * @param bytes the estimated heap size of the cache
+     */
+    public MemoryReport addCache(String name, long bytes) {
+        caches.put(name, bytes);
+        return this;
+    }
+
+    public List<Entry> getDataAccesses() {
+        return dataAccesses;
+    }
+
+    public Map<String, Long> getCaches() {
+        return caches;
+    }
+
+    public long getHeapBytes() {
+        long sum = 0;
+        for (Entry e : dataAccesses) {
+            if (e.getType().isInMemory())
+                sum += e.getCapacity();
+        }
+        for (long bytes : caches.values()) {
+            sum += bytes;
+        }
+        return sum;
+    }
+
+    public long getMMapBytes() {
+        long sum = 0;
+        for (Entry e : dataAccesses) {
+            if (e.getType().isMMap())
+                sum += e.getCapacity();
+        }
+        return sum;
+    }
+
+    public long getMMapResidentBytes() {
+        long sum = 0;
+        for (Entry e : dataAccesses) {
+            if (e.getType().isMMap())
+                sum += e.getResidentBytes();
+        }
+        return sum;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("heap: ").append(toMB(getHeapBytes())).append("MB, mmap: ").append(toMB(getMMapBytes()))
+                .append("MB (resident: ").append(toMB(getMMapResidentBytes())).append("MB)");
+        for (Entry e : dataAccesses) {
+            sb.append("\n  ").append(e);
+        }
+        for (Map.Entry<String, Long> e : caches.entrySet()) {
+            sb.append("\n  ").append(e.getKey()).append(" cache: ").append(toMB(e.getValue())).append("MB");
+        }
+        return sb.toString();
+    }
+
+    private static String toMB(long bytes) {
+        return String.format(Locale.ROOT, "%.1f", bytes / (double) Helper.MB);
+    }
+
+    public static class Entry {
+        private final String name;
+        private final DAType type;
+        private final long capacity;
+        private final long residentBytes;
+        private final int segments;
+        private final int segmentSize;
+
+        public Entry(String name, DAType type, long capacity, long residentBytes, int segments, int segmentSize) {
+            this.name = name;
+            this.type = type;
+            this.capacity = capacity;
+            this.residentBytes = residentBytes;
+            this.segments = segments;
+            this.segmentSize = segmentSize;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public DAType getType() {
+            return type;
+        }
+
+        public long getCapacity() {
+            return capacity;
+        }
+
+        public long getResidentBytes() {
+            return residentBytes;
+        }
+
+        public int getSegments() {
+            return segments;
+        }
+
+        public int getSegmentSize() {
+            return segmentSize;
+        }
+
+        @Override
+        public String toString() {
+            return name + " " + type + ": " + toMB(capacity) + "MB, resident: " + toMB(residentBytes) + "MB, "
+                    + segments + " segments of " + segmentSize + " bytes";
+        }
+    }
+}
@@ -27,7 +27,11 @@ public class RoutingCHEdgeIteratorImpl extends RoutingCHEdgeIteratorStateImpl im
     private final BaseGraph.EdgeIteratorImpl baseIterator;
     private final boolean outgoing;
     private final boolean incoming;
+    private final boolean compact;
     private int nextEdgeId;
+    // only used for the compact storage, where we know the shortcut range of the base node up-front
+    private int iterBaseNode;
+    private int firstShortcutEdgeId;
 
     public static RoutingCHEdgeIteratorImpl outEdges(CHStorage chStore, BaseGraph baseGraph, Weighting weighting) {
         return new RoutingCHEdgeIteratorImpl(chStore, baseGraph, weighting, true, false);
@@ -42,6 +46,7 @@ public class RoutingCHEdgeIteratorImpl extends RoutingCHEdgeIteratorStateImpl im
         this.baseIterator = (BaseGraph.EdgeIteratorImpl) super.baseEdgeState;
         this.outgoing = outgoing;
         this.incoming = incoming;
+        this.compact = chStore.isCompact();
     }
 
     @Override
@@ -53,8 +58,13 @@ public class RoutingCHEdgeIteratorImpl extends RoutingCHEdgeIteratorStateImpl im
     public RoutingCHEdgeIterator setBaseNode(int baseNode) {
         assert baseGraph.isFrozen();
         baseIterator.setBaseNode(baseNode);
-        int lastShortcut = store.getLastShortcut(store.toNodePointer(baseNode));
+        long nodePointer = store.toNodePointer(baseNode);
+        int lastShortcut = store.getLastShortcut(nodePointer);
         nextEdgeId = edgeId = lastShortcut < 0 ? baseIterator.edgeId : baseGraph.getEdges() + lastShortcut;
+        if (compact && lastShortcut >= 0) {
+            iterBaseNode = baseNode;
+            firstShortcutEdgeId = baseGraph.getEdges() + store.getFirstShortcut(nodePointer);
+        }
         return this;
     }
 
@@ -65,11 +75,13 @@ public class RoutingCHEdgeIteratorImpl extends RoutingCHEdgeIteratorStateImpl im
         // access/finite weight.
         while (nextEdgeId >= baseGraph.getEdges()) {
             shortcutPointer = store.toShortcutPointer(nextEdgeId - baseGraph.getEdges());
-            baseNode = store.getNodeA(shortcutPointer);
+            // for the compact storage nodeA is not stored, but we know it must be the node we are iterating
+            baseNode = compact ? iterBaseNode : store.getNodeA(shortcutPointer);
             adjNode = store.getNodeB(shortcutPointer);
             edgeId = nextEdgeId;
             nextEdgeId--;
-            if (nextEdgeId < baseGraph.getEdges() || store.getNodeA(store.toShortcutPointer(nextEdgeId - baseGraph.getEdges())) != baseNode)
+            if (compact ? nextEdgeId < firstShortcutEdgeId
+                    : nextEdgeId < baseGraph.getEdges() || store.getNodeA(store.toShortcutPointer(nextEdgeId - baseGraph.getEdges())) != baseNode)
                 nextEdgeId = baseIterator.edgeId;
             // todo: note that it would be more efficient (but cost more memory) to separate in/out edges,
             //       especially for edge-based where we do not use bidirectional shortcuts
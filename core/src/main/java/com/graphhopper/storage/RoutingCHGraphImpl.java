@@ -26,6 +26,8 @@ public class RoutingCHGraphImpl implements RoutingCHGraph {
     private final Weighting weighting;
 
     public static RoutingCHGraph fromGraph(BaseGraph baseGraph, CHStorage chStorage, CHConfig chConfig) {
+        if (chConfig.getCore() != null)
+            return new CoreRoutingCHGraph(baseGraph, chStorage, chConfig.getWeighting(), chConfig.getCore());
         return new RoutingCHGraphImpl(baseGraph, chStorage, chConfig.getWeighting());
     }
 
@@ -82,6 +84,10 @@ public class RoutingCHGraphImpl implements RoutingCHGraph {
         return baseGraph;
     }
 
+    public CHStorage getCHStorage() {
+        return chStorage;
+    }
+
     @Override
     public Weighting getWeighting() {
         return weighting;
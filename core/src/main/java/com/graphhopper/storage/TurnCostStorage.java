@@ -28,6 +28,10 @@ import com.graphhopper.util.GHUtility;
 /**
  * A key/value store, where the unique keys are triples (fromEdge, viaNode, toEdge) and the values
  * are integers that can be used to store encoded values.
+ * <p>
+ * The entries of a node are stored as linked list starting at the turn cost index of the node. Once all entries are
+ * added {@link #buildIndex()} creates an open addressing hash table for the keys, so that a lookup does not need to
+ * walk the list. The hash table is stored next to the entries and only used as long as no entry is added.
  *
  * @author Karl Hübner
  * @author Peter Karich
@@ -41,15 +45,26 @@ public class TurnCostStorage {
     private static final int TC_FLAGS = 8;
     private static final int TC_NEXT = 12;
     private static final int BYTES_PER_ENTRY = 16;
+    // each slot of the hash table is |entry_index|via_node|, the empty slot has the entry index NO_TURN_ENTRY
+    private static final int IDX_ENTRY = 0;
+    private static final int IDX_VIA = 4;
+    private static final int BYTES_PER_SLOT = 8;
 
     private final BaseGraph baseGraph;
     private final DataAccess turnCosts;
+    private final DataAccess index;
     private final EdgeIntAccess edgeIntAccess = createEdgeIntAccess();
     private int turnCostsCount;
+    // true if the DataAccess of the hash table was created or loaded, even if the hash table is outdated
+    private boolean indexCreated;
+    // the number of entries the hash table was built for or -1 if there is none
+    private int indexedCount = -1;
+    private int slotMask;
 
-    public TurnCostStorage(BaseGraph baseGraph, DataAccess turnCosts) {
+    public TurnCostStorage(BaseGraph baseGraph, DataAccess turnCosts, DataAccess index) {
         this.baseGraph = baseGraph;
         this.turnCosts = turnCosts;
+        this.index = index;
     }
 
     public TurnCostStorage create(long initBytes) {
@@ -62,14 +77,30 @@ public class TurnCostStorage {
         turnCosts.setHeader(4, BYTES_PER_ENTRY);
         turnCosts.setHeader(2 * 4, turnCostsCount);
         turnCosts.flush();
+        flushIndex();
+    }
+
+    /**
+     * Writes the hash table, e.g. after it was built for a loaded graph, without the entries.
+     */
+    public void flushIndex() {
+        if (indexedCount < 0)
+            return;
+        index.setHeader(0, Constants.VERSION_TURN_COSTS);
+        index.setHeader(4, BYTES_PER_SLOT);
+        index.setHeader(2 * 4, indexedCount);
+        index.setHeader(3 * 4, slotMask);
+        index.flush();
     }
 
     public void close() {
         turnCosts.close();
+        if (indexCreated)
+            index.close();
     }
 
     public long getCapacity() {
-        return turnCosts.getCapacity();
+        return turnCosts.getCapacity() + (indexCreated ? index.getCapacity() : 0);
     }
 
     public boolean loadExisting() {
@@ -81,9 +112,73 @@ public class TurnCostStorage {
             throw new IllegalStateException("Number of bytes per turn cost entry does not match the current configuration: " + turnCosts.getHeader(0) + " vs. " + BYTES_PER_ENTRY);
         }
         turnCostsCount = turnCosts.getHeader(8);
+
+        // the hash table is optional and can be built later if it is missing or outdated
+        if (index.loadExisting()) {
+            // an outdated hash table is kept open, so that buildIndex can reuse its DataAccess
+            indexCreated = true;
+            if (index.getHeader(0) == Constants.VERSION_TURN_COSTS && index.getHeader(4) == BYTES_PER_SLOT
+                    && index.getHeader(8) == turnCostsCount) {
+                indexedCount = turnCostsCount;
+                slotMask = index.getHeader(12);
+            }
+        }
         return true;
     }
 
+    /**
+     * Builds the hash table for the current entries. Entries that are added afterwards are found, but slower, until the
+     * hash table is built again.
+     */
+    public void buildIndex() {
+        if (turnCostsCount > (1 << 29))
+            throw new IllegalStateException("Too many turn cost entries for the index: " + turnCostsCount);
+        // use at least twice as many slots as entries to keep the probe sequences short
+        int slots = turnCostsCount == 0 ? 1 : Integer.highestOneBit(2 * turnCostsCount - 1) << 1;
+        if (indexCreated) {
+            index.ensureCapacity((long) slots * BYTES_PER_SLOT);
+        } else {
+            index.create((long) slots * BYTES_PER_SLOT);
+            indexCreated = true;
+        }
+        slotMask = slots - 1;
+        for (long slot = 0; slot < slots; slot++)
+            index.setInt(slot * BYTES_PER_SLOT + IDX_ENTRY, NO_TURN_ENTRY);
+
+        NodeAccess nodeAccess = baseGraph.getNodeAccess();
+        for (int node = 0; node < baseGraph.getNodes(); node++) {
+            int entry = nodeAccess.getTurnCostIndex(node);
+            while (entry != NO_TURN_ENTRY) {
+                long pointer = (long) entry * BYTES_PER_ENTRY;
+                int slot = hash(turnCosts.getInt(pointer + TC_FROM), node, turnCosts.getInt(pointer + TC_TO)) & slotMask;
+                while (index.getInt((long) slot * BYTES_PER_SLOT + IDX_ENTRY) != NO_TURN_ENTRY)
+                    slot = (slot + 1) & slotMask;
+                index.setInt((long) slot * BYTES_PER_SLOT + IDX_ENTRY, entry);
+                index.setInt((long) slot * BYTES_PER_SLOT + IDX_VIA, node);
+                entry = turnCosts.getInt(pointer + TC_NEXT);
+            }
+        }
+        indexedCount = turnCostsCount;
+    }
+
+    /**
+     * @return true if the hash table exists and contains all entries
+     */
+    public boolean isIndexed() {
+        return indexedCount == turnCostsCount;
+    }
+
+    private static int hash(int fromEdge, int viaNode, int toEdge) {
+        int h = (fromEdge * 31 + viaNode) * 31 + toEdge;
+        // the finalizer of MurmurHash3 to distribute the bits
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
     public void set(BooleanEncodedValue bev, int fromEdge, int viaNode, int toEdge, boolean value) {
         int index = findOrCreateTurnCostEntry(fromEdge, viaNode, toEdge);
         if (index < 0)
@@ -156,6 +251,20 @@ public class TurnCostStorage {
         if (viaNode < 0)
             throw new IllegalArgumentException("via node cannot be negative");
 
+        if (indexedCount == turnCostsCount && indexedCount > 0) {
+            for (int slot = hash(fromEdge, viaNode, toEdge) & slotMask; ; slot = (slot + 1) & slotMask) {
+                long slotPointer = (long) slot * BYTES_PER_SLOT;
+                int index = this.index.getInt(slotPointer + IDX_ENTRY);
+                if (index == NO_TURN_ENTRY)
+                    return -1;
+                if (this.index.getInt(slotPointer + IDX_VIA) == viaNode) {
+                    long pointer = (long) index * BYTES_PER_ENTRY;
+                    if (fromEdge == turnCosts.getInt(pointer + TC_FROM) && toEdge == turnCosts.getInt(pointer + TC_TO))
+                        return index;
+                }
+            }
+        }
+
         final int maxEntries = 1000;
         int index = baseGraph.getNodeAccess().getTurnCostIndex(viaNode);
         for (int i = 0; i < maxEntries; ++i) {
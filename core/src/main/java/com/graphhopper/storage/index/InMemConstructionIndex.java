@@ -20,8 +20,11 @@ package com.graphhopper.storage.index;
 
 import com.carrotsearch.hppc.IntArrayList;
 import com.graphhopper.geohash.SpatialKeyAlgo;
+import com.graphhopper.util.GHUtility;
 import org.locationtech.jts.geom.Coordinate;
 
+import java.util.stream.IntStream;
+
 import static com.graphhopper.util.DistancePlaneProjection.DIST_PLANE;
 
 public class InMemConstructionIndex {
@@ -91,6 +94,56 @@ public class InMemConstructionIndex {
         this.keyAlgo = indexStructureInfo.getKeyAlgo();
     }
 
+    /**
+     * Merges the given indices, which must have been created for the same index structure. The edges added to parts[i]
+     * must all be smaller than the ones added to parts[i + 1]. This way the leafs of the merged index are the same as
+     * if all edges had been added to a single index. The given indices must not be used afterwards, because their
+     * entries are re-used for the merged index.
+     */
+    static InMemConstructionIndex merge(IndexStructureInfo indexStructureInfo, InMemConstructionIndex[] parts, int threads) {
+        InMemConstructionIndex result = new InMemConstructionIndex(indexStructureInfo);
+        // the sub-trees of the root are independent, so we merge them in parallel
+        GHUtility.runConcurrently(IntStream.range(0, result.root.subEntries.length).mapToObj(index -> () -> {
+            InMemEntry[] subEntries = new InMemEntry[parts.length];
+            for (int p = 0; p < parts.length; p++)
+                subEntries[p] = parts[p].root.getSubEntry(index);
+            result.root.setSubEntry(index, result.merge(subEntries, 1));
+        }), threads);
+        return result;
+    }
+
+    private InMemEntry merge(InMemEntry[] entries, int depth) {
+        InMemEntry single = null;
+        int count = 0;
+        for (InMemEntry entry : entries) {
+            if (entry != null) {
+                single = entry;
+                count++;
+            }
+        }
+        if (count <= 1)
+            return single;
+        if (depth == this.entries.length) {
+            int size = 0;
+            for (InMemEntry entry : entries)
+                if (entry != null)
+                    size += ((InMemLeafEntry) entry).size();
+            InMemLeafEntry leaf = new InMemLeafEntry(size);
+            for (InMemEntry entry : entries)
+                if (entry != null)
+                    leaf.addAll((InMemLeafEntry) entry);
+            return leaf;
+        }
+        InMemTreeEntry tree = new InMemTreeEntry(this.entries[depth]);
+        InMemEntry[] subEntries = new InMemEntry[entries.length];
+        for (int index = 0; index < tree.subEntries.length; index++) {
+            for (int p = 0; p < entries.length; p++)
+                subEntries[p] = entries[p] == null ? null : ((InMemTreeEntry) entries[p]).getSubEntry(index);
+            tree.setSubEntry(index, merge(subEntries, depth + 1));
+        }
+        return tree;
+    }
+
     public void addToAllTilesOnLine(final int value, final double lat1, final double lon1, final double lat2, final double lon2) {
         if (!DIST_PLANE.isCrossBoundary(lon1, lon2)) {
             // Find all the tiles on the line from (y1, x1) to (y2, y2) in tile coordinates (y, x)
@@ -20,6 +20,7 @@ package com.graphhopper.storage.index;
 
 import com.carrotsearch.hppc.IntArrayList;
 import com.carrotsearch.hppc.IntHashSet;
+import com.carrotsearch.hppc.LongObjectMap;
 import com.graphhopper.geohash.SpatialKeyAlgo;
 import com.graphhopper.storage.DAType;
 import com.graphhopper.storage.DataAccess;
@@ -240,6 +241,16 @@ public class LineIntIndex {
      * <p>
      */
     public void findEdgeIdsInNeighborhood(double queryLat, double queryLon, int iteration, IntConsumer foundEntries) {
+        findEdgeIdsInNeighborhood(queryLat, queryLon, iteration, null, foundEntries);
+    }
+
+    /**
+     * Same as {@link #findEdgeIdsInNeighborhood(double, double, int, IntConsumer)}, but the edge ids of every visited
+     * tile are put into the given cache (keyed by {@link #getTileKey}) and are re-used for subsequent calls with the
+     * same cache. This is useful for many queries close to each other. The cache can be null.
+     */
+    public void findEdgeIdsInNeighborhood(double queryLat, double queryLon, int iteration,
+                                          LongObjectMap<IntArrayList> tileCache, IntConsumer foundEntries) {
         int x = keyAlgo.x(queryLon);
         int y = keyAlgo.y(queryLat);
         for (int yreg = -iteration; yreg <= iteration; yreg++) {
@@ -247,12 +258,10 @@ public class LineIntIndex {
             int subqueryXA = x - iteration;
             int subqueryXB = x + iteration;
             if (subqueryXA >= 0 && subqueryY >= 0 && subqueryXA < indexStructureInfo.getParts() && subqueryY < indexStructureInfo.getParts()) {
-                long keyPart = keyAlgo.encode(subqueryXA, subqueryY) << (64 - keyAlgo.getBits());
-                fillIDs(keyPart, foundEntries);
+                fillIDs(subqueryXA, subqueryY, tileCache, foundEntries);
             }
             if (iteration > 0 && subqueryXB >= 0 && subqueryY >= 0 && subqueryXB < indexStructureInfo.getParts() && subqueryY < indexStructureInfo.getParts()) {
-                long keyPart = keyAlgo.encode(subqueryXB, subqueryY) << (64 - keyAlgo.getBits());
-                fillIDs(keyPart, foundEntries);
+                fillIDs(subqueryXB, subqueryY, tileCache, foundEntries);
             }
         }
 
@@ -261,16 +270,38 @@ public class LineIntIndex {
             int subqueryYA = y - iteration;
             int subqueryYB = y + iteration;
             if (subqueryX >= 0 && subqueryYA >= 0 && subqueryX < indexStructureInfo.getParts() && subqueryYA < indexStructureInfo.getParts()) {
-                long keyPart = keyAlgo.encode(subqueryX, subqueryYA) << (64 - keyAlgo.getBits());
-                fillIDs(keyPart, foundEntries);
+                fillIDs(subqueryX, subqueryYA, tileCache, foundEntries);
             }
             if (subqueryX >= 0 && subqueryYB >= 0 && subqueryX < indexStructureInfo.getParts() && subqueryYB < indexStructureInfo.getParts()) {
-                long keyPart = keyAlgo.encode(subqueryX, subqueryYB) << (64 - keyAlgo.getBits());
-                fillIDs(keyPart, foundEntries);
+                fillIDs(subqueryX, subqueryYB, tileCache, foundEntries);
             }
         }
     }
 
+    private void fillIDs(int x, int y, LongObjectMap<IntArrayList> tileCache, IntConsumer consumer) {
+        long tileKey = keyAlgo.encode(x, y);
+        if (tileCache == null) {
+            fillIDs(tileKey << (64 - keyAlgo.getBits()), consumer);
+            return;
+        }
+        IntArrayList edgeIds = tileCache.get(tileKey);
+        if (edgeIds == null) {
+            edgeIds = new IntArrayList();
+            fillIDs(tileKey << (64 - keyAlgo.getBits()), edgeIds::add);
+            tileCache.put(tileKey, edgeIds);
+        }
+        for (int i = 0; i < edgeIds.size(); i++)
+            consumer.accept(edgeIds.get(i));
+    }
+
+    /**
+     * @return the key of the tile containing the given point. Keys of nearby tiles are usually close to each other,
+     * because they follow a Z-order curve.
+     */
+    public long getTileKey(double lat, double lon) {
+        return keyAlgo.encodeLatLon(lat, lon);
+    }
+
     public int getChecksum() {
         return checksum;
     }
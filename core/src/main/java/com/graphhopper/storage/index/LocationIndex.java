@@ -46,6 +46,22 @@ public interface LocationIndex {
      */
     Snap findClosest(double lat, double lon, EdgeFilter edgeFilter);
 
+    /**
+     * Returns the closest Snap for each of the given locations, see {@link #findClosest(double, double, EdgeFilter)}.
+     * Implementations can override this to share work between the individual lookups.
+     *
+     * @return the snaps in the same order as the given locations
+     */
+    default Snap[] findClosest(double[] lats, double[] lons, EdgeFilter edgeFilter) {
+        if (lats.length != lons.length)
+            throw new IllegalArgumentException("The number of latitudes and longitudes must be equal, but was: "
+                    + lats.length + " vs. " + lons.length);
+        Snap[] snaps = new Snap[lats.length];
+        for (int i = 0; i < lats.length; i++)
+            snaps[i] = findClosest(lats[i], lons[i], edgeFilter);
+        return snaps;
+    }
+
     /**
      * This method explores the LocationIndex with the specified Visitor. It visits only the stored edges (and only once)
      * and limited by the queryBBox. Also (a few) more edges slightly outside of queryBBox could be
@@ -17,7 +17,11 @@
  */
 package com.graphhopper.storage.index;
 
+import com.carrotsearch.hppc.IntArrayList;
 import com.carrotsearch.hppc.IntHashSet;
+import com.carrotsearch.hppc.LongObjectHashMap;
+import com.carrotsearch.hppc.LongObjectMap;
+import com.carrotsearch.hppc.sorting.IndirectSort;
 import com.graphhopper.routing.util.AllEdgesIterator;
 import com.graphhopper.routing.util.EdgeFilter;
 import com.graphhopper.storage.Directory;
@@ -28,7 +32,12 @@ import com.graphhopper.util.shapes.BBox;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.stream.IntStream;
 
 import static com.graphhopper.util.DistancePlaneProjection.DIST_PLANE;
 
@@ -55,9 +64,14 @@ public class LocationIndexTree implements LocationIndex {
     private final Directory directory;
     private final Graph graph;
     private final Logger logger = LoggerFactory.getLogger(getClass());
+    // the maximum number of tiles we keep in memory when snapping multiple points at once
+    private static final int MAX_CACHED_TILES = 1024;
+    // building the index in parallel is only worth it for larger graphs
+    private static final int MIN_EDGES_PER_THREAD = 10_000;
     private final NodeAccess nodeAccess;
     private int maxRegionSearch = 4;
     private int minResolutionInMeter = 300;
+    private int threads = 1;
     private boolean initialized = false;
 
     LineIntIndex lineIntIndex;
@@ -119,6 +133,18 @@ public class LocationIndexTree implements LocationIndex {
     }
 
 
+    /**
+     * Sets the number of threads used to build the index in {@link #prepareIndex}. Every thread processes a range of
+     * edges and the results are merged afterwards, so the resulting index is the same no matter how many threads are
+     * used. When using more than one thread the edge filter passed to prepareIndex must be thread-safe.
+     */
+    public LocationIndexTree setThreads(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("Number of threads must be at least 1 but was " + threads);
+        this.threads = threads;
+        return this;
+    }
+
     public LocationIndex setResolution(int minResolutionInMeter) {
         if (minResolutionInMeter <= 0)
             throw new IllegalStateException("Negative precision is not allowed!");
@@ -184,37 +210,65 @@ public class LocationIndexTree implements LocationIndex {
 
     InMemConstructionIndex prepareInMemConstructionIndex(BBox bounds, EdgeFilter edgeFilter) {
         indexStructureInfo = IndexStructureInfo.create(bounds, minResolutionInMeter);
-        InMemConstructionIndex inMem = new InMemConstructionIndex(indexStructureInfo);
-        AllEdgesIterator allIter = graph.getAllEdges();
-        try {
-            while (allIter.next()) {
-                if (!edgeFilter.accept(allIter))
-                    continue;
-                int edge = allIter.getEdge();
-                int nodeA = allIter.getBaseNode();
-                int nodeB = allIter.getAdjNode();
-                double lat1 = nodeAccess.getLat(nodeA);
-                double lon1 = nodeAccess.getLon(nodeA);
-                double lat2;
-                double lon2;
-                PointList points = allIter.fetchWayGeometry(FetchMode.PILLAR_ONLY);
-                int len = points.size();
-                for (int i = 0; i < len; i++) {
-                    lat2 = points.getLat(i);
-                    lon2 = points.getLon(i);
-                    inMem.addToAllTilesOnLine(edge, lat1, lon1, lat2, lon2);
-                    lat1 = lat2;
-                    lon1 = lon2;
+        int edges = graph.getEdges();
+        if (threads == 1 || edges < threads * MIN_EDGES_PER_THREAD) {
+            InMemConstructionIndex inMem = new InMemConstructionIndex(indexStructureInfo);
+            AllEdgesIterator allIter = graph.getAllEdges();
+            try {
+                while (allIter.next()) {
+                    if (edgeFilter.accept(allIter))
+                        addEdge(inMem, allIter);
                 }
-                lat2 = nodeAccess.getLat(nodeB);
-                lon2 = nodeAccess.getLon(nodeB);
-                inMem.addToAllTilesOnLine(edge, lat1, lon1, lat2, lon2);
+            } catch (Exception ex1) {
+                logger.error("Problem! base:" + allIter.getBaseNode() + ", adj:" + allIter.getAdjNode()
+                        + ", edge:" + allIter.getEdge(), ex1);
             }
-        } catch (Exception ex1) {
-            logger.error("Problem! base:" + allIter.getBaseNode() + ", adj:" + allIter.getAdjNode()
-                    + ", edge:" + allIter.getEdge(), ex1);
+            return inMem;
+        }
+
+        // every thread builds the index for a consecutive range of edges. since these ranges are ordered the merged
+        // leafs contain the edges in the same order as if we added them one by one.
+        InMemConstructionIndex[] parts = new InMemConstructionIndex[threads];
+        GHUtility.runConcurrently(IntStream.range(0, threads).mapToObj(t -> () -> {
+            InMemConstructionIndex inMem = new InMemConstructionIndex(indexStructureInfo);
+            int fromEdge = (int) ((long) edges * t / threads);
+            int toEdge = (int) ((long) edges * (t + 1) / threads);
+            for (int edge = fromEdge; edge < toEdge; edge++) {
+                EdgeIteratorState edgeState = graph.getEdgeIteratorState(edge, Integer.MIN_VALUE);
+                try {
+                    if (edgeFilter.accept(edgeState))
+                        addEdge(inMem, edgeState);
+                } catch (Exception ex1) {
+                    logger.error("Problem! base:" + edgeState.getBaseNode() + ", adj:" + edgeState.getAdjNode()
+                            + ", edge:" + edgeState.getEdge(), ex1);
+                    break;
+                }
+            }
+            parts[t] = inMem;
+        }), threads);
+        return InMemConstructionIndex.merge(indexStructureInfo, parts, threads);
+    }
+
+    private void addEdge(InMemConstructionIndex inMem, EdgeIteratorState edgeState) {
+        int edge = edgeState.getEdge();
+        int nodeA = edgeState.getBaseNode();
+        int nodeB = edgeState.getAdjNode();
+        double lat1 = nodeAccess.getLat(nodeA);
+        double lon1 = nodeAccess.getLon(nodeA);
+        double lat2;
+        double lon2;
+        PointList points = edgeState.fetchWayGeometry(FetchMode.PILLAR_ONLY);
+        int len = points.size();
+        for (int i = 0; i < len; i++) {
+            lat2 = points.getLat(i);
+            lon2 = points.getLon(i);
+            inMem.addToAllTilesOnLine(edge, lat1, lon1, lat2, lon2);
+            lat1 = lat2;
+            lon1 = lon2;
         }
-        return inMem;
+        lat2 = nodeAccess.getLat(nodeB);
+        lon2 = nodeAccess.getLon(nodeB);
+        inMem.addToAllTilesOnLine(edge, lat1, lon1, lat2, lon2);
     }
 
     int checksum() {
@@ -273,11 +327,46 @@ public class LocationIndexTree implements LocationIndex {
     public Snap findClosest(final double queryLat, final double queryLon, final EdgeFilter edgeFilter) {
         if (isClosed())
             throw new IllegalStateException("You need to create a new LocationIndex instance as it is already closed");
+        return findClosest(queryLat, queryLon, edgeFilter, new IntHashSet(), null);
+    }
 
-        final Snap closestMatch = new Snap(queryLat, queryLon);
+    /**
+     * Snaps all the given points at once. The points are processed in the spatial order of the tiles they fall into,
+     * so the edges found for a tile can be re-used for the following points instead of traversing the index again.
+     * This is much faster than calling {@link #findClosest(double, double, EdgeFilter)} for every point when there are
+     * many points close to each other.
+     */
+    @Override
+    public Snap[] findClosest(double[] queryLats, double[] queryLons, EdgeFilter edgeFilter) {
+        if (queryLats.length != queryLons.length)
+            throw new IllegalArgumentException("The number of latitudes and longitudes must be equal, but was: "
+                    + queryLats.length + " vs. " + queryLons.length);
+        if (isClosed())
+            throw new IllegalStateException("You need to create a new LocationIndex instance as it is already closed");
+
+        long[] tileKeys = new long[queryLats.length];
+        for (int i = 0; i < queryLats.length; i++)
+            tileKeys[i] = lineIntIndex.getTileKey(queryLats[i], queryLons[i]);
+        int[] order = IndirectSort.mergesort(0, tileKeys.length, (indexA, indexB) -> Long.compare(tileKeys[indexA], tileKeys[indexB]));
+
+        Snap[] snaps = new Snap[queryLats.length];
+        LongObjectMap<IntArrayList> tileCache = new LongObjectHashMap<>();
         IntHashSet seenEdges = new IntHashSet();
+        for (int i : order) {
+            // consecutive points are close to each other, so we simply start over from time to time
+            if (tileCache.size() > MAX_CACHED_TILES)
+                tileCache.clear();
+            seenEdges.clear();
+            snaps[i] = findClosest(queryLats[i], queryLons[i], edgeFilter, seenEdges, tileCache);
+        }
+        return snaps;
+    }
+
+    private Snap findClosest(final double queryLat, final double queryLon, final EdgeFilter edgeFilter,
+                             IntHashSet seenEdges, LongObjectMap<IntArrayList> tileCache) {
+        final Snap closestMatch = new Snap(queryLat, queryLon);
         for (int iteration = 0; iteration < maxRegionSearch; iteration++) {
-            lineIntIndex.findEdgeIdsInNeighborhood(queryLat, queryLon, iteration, edgeId -> {
+            lineIntIndex.findEdgeIdsInNeighborhood(queryLat, queryLon, iteration, tileCache, edgeId -> {
                 EdgeIteratorState edgeIteratorState = graph.getEdgeIteratorStateForKey(edgeId * 2);
                 if (seenEdges.add(edgeId) && edgeFilter.accept(edgeIteratorState)) { // TODO: or reverse?
                     traverseEdge(queryLat, queryLon, edgeIteratorState, (node, normedDist, wayIndex, pos) -> {
@@ -308,6 +397,63 @@ public class LocationIndexTree implements LocationIndex {
         return closestMatch;
     }
 
+    /**
+     * Finds the closest snaps on up to k different edges accepted by the given filter. For every edge only the point
+     * closest to the query point is considered, so this is not the same as k snaps on the closest edge. Similar to
+     * {@link #findClosest(double, double, EdgeFilter)} the search is limited by the maximum region search.
+     *
+     * @return the snaps ordered by increasing distance to the query point. The list might contain less than k snaps if
+     * there are not enough edges nearby.
+     */
+    public List<Snap> findKClosest(final double queryLat, final double queryLon, final int k, final EdgeFilter edgeFilter) {
+        if (k < 1)
+            throw new IllegalArgumentException("k must be at least 1 but was " + k);
+        if (isClosed())
+            throw new IllegalStateException("You need to create a new LocationIndex instance as it is already closed");
+
+        // the candidate with the largest distance comes first, so we can remove it once we found a better one
+        final PriorityQueue<Snap> candidates = new PriorityQueue<>(k, Comparator.comparingDouble(Snap::getQueryDistance).reversed());
+        IntHashSet seenEdges = new IntHashSet();
+        for (int iteration = 0; iteration < maxRegionSearch; iteration++) {
+            lineIntIndex.findEdgeIdsInNeighborhood(queryLat, queryLon, iteration, edgeId -> {
+                EdgeIteratorState edgeIteratorState = graph.getEdgeIteratorStateForKey(edgeId * 2);
+                if (!seenEdges.add(edgeId) || !edgeFilter.accept(edgeIteratorState))
+                    return;
+                final Snap snap = new Snap(queryLat, queryLon);
+                traverseEdge(queryLat, queryLon, edgeIteratorState, (node, normedDist, wayIndex, pos) -> {
+                    if (normedDist < snap.getQueryDistance()) {
+                        snap.setQueryDistance(normedDist);
+                        snap.setClosestNode(node);
+                        snap.setWayIndex(wayIndex);
+                        snap.setSnappedPosition(pos);
+                    }
+                });
+                if (!snap.isValid())
+                    return;
+                if (candidates.size() < k || snap.getQueryDistance() < candidates.peek().getQueryDistance()) {
+                    snap.setClosestEdge(edgeIteratorState.detach(false));
+                    candidates.add(snap);
+                    if (candidates.size() > k)
+                        candidates.poll();
+                }
+            });
+            if (candidates.size() == k) {
+                double rMin = calculateRMin(queryLat, queryLon, iteration);
+                double maxDistance = DIST_PLANE.calcDenormalizedDist(candidates.peek().getQueryDistance());
+                if (maxDistance < rMin)
+                    break;
+            }
+        }
+
+        List<Snap> result = new ArrayList<>(candidates);
+        for (Snap snap : result) {
+            snap.calcSnappedPoint(DIST_PLANE);
+            snap.setQueryDistance(DIST_PLANE.calcDist(snap.getSnappedPoint().lat, snap.getSnappedPoint().lon, queryLat, queryLon));
+        }
+        result.sort(Comparator.comparingDouble(Snap::getQueryDistance));
+        return result;
+    }
+
     @Override
     public void query(TileFilter tileFilter, Visitor function) {
         lineIntIndex.query(tileFilter, function);
@@ -17,8 +17,12 @@
  */
 package com.graphhopper.util;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Locale;
 
 /**
@@ -34,6 +38,9 @@ public class MiniPerfTest {
     private long fullTime = 0;
     private long max;
     private long min = Long.MAX_VALUE;
+    private long[] times = new long[0];
+    private boolean timesSorted;
+    private long allocatedBytes = -1;
     private int dummySum;
 
     /**
@@ -45,11 +52,15 @@ public class MiniPerfTest {
         for (int i = 0; i < warmupCount; i++) {
             dummySum += m.doCalc(true, i);
         }
+        times = new long[counts];
+        timesSorted = false;
+        long startAllocated = getAllocatedBytesOfCurrentThread();
         long startFull = System.nanoTime();
         for (int i = 0; i < counts; i++) {
             long start = System.nanoTime();
             dummySum += m.doCalc(false, i);
             long time = System.nanoTime() - start;
+            times[i] = time;
             if (time < min)
                 min = time;
 
@@ -57,9 +68,46 @@ public class MiniPerfTest {
                 max = time;
         }
         fullTime = System.nanoTime() - startFull;
+        allocatedBytes = startAllocated < 0 ? -1 : getAllocatedBytesOfCurrentThread() - startAllocated;
         return this;
     }
 
+    /**
+     * Combines the calls of tests that ran at the same time, e.g. in different threads, to calculate the percentiles of
+     * all calls. The sum is the accumulated time of all tests, so the mean is still the mean time per call.
+     */
+    public static MiniPerfTest merge(List<MiniPerfTest> tests) {
+        MiniPerfTest merged = new MiniPerfTest();
+        merged.counts = 0;
+        merged.allocatedBytes = 0;
+        for (MiniPerfTest test : tests) {
+            merged.counts += test.counts;
+            merged.fullTime += test.fullTime;
+            merged.min = Math.min(merged.min, test.min);
+            merged.max = Math.max(merged.max, test.max);
+            merged.dummySum += test.dummySum;
+            merged.allocatedBytes = merged.allocatedBytes < 0 || test.allocatedBytes < 0 ? -1 : merged.allocatedBytes + test.allocatedBytes;
+        }
+        merged.times = new long[merged.counts];
+        int offset = 0;
+        for (MiniPerfTest test : tests) {
+            System.arraycopy(test.times, 0, merged.times, offset, test.times.length);
+            offset += test.times.length;
+        }
+        return merged;
+    }
+
+    /**
+     * @return the bytes allocated by the current thread so far or -1 if the JVM does not support this
+     */
+    private static long getAllocatedBytesOfCurrentThread() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean sunBean && sunBean.isThreadAllocatedMemorySupported()
+                && sunBean.isThreadAllocatedMemoryEnabled())
+            return sunBean.getCurrentThreadAllocatedBytes();
+        return -1;
+    }
+
     public interface Task {
 
         /**
@@ -102,6 +150,31 @@ public class MiniPerfTest {
         return getSum() / counts;
     }
 
+    /**
+     * @param percentile e.g. 0.99 for the time that 99% of the calls did not exceed
+     * @return the time of the call at the given percentile, in ms
+     */
+    public double getPercentile(double percentile) {
+        if (percentile <= 0 || percentile > 1)
+            throw new IllegalArgumentException("percentile must be in (0, 1] but was " + percentile);
+        if (times.length == 0)
+            return 0;
+        if (!timesSorted) {
+            Arrays.sort(times);
+            timesSorted = true;
+        }
+        int index = (int) Math.ceil(percentile * times.length) - 1;
+        return times[Math.max(0, index)] / NS_PER_MS;
+    }
+
+    /**
+     * @return the bytes that were allocated per call on the calling threads, or -1 if the JVM does not support
+     * measuring this
+     */
+    public double getAllocatedBytesPerCall() {
+        return allocatedBytes < 0 ? -1 : (double) allocatedBytes / counts;
+    }
+
     private String formatDuration(double durationNs) {
         double divisor;
         String unit;
@@ -120,7 +193,9 @@ public class MiniPerfTest {
 
     public String getReport() {
         double meanNs = ((double) fullTime) / counts;
-        return "sum:" + formatDuration(fullTime) + ", time/call:" + formatDuration(meanNs) + ", dummy: " + dummySum;
+        return "sum:" + formatDuration(fullTime) + ", time/call:" + formatDuration(meanNs)
+                + ", p50:" + formatDuration(getPercentile(0.5) * NS_PER_MS) + ", p99:" + formatDuration(getPercentile(0.99) * NS_PER_MS)
+                + ", dummy: " + dummySum;
     }
 
     public int getDummySum() {
@@ -56,6 +56,8 @@ public class PathMerger {
     private PathDetailsBuilderFactory pathBuilderFactory;
     private List<String> requestedPathDetails = Collections.emptyList();
     private double favoredHeading = Double.NaN;
+    private long instructionsNanos;
+    private long pathDetailsNanos;
 
     public PathMerger(Graph graph, Weighting weighting) {
         this.graph = graph;
@@ -111,7 +113,9 @@ public class PathMerger {
             fullDistance += path.getDistance();
             fullWeight += path.getWeight();
             if (enableInstructions) {
+                long start = System.nanoTime();
                 InstructionList il = InstructionsFromEdges.calcInstructions(path, graph, weighting, evLookup, tr);
+                instructionsNanos += System.nanoTime() - start;
 
                 if (!il.isEmpty()) {
                     fullInstructions.addAll(il);
@@ -136,7 +140,9 @@ public class PathMerger {
                 }
 
                 fullPoints.add(tmpPoints);
+                long start = System.nanoTime();
                 responsePath.addPathDetails(PathDetailsFromEdges.calcDetails(path, evLookup, weighting, requestedPathDetails, pathBuilderFactory, origPoints, graph));
+                pathDetailsNanos += System.nanoTime() - start;
                 wayPointIndices.add(origPoints);
                 if (pathIndex == paths.size() - 1)
                     wayPointIndices.add(fullPoints.size() - 1);
@@ -246,6 +252,20 @@ public class PathMerger {
         responsePath.setDescend(descendMeters);
     }
 
+    /**
+     * @return the time spent calculating the instructions, summed over all calls of doWork
+     */
+    public long getInstructionsNanos() {
+        return instructionsNanos;
+    }
+
+    /**
+     * @return the time spent calculating the path details, summed over all calls of doWork
+     */
+    public long getPathDetailsNanos() {
+        return pathDetailsNanos;
+    }
+
     public void setFavoredHeading(double favoredHeading) {
         this.favoredHeading = favoredHeading;
     }
@@ -17,6 +17,7 @@
  */
 package com.graphhopper;
 
+import com.carrotsearch.hppc.IntIntHashMap;
 import com.graphhopper.config.CHProfile;
 import com.graphhopper.config.LMProfile;
 import com.graphhopper.config.Profile;
@@ -24,6 +25,9 @@ import com.graphhopper.util.TurnCostsConfig;
 import com.graphhopper.reader.ReaderWay;
 import com.graphhopper.reader.dem.SRTMProvider;
 import com.graphhopper.reader.dem.SkadiProvider;
+import com.graphhopper.routing.RouteCache;
+import com.graphhopper.routing.RouteListener;
+import com.graphhopper.routing.SnapCache;
 import com.graphhopper.routing.TestProfiles;
 import com.graphhopper.routing.ev.*;
 import com.graphhopper.routing.util.AllEdgesIterator;
@@ -31,8 +35,13 @@ import com.graphhopper.routing.util.DefaultSnapFilter;
 import com.graphhopper.routing.util.EdgeFilter;
 import com.graphhopper.routing.util.countryrules.CountryRuleFactory;
 import com.graphhopper.routing.util.parsers.OSMRoadEnvironmentParser;
+import com.graphhopper.routing.weighting.MaterializedWeighting;
+import com.graphhopper.routing.weighting.SpeedProfiles;
+import com.graphhopper.routing.weighting.TrafficOverlay;
 import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.BaseGraph;
 import com.graphhopper.storage.IntsRef;
+import com.graphhopper.storage.RAMDirectory;
 import com.graphhopper.storage.index.LocationIndexTree;
 import com.graphhopper.storage.index.Snap;
 import com.graphhopper.util.*;
@@ -56,8 +65,17 @@ import org.junit.jupiter.params.provider.ValueSource;
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.GeometryFactory;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.graphhopper.json.Statement.If;
@@ -230,6 +248,339 @@ public class GraphHopperTest {
         assertEquals(46, routeRsp.getBest().getPoints().size());
     }
 
+    @Test
+    public void testSnapCache() {
+        final String profile = "profile";
+        GraphHopper hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(MONACO).
+                setEncodedValuesString("foot_access, foot_priority, foot_average_speed").
+                setProfiles(TestProfiles.accessSpeedAndPriority(profile, "foot")).
+                setStoreOnFlush(true);
+        hopper.getRouterConfig().setSnapCacheSize(10);
+        hopper.importOrLoad();
+
+        GHRequest request = new GHRequest(43.729584, 7.410965, 43.732499, 7.426758).setProfile(profile);
+        GHResponse first = hopper.route(request);
+        assertFalse(first.hasErrors(), first.getErrors().toString());
+        SnapCache snapCache = hopper.getSnapCache();
+        assertEquals(0, snapCache.getHits());
+        assertEquals(2, snapCache.getMisses());
+        assertEquals(2, snapCache.getSize());
+
+        // the snaps are modified when creating the query graph, so the cached snaps must not be affected by this
+        for (int i = 0; i < 2; i++) {
+            GHResponse rsp = hopper.route(request);
+            assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+            assertEquals(first.getBest().getDistance(), rsp.getBest().getDistance(), 1.e-6);
+            assertEquals(first.getBest().getWaypoints(), rsp.getBest().getWaypoints());
+        }
+        assertEquals(4, snapCache.getHits());
+
+        // a different heading changes the key
+        request.setHeadings(Arrays.asList(90.0, Double.NaN));
+        assertFalse(hopper.route(request).hasErrors());
+        assertEquals(5, snapCache.getHits());
+        assertEquals(3, snapCache.getMisses());
+
+        // requests with a custom model never use the cache, because the snap filter depends on the weighting
+        request.setHeadings(Collections.emptyList());
+        request.setCustomModel(new CustomModel());
+        assertFalse(hopper.route(request).hasErrors());
+        assertEquals(5, snapCache.getHits());
+        assertEquals(3, snapCache.getMisses());
+    }
+
+    @Test
+    public void testRouteCache() {
+        final String profile = "profile";
+        GraphHopper hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(MONACO).
+                setEncodedValuesString("foot_access, foot_priority, foot_average_speed").
+                setProfiles(TestProfiles.accessSpeedAndPriority(profile, "foot")).
+                setStoreOnFlush(true);
+        hopper.getRouterConfig().setRouteCacheSize(10);
+        hopper.importOrLoad();
+
+        GHRequest request = new GHRequest(43.729584, 7.410965, 43.732499, 7.426758).setProfile(profile);
+        GHResponse first = hopper.route(request);
+        assertFalse(first.hasErrors(), first.getErrors().toString());
+        RouteCache routeCache = hopper.getRouteCache();
+        assertEquals(0, routeCache.getHits());
+        assertEquals(1, routeCache.getSize());
+
+        // a slightly different coordinate snaps to the same position
+        GHResponse second = hopper.route(new GHRequest(43.72958401, 7.410965, 43.732499, 7.426758).setProfile(profile));
+        assertEquals(1, routeCache.getHits());
+        assertEquals(first.getBest().getDistance(), second.getBest().getDistance(), 1.e-6);
+        assertEquals(first.getBest().getPoints(), second.getBest().getPoints());
+
+        // the hints are part of the key
+        request.putHint("instructions", false);
+        GHResponse noInstructions = hopper.route(request);
+        assertEquals(1, routeCache.getHits());
+        assertEquals(2, routeCache.getSize());
+        assertEquals(first.getBest().getDistance(), noInstructions.getBest().getDistance(), 1.e-6);
+
+        hopper.close();
+        assertEquals(0, routeCache.getSize());
+    }
+
+    @Test
+    public void testSetBaseGraphTwice() {
+        GraphHopper hopper = new GraphHopper().setTrafficOverlayEnabled(true);
+        hopper.getRouterConfig().setSnapCacheSize(10);
+        hopper.getRouterConfig().setRouteCacheSize(10);
+        hopper.getRouterConfig().setLegThreads(2);
+        // there is no EncodingManager yet, so the traffic overlay cannot be created
+        hopper.setBaseGraph(new BaseGraph.Builder(4).create());
+        assertNull(hopper.getTrafficOverlay());
+        SnapCache snapCache = hopper.getSnapCache();
+        RouteCache routeCache = hopper.getRouteCache();
+        assertNotNull(snapCache);
+        assertNotNull(routeCache);
+
+        hopper.setBaseGraph(new BaseGraph.Builder(4).create());
+        assertSame(snapCache, hopper.getSnapCache());
+        assertSame(routeCache, hopper.getRouteCache());
+        hopper.close();
+    }
+
+    @Test
+    public void testRouteListener() {
+        final String profile = "profile";
+        Map<String, Long> phases = new ConcurrentHashMap<>();
+        Map<String, Long> visitedNodes = new ConcurrentHashMap<>();
+        GraphHopper hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(MONACO).
+                setEncodedValuesString("car_access, car_average_speed").
+                setProfiles(TestProfiles.accessAndSpeed(profile, "car")).
+                setRouteListener(new RouteListener() {
+                    @Override
+                    public void onPhase(String profile, String solver, Phase phase, long nanos) {
+                        assertTrue(nanos >= 0);
+                        phases.merge(profile + "." + solver + "." + phase, 1L, Long::sum);
+                    }
+
+                    @Override
+                    public void onVisitedNodes(String profile, String solver, long nodes) {
+                        visitedNodes.merge(profile + "." + solver, nodes, Long::sum);
+                    }
+                }).
+                setStoreOnFlush(true);
+        hopper.getCHPreparationHandler().setCHProfiles(new CHProfile(profile));
+        hopper.importOrLoad();
+
+        GHRequest request = new GHRequest(43.729584, 7.410965, 43.732499, 7.426758).setProfile(profile);
+        request.setPathDetails(List.of("average_speed"));
+        GHResponse rsp = hopper.route(request);
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        for (RouteListener.Phase phase : RouteListener.Phase.values())
+            assertEquals(1, phases.get(profile + ".ch." + phase), phase.toString());
+        assertEquals(rsp.getHints().getLong("visited_nodes.sum", -1), visitedNodes.get(profile + ".ch"));
+        RouteStats stats = rsp.getStats();
+        assertEquals("ch", stats.getSolver());
+        assertSame(request, stats.getRequest());
+        assertEquals(rsp.getHints().getLong("visited_nodes.sum", -1), stats.getVisitedNodesForward() + stats.getVisitedNodesBackward());
+        assertTrue(stats.getVisitedNodesForward() > 0 && stats.getVisitedNodesBackward() > 0, stats.toString());
+        assertEquals(2, stats.getVirtualNodes());
+        assertEquals(RouteListener.Phase.values().length, stats.getPhaseNanos().size());
+        assertTrue(stats.getNanos() >= stats.getPhaseNanos().values().stream().mapToLong(Long::longValue).sum());
+
+        request.putHint(CH.DISABLE, true);
+        request.setAlgorithm(Parameters.Algorithms.ALT_ROUTE);
+        rsp = hopper.route(request);
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        for (RouteListener.Phase phase : RouteListener.Phase.values())
+            assertEquals(1, phases.get(profile + ".flex." + phase), phase.toString());
+        assertEquals(rsp.getHints().getLong("visited_nodes.sum", -1), visitedNodes.get(profile + ".flex"));
+        assertEquals("flex", rsp.getStats().getSolver());
+        assertEquals(profile, rsp.getStats().getProfile());
+        hopper.close();
+    }
+
+    @Test
+    public void testMaterializedWeights() {
+        final String profile = "profile";
+        GraphHopper hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(MONACO).
+                setEncodedValuesString("car_access, car_average_speed, road_class").
+                setProfiles(TestProfiles.accessAndSpeed(profile, "car")).
+                setMaterializedWeightsProfiles(List.of(profile)).
+                setStoreOnFlush(true);
+        hopper.getLMPreparationHandler().setLMProfiles(new LMProfile(profile));
+        hopper.importOrLoad();
+        assertTrue(hopper.createWeighting(hopper.getProfile(profile), new PMap()) instanceof MaterializedWeighting);
+
+        GHRequest request = new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setProfile(profile);
+        GHResponse rsp = hopper.route(request);
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        // requests with a custom model use the original weighting
+        GHResponse customModelRsp = hopper.route(new GHRequest(request.getPoints()).setProfile(profile).setCustomModel(new CustomModel()));
+        assertFalse(customModelRsp.hasErrors(), customModelRsp.getErrors().toString());
+        assertEquals(customModelRsp.getBest().getRouteWeight(), rsp.getBest().getRouteWeight(), 1.e-6);
+        assertEquals(customModelRsp.getBest().getTime(), rsp.getBest().getTime());
+        assertEquals(customModelRsp.getBest().getDistance(), rsp.getBest().getDistance(), 1.e-6);
+        hopper.close();
+
+        // the materialized weights are loaded from disk
+        hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setProfiles(TestProfiles.accessAndSpeed(profile, "car")).
+                setMaterializedWeightsProfiles(List.of(profile)).
+                setAllowWrites(false);
+        hopper.getLMPreparationHandler().setLMProfiles(new LMProfile(profile));
+        hopper.importOrLoad();
+        GHResponse loadedRsp = hopper.route(request);
+        assertFalse(loadedRsp.hasErrors(), loadedRsp.getErrors().toString());
+        assertEquals(rsp.getBest().getRouteWeight(), loadedRsp.getBest().getRouteWeight(), 1.e-6);
+        hopper.close();
+    }
+
+    @Test
+    public void testSpeedProfiles() throws IOException {
+        final String profile = "profile";
+        GHRequest request = new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setProfile(profile).
+                setPathDetails(List.of(OSMWayID.KEY));
+        GraphHopper hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(MONACO).
+                setEncodedValuesString("car_access, car_average_speed, osm_way_id").
+                setProfiles(TestProfiles.accessAndSpeed(profile, "car"));
+        hopper.importOrLoad();
+        GHResponse rsp = hopper.route(request);
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        long freeFlowTime = rsp.getBest().getTime();
+        hopper.close();
+        Helper.removeDir(new File(GH_LOCATION));
+
+        // all ways of the route are slower during the whole day
+        File speedProfilesFile = new File("target/speed_profiles.csv");
+        try (PrintWriter writer = new PrintWriter(speedProfilesFile, StandardCharsets.UTF_8)) {
+            writer.println("osm_way_id,speeds");
+            String speeds = String.join(",", Collections.nCopies(96, "50"));
+            rsp.getBest().getPathDetails().get(OSMWayID.KEY).stream().map(PathDetail::getValue).distinct().
+                    forEach(wayId -> writer.println(wayId + "," + speeds));
+        }
+        hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(MONACO).
+                setEncodedValuesString("car_access, car_average_speed, osm_way_id").
+                setProfiles(TestProfiles.accessAndSpeed(profile, "car")).
+                setSpeedProfilesFile(speedProfilesFile.getPath());
+        hopper.getCHPreparationHandler().setCHProfiles(new CHProfile(profile));
+        hopper.getLMPreparationHandler().setLMProfiles(new LMProfile(profile));
+        hopper.importOrLoad();
+        assertTrue(hopper.getSpeedProfiles().getProfileCount() > 1);
+
+        request.putHint(Parameters.Routing.DEPARTURE_TIME, "2024-01-15T08:00:00+01:00");
+        rsp = hopper.route(request);
+        assertTrue(rsp.hasErrors());
+        assertTrue(rsp.getErrors().get(0).getMessage().contains("not supported for speed mode"), rsp.getErrors().toString());
+
+        for (boolean disableLM : new boolean[]{false, true}) {
+            request.putHint(Parameters.CH.DISABLE, true).putHint(Parameters.Landmark.DISABLE, disableLM);
+            rsp = hopper.route(request);
+            assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+            // the route can change to avoid some of the slower ways
+            assertTrue(rsp.getBest().getTime() > 1.2 * freeFlowTime && rsp.getBest().getTime() < 2 * freeFlowTime + 100,
+                    rsp.getBest().getTime() + " vs. " + freeFlowTime);
+        }
+
+        request.putHint(Parameters.Routing.DEPARTURE_TIME, "tomorrow");
+        rsp = hopper.route(request);
+        assertTrue(rsp.hasErrors());
+        assertTrue(rsp.getErrors().get(0).getMessage().contains("Cannot parse departure_time"), rsp.getErrors().toString());
+        hopper.close();
+        assertTrue(speedProfilesFile.delete());
+    }
+
+    @Test
+    public void testReadSpeedProfiles() throws IOException {
+        SpeedProfiles speedProfiles = new SpeedProfiles(new RAMDirectory()).create(new BaseGraph.Builder(4).create());
+        String day = String.join(",", Collections.nCopies(96, "50"));
+        IntIntHashMap profiles = GraphHopper.readSpeedProfiles(new BufferedReader(new StringReader(
+                "osm_way_id,speeds\n# a comment\n12," + day + "\n 13 , " + day + " \n")), "speeds.csv", speedProfiles);
+        assertEquals(2, profiles.size());
+        assertEquals(profiles.get(12), profiles.get(13));
+
+        for (String content : new String[]{"12\n", "12," + day + "\n\n13," + day, "12," + day + ",\n", "12,\n",
+                "12," + day + "\nx," + day, "12," + day + "\n12," + day, "12,50,50\n"}) {
+            IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, () -> GraphHopper.readSpeedProfiles(
+                    new BufferedReader(new StringReader(content)), "speeds.csv", speedProfiles), content);
+            assertTrue(ex.getMessage().startsWith("Invalid speed profile in speeds.csv, line "), ex.getMessage());
+        }
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, () -> GraphHopper.readSpeedProfiles(
+                new BufferedReader(new StringReader("12," + day + "\n\n")), "speeds.csv", speedProfiles));
+        assertEquals("Invalid speed profile in speeds.csv, line 2: empty line", ex.getMessage());
+    }
+
+    @Test
+    public void testTrafficOverlay() throws IOException {
+        final String profile = "profile";
+        GHRequest request = new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setProfile(profile).
+                setPathDetails(List.of(OSMWayID.KEY));
+        GraphHopper hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(MONACO).
+                setEncodedValuesString("car_access, car_average_speed, osm_way_id").
+                setProfiles(TestProfiles.accessAndSpeed(profile, "car")).
+                setTrafficOverlayEnabled(true);
+        hopper.getRouterConfig().setSnapCacheSize(10);
+        hopper.getRouterConfig().setRouteCacheSize(10);
+        hopper.getCHPreparationHandler().setCHProfiles(new CHProfile(profile));
+        hopper.getLMPreparationHandler().setLMProfiles(new LMProfile(profile));
+        hopper.importOrLoad();
+        // the speed mode does not use the traffic before the customization, so it can use the snap cache
+        GHResponse rsp = hopper.route(request);
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        assertEquals(2, hopper.getSnapCache().getSize());
+        assertEquals(1, hopper.getRouteCache().getSize());
+        request.putHint(Parameters.CH.DISABLE, true);
+        rsp = hopper.route(request);
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        ResponsePath freeFlowPath = rsp.getBest();
+        // the snaps of requests with live traffic are not cached
+        assertEquals(2, hopper.getSnapCache().getSize());
+        assertEquals(2, hopper.getRouteCache().getSize());
+
+        // all ways of the route are jammed for one minute
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (Object wayId : freeFlowPath.getPathDetails().get(OSMWayID.KEY).stream().map(PathDetail::getValue).distinct().toList()) {
+            out.writeByte(TrafficOverlay.WAY_ID | TrafficOverlay.FORWARD | TrafficOverlay.BACKWARD);
+            out.writeInt(((Number) wayId).intValue());
+            out.writeShort(5);
+            out.writeInt(60);
+        }
+        assertTrue(hopper.applyTrafficUpdates(new ByteArrayInputStream(bytes.toByteArray())) > 0);
+        assertEquals(0, hopper.getSnapCache().getSize());
+        assertEquals(0, hopper.getRouteCache().getSize());
+
+        for (boolean disableLM : new boolean[]{false, true}) {
+            request.putHint(Parameters.Landmark.DISABLE, disableLM);
+            rsp = hopper.route(request);
+            assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+            // the route avoids the jammed ways where possible
+            assertTrue(rsp.getBest().getTime() > freeFlowPath.getTime(), rsp.getBest().getTime() + " vs. " + freeFlowPath.getTime());
+            assertNotEquals(freeFlowPath.getDistance(), rsp.getBest().getDistance(), 1);
+        }
+
+        // the customization changes the snap filter of the speed mode
+        request.putHint(Parameters.CH.DISABLE, false);
+        assertFalse(hopper.route(request).hasErrors());
+        assertEquals(2, hopper.getSnapCache().getSize());
+        hopper.customizeCHForTraffic();
+        assertEquals(0, hopper.getSnapCache().getSize());
+        assertEquals(0, hopper.getRouteCache().getSize());
+
+        assertThrows(IllegalArgumentException.class, () -> hopper.applyTrafficUpdates(new ByteArrayInputStream(new byte[]{1, 0, 0})));
+        hopper.close();
+    }
+
     @Test
     public void testUTurnInstructions() {
         final String profile = "profile";
@@ -968,6 +1319,52 @@ public class GraphHopperTest {
         assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
     }
 
+    @Test
+    public void testMonacoMaxVisitedNodesPerRequest() {
+        final String profile = "profile";
+
+        GraphHopper hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(MONACO).
+                setEncodedValuesString("foot_access, foot_priority, foot_average_speed").
+                setProfiles(TestProfiles.accessSpeedAndPriority(profile, "foot")).
+                setStoreOnFlush(true).
+                importOrLoad();
+
+        GHRequest req = new GHRequest().setProfile(profile).setPoints(List.of(
+                new GHPoint(43.741069, 7.426854), new GHPoint(43.744445, 7.429483), new GHPoint(43.727687, 7.418737)));
+        GHResponse rsp = hopper.route(req);
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        int visitedNodes = rsp.getHints().getInt("visited_nodes.sum", 0);
+
+        // the budget is shared by all legs, while max_visited_nodes applies to every leg
+        hopper.getRouterConfig().setMaxVisitedNodesPerRequest(visitedNodes - 1);
+        rsp = hopper.route(req);
+        assertTrue(rsp.hasErrors());
+        Throwable throwable = rsp.getErrors().get(0);
+        assertInstanceOf(MaximumNodesExceededException.class, throwable);
+        assertEquals(visitedNodes - 1, ((MaximumNodesExceededException) throwable).getDetails().get(MaximumNodesExceededException.NODES_KEY));
+
+        hopper.getRouterConfig().setMaxVisitedNodesPerRequest(visitedNodes);
+        rsp = hopper.route(req);
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+
+        // a single leg that stays below max_visited_nodes can exceed the budget as well
+        req = new GHRequest().setProfile(profile).setPoints(List.of(new GHPoint(43.741069, 7.426854), new GHPoint(43.727687, 7.418737)));
+        hopper.getRouterConfig().setMaxVisitedNodesPerRequest(Integer.MAX_VALUE);
+        rsp = hopper.route(req);
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        int legVisitedNodes = rsp.getHints().getInt("visited_nodes.sum", 0);
+        req.putHint(Parameters.Routing.MAX_VISITED_NODES, legVisitedNodes + 1);
+        hopper.getRouterConfig().setMaxVisitedNodesPerRequest(legVisitedNodes / 2);
+        rsp = hopper.route(req);
+        assertTrue(rsp.hasErrors());
+        throwable = rsp.getErrors().get(0);
+        assertInstanceOf(MaximumNodesExceededException.class, throwable);
+        assertEquals(legVisitedNodes / 2, ((MaximumNodesExceededException) throwable).getDetails().get(MaximumNodesExceededException.NODES_KEY));
+        hopper.close();
+    }
+
     @Test
     public void testMonacoNonChMaxWaypointDistance() {
         final String profile = "profile";
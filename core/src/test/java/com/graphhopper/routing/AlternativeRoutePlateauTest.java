@@ -0,0 +1,139 @@
+package com.graphhopper.routing;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntHashSet;
+import com.graphhopper.routing.ev.DecimalEncodedValue;
+import com.graphhopper.routing.ev.DecimalEncodedValueImpl;
+import com.graphhopper.routing.ev.TurnCost;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.SpeedWeighting;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.GHUtility;
+import com.graphhopper.util.PMap;
+import com.graphhopper.util.Parameters;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.util.List;
+import java.util.Random;
+
+import static com.graphhopper.util.GHUtility.updateDistancesFor;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AlternativeRoutePlateauTest {
+    private final DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+    private final DecimalEncodedValue turnCostEnc = TurnCost.create("car", 1);
+    private final BaseGraph graph = new BaseGraph.Builder(EncodingManager.start().add(speedEnc).add(turnCostEnc).build())
+            .withTurnCosts(true).create();
+
+    private Weighting createWeighting(TraversalMode traversalMode) {
+        return traversalMode.isEdgeBased()
+                ? new SpeedWeighting(speedEnc, turnCostEnc, graph.getTurnCostStorage(), Double.POSITIVE_INFINITY)
+                : new SpeedWeighting(speedEnc);
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = TraversalMode.class, names = {"NODE_BASED", "EDGE_BASED"})
+    public void testCalcAlternatives(TraversalMode traversalMode) {
+        AlternativeRouteTest.initTestGraph(graph, speedEnc);
+        PMap hints = new PMap().putObject("alternative_route.max_paths", 3).
+                putObject("alternative_route.max_share_factor", 0.7).
+                putObject("alternative_route.min_plateau_factor", 0.15).
+                putObject("alternative_route.max_weight_factor", 2);
+        Weighting weighting = createWeighting(traversalMode);
+        List<Path> paths = new AlternativeRoutePlateau(graph, weighting, traversalMode, hints).calcPaths(5, 4);
+        assertEquals(3, paths.size());
+        assertEquals(IntArrayList.from(5, 6, 3, 4), paths.get(0).calcNodes());
+        assertEquals(IntArrayList.from(5, 6, 7, 8, 4), paths.get(1).calcNodes());
+        assertEquals(463.3, paths.get(1).getWeight(), .1);
+        assertEquals(IntArrayList.from(5, 1, 9, 2, 3, 4), paths.get(2).calcNodes());
+        assertEquals(671.1, paths.get(2).getWeight(), .1);
+
+        // the exploration limits the weight of the alternatives
+        hints.putObject("alternative_route.max_exploration_factor", 1.3);
+        paths = new AlternativeRoutePlateau(graph, weighting, traversalMode, hints).calcPaths(5, 4);
+        assertEquals(2, paths.size());
+        assertEquals(IntArrayList.from(5, 6, 7, 8, 4), paths.get(1).calcNodes());
+    }
+
+    @Test
+    public void testMethodHint() {
+        AlternativeRouteTest.initTestGraph(graph, speedEnc);
+        AlgorithmOptions opts = new AlgorithmOptions().setAlgorithm(Parameters.Algorithms.ALT_ROUTE)
+                .setTraversalMode(TraversalMode.NODE_BASED).setHints(new PMap());
+        Weighting weighting = createWeighting(TraversalMode.NODE_BASED);
+        assertInstanceOf(AlternativeRoute.class, new RoutingAlgorithmFactorySimple().createAlgo(graph, weighting, opts));
+        opts.getHints().putObject(Parameters.Algorithms.AltRoute.METHOD, Parameters.Algorithms.AltRoute.PLATEAU);
+        assertInstanceOf(AlternativeRoutePlateau.class, new RoutingAlgorithmFactorySimple().createAlgo(graph, weighting, opts));
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = TraversalMode.class, names = {"NODE_BASED", "EDGE_BASED"})
+    public void testNotFound(TraversalMode traversalMode) {
+        AlternativeRouteTest.initTestGraph(graph, speedEnc);
+        updateDistancesFor(graph, 20, 0.00, -0.01);
+        List<Path> paths = new AlternativeRoutePlateau(graph, createWeighting(traversalMode), traversalMode, new PMap()).calcPaths(1, 20);
+        assertEquals(1, paths.size());
+        assertFalse(paths.get(0).isFound());
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = TraversalMode.class, names = {"NODE_BASED", "EDGE_BASED"})
+    public void randomGraph(TraversalMode traversalMode) {
+        long seed = 42;
+        Random rnd = new Random(seed);
+        GHUtility.buildRandomGraph(graph, rnd, 500, 2.2, true, speedEnc, null, 0.9, 0.8);
+        if (traversalMode.isEdgeBased())
+            GHUtility.addRandomTurnCosts(graph, seed, null, turnCostEnc, 1, graph.getTurnCostStorage());
+        Weighting weighting = createWeighting(traversalMode);
+        double maxWeightFactor = 1.4, maxShareFactor = 0.7;
+        PMap hints = new PMap().putObject("alternative_route.max_paths", 3).
+                putObject("alternative_route.max_weight_factor", maxWeightFactor).
+                putObject("alternative_route.max_share_factor", maxShareFactor);
+        int routes = 0, alternatives = 0;
+        for (int i = 0; i < 100; i++) {
+            int from = rnd.nextInt(graph.getNodes());
+            int to = rnd.nextInt(graph.getNodes());
+            Path refPath = new DijkstraBidirectionRef(graph, weighting, traversalMode).calcPath(from, to);
+            List<Path> paths = new AlternativeRoutePlateau(graph, weighting, traversalMode, hints).calcPaths(from, to);
+            assertEquals(refPath.isFound(), paths.get(0).isFound(), "route " + from + "->" + to);
+            if (!refPath.isFound())
+                continue;
+            routes++;
+            assertEquals(refPath.getWeight(), paths.get(0).getWeight(), 1.e-3, "route " + from + "->" + to);
+            assertTrue(paths.size() <= 3);
+            IntHashSet bestEdges = new IntHashSet();
+            for (EdgeIteratorState edge : paths.get(0).calcEdges())
+                bestEdges.add(edge.getEdge());
+            for (Path alt : paths.subList(1, paths.size())) {
+                alternatives++;
+                assertEquals(from, alt.calcNodes().get(0));
+                assertEquals(to, alt.calcNodes().get(alt.calcNodes().size() - 1));
+                assertEquals(alt.getWeight(), calcWeight(alt, weighting), 1.e-3, "route " + from + "->" + to);
+                assertTrue(alt.getWeight() >= refPath.getWeight() - 1.e-3);
+                assertTrue(alt.getWeight() <= maxWeightFactor * refPath.getWeight() + 1.e-3);
+                double shareWeight = 0;
+                for (EdgeIteratorState edge : alt.calcEdges())
+                    if (bestEdges.contains(edge.getEdge()))
+                        shareWeight += weighting.calcEdgeWeight(edge, false);
+                assertTrue(shareWeight < maxShareFactor * refPath.getWeight() + 1.e-3, "route " + from + "->" + to);
+            }
+        }
+        assertTrue(routes > 50, "routes: " + routes);
+        assertTrue(alternatives > routes / 2, "alternatives: " + alternatives + ", routes: " + routes);
+    }
+
+    private static double calcWeight(Path path, Weighting weighting) {
+        double weight = 0;
+        int prevEdge = -1;
+        for (EdgeIteratorState edge : path.calcEdges()) {
+            weight += GHUtility.calcWeightWithTurnWeight(weighting, edge, false, prevEdge);
+            prevEdge = edge.getEdge();
+        }
+        return weight;
+    }
+}
@@ -0,0 +1,60 @@
+package com.graphhopper.routing;
+
+import com.graphhopper.util.exceptions.MaximumNodesExceededException;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BudgetPathCalculatorTest {
+
+    @Test
+    void limitSearchesToRemainingBudget() {
+        // every search visits 40 nodes unless it is stopped by its limit
+        List<Integer> limits = new ArrayList<>();
+        PathCalculator delegate = new PathCalculator() {
+            int limit = Integer.MAX_VALUE;
+
+            @Override
+            public List<Path> calcPaths(int from, int to, EdgeRestrictions edgeRestrictions) {
+                limits.add(limit);
+                if (40 >= limit)
+                    throw new MaximumNodesExceededException("No path found due to maximum nodes exceeded " + limit, limit);
+                return Collections.emptyList();
+            }
+
+            @Override
+            public String getDebugString() {
+                return "";
+            }
+
+            @Override
+            public int getVisitedNodes() {
+                return 40;
+            }
+
+            @Override
+            public void setMaxVisitedNodes(int maxVisitedNodes) {
+                limit = maxVisitedNodes;
+            }
+        };
+        AtomicLong visitedNodesSum = new AtomicLong();
+        PathCalculator calculator = new BudgetPathCalculator(delegate, visitedNodesSum, 100, 50);
+        calculator.calcPaths(0, 1, new EdgeRestrictions());
+        calculator.calcPaths(1, 2, new EdgeRestrictions());
+        // only 20 nodes are left, so the third search is stopped early and fails with the budget of the request
+        MaximumNodesExceededException ex = assertThrows(MaximumNodesExceededException.class, () -> calculator.calcPaths(2, 3, new EdgeRestrictions()));
+        assertEquals(100, ex.getDetails().get(MaximumNodesExceededException.NODES_KEY));
+        assertEquals(List.of(50, 50, 21), limits);
+        assertEquals(80, visitedNodesSum.get());
+
+        // the max_visited_nodes of the request still applies to every search
+        MaximumNodesExceededException ex2 = assertThrows(MaximumNodesExceededException.class,
+                () -> new BudgetPathCalculator(delegate, new AtomicLong(), 100, 30).calcPaths(0, 1, new EdgeRestrictions()));
+        assertEquals(30, ex2.getDetails().get(MaximumNodesExceededException.NODES_KEY));
+    }
+}
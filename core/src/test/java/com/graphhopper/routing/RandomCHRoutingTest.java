@@ -1,5 +1,6 @@
 package com.graphhopper.routing;
 
+import com.graphhopper.routing.ch.CHParameters;
 import com.graphhopper.routing.ch.CHRoutingAlgorithmFactory;
 import com.graphhopper.routing.ch.PrepareContractionHierarchies;
 import com.graphhopper.routing.ev.DecimalEncodedValue;
@@ -45,16 +46,18 @@ public class RandomCHRoutingTest {
         private final TraversalMode traversalMode;
         private final int maxTurnCosts;
         private final double uTurnCosts;
+        private final boolean compact;
         private final DecimalEncodedValue speedEnc;
         private final DecimalEncodedValue turnCostEnc;
         private Weighting weighting;
         private final BaseGraph graph;
         private CHConfig chConfig;
 
-        Fixture(TraversalMode traversalMode, double uTurnCosts) {
+        Fixture(TraversalMode traversalMode, double uTurnCosts, boolean compact) {
             this.traversalMode = traversalMode;
             this.maxTurnCosts = 10;
             this.uTurnCosts = uTurnCosts;
+            this.compact = compact;
             speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
             turnCostEnc = TurnCost.create("car", maxTurnCosts);
             EncodingManager encodingManager = EncodingManager.start().add(speedEnc).addTurnCostEncodedValue(turnCostEnc).build();
@@ -71,7 +74,7 @@ public class RandomCHRoutingTest {
 
         @Override
         public String toString() {
-            return traversalMode + ", u-turn-costs=" + uTurnCosts;
+            return traversalMode + ", u-turn-costs=" + uTurnCosts + ", compact=" + compact;
         }
     }
 
@@ -79,9 +82,11 @@ public class RandomCHRoutingTest {
         @Override
         public Stream<? extends Arguments> provideArguments(ExtensionContext context) {
             return Stream.of(
-                            new Fixture(TraversalMode.NODE_BASED, Double.POSITIVE_INFINITY),
-                            new Fixture(TraversalMode.EDGE_BASED, 40),
-                            new Fixture(TraversalMode.EDGE_BASED, Double.POSITIVE_INFINITY)
+                            new Fixture(TraversalMode.NODE_BASED, Double.POSITIVE_INFINITY, false),
+                            new Fixture(TraversalMode.EDGE_BASED, 40, false),
+                            new Fixture(TraversalMode.EDGE_BASED, Double.POSITIVE_INFINITY, false),
+                            new Fixture(TraversalMode.NODE_BASED, Double.POSITIVE_INFINITY, true),
+                            new Fixture(TraversalMode.EDGE_BASED, 40, true)
                     )
                     .map(Arguments::of);
         }
@@ -115,7 +120,8 @@ public class RandomCHRoutingTest {
         locationIndex.prepareIndex();
 
         f.freeze();
-        PrepareContractionHierarchies pch = PrepareContractionHierarchies.fromGraph(f.graph, f.chConfig);
+        PrepareContractionHierarchies pch = PrepareContractionHierarchies.fromGraph(f.graph, f.chConfig)
+                .setParams(new PMap().putObject(CHParameters.COMPACT_STORAGE, f.compact));
         PrepareContractionHierarchies.Result res = pch.doWork();
         RoutingCHGraph chGraph = RoutingCHGraphImpl.fromGraph(f.graph, res.getCHStorage(), res.getCHConfig());
 
@@ -0,0 +1,87 @@
+package com.graphhopper.routing;
+
+import com.graphhopper.GHResponse;
+import com.graphhopper.ResponsePath;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RouteCacheTest {
+
+    @Test
+    void expireAndEvict() {
+        AtomicLong time = new AtomicLong();
+        RouteCache cache = new RouteCache(2, 100, time::get);
+        cache.put("a", createResponse(1));
+        cache.put("b", createResponse(2));
+        assertEquals(1, cache.get("a").getBest().getDistance());
+        cache.put("c", createResponse(3));
+        // b was the least recently used entry
+        assertNull(cache.get("b"));
+        assertEquals(2, cache.getSize());
+
+        time.set(100);
+        assertEquals(3, cache.get("c").getBest().getDistance());
+        time.set(101);
+        assertNull(cache.get("c"));
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.getSize());
+        assertEquals(3, cache.getEvictions());
+        assertEquals(2, cache.getHits());
+        assertEquals(3, cache.getMisses());
+    }
+
+    @Test
+    void expireEarlier() {
+        AtomicLong time = new AtomicLong();
+        RouteCache cache = new RouteCache(10, 100, time::get);
+        cache.put("a", createResponse(1), 50);
+        cache.put("b", createResponse(2), 500);
+        // the response is outdated already
+        cache.put("c", createResponse(3), 0);
+        assertNull(cache.get("c"));
+        time.set(49);
+        assertEquals(1, cache.get("a").getBest().getDistance());
+        time.set(50);
+        assertNull(cache.get("a"));
+        time.set(100);
+        assertEquals(2, cache.get("b").getBest().getDistance());
+        time.set(101);
+        assertNull(cache.get("b"));
+    }
+
+    @Test
+    void doNotStoreErrors() {
+        RouteCache cache = new RouteCache(10, 1000);
+        GHResponse rsp = createResponse(1);
+        rsp.addError(new IllegalArgumentException("fail"));
+        cache.put("a", rsp);
+        assertNull(cache.get("a"));
+    }
+
+    @Test
+    void returnCopies() {
+        RouteCache cache = new RouteCache(10, 1000);
+        GHResponse rsp = createResponse(1);
+        rsp.getHints().putObject("visited_nodes.sum", 10);
+        cache.put("a", rsp);
+        rsp.getHints().putObject("visited_nodes.sum", 20);
+
+        GHResponse cached = cache.get("a");
+        assertEquals(10, cached.getHints().getInt("visited_nodes.sum", 0));
+        cached.getHints().putObject("visited_nodes.sum", 30);
+        cached.addDebugInfo("test");
+        assertEquals(10, cache.get("a").getHints().getInt("visited_nodes.sum", 0));
+        assertEquals("", cache.get("a").getDebugInfo());
+    }
+
+    private static GHResponse createResponse(double distance) {
+        GHResponse rsp = new GHResponse();
+        ResponsePath path = new ResponsePath();
+        path.setDistance(distance);
+        rsp.add(path);
+        return rsp;
+    }
+}
@@ -0,0 +1,71 @@
+package com.graphhopper.routing;
+
+import com.graphhopper.storage.index.Snap;
+import com.graphhopper.util.shapes.GHPoint;
+import com.graphhopper.util.shapes.GHPoint3D;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnapCacheTest {
+
+    @Test
+    void keyIncludesSnapParameters() {
+        GHPoint p = new GHPoint(50.1, 10.2);
+        SnapCache.Key key = SnapCache.createKey("car", p, Double.NaN, null, Collections.emptyList());
+        assertEquals(key, SnapCache.createKey("car", new GHPoint(50.10000001, 10.19999999), Double.NaN, null, Collections.emptyList()));
+        assertNotEquals(key, SnapCache.createKey("car", new GHPoint(50.1001, 10.2), Double.NaN, null, Collections.emptyList()));
+        assertNotEquals(key, SnapCache.createKey("bike", p, Double.NaN, null, Collections.emptyList()));
+        assertNotEquals(key, SnapCache.createKey("car", p, 90, null, Collections.emptyList()));
+        assertNotEquals(key, SnapCache.createKey("car", p, Double.NaN, "", Collections.emptyList()));
+        assertNotEquals(key, SnapCache.createKey("car", p, Double.NaN, null, List.of("motorway")));
+    }
+
+    @Test
+    void evictLeastRecentlyUsed() {
+        SnapCache cache = new SnapCache(2);
+        SnapCache.Key k1 = SnapCache.createKey("car", new GHPoint(50, 10), Double.NaN, null, Collections.emptyList());
+        SnapCache.Key k2 = SnapCache.createKey("car", new GHPoint(51, 10), Double.NaN, null, Collections.emptyList());
+        SnapCache.Key k3 = SnapCache.createKey("car", new GHPoint(52, 10), Double.NaN, null, Collections.emptyList());
+        cache.put(k1, createSnap(50, 10, 1));
+        cache.put(k2, createSnap(51, 10, 2));
+        // k1 is now the most recently used entry
+        assertEquals(1, cache.get(k1, new GHPoint(50, 10)).getClosestNode());
+        cache.put(k3, createSnap(52, 10, 3));
+        assertEquals(2, cache.getSize());
+        assertEquals(1, cache.getEvictions());
+        assertNull(cache.get(k2, new GHPoint(51, 10)));
+        assertEquals(3, cache.get(k3, new GHPoint(52, 10)).getClosestNode());
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(2 / 3.0, cache.getHitRate(), 1.e-6);
+    }
+
+    @Test
+    void returnCopies() {
+        SnapCache cache = new SnapCache(10);
+        SnapCache.Key key = SnapCache.createKey("car", new GHPoint(50, 10), Double.NaN, null, Collections.emptyList());
+        Snap snap = createSnap(50, 10, 5);
+        cache.put(key, snap);
+        snap.setClosestNode(7);
+
+        Snap copy = cache.get(key, new GHPoint(50.00000001, 10));
+        assertEquals(5, copy.getClosestNode());
+        assertEquals(50.00000001, copy.getQueryPoint().lat, 1.e-9);
+        copy.setClosestNode(8);
+        assertEquals(5, cache.get(key, new GHPoint(50, 10)).getClosestNode());
+        assertThrows(IllegalArgumentException.class, () -> cache.put(key, new Snap(50, 10)));
+    }
+
+    private static Snap createSnap(double lat, double lon, int node) {
+        Snap snap = new Snap(lat, lon);
+        snap.setClosestNode(node);
+        snap.setWayIndex(0);
+        snap.setSnappedPosition(Snap.Position.TOWER);
+        snap.setSnappedPoint(new GHPoint3D(lat, lon, 0));
+        return snap;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.graphhopper.routing.ev.DecimalEncodedValue;
+import com.graphhopper.routing.ev.VehicleSpeed;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.SpeedProfiles;
+import com.graphhopper.routing.weighting.TimeDependentWeighting;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.routing.weighting.custom.CustomModelParser;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.RAMDirectory;
+import com.graphhopper.util.CustomModel;
+import com.graphhopper.util.GHUtility;
+import org.junit.jupiter.api.Test;
+
+import java.time.OffsetDateTime;
+import java.util.Arrays;
+import java.util.Random;
+
+import static com.graphhopper.json.Statement.If;
+import static com.graphhopper.json.Statement.Op.LIMIT;
+import static com.graphhopper.routing.weighting.TurnCostProvider.NO_TURN_COST_PROVIDER;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TimeDependentAStarTest {
+    private final DecimalEncodedValue speedEnc = VehicleSpeed.create("car", 5, 5, true);
+    private final EncodingManager em = EncodingManager.start().add(speedEnc).build();
+    private final BaseGraph graph = new BaseGraph.Builder(em).create();
+
+    private Weighting createWeighting() {
+        CustomModel customModel = new CustomModel();
+        customModel.addToSpeed(If("true", LIMIT, speedEnc.getName()));
+        customModel.setDistanceInfluence(0d);
+        return CustomModelParser.createWeighting(em, NO_TURN_COST_PROVIDER, customModel);
+    }
+
+    private static long monday(String time) {
+        return OffsetDateTime.parse("2024-01-15T" + time + "Z").toInstant().toEpochMilli();
+    }
+
+    private Path calcPath(SpeedProfiles speedProfiles, int from, int to, long departureTime) {
+        TimeDependentWeighting weighting = new TimeDependentWeighting(createWeighting(), speedProfiles, graph);
+        return new TimeDependentAStar(graph, weighting, TraversalMode.NODE_BASED).setDepartureTime(departureTime).calcPath(from, to);
+    }
+
+    @Test
+    void avoidRushHour() {
+        // 0 - 1 is the direct road, 0 - 2 - 1 the detour
+        graph.edge(0, 1).setDistance(1000).set(speedEnc, 60, 60);
+        graph.edge(0, 2).setDistance(800).set(speedEnc, 60, 60);
+        graph.edge(2, 1).setDistance(800).set(speedEnc, 60, 60);
+        SpeedProfiles speedProfiles = new SpeedProfiles(new RAMDirectory()).create(graph);
+        int[] rushHour = new int[SpeedProfiles.BINS_PER_DAY];
+        Arrays.fill(rushHour, 100);
+        // 20% of the free-flow speed from 07:00 to 09:00
+        Arrays.fill(rushHour, 28, 36, 20);
+        speedProfiles.setProfile(0, speedProfiles.addProfile(rushHour));
+
+        Path path = calcPath(speedProfiles, 0, 1, monday("03:00:00"));
+        assertEquals(IntArrayList.from(0, 1), path.calcNodes());
+        assertEquals(60_000, path.getTime());
+
+        path = calcPath(speedProfiles, 0, 1, monday("08:00:00"));
+        assertEquals(IntArrayList.from(0, 2, 1), path.calcNodes());
+        assertEquals(96_000, path.getTime());
+
+        // the profile is evaluated when the edge is entered
+        path = calcPath(speedProfiles, 2, 1, monday("08:00:00"));
+        assertEquals(IntArrayList.from(2, 1), path.calcNodes());
+        path = calcPath(speedProfiles, 2, 0, monday("08:00:00"));
+        assertEquals(IntArrayList.from(2, 0), path.calcNodes());
+        assertEquals(48_000, path.getTime());
+        path = calcPath(speedProfiles, 1, 0, monday("06:59:00"));
+        assertEquals(IntArrayList.from(1, 0), path.calcNodes());
+        // 06:59 is between the middle of the bins 06:45-07:00 (100%) and 07:00-07:15 (20%)
+        assertEquals(Math.round(60_000 / (1 - 0.8 * 6.5 / 15)), path.getTime());
+    }
+
+    @Test
+    void sameAsAStarWithoutProfiles() {
+        Random rnd = new Random(42);
+        GHUtility.buildRandomGraph(graph, rnd, 200, 2.2, true, speedEnc, 60d, 0.8, 0.8);
+        SpeedProfiles speedProfiles = new SpeedProfiles(new RAMDirectory()).create(graph);
+        Weighting weighting = createWeighting();
+        for (int i = 0; i < 50; i++) {
+            int from = rnd.nextInt(graph.getNodes()), to = rnd.nextInt(graph.getNodes());
+            Path expected = new AStar(graph, weighting, TraversalMode.NODE_BASED).calcPath(from, to);
+            Path path = calcPath(speedProfiles, from, to, monday("08:00:00"));
+            assertEquals(expected.isFound(), path.isFound());
+            assertEquals(expected.getWeight(), path.getWeight(), 1.e-6);
+            assertEquals(expected.getTime(), path.getTime());
+        }
+    }
+}
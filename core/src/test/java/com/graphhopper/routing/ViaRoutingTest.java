@@ -0,0 +1,145 @@
+package com.graphhopper.routing;
+
+import com.graphhopper.routing.ev.DecimalEncodedValue;
+import com.graphhopper.routing.ev.DecimalEncodedValueImpl;
+import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.SpeedWeighting;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.RAMDirectory;
+import com.graphhopper.storage.index.LocationIndexTree;
+import com.graphhopper.storage.index.Snap;
+import com.graphhopper.util.GHUtility;
+import com.graphhopper.util.PMap;
+import com.graphhopper.util.shapes.GHPoint;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static com.graphhopper.util.Parameters.Algorithms.DIJKSTRA_BI;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ViaRoutingTest {
+    private BaseGraph graph;
+    private Weighting weighting;
+    private List<GHPoint> points;
+    private List<Snap> snaps;
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setup() {
+        DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+        EncodingManager em = EncodingManager.start().add(speedEnc).build();
+        graph = new BaseGraph.Builder(em).create();
+        Random rnd = new Random(123);
+        GHUtility.buildRandomGraph(graph, rnd, 500, 2.5, false, speedEnc, null, 0.9, 0.8);
+        weighting = new SpeedWeighting(speedEnc);
+        LocationIndexTree index = new LocationIndexTree(graph, new RAMDirectory());
+        index.prepareIndex();
+        points = new ArrayList<>();
+        snaps = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            GHPoint point = new GHPoint(49.4 + rnd.nextDouble() * 0.01, 9.7 + rnd.nextDouble() * 0.01);
+            points.add(point);
+            snaps.add(index.findClosest(point.lat, point.lon, EdgeFilter.ALL_EDGES));
+        }
+        executor = Executors.newFixedThreadPool(3);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void parallelLegsEqualSequentialLegs() {
+        QueryGraph queryGraph = QueryGraph.create(graph, snaps);
+        ViaRouting.Result sequential = ViaRouting.calcPaths(points, queryGraph, snaps, (edge, reverse) -> true,
+                createPathCalculator(queryGraph), Collections.emptyList(), "strict", Collections.emptyList(), false);
+        ViaRouting.Result parallel = ViaRouting.calcPaths(points, queryGraph, snaps, (edge, reverse) -> true,
+                () -> createPathCalculator(queryGraph), Collections.emptyList(), "strict", Collections.emptyList(), false,
+                executor, 4);
+        assertEquals(points.size() - 1, parallel.paths.size());
+        for (int leg = 0; leg < sequential.paths.size(); leg++) {
+            Path expected = sequential.paths.get(leg);
+            Path actual = parallel.paths.get(leg);
+            assertEquals(expected.isFound(), actual.isFound(), "leg " + leg);
+            assertEquals(expected.getWeight(), actual.getWeight(), 1.e-6, "leg " + leg);
+            assertEquals(expected.calcNodes(), actual.calcNodes(), "leg " + leg);
+        }
+        assertEquals(sequential.visitedNodes, parallel.visitedNodes);
+    }
+
+    @Test
+    void parallelLegsRethrowFailures() {
+        QueryGraph queryGraph = QueryGraph.create(graph, snaps);
+        int failingFrom = snaps.get(20).getClosestNode();
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, () -> ViaRouting.calcPaths(points, queryGraph,
+                snaps, (edge, reverse) -> true, () -> new PathCalculator() {
+                    final PathCalculator delegate = createPathCalculator(queryGraph);
+
+                    @Override
+                    public List<Path> calcPaths(int from, int to, EdgeRestrictions edgeRestrictions) {
+                        if (from == failingFrom)
+                            throw new IllegalArgumentException("leg failed");
+                        return delegate.calcPaths(from, to, edgeRestrictions);
+                    }
+
+                    @Override
+                    public String getDebugString() {
+                        return delegate.getDebugString();
+                    }
+
+                    @Override
+                    public int getVisitedNodes() {
+                        return delegate.getVisitedNodes();
+                    }
+                }, Collections.emptyList(), "strict", Collections.emptyList(), false, executor, 4));
+        assertEquals("leg failed", ex.getMessage());
+    }
+
+    @Test
+    void parallelLegsDoNotWaitForQueuedHelpers() throws InterruptedException {
+        ExecutorService busyExecutor = Executors.newSingleThreadExecutor();
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            // the only executor thread is blocked, so the calling thread has to calculate all legs itself
+            busyExecutor.execute(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            QueryGraph queryGraph = QueryGraph.create(graph, snaps);
+            ViaRouting.Result parallel = assertTimeoutPreemptively(Duration.ofSeconds(10), () -> ViaRouting.calcPaths(points,
+                    queryGraph, snaps, (edge, reverse) -> true, () -> createPathCalculator(queryGraph), Collections.emptyList(),
+                    "strict", Collections.emptyList(), false, busyExecutor, 4));
+            assertEquals(points.size() - 1, parallel.paths.size());
+            assertFalse(parallel.paths.contains(null));
+        } finally {
+            release.countDown();
+            busyExecutor.shutdown();
+            assertTrue(busyExecutor.awaitTermination(10, TimeUnit.SECONDS));
+        }
+    }
+
+    private PathCalculator createPathCalculator(QueryGraph queryGraph) {
+        AlgorithmOptions algoOpts = new AlgorithmOptions().setAlgorithm(DIJKSTRA_BI)
+                .setTraversalMode(TraversalMode.NODE_BASED).setHints(new PMap());
+        return new FlexiblePathCalculator(queryGraph, new RoutingAlgorithmFactorySimple(), queryGraph.wrapWeighting(weighting), algoOpts);
+    }
+}
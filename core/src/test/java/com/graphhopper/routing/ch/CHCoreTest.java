@@ -0,0 +1,188 @@
+package com.graphhopper.routing.ch;
+
+import com.graphhopper.routing.Dijkstra;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.ev.*;
+import com.graphhopper.routing.lm.LMApproximator;
+import com.graphhopper.routing.lm.LMConfig;
+import com.graphhopper.routing.lm.LandmarkStorage;
+import com.graphhopper.routing.lm.PrepareLandmarks;
+import com.graphhopper.routing.subnetwork.PrepareRoutingSubnetworks;
+import com.graphhopper.routing.util.AllEdgesIterator;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.DefaultTurnCostProvider;
+import com.graphhopper.routing.weighting.TurnCostProvider;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.routing.weighting.custom.CustomModelParser;
+import com.graphhopper.storage.*;
+import com.graphhopper.util.CustomModel;
+import com.graphhopper.util.GHUtility;
+import com.graphhopper.util.PMap;
+import com.graphhopper.util.Parameters;
+import com.graphhopper.util.TurnCostsConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static com.graphhopper.json.Statement.*;
+import static com.graphhopper.json.Statement.Op.LIMIT;
+import static com.graphhopper.json.Statement.Op.MULTIPLY;
+import static com.graphhopper.routing.weighting.TurnCostProvider.NO_TURN_COST_PROVIDER;
+import static org.junit.jupiter.api.Assertions.*;
+
+class CHCoreTest {
+    private DecimalEncodedValue speedEnc;
+    private EnumEncodedValue<Toll> tollEnc;
+    private BooleanEncodedValue turnRestrictionEnc;
+    private BooleanEncodedValue subnetworkEnc;
+    private EncodingManager em;
+    private BaseGraph graph;
+    private final CustomModel profileModel = new CustomModel().addToSpeed(If("true", LIMIT, "car_average_speed"));
+
+    @BeforeEach
+    void setup() {
+        speedEnc = VehicleSpeed.create("car", 5, 5, true);
+        tollEnc = Toll.create();
+        turnRestrictionEnc = TurnRestriction.create("car");
+        subnetworkEnc = Subnetwork.create("car");
+        em = EncodingManager.start().add(speedEnc).add(tollEnc).add(subnetworkEnc).addTurnCostEncodedValue(turnRestrictionEnc).build();
+        graph = new BaseGraph.Builder(em).withTurnCosts(true).create();
+    }
+
+    @Test
+    void coreNodes() {
+        buildGraph(41);
+        CHCore core = CHCore.fromGraph(graph, em, List.of(Toll.KEY));
+        AllEdgesIterator iter = graph.getAllEdges();
+        int coreEdges = 0;
+        while (iter.next()) {
+            if (iter.get(tollEnc) != Toll.MISSING) {
+                assertTrue(core.isCoreNode(iter.getBaseNode()));
+                assertTrue(core.isCoreNode(iter.getAdjNode()));
+                coreEdges++;
+            }
+        }
+        assertTrue(coreEdges > 0);
+        assertTrue(core.getCoreNodes() > 0 && core.getCoreNodes() < graph.getNodes() / 2, "core nodes: " + core.getCoreNodes());
+
+        // the default value is the one of most edges, not necessarily the first one of the enum
+        iter = graph.getAllEdges();
+        while (iter.next())
+            iter.set(tollEnc, iter.get(tollEnc) == Toll.MISSING ? Toll.NO : Toll.MISSING);
+        CHCore inverted = CHCore.fromGraph(graph, em, List.of(Toll.KEY));
+        assertEquals(core.getCoreNodes(), inverted.getCoreNodes());
+    }
+
+    @Test
+    void nodeBasedWithLandmarks() {
+        buildGraph(42);
+        Weighting weighting = CustomModelParser.createWeighting(em, NO_TURN_COST_PROVIDER, profileModel);
+        LandmarkStorage lms = prepareLandmarks(weighting);
+        CHConfig chConfig = CHConfig.nodeBased("car", weighting).withCore(CHCore.fromGraph(graph, em, List.of(Toll.KEY)));
+        CoreRoutingCHGraph chGraph = prepare(chConfig);
+
+        CustomModel queryModel = new CustomModel()
+                .addToPriority(If("toll == ALL", MULTIPLY, "0.2"))
+                .addToPriority(If("toll == HGV", MULTIPLY, "0"));
+        chConfig.getCore().checkQueryModel(queryModel, em, graph);
+        Weighting queryWeighting = CustomModelParser.createWeighting(em, NO_TURN_COST_PROVIDER, CustomModel.merge(profileModel, queryModel));
+        CHRoutingAlgorithmFactory algoFactory = new CHRoutingAlgorithmFactory(chGraph.withWeighting(queryWeighting))
+                .setApproximation(() -> LMApproximator.forLandmarks(graph, queryWeighting, lms, 4));
+        compareWithDijkstra(42, queryWeighting, TraversalMode.NODE_BASED, algoFactory, Parameters.Algorithms.ASTAR_BI);
+    }
+
+    @Test
+    void edgeBased() {
+        buildGraph(43);
+        TurnCostProvider turnCostProvider = new DefaultTurnCostProvider(turnRestrictionEnc, null, graph, new TurnCostsConfig().setUTurnCosts(40));
+        Weighting weighting = CustomModelParser.createWeighting(em, turnCostProvider, profileModel);
+        CHConfig chConfig = CHConfig.edgeBased("car", weighting).withCore(CHCore.fromGraph(graph, em, List.of(Toll.KEY)));
+        CoreRoutingCHGraph chGraph = prepare(chConfig);
+
+        CustomModel queryModel = new CustomModel().addToPriority(If("toll != MISSING", MULTIPLY, "0.1"));
+        Weighting queryWeighting = CustomModelParser.createWeighting(em, turnCostProvider, CustomModel.merge(profileModel, queryModel));
+        CHRoutingAlgorithmFactory algoFactory = new CHRoutingAlgorithmFactory(chGraph.withWeighting(queryWeighting));
+        compareWithDijkstra(43, queryWeighting, TraversalMode.EDGE_BASED, algoFactory, Parameters.Algorithms.ASTAR_BI);
+        compareWithDijkstra(44, queryWeighting, TraversalMode.EDGE_BASED, algoFactory, Parameters.Algorithms.DIJKSTRA_BI);
+    }
+
+    @Test
+    void queryModelMustOnlyChangeTheCore() {
+        buildGraph(45);
+        CHCore core = CHCore.fromGraph(graph, em, List.of(Toll.KEY));
+        core.checkQueryModel(new CustomModel().addToPriority(If("toll == ALL || toll == HGV", MULTIPLY, "0")), em, graph);
+        core.checkQueryModel(new CustomModel().addToSpeed(If("toll == ALL", LIMIT, "30")), em, graph);
+        // only the core encoded values can be used
+        assertThrows(IllegalArgumentException.class, () -> core.checkQueryModel(new CustomModel()
+                .addToPriority(If("car_average_speed > 50", MULTIPLY, "0.5")), em, graph));
+        // the edges outside the core have the default value
+        assertThrows(IllegalArgumentException.class, () -> core.checkQueryModel(new CustomModel()
+                .addToPriority(If("toll == MISSING", MULTIPLY, "0.5")), em, graph));
+        assertThrows(IllegalArgumentException.class, () -> core.checkQueryModel(new CustomModel()
+                .addToPriority(If("toll == ALL", MULTIPLY, "0.5"))
+                .addToPriority(Else(MULTIPLY, "0.9")), em, graph));
+        assertThrows(IllegalArgumentException.class, () -> core.checkQueryModel(new CustomModel()
+                .setDistanceInfluence(70d), em, graph));
+    }
+
+    @Test
+    void coreRequiresContractingAllOtherNodes() {
+        buildGraph(46);
+        Weighting weighting = CustomModelParser.createWeighting(em, NO_TURN_COST_PROVIDER, profileModel);
+        CHConfig chConfig = CHConfig.nodeBased("car", weighting).withCore(CHCore.fromGraph(graph, em, List.of(Toll.KEY)));
+        assertThrows(IllegalArgumentException.class, () -> PrepareContractionHierarchies.fromGraph(graph, chConfig)
+                .setParams(new PMap().putObject(CHParameters.CONTRACTED_NODES, 90)));
+    }
+
+    private void buildGraph(long seed) {
+        Random rnd = new Random(seed);
+        GHUtility.buildRandomGraph(graph, rnd, 300, 2.2, true, speedEnc, null, 0.9, 0.8);
+        // a few toll roads form the core
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next()) {
+            int r = rnd.nextInt(20);
+            iter.set(tollEnc, r == 0 ? Toll.HGV : r < 3 ? Toll.ALL : Toll.MISSING);
+        }
+        Weighting weighting = CustomModelParser.createWeighting(em, NO_TURN_COST_PROVIDER, profileModel);
+        PrepareRoutingSubnetworks subnetworks = new PrepareRoutingSubnetworks(graph,
+                List.of(new PrepareRoutingSubnetworks.PrepareJob(subnetworkEnc, weighting)));
+        subnetworks.setMinNetworkSize(0);
+        subnetworks.doWork();
+        graph.freeze();
+    }
+
+    private LandmarkStorage prepareLandmarks(Weighting weighting) {
+        PrepareLandmarks prepare = new PrepareLandmarks(new RAMDirectory(), graph, em, new LMConfig("car", weighting), 8);
+        prepare.setMaximumWeight(10_000);
+        prepare.doWork();
+        return prepare.getLandmarkStorage();
+    }
+
+    private CoreRoutingCHGraph prepare(CHConfig chConfig) {
+        PrepareContractionHierarchies.Result res = PrepareContractionHierarchies.fromGraph(graph, chConfig).doWork();
+        RoutingCHGraph chGraph = RoutingCHGraphImpl.fromGraph(graph, res.getCHStorage(), res.getCHConfig());
+        assertInstanceOf(CoreRoutingCHGraph.class, chGraph);
+        return (CoreRoutingCHGraph) chGraph;
+    }
+
+    private void compareWithDijkstra(long seed, Weighting queryWeighting, TraversalMode traversalMode,
+                                     CHRoutingAlgorithmFactory algoFactory, String algo) {
+        Random rnd = new Random(seed);
+        int queries = 0;
+        for (int i = 0; i < 200; i++) {
+            int from = rnd.nextInt(graph.getNodes());
+            int to = rnd.nextInt(graph.getNodes());
+            Path refPath = new Dijkstra(graph, queryWeighting, traversalMode).calcPath(from, to);
+            Path path = algoFactory.createAlgo(new PMap().putObject(Parameters.Routing.ALGORITHM, algo)).calcPath(from, to);
+            assertEquals(refPath.isFound(), path.isFound(), "route " + from + "->" + to);
+            if (!refPath.isFound())
+                continue;
+            queries++;
+            assertEquals(refPath.getWeight(), path.getWeight(), 1.e-2, "route " + from + "->" + to);
+        }
+        assertTrue(queries > 100, "queries: " + queries);
+    }
+}
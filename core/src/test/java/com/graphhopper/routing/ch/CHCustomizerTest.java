@@ -0,0 +1,240 @@
+package com.graphhopper.routing.ch;
+
+import com.graphhopper.routing.*;
+import com.graphhopper.routing.ev.DecimalEncodedValue;
+import com.graphhopper.routing.ev.DecimalEncodedValueImpl;
+import com.graphhopper.routing.ev.TurnCost;
+import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.util.AllEdgesIterator;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.SpeedWeighting;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.CHConfig;
+import com.graphhopper.storage.CHStorage;
+import com.graphhopper.storage.RoutingCHGraph;
+import com.graphhopper.storage.RoutingCHGraphImpl;
+import com.graphhopper.util.GHUtility;
+import com.graphhopper.util.PMap;
+import com.graphhopper.util.Parameters;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CHCustomizerTest {
+    private DecimalEncodedValue speedEnc;
+    private DecimalEncodedValue trafficSpeedEnc;
+    private DecimalEncodedValue turnCostEnc;
+    private BaseGraph graph;
+
+    @BeforeEach
+    void setup() {
+        speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+        trafficSpeedEnc = new DecimalEncodedValueImpl("traffic_speed", 5, 5, true);
+        turnCostEnc = TurnCost.create("car", 10);
+        EncodingManager em = EncodingManager.start().add(speedEnc).add(trafficSpeedEnc).addTurnCostEncodedValue(turnCostEnc).build();
+        graph = new BaseGraph.Builder(em).withTurnCosts(true).create();
+    }
+
+    @Test
+    void nodeBased() {
+        long seed = 42;
+        buildGraph(seed, false);
+        CHConfig chConfig = CHConfig.nodeBased("car", new SpeedWeighting(speedEnc));
+        compareWithDijkstra(seed, chConfig, new SpeedWeighting(trafficSpeedEnc), TraversalMode.NODE_BASED);
+    }
+
+    @Test
+    void edgeBased() {
+        long seed = 43;
+        buildGraph(seed, true);
+        CHConfig chConfig = CHConfig.edgeBased("car", new SpeedWeighting(speedEnc, turnCostEnc, graph.getTurnCostStorage(), 40));
+        Weighting trafficWeighting = new SpeedWeighting(trafficSpeedEnc, turnCostEnc, graph.getTurnCostStorage(), 40);
+        compareWithDijkstra(seed, chConfig, trafficWeighting, TraversalMode.EDGE_BASED);
+    }
+
+    @Test
+    void restoreOriginalWeights() {
+        buildGraph(44, true);
+        CHConfig chConfig = CHConfig.edgeBased("car", new SpeedWeighting(speedEnc, turnCostEnc, graph.getTurnCostStorage(), 40));
+        CHStorage chStore = PrepareContractionHierarchies.fromGraph(graph, chConfig).doWork().getCHStorage();
+        double[] weights = getShortcutWeights(chStore);
+        assertTrue(weights.length > 0);
+
+        CHCustomizer customizer = new CHCustomizer(graph, chStore).setThreads(2);
+        customizer.customize(new SpeedWeighting(trafficSpeedEnc, turnCostEnc, graph.getTurnCostStorage(), 40));
+        assertFalse(equals(weights, getShortcutWeights(chStore)));
+        customizer.customize(chConfig.getWeighting());
+        assertTrue(equals(weights, getShortcutWeights(chStore)));
+    }
+
+    @Test
+    void blockedDirectionOfShortcut() {
+        // 0 - 1 - 2, node 1 is contracted first, so there is one shortcut 0-2 for both directions
+        graph.edge(0, 1).setDistance(100).set(speedEnc, 50, 50).set(trafficSpeedEnc, 50, 50);
+        graph.edge(1, 2).setDistance(100).set(speedEnc, 50, 50).set(trafficSpeedEnc, 0, 50);
+        graph.freeze();
+        CHConfig chConfig = CHConfig.nodeBased("car", new SpeedWeighting(speedEnc));
+        CHStorage chStore = PrepareContractionHierarchies.fromGraph(graph, chConfig)
+                .useFixedNodeOrdering(NodeOrderingProvider.fromArray(1, 0, 2)).doWork().getCHStorage();
+        assertEquals(1, chStore.getShortcuts());
+
+        CHCustomizer customizer = new CHCustomizer(graph, chStore);
+        Weighting trafficWeighting = new SpeedWeighting(trafficSpeedEnc);
+        customizer.customize(trafficWeighting);
+        RoutingCHGraph chGraph = new RoutingCHGraphImpl(graph, chStore, trafficWeighting);
+        assertFalse(calcPath(chGraph, 0, 2).isFound());
+        Path path = calcPath(chGraph, 2, 0);
+        assertTrue(path.isFound());
+        assertEquals(4, path.getWeight(), 1.e-6);
+
+        // the original weights restore the blocked direction
+        customizer.customize(chConfig.getWeighting());
+        chGraph = new RoutingCHGraphImpl(graph, chStore, chConfig.getWeighting());
+        assertEquals(4, calcPath(chGraph, 0, 2).getWeight(), 1.e-6);
+        assertEquals(4, calcPath(chGraph, 2, 0).getWeight(), 1.e-6);
+    }
+
+    @Test
+    void fallbackForBlockedWitness() {
+        // 0 - 1 - 2 and the faster path 0 - 3 - 2, which is a witness when node 1 is contracted, so there is only the
+        // shortcut 0-2 via node 3
+        graph.edge(0, 1).setDistance(100).set(speedEnc, 50, 50).set(trafficSpeedEnc, 50, 50);
+        graph.edge(1, 2).setDistance(100).set(speedEnc, 50, 50).set(trafficSpeedEnc, 50, 50);
+        graph.edge(0, 3).setDistance(50).set(speedEnc, 50, 50).set(trafficSpeedEnc, 0, 0);
+        graph.edge(3, 2).setDistance(50).set(speedEnc, 50, 50).set(trafficSpeedEnc, 50, 50);
+        graph.freeze();
+        CHConfig chConfig = CHConfig.nodeBased("car", new SpeedWeighting(speedEnc));
+        CHStorage chStore = PrepareContractionHierarchies.fromGraph(graph, chConfig)
+                .useFixedNodeOrdering(NodeOrderingProvider.fromArray(1, 3, 0, 2)).doWork().getCHStorage();
+        assertEquals(1, chStore.getShortcuts());
+
+        Weighting trafficWeighting = new SpeedWeighting(trafficSpeedEnc);
+        new CHCustomizer(graph, chStore).customize(trafficWeighting);
+        RoutingCHGraph chGraph = new RoutingCHGraphImpl(graph, chStore, trafficWeighting);
+        assertFalse(calcPath(chGraph, 0, 2).isFound());
+        Path path = calcPathWithFallback(chGraph, 0, 2, TraversalMode.NODE_BASED);
+        assertTrue(path.isFound());
+        assertEquals(4, path.getWeight(), 1.e-6);
+    }
+
+    @Test
+    void blockedEdges() {
+        long seed = 46;
+        buildGraph(seed, false, true);
+        CHConfig chConfig = CHConfig.nodeBased("car", new SpeedWeighting(speedEnc));
+        PrepareContractionHierarchies.Result res = PrepareContractionHierarchies.fromGraph(graph, chConfig).doWork();
+        Weighting trafficWeighting = new SpeedWeighting(trafficSpeedEnc);
+        new CHCustomizer(graph, res.getCHStorage()).customize(trafficWeighting);
+        RoutingCHGraph chGraph = new RoutingCHGraphImpl(graph, res.getCHStorage(), trafficWeighting);
+        Random rnd = new Random(seed);
+        int found = 0, foundWithoutFallback = 0;
+        for (int i = 0; i < 200; i++) {
+            int from = rnd.nextInt(graph.getNodes());
+            int to = rnd.nextInt(graph.getNodes());
+            Path refPath = new Dijkstra(graph, trafficWeighting, TraversalMode.NODE_BASED).calcPath(from, to);
+            Path path = calcPathWithFallback(chGraph, from, to, TraversalMode.NODE_BASED);
+            assertEquals(refPath.isFound(), path.isFound(), "route " + from + "->" + to);
+            if (!refPath.isFound())
+                continue;
+            found++;
+            assertTrue(path.getWeight() >= refPath.getWeight() - 1.e-2, "route " + from + "->" + to);
+            if (calcPath(chGraph, from, to).isFound())
+                foundWithoutFallback++;
+        }
+        assertTrue(found > 50, "found: " + found);
+        // the fallback is only needed if a closed road direction was a witness
+        assertTrue(foundWithoutFallback > 0.5 * found, "found without fallback: " + foundWithoutFallback + " of " + found);
+    }
+
+    @Test
+    void turnCostsRequireEdgeBasedCH() {
+        buildGraph(45, true);
+        CHConfig chConfig = CHConfig.nodeBased("car", new SpeedWeighting(speedEnc));
+        CHStorage chStore = PrepareContractionHierarchies.fromGraph(graph, chConfig).doWork().getCHStorage();
+        CHCustomizer customizer = new CHCustomizer(graph, chStore);
+        assertThrows(IllegalArgumentException.class, () -> customizer.customize(
+                new SpeedWeighting(speedEnc, turnCostEnc, graph.getTurnCostStorage(), 40)));
+        assertThrows(IllegalArgumentException.class, () -> customizer.setThreads(0));
+    }
+
+    private void buildGraph(long seed, boolean turnCosts) {
+        buildGraph(seed, turnCosts, false);
+    }
+
+    private void buildGraph(long seed, boolean turnCosts, boolean block) {
+        Random rnd = new Random(seed);
+        GHUtility.buildRandomGraph(graph, rnd, 200, 2.2, true, speedEnc, null, 0.9, 0.8);
+        if (turnCosts)
+            GHUtility.addRandomTurnCosts(graph, seed, null, turnCostEnc, 10, graph.getTurnCostStorage());
+        // every fifth edge direction is slowed down to a third of its speed or, if block is true, closed
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next()) {
+            iter.set(trafficSpeedEnc, slowDown(iter.get(speedEnc), rnd, block), slowDown(iter.getReverse(speedEnc), rnd, block));
+        }
+        graph.freeze();
+    }
+
+    private static double slowDown(double speed, Random rnd, boolean block) {
+        if (speed == 0 || rnd.nextInt(5) > 0)
+            return speed;
+        return block ? 0 : Math.max(5, Math.round(speed / 3 / 5) * 5);
+    }
+
+    private static Path calcPath(RoutingCHGraph chGraph, int from, int to) {
+        return new CHRoutingAlgorithmFactory(chGraph).createAlgo(new PMap()).calcPath(from, to);
+    }
+
+    private Path calcPathWithFallback(RoutingCHGraph chGraph, int from, int to, TraversalMode traversalMode) {
+        QueryGraph queryGraph = QueryGraph.create(graph, Collections.emptyList());
+        AlgorithmOptions algoOpts = new AlgorithmOptions().setAlgorithm(Parameters.Algorithms.DIJKSTRA_BI).setTraversalMode(traversalMode);
+        CHPathCalculator pathCalculator = new CHPathCalculator(new CHRoutingAlgorithmFactory(chGraph, queryGraph), new PMap())
+                .setFallback(new FlexiblePathCalculator(queryGraph, new RoutingAlgorithmFactorySimple(), chGraph.getWeighting(), algoOpts));
+        List<Path> paths = pathCalculator.calcPaths(from, to, new EdgeRestrictions());
+        return paths.get(0);
+    }
+
+    private void compareWithDijkstra(long seed, CHConfig chConfig, Weighting trafficWeighting, TraversalMode traversalMode) {
+        PrepareContractionHierarchies.Result res = PrepareContractionHierarchies.fromGraph(graph, chConfig).doWork();
+        new CHCustomizer(graph, res.getCHStorage()).setThreads(4).customize(trafficWeighting);
+        RoutingCHGraph chGraph = new RoutingCHGraphImpl(graph, res.getCHStorage(), trafficWeighting);
+        Random rnd = new Random(seed);
+        int queries = 0, optimal = 0;
+        for (int i = 0; i < 200; i++) {
+            int from = rnd.nextInt(graph.getNodes());
+            int to = rnd.nextInt(graph.getNodes());
+            Path refPath = new Dijkstra(graph, trafficWeighting, traversalMode).calcPath(from, to);
+            Path path = new CHRoutingAlgorithmFactory(chGraph).createAlgo(new PMap()).calcPath(from, to);
+            assertEquals(refPath.isFound(), path.isFound(), "route " + from + "->" + to);
+            if (!refPath.isFound())
+                continue;
+            queries++;
+            // the customized hierarchy only lacks shortcuts, so it never finds routes that are faster than possible
+            assertTrue(path.getWeight() >= refPath.getWeight() - 1.e-2, "route " + from + "->" + to);
+            if (Math.abs(path.getWeight() - refPath.getWeight()) < 1.e-2)
+                optimal++;
+        }
+        assertTrue(queries > 100, "queries: " + queries);
+        assertTrue(optimal > 0.8 * queries, "optimal: " + optimal + " of " + queries);
+    }
+
+    private static double[] getShortcutWeights(CHStorage chStore) {
+        double[] weights = new double[chStore.getShortcuts()];
+        for (int i = 0; i < weights.length; i++)
+            weights[i] = chStore.getWeight(chStore.toShortcutPointer(i));
+        return weights;
+    }
+
+    private static boolean equals(double[] expected, double[] actual) {
+        for (int i = 0; i < expected.length; i++)
+            if (Math.abs(expected[i] - actual[i]) > 1.e-2)
+                return false;
+        return true;
+    }
+}
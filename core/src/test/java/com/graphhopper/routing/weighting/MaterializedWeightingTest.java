@@ -0,0 +1,79 @@
+package com.graphhopper.routing.weighting;
+
+import com.graphhopper.routing.ev.*;
+import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.util.AllEdgesIterator;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.weighting.custom.CustomModelParser;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.storage.RAMDirectory;
+import com.graphhopper.storage.index.LocationIndexTree;
+import com.graphhopper.storage.index.Snap;
+import com.graphhopper.util.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static com.graphhopper.json.Statement.If;
+import static com.graphhopper.json.Statement.Op.LIMIT;
+import static com.graphhopper.json.Statement.Op.MULTIPLY;
+import static com.graphhopper.routing.weighting.TurnCostProvider.NO_TURN_COST_PROVIDER;
+import static org.junit.jupiter.api.Assertions.*;
+
+class MaterializedWeightingTest {
+
+    @Test
+    void sameWeightsAsOriginal() {
+        BooleanEncodedValue accessEnc = VehicleAccess.create("car");
+        DecimalEncodedValue speedEnc = VehicleSpeed.create("car", 5, 5, true);
+        EncodingManager em = EncodingManager.start().add(accessEnc).add(speedEnc).add(RoadClass.create()).build();
+        EnumEncodedValue<RoadClass> roadClassEnc = em.getEnumEncodedValue(RoadClass.KEY, RoadClass.class);
+        BaseGraph graph = new BaseGraph.Builder(em).create();
+        Random rnd = new Random(123);
+        GHUtility.buildRandomGraph(graph, rnd, 100, 2.2, false, speedEnc, null, 0.8, 0.8);
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next()) {
+            iter.set(accessEnc, rnd.nextBoolean(), rnd.nextBoolean());
+            iter.set(roadClassEnc, rnd.nextBoolean() ? RoadClass.PRIMARY : RoadClass.RESIDENTIAL);
+        }
+
+        CustomModel customModel = new CustomModel();
+        customModel.addToPriority(If("!car_access", MULTIPLY, "0"));
+        customModel.addToPriority(If("road_class == RESIDENTIAL", MULTIPLY, "0.5"));
+        customModel.addToSpeed(If("true", LIMIT, speedEnc.getName()));
+        customModel.setDistanceInfluence(70d);
+        Weighting weighting = CustomModelParser.createWeighting(em, NO_TURN_COST_PROVIDER, customModel);
+        MaterializedWeights weights = new MaterializedWeights(new RAMDirectory(), "car").build(graph, weighting, 1);
+        Weighting materialized = new MaterializedWeighting(weighting, weights);
+        assertEquals(graph.getEdges(), weights.getEdges());
+
+        // compare both edge states of every edge, the reversed ones are created by the explorer
+        for (int node = 0; node < graph.getNodes(); node++) {
+            EdgeIterator edge = graph.createEdgeExplorer().setBaseNode(node);
+            while (edge.next()) {
+                for (boolean reverse : new boolean[]{false, true}) {
+                    assertEquals(weighting.calcEdgeWeight(edge, reverse), materialized.calcEdgeWeight(edge, reverse), edge.toString());
+                    assertEquals(weighting.calcEdgeMillis(edge, reverse), materialized.calcEdgeMillis(edge, reverse), edge.toString());
+                }
+            }
+        }
+
+        // virtual edges are not materialized
+        LocationIndexTree index = new LocationIndexTree(graph, new RAMDirectory());
+        index.prepareIndex();
+        EdgeIteratorState e = graph.getEdgeIteratorState(0, Integer.MIN_VALUE);
+        NodeAccess na = graph.getNodeAccess();
+        Snap snap = index.findClosest((na.getLat(e.getBaseNode()) + na.getLat(e.getAdjNode())) / 2,
+                (na.getLon(e.getBaseNode()) + na.getLon(e.getAdjNode())) / 2, EdgeFilter.ALL_EDGES);
+        assertEquals(Snap.Position.EDGE, snap.getSnappedPosition());
+        QueryGraph queryGraph = QueryGraph.create(graph, Arrays.asList(snap));
+        EdgeIterator edge = queryGraph.createEdgeExplorer().setBaseNode(snap.getClosestNode());
+        while (edge.next()) {
+            for (boolean reverse : new boolean[]{false, true})
+                assertEquals(weighting.calcEdgeWeight(edge, reverse), materialized.calcEdgeWeight(edge, reverse), edge.toString());
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.weighting;
+
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.RAMDirectory;
+import com.graphhopper.util.Helper;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+
+import static com.graphhopper.routing.weighting.SpeedProfiles.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpeedProfilesTest {
+
+    private static BaseGraph createGraph() {
+        BaseGraph graph = new BaseGraph.Builder(EncodingManager.start().build()).create();
+        graph.edge(0, 1);
+        graph.edge(1, 2);
+        graph.edge(2, 0);
+        return graph;
+    }
+
+    private static int[] rushHour(int percent) {
+        int[] speedPercents = new int[BINS_PER_DAY];
+        Arrays.fill(speedPercents, 100);
+        // 07:00 - 09:00
+        Arrays.fill(speedPercents, 28, 36, percent);
+        return speedPercents;
+    }
+
+    @Test
+    void speedFactor() {
+        SpeedProfiles speedProfiles = new SpeedProfiles(new RAMDirectory()).create(createGraph());
+        int profile = speedProfiles.addProfile(rushHour(20));
+        speedProfiles.setProfile(1, profile);
+        long hour = 60 * 60 * 1000L;
+        assertEquals(1, speedProfiles.getSpeedFactor(0, 8 * hour));
+        assertEquals(1, speedProfiles.getSpeedFactor(1, 3 * hour));
+        assertEquals(0.2, speedProfiles.getSpeedFactor(1, 8 * hour), 1.e-9);
+        // interpolated between the middle of the bins 06:45-07:00 and 07:00-07:15
+        assertEquals(0.6, speedProfiles.getSpeedFactor(1, 7 * hour), 1.e-9);
+        // the same on every day of the week
+        assertEquals(0.2, speedProfiles.getSpeedFactor(1, 6 * 24 * hour + 8 * hour), 1.e-9);
+        // the end of the week is interpolated with its start
+        assertEquals(1, speedProfiles.getSpeedFactor(1, WEEK_MILLIS - 1), 1.e-9);
+    }
+
+    @Test
+    void sharedProfiles() {
+        SpeedProfiles speedProfiles = new SpeedProfiles(new RAMDirectory()).create(createGraph());
+        assertEquals(1, speedProfiles.getProfileCount());
+        int first = speedProfiles.addProfile(rushHour(20));
+        assertEquals(first, speedProfiles.addProfile(rushHour(20)));
+        assertNotEquals(first, speedProfiles.addProfile(rushHour(30)));
+        int[] free = new int[BINS_PER_DAY];
+        Arrays.fill(free, 100);
+        assertEquals(NO_PROFILE, speedProfiles.addProfile(free));
+        assertEquals(3, speedProfiles.getProfileCount());
+
+        assertThrows(IllegalArgumentException.class, () -> speedProfiles.addProfile(new int[10]));
+        assertThrows(IllegalArgumentException.class, () -> speedProfiles.addProfile(rushHour(0)));
+        assertThrows(IllegalArgumentException.class, () -> speedProfiles.setProfile(0, 3));
+    }
+
+    @Test
+    void millisOfWeek() {
+        SpeedProfiles speedProfiles = new SpeedProfiles(new RAMDirectory());
+        long monday = OffsetDateTime.parse("2024-01-15T00:00:00Z").toInstant().toEpochMilli();
+        assertEquals(0, speedProfiles.getMillisOfWeek(monday));
+        assertEquals(WEEK_MILLIS - 1, speedProfiles.getMillisOfWeek(monday - 1));
+
+        speedProfiles.setZoneId(ZoneId.of("Europe/Berlin"));
+        long mondayBerlin = OffsetDateTime.parse("2024-01-15T00:00:00+01:00").toInstant().toEpochMilli();
+        assertEquals(0, speedProfiles.getMillisOfWeek(mondayBerlin));
+        long mondaySummerBerlin = OffsetDateTime.parse("2024-07-15T08:00:00+02:00").toInstant().toEpochMilli();
+        assertEquals(8 * 60 * 60 * 1000L, speedProfiles.getMillisOfWeek(mondaySummerBerlin));
+    }
+
+    @Test
+    void loadExisting() {
+        String location = "./target/speed-profiles";
+        Helper.removeDir(new File(location));
+        BaseGraph graph = createGraph();
+        SpeedProfiles speedProfiles = new SpeedProfiles(new RAMDirectory(location, true).create()).create(graph);
+        speedProfiles.setProfile(2, speedProfiles.addProfile(rushHour(20)));
+        speedProfiles.flush();
+        speedProfiles.close();
+
+        speedProfiles = new SpeedProfiles(new RAMDirectory(location, true));
+        assertTrue(speedProfiles.loadExisting(graph));
+        assertEquals(2, speedProfiles.getProfileCount());
+        assertEquals(3, speedProfiles.getEdges());
+        assertEquals(0.2, speedProfiles.getSpeedFactor(2, 8 * 60 * 60 * 1000L), 1.e-9);
+        // the dictionary of the profiles is restored when more profiles are added
+        assertEquals(1, speedProfiles.addProfile(rushHour(20)));
+        assertEquals(2, speedProfiles.addProfile(rushHour(30)));
+        speedProfiles.close();
+        Helper.removeDir(new File(location));
+    }
+}
@@ -0,0 +1,171 @@
+package com.graphhopper.routing.weighting;
+
+import com.graphhopper.routing.ev.DecimalEncodedValue;
+import com.graphhopper.routing.ev.IntEncodedValue;
+import com.graphhopper.routing.ev.OSMWayID;
+import com.graphhopper.routing.ev.VehicleSpeed;
+import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.weighting.custom.CustomModelParser;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.index.Snap;
+import com.graphhopper.util.CustomModel;
+import com.graphhopper.util.DistanceCalcEarth;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.EdgeIteratorState;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import static com.graphhopper.json.Statement.If;
+import static com.graphhopper.json.Statement.Op.LIMIT;
+import static com.graphhopper.routing.weighting.TurnCostProvider.NO_TURN_COST_PROVIDER;
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrafficOverlayTest {
+    private static final long NOW = 1_700_000_000_000L;
+    private DecimalEncodedValue speedEnc;
+    private IntEncodedValue wayIdEnc;
+    private BaseGraph graph;
+    private Weighting weighting;
+
+    @BeforeEach
+    void setup() {
+        speedEnc = VehicleSpeed.create("car", 5, 5, true);
+        wayIdEnc = OSMWayID.create();
+        EncodingManager em = new EncodingManager.Builder().add(speedEnc).add(wayIdEnc).build();
+        graph = new BaseGraph.Builder(em).create();
+        // 0-1-2 is way 7, 2-3 is way 8
+        graph.getNodeAccess().setNode(0, 50.00, 10.00);
+        graph.getNodeAccess().setNode(1, 50.01, 10.00);
+        graph.getNodeAccess().setNode(2, 50.02, 10.00);
+        graph.getNodeAccess().setNode(3, 50.03, 10.00);
+        graph.edge(0, 1).setDistance(1000).set(speedEnc, 60, 60).set(wayIdEnc, 7);
+        graph.edge(1, 2).setDistance(1000).set(speedEnc, 60, 60).set(wayIdEnc, 7);
+        graph.edge(2, 3).setDistance(1000).set(speedEnc, 60, 60).set(wayIdEnc, 8);
+        CustomModel customModel = new CustomModel().addToSpeed(If("true", LIMIT, speedEnc.getName()));
+        weighting = CustomModelParser.createWeighting(em, NO_TURN_COST_PROVIDER, customModel);
+    }
+
+    @Test
+    void expiry() {
+        TrafficOverlay overlay = new TrafficOverlay(graph, null);
+        assertEquals(6, overlay.getEdgeKeys());
+        assertTrue(Double.isNaN(overlay.getSpeed(2, NOW)));
+        overlay.setSpeed(2, 20, NOW + 60_000);
+        assertEquals(20, overlay.getSpeed(2, NOW));
+        assertTrue(Double.isNaN(overlay.getSpeed(3, NOW)));
+        assertTrue(Double.isNaN(overlay.getSpeed(2, NOW + 61_000)));
+        assertEquals(1, overlay.getActiveEntries(NOW));
+        overlay.removeSpeed(2);
+        assertTrue(Double.isNaN(overlay.getSpeed(2, NOW)));
+        assertEquals(2, overlay.getUpdates());
+        assertThrows(IllegalArgumentException.class, () -> overlay.setSpeed(2, -1, NOW));
+    }
+
+    @Test
+    void nextExpiry() {
+        TrafficOverlay overlay = new TrafficOverlay(graph, null);
+        assertEquals(Long.MAX_VALUE, overlay.getNextExpiryMillis(NOW));
+        overlay.setSpeed(2, 20, NOW + 120_000);
+        overlay.setSpeed(3, 20, NOW + 60_000);
+        // the speed of edge key 3 is used until the expiry (rounded up to the next second) and then it changes
+        long expiry = overlay.getNextExpiryMillis(NOW);
+        assertTrue(expiry > NOW + 60_000 && expiry <= NOW + 61_000, "" + expiry);
+        assertEquals(20, overlay.getSpeed(3, expiry - 1));
+        assertTrue(Double.isNaN(overlay.getSpeed(3, expiry)));
+        // then edge key 2 expires
+        long next = overlay.getNextExpiryMillis(expiry);
+        assertTrue(next > NOW + 120_000 && next <= NOW + 121_000, "" + next);
+        assertEquals(Long.MAX_VALUE, overlay.getNextExpiryMillis(next));
+    }
+
+    @Test
+    void slowerAndBlocked() {
+        TrafficOverlay overlay = new TrafficOverlay(graph, null);
+        Weighting trafficWeighting = new TrafficWeighting(weighting, overlay, NOW);
+        EdgeIteratorState edge = graph.getEdgeIteratorState(1, 2);
+        assertEquals(60_000, trafficWeighting.calcEdgeMillis(edge, false));
+        double weight = weighting.calcEdgeWeight(edge, false);
+        assertEquals(weight, trafficWeighting.calcEdgeWeight(edge, false), 1.e-6);
+
+        overlay.setSpeed(edge.getEdgeKey(), 30, NOW + 60_000);
+        assertEquals(120_000, trafficWeighting.calcEdgeMillis(edge, false));
+        assertEquals(weight + 60, trafficWeighting.calcEdgeWeight(edge, false), 1.e-6);
+        // the other direction is not affected
+        assertEquals(60_000, trafficWeighting.calcEdgeMillis(edge, true));
+
+        // a faster speed is ignored, so the landmarks stay valid
+        overlay.setSpeed(edge.getEdgeKey(), 120, NOW + 60_000);
+        assertEquals(60_000, trafficWeighting.calcEdgeMillis(edge, false));
+        assertEquals(weight, trafficWeighting.calcEdgeWeight(edge, false), 1.e-6);
+
+        overlay.setSpeed(edge.getEdgeKey(), TrafficOverlay.BLOCKED, NOW + 60_000);
+        assertEquals(Double.POSITIVE_INFINITY, trafficWeighting.calcEdgeWeight(edge, false));
+        assertEquals(weight, new TrafficWeighting(weighting, overlay, NOW + 61_000).calcEdgeWeight(edge, false), 1.e-6);
+    }
+
+    @Test
+    void virtualEdges() {
+        TrafficOverlay overlay = new TrafficOverlay(graph, null);
+        overlay.setSpeed(graph.getEdgeIteratorState(1, 2).getEdgeKey(), 30, NOW + 60_000);
+        Snap snap = new Snap(50.015, 10.00);
+        snap.setClosestEdge(graph.getEdgeIteratorState(1, 2));
+        snap.setWayIndex(0);
+        snap.setSnappedPosition(Snap.Position.EDGE);
+        snap.calcSnappedPoint(DistanceCalcEarth.DIST_EARTH);
+        QueryGraph queryGraph = QueryGraph.create(graph, snap);
+        Weighting trafficWeighting = new TrafficWeighting(queryGraph.wrapWeighting(weighting), overlay, NOW);
+        EdgeExplorer explorer = queryGraph.createEdgeExplorer();
+        EdgeIterator iter = explorer.setBaseNode(snap.getClosestNode());
+        int checked = 0;
+        while (iter.next()) {
+            // towards node 2 the edge is slowed down, towards node 1 it is not
+            long expected = Math.round(iter.getDistance() / (iter.getAdjNode() == 2 ? 30 : 60) * 3600);
+            assertEquals(expected, trafficWeighting.calcEdgeMillis(iter, false), 1);
+            checked++;
+        }
+        assertEquals(2, checked);
+    }
+
+    @Test
+    void applyUpdates() throws IOException {
+        TrafficOverlay overlay = new TrafficOverlay(graph, wayIdEnc);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        // way 7 in its direction, edge 2 in both directions and an unknown edge
+        write(out, TrafficOverlay.WAY_ID | TrafficOverlay.FORWARD, 7, 30, 60);
+        write(out, TrafficOverlay.FORWARD | TrafficOverlay.BACKWARD, 2, 0, 60);
+        write(out, TrafficOverlay.FORWARD, 99, 30, 60);
+        assertEquals(4, overlay.applyUpdates(new ByteArrayInputStream(bytes.toByteArray()), NOW));
+        for (int edgeKey : List.of(0, 2))
+            assertEquals(30, overlay.getSpeed(edgeKey, NOW));
+        for (int edgeKey : List.of(1, 3))
+            assertTrue(Double.isNaN(overlay.getSpeed(edgeKey, NOW)));
+        for (int edgeKey : List.of(4, 5))
+            assertEquals(TrafficOverlay.BLOCKED, overlay.getSpeed(edgeKey, NOW));
+
+        // a time to live of 0 removes the entries
+        bytes.reset();
+        write(out, TrafficOverlay.WAY_ID | TrafficOverlay.FORWARD, 7, 30, 0);
+        assertEquals(2, overlay.applyUpdates(new ByteArrayInputStream(bytes.toByteArray()), NOW));
+        assertEquals(2, overlay.getActiveEntries(NOW));
+
+        assertThrows(IllegalArgumentException.class, () -> overlay.applyUpdates(new ByteArrayInputStream(new byte[]{1, 0, 0, 0}), NOW));
+        assertThrows(IllegalArgumentException.class, () -> new TrafficOverlay(graph, null).applyUpdates(
+                new ByteArrayInputStream(bytes.toByteArray()), NOW));
+    }
+
+    private static void write(DataOutputStream out, int flags, int id, int speed, int ttlSeconds) throws IOException {
+        out.writeByte(flags);
+        out.writeInt(id);
+        out.writeShort(speed);
+        out.writeInt(ttlSeconds);
+    }
+}
@@ -0,0 +1,124 @@
+package com.graphhopper.routing.weighting.custom;
+
+import com.graphhopper.coll.GHBitSet;
+import com.graphhopper.routing.ev.DecimalEncodedValue;
+import com.graphhopper.routing.ev.VehicleSpeed;
+import com.graphhopper.routing.util.AllEdgesIterator;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.index.LocationIndexTree;
+import com.graphhopper.util.*;
+import com.graphhopper.util.shapes.Polygon;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.prep.PreparedPolygon;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import static com.graphhopper.json.Statement.If;
+import static com.graphhopper.json.Statement.Op.LIMIT;
+import static com.graphhopper.json.Statement.Op.MULTIPLY;
+import static com.graphhopper.routing.weighting.TurnCostProvider.NO_TURN_COST_PROVIDER;
+import static org.junit.jupiter.api.Assertions.*;
+
+class AreaEdgeCacheTest {
+    private DecimalEncodedValue speedEnc;
+    private EncodingManager em;
+    private BaseGraph graph;
+    private LocationIndexTree locationIndex;
+
+    @BeforeEach
+    void setup() {
+        speedEnc = VehicleSpeed.create("car", 5, 5, false);
+        em = new EncodingManager.Builder().add(speedEnc).build();
+        graph = new BaseGraph.Builder(em).create();
+        Random rnd = new Random(123);
+        for (int node = 0; node < 200; node++)
+            graph.getNodeAccess().setNode(node, 50 + rnd.nextDouble() * 0.1, 10 + rnd.nextDouble() * 0.1);
+        for (int i = 0; i < 500; i++) {
+            int from = rnd.nextInt(200), to = (from + 1 + rnd.nextInt(199)) % 200;
+            EdgeIteratorState edge = graph.edge(from, to).set(speedEnc, 50);
+            if (rnd.nextBoolean())
+                edge.setWayGeometry(Helper.createPointList(50 + rnd.nextDouble() * 0.1, 10 + rnd.nextDouble() * 0.1));
+            edge.setDistance(DistanceCalcEarth.DIST_EARTH.calcDistance(edge.fetchWayGeometry(FetchMode.ALL)));
+        }
+        locationIndex = new LocationIndexTree(graph, graph.getDirectory());
+        locationIndex.prepareIndex();
+    }
+
+    private static Geometry createArea(double minLat, double minLon, double maxLat, double maxLon) {
+        return new GeometryFactory().createPolygon(new Coordinate[]{
+                new Coordinate(minLon, minLat), new Coordinate(maxLon, minLat), new Coordinate(maxLon, maxLat),
+                new Coordinate(minLon, maxLat), new Coordinate(minLon, minLat)});
+    }
+
+    @Test
+    void sameEdgesAsIntersection() {
+        Geometry area = createArea(50.02, 10.03, 50.06, 10.05);
+        AreaEdgeCache cache = new AreaEdgeCache(graph, locationIndex, 0);
+        cache.addProfileArea(area);
+        GHBitSet edges = cache.getEdges(area);
+        assertNotNull(edges);
+
+        Polygon polygon = new Polygon(new PreparedPolygon((org.locationtech.jts.geom.Polygon) area));
+        int inside = 0;
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next()) {
+            boolean expected = CustomWeightingHelper.in(polygon, iter);
+            assertEquals(expected, edges.contains(iter.getEdge()), "edge " + iter.getEdge());
+            if (expected) inside++;
+        }
+        assertTrue(inside > 10 && inside < graph.getEdges() - 10, "inside: " + inside);
+        assertEquals(inside, edges.getCardinality());
+    }
+
+    @Test
+    void requestAreasAreCalculatedOnSecondUse() {
+        Geometry area = createArea(50.02, 10.03, 50.06, 10.05);
+        AreaEdgeCache cache = new AreaEdgeCache(graph, locationIndex, 1);
+        assertNull(cache.getEdges(area));
+        assertEquals(0, cache.getEstimatedBytes());
+        assertNotNull(cache.getEdges(createArea(50.02, 10.03, 50.06, 10.05)));
+        assertEquals(1, cache.getRequestAreaCount());
+        assertEquals(1, cache.getHits());
+        assertTrue(cache.getEstimatedBytes() > 0);
+
+        // evicts the first area
+        Geometry other = createArea(50.01, 10.01, 50.02, 10.02);
+        assertNull(cache.getEdges(other));
+        assertEquals(1, cache.getRequestAreaCount());
+        assertNull(cache.getEdges(area));
+
+        // disabled for requests
+        cache = new AreaEdgeCache(graph, locationIndex, 0);
+        assertNull(cache.getEdges(area));
+        assertNull(cache.getEdges(area));
+        assertEquals(0, cache.getRequestAreaCount());
+    }
+
+    @Test
+    void sameWeightsWithCache() {
+        CustomModel customModel = new CustomModel();
+        JsonFeatureCollection areas = new JsonFeatureCollection();
+        areas.getFeatures().add(new JsonFeature("center", "Feature", null, createArea(50.02, 10.03, 50.06, 10.05), new HashMap<>()));
+        customModel.setAreas(areas);
+        customModel.addToPriority(If("in_center", MULTIPLY, "0.1"));
+        customModel.addToSpeed(If("true", LIMIT, speedEnc.getName()));
+
+        AreaEdgeCache cache = new AreaEdgeCache(graph, locationIndex, 0);
+        cache.addProfileAreas(customModel);
+        assertEquals(1, cache.getProfileAreaCount());
+        Weighting withCache = CustomModelParser.createWeighting(em, NO_TURN_COST_PROVIDER, customModel, cache);
+        Weighting withoutCache = CustomModelParser.createWeighting(em, NO_TURN_COST_PROVIDER, customModel);
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next()) {
+            assertEquals(withoutCache.calcEdgeWeight(iter, false), withCache.calcEdgeWeight(iter, false), 1.e-9);
+        }
+        assertEquals(1, cache.getHits());
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.weighting.custom;
+
+import com.graphhopper.routing.ev.*;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.util.CustomModel;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.JsonFeature;
+import com.graphhopper.util.JsonFeatureCollection;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import static com.graphhopper.json.Statement.*;
+import static com.graphhopper.json.Statement.Op.LIMIT;
+import static com.graphhopper.json.Statement.Op.MULTIPLY;
+import static org.junit.jupiter.api.Assertions.*;
+
+class InterpretedCustomWeightingHelperTest {
+    EncodingManager encodingManager;
+    BooleanEncodedValue accessEnc;
+    DecimalEncodedValue avgSpeedEnc;
+    DecimalEncodedValue maxSpeedEnc;
+    EnumEncodedValue<RoadClass> roadClassEnc;
+    EnumEncodedValue<Surface> surfaceEnc;
+    IntEncodedValue lanesEnc;
+    BaseGraph graph;
+    List<EdgeIteratorState> edges = new ArrayList<>();
+
+    @BeforeEach
+    void setup() {
+        accessEnc = VehicleAccess.create("car");
+        avgSpeedEnc = VehicleSpeed.create("car", 5, 5, true);
+        maxSpeedEnc = MaxSpeed.create();
+        roadClassEnc = RoadClass.create();
+        surfaceEnc = Surface.create();
+        lanesEnc = Lanes.create();
+        encodingManager = new EncodingManager.Builder().add(accessEnc).add(avgSpeedEnc).add(maxSpeedEnc)
+                .add(roadClassEnc).add(surfaceEnc).add(lanesEnc).add(RoadEnvironment.create()).build();
+        graph = new BaseGraph.Builder(encodingManager).create();
+        NodeAccess na = graph.getNodeAccess();
+        Random rnd = new Random(42);
+        for (int node = 0; node < 20; node++)
+            na.setNode(node, 50 + rnd.nextDouble(), 10 + rnd.nextDouble());
+        for (int i = 0; i < 100; i++) {
+            int from = rnd.nextInt(20), to = (from + 1 + rnd.nextInt(19)) % 20;
+            EdgeIteratorState edge = graph.edge(from, to).setDistance(rnd.nextInt(1000))
+                    .set(accessEnc, rnd.nextBoolean(), rnd.nextBoolean())
+                    .set(avgSpeedEnc, 5 * rnd.nextInt(20), 5 * rnd.nextInt(20))
+                    .set(maxSpeedEnc, 10 * rnd.nextInt(14))
+                    .set(roadClassEnc, RoadClass.values()[rnd.nextInt(RoadClass.values().length)])
+                    .set(surfaceEnc, Surface.values()[rnd.nextInt(Surface.values().length)])
+                    .set(lanesEnc, rnd.nextInt(4));
+            edges.add(edge);
+        }
+    }
+
+    @Test
+    void sameResultsAsCompiled() {
+        CustomModel customModel = new CustomModel();
+        JsonFeatureCollection areas = new JsonFeatureCollection();
+        areas.getFeatures().add(new JsonFeature("west", "Feature", null, new GeometryFactory().createPolygon(new Coordinate[]{
+                new Coordinate(10, 50), new Coordinate(10.5, 50), new Coordinate(10.5, 51),
+                new Coordinate(10, 51), new Coordinate(10, 50)}), new HashMap<>()));
+        customModel.setAreas(areas);
+        customModel.addToPriority(If("!car_access && !backward_car_access", MULTIPLY, "0"));
+        customModel.addToPriority(If("road_class == PRIMARY || road_class == TRUNK", MULTIPLY, "0.8"));
+        customModel.addToPriority(ElseIf("road_class.ordinal() > 5 && lanes >= 2", MULTIPLY, "0.6"));
+        customModel.addToPriority(Else(List.of(
+                If("in_west", MULTIPLY, "0.5"),
+                If("lanes < 2", MULTIPLY, "0.9"))));
+        customModel.addToPriority(If("surface != ASPHALT && road_environment != FERRY", MULTIPLY, "0.7"));
+        customModel.addToSpeed(If("true", LIMIT, "car_average_speed"));
+        customModel.addToSpeed(If("max_speed > 0", LIMIT, "max_speed * 1.1 + 2"));
+        customModel.addToSpeed(If("backward_car_average_speed > car_average_speed", MULTIPLY, "0.9"));
+        customModel.addToSpeed(If("Math.abs(lanes - 2) == 1", LIMIT, "Math.sqrt(400) * 3"));
+        customModel.addToSpeed(ElseIf("lanes / 2 * 2 == lanes", LIMIT, "-2 + 80"));
+
+        CustomWeighting.Parameters compiled = CustomModelParser.createWeightingParameters(customModel, encodingManager);
+        InterpretedCustomWeightingHelper interpreted = new InterpretedCustomWeightingHelper();
+        interpreted.init(customModel, encodingManager, CustomModel.getAreasAsMap(customModel.getAreas()));
+
+        for (EdgeIteratorState edge : edges) {
+            for (boolean reverse : new boolean[]{false, true}) {
+                assertEquals(compiled.getEdgeToSpeedMapping().get(edge, reverse), interpreted.getSpeed(edge, reverse), 1.e-9, edge.toString());
+                assertEquals(compiled.getEdgeToPriorityMapping().get(edge, reverse), interpreted.getPriority(edge, reverse), 1.e-9, edge.toString());
+            }
+        }
+        assertEquals(compiled.getMaxSpeedCalc().calcMax(), interpreted.calcMaxSpeed(), 1.e-9);
+    }
+
+    @Test
+    void backgroundCompilation() throws InterruptedException {
+        CustomModel customModel = new CustomModel();
+        customModel.addToPriority(If("road_class == MOTORWAY", MULTIPLY, "0.123"));
+        customModel.addToSpeed(If("true", LIMIT, "car_average_speed"));
+        EdgeIteratorState edge = edges.get(0).set(roadClassEnc, RoadClass.MOTORWAY);
+
+        CustomModelParser.setBackgroundCompilation(true);
+        try {
+            long interpretedBefore = CustomModelParser.getInterpretedWeightings();
+            long compilationsBefore = CustomModelParser.getCompilations();
+            CustomWeighting.Parameters parameters = CustomModelParser.createWeightingParameters(customModel, encodingManager);
+            assertEquals(interpretedBefore + 1, CustomModelParser.getInterpretedWeightings());
+            assertEquals(0.123, parameters.getEdgeToPriorityMapping().get(edge, false), 1.e-9);
+
+            for (int i = 0; i < 500 && CustomModelParser.getPendingCompilations() > 0; i++)
+                Thread.sleep(10);
+            assertEquals(compilationsBefore + 1, CustomModelParser.getCompilations());
+            assertTrue(CustomModelParser.getCompilationNanos() > 0);
+
+            // a different area geometry or distance influence does not require a new class
+            long hitsBefore = CustomModelParser.getCacheHits();
+            customModel.setDistanceInfluence(70d);
+            parameters = CustomModelParser.createWeightingParameters(customModel, encodingManager);
+            assertEquals(interpretedBefore + 1, CustomModelParser.getInterpretedWeightings());
+            assertEquals(hitsBefore + 1, CustomModelParser.getCacheHits());
+            assertEquals(0.123, parameters.getEdgeToPriorityMapping().get(edge, false), 1.e-9);
+
+            // a custom model that Janino cannot compile, because the method would get too large, stays interpreted
+            CustomModel tooLarge = new CustomModel();
+            for (int i = 0; i < 5000; i++)
+                tooLarge.addToPriority(If("max_speed == " + i + " && lanes != " + i % 4, MULTIPLY, "0.99"));
+            tooLarge.addToSpeed(If("true", LIMIT, "car_average_speed"));
+            compilationsBefore = CustomModelParser.getCompilations();
+            CustomModelParser.createWeightingParameters(tooLarge, encodingManager);
+            for (int i = 0; i < 1000 && CustomModelParser.getPendingCompilations() > 0; i++)
+                Thread.sleep(10);
+            assertEquals(compilationsBefore + 1, CustomModelParser.getCompilations());
+            long interpretedAfterFailure = CustomModelParser.getInterpretedWeightings();
+            parameters = CustomModelParser.createWeightingParameters(tooLarge, encodingManager);
+            assertEquals(interpretedAfterFailure + 1, CustomModelParser.getInterpretedWeightings());
+            assertEquals(0, CustomModelParser.getPendingCompilations());
+            assertEquals(compilationsBefore + 1, CustomModelParser.getCompilations());
+            assertTrue(parameters.getEdgeToPriorityMapping().get(edge, false) > 0);
+
+            // invalid custom models are still rejected directly
+            CustomModel invalid = new CustomModel();
+            invalid.addToSpeed(If("true", LIMIT, "unknown_speed"));
+            assertThrows(IllegalArgumentException.class, () -> CustomModelParser.createWeightingParameters(invalid, encodingManager));
+        } finally {
+            CustomModelParser.setBackgroundCompilation(false);
+        }
+    }
+}
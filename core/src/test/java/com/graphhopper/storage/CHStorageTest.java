@@ -6,8 +6,7 @@ import org.junit.jupiter.api.io.TempDir;
 
 import java.nio.file.Path;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.*;
 
 class CHStorageTest {
 
@@ -56,6 +55,59 @@ class CHStorageTest {
         }
     }
 
+    @Test
+    void createAndLoadCompact(@TempDir Path path) {
+        {
+            GHDirectory dir = new GHDirectory(path.toAbsolutePath().toString(), DAType.RAM_INT_STORE);
+            CHStorage chStorage = new CHStorage(dir, "car", -1, true, true);
+            chStorage.create(6, 3);
+            CHStorageBuilder builder = new CHStorageBuilder(chStorage);
+            builder.setIdentityLevels();
+            // nodes 0 and 2 have no shortcuts, the shortcuts of the other nodes are added ordered by level
+            assertEquals(0, builder.addShortcutEdgeBased(1, 3, PrepareEncoder.getScFwdDir(), 10, 3, 5, 7, 9));
+            assertEquals(1, builder.addShortcutEdgeBased(1, 4, PrepareEncoder.getScBwdDir(), 11, 4, 6, 8, 10));
+            assertEquals(2, builder.addShortcutEdgeBased(3, 3, PrepareEncoder.getScFwdDir(), 12, 5, 7, 11, 12));
+            assertEquals(3, builder.addShortcutEdgeBased(4, 5, PrepareEncoder.getScBwdDir(), 13, 6, 8, 13, 14));
+            // shortcuts must be added ordered by the level of the first node
+            assertThrows(IllegalArgumentException.class, () -> builder.addShortcutEdgeBased(2, 5, PrepareEncoder.getScFwdDir(), 13, 6, 8, 13, 14));
+            chStorage.flush();
+            chStorage.close();
+        }
+        {
+            GHDirectory dir = new GHDirectory(path.toAbsolutePath().toString(), DAType.RAM_INT_STORE);
+            // the layout is determined by the stored data
+            CHStorage chStorage = new CHStorage(dir, "car", -1, true);
+            chStorage.loadExisting();
+            assertTrue(chStorage.isCompact());
+            assertEquals(4, chStorage.getShortcuts());
+            assertEquals(6, chStorage.getNodes());
+            int[] expectedNodeA = {1, 1, 3, 4};
+            int[] expectedNodeB = {3, 4, 3, 5};
+            for (int i = 0; i < chStorage.getShortcuts(); i++) {
+                long ptr = chStorage.toShortcutPointer(i);
+                assertEquals(expectedNodeA[i], chStorage.getNodeA(ptr));
+                assertEquals(expectedNodeB[i], chStorage.getNodeB(ptr));
+                assertEquals(10 + i, chStorage.getWeight(ptr));
+                assertEquals(3 + i, chStorage.getSkippedEdge1(ptr));
+            }
+            long ptr = chStorage.toShortcutPointer(1);
+            assertFalse(chStorage.getFwdAccess(ptr));
+            assertTrue(chStorage.getBwdAccess(ptr));
+            assertEquals(8, chStorage.getOrigEdgeKeyFirst(ptr));
+            assertEquals(10, chStorage.getOrigEdgeKeyLast(ptr));
+
+            assertEquals(-1, chStorage.getLastShortcut(chStorage.toNodePointer(0)));
+            assertEquals(0, chStorage.getFirstShortcut(chStorage.toNodePointer(1)));
+            assertEquals(1, chStorage.getLastShortcut(chStorage.toNodePointer(1)));
+            assertEquals(-1, chStorage.getLastShortcut(chStorage.toNodePointer(2)));
+            assertEquals(2, chStorage.getFirstShortcut(chStorage.toNodePointer(3)));
+            assertEquals(2, chStorage.getLastShortcut(chStorage.toNodePointer(3)));
+            assertEquals(3, chStorage.getFirstShortcut(chStorage.toNodePointer(4)));
+            assertEquals(3, chStorage.getLastShortcut(chStorage.toNodePointer(4)));
+            assertEquals(-1, chStorage.getLastShortcut(chStorage.toNodePointer(5)));
+        }
+    }
+
     @Test
     public void testBigWeight() {
         CHStorage g = new CHStorage(new RAMDirectory(), "abc", 1024, false);
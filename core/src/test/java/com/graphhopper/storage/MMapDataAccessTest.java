@@ -59,4 +59,17 @@ public class MMapDataAccessTest extends DataAccessTest {
         assertEquals(123, da.getInt(7 * 4));
         da.close();
     }
+
+    @Test
+    public void testResidentBytes() {
+        MMapDataAccess da = (MMapDataAccess) createDataAccess(name, 1 << 16);
+        da.create(1 << 18);
+        assertEquals(1 << 18, da.getCapacity());
+        for (long pointer = 0; pointer < da.getCapacity(); pointer += 4096)
+            da.setInt(pointer, 1);
+        // pages that were just written are in physical memory
+        assertEquals(da.getCapacity(), da.getResidentBytes());
+        da.close();
+        assertEquals(0, da.getResidentBytes());
+    }
 }
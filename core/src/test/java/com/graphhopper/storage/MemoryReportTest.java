@@ -0,0 +1,49 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MemoryReportTest {
+
+    @Test
+    public void testReport() {
+        GHDirectory dir = new GHDirectory("", DAType.RAM);
+        dir.create("small", 1 << 16).create(100);
+        dir.create("large", 1 << 16).create(3 << 16);
+        dir.create("closed", 1 << 16).create(100);
+        dir.getDAs().get("closed").close();
+
+        MemoryReport report = MemoryReport.create(dir).addCache("test", 1000);
+        List<MemoryReport.Entry> entries = report.getDataAccesses();
+        assertEquals(2, entries.size());
+        assertEquals("large", entries.get(0).getName());
+        assertEquals(3 << 16, entries.get(0).getCapacity());
+        assertEquals(3, entries.get(0).getSegments());
+        assertEquals("small", entries.get(1).getName());
+        assertEquals(1 << 16, entries.get(1).getResidentBytes());
+        assertEquals((4 << 16) + 1000, report.getHeapBytes());
+        assertEquals(0, report.getMMapBytes());
+        assertTrue(report.toString().contains("large RAM: 0.2MB, resident: 0.2MB, 3 segments"), report.toString());
+        dir.close();
+    }
+}
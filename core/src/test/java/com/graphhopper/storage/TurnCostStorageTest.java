@@ -21,18 +21,16 @@ package com.graphhopper.storage;
 import com.graphhopper.routing.ev.*;
 import com.graphhopper.routing.util.EncodingManager;
 import com.graphhopper.util.GHUtility;
+import com.graphhopper.util.Helper;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
-import java.util.Arrays;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.io.File;
+import java.util.*;
 import java.util.stream.IntStream;
 
 import static com.graphhopper.util.GHUtility.getEdge;
-import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.*;
 
 public class TurnCostStorageTest {
 
@@ -185,4 +183,78 @@ public class TurnCostStorageTest {
         assertFalse(iterator.next());
     }
 
+    @Test
+    public void testIndex() {
+        String location = "./target/turn-cost-index";
+        Helper.removeDir(new File(location));
+        BaseGraph g = new BaseGraph.Builder(manager).setDir(new RAMDirectory(location, true)).withTurnCosts(true).create();
+        Random rnd = new Random(123);
+        for (int i = 0; i < 300; i++) {
+            int from = rnd.nextInt(50), to = (from + 1 + rnd.nextInt(49)) % 50;
+            g.edge(from, to);
+        }
+        TurnCostStorage turnCostStorage = g.getTurnCostStorage();
+        Map<List<Integer>, Double> expected = new HashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            // parallel edges and the same edge pair at different nodes lead to keys that differ only in the via node
+            int fromEdge = rnd.nextInt(g.getEdges()), viaNode = rnd.nextInt(50), toEdge = rnd.nextInt(g.getEdges());
+            double cost = rnd.nextInt(3);
+            turnCostStorage.set(carTurnCostEnc, fromEdge, viaNode, toEdge, cost);
+            expected.put(Arrays.asList(fromEdge, viaNode, toEdge), cost);
+        }
+        assertFalse(turnCostStorage.isIndexed());
+        turnCostStorage.buildIndex();
+        assertTrue(turnCostStorage.isIndexed());
+        assertTurnCosts(turnCostStorage, g, expected);
+
+        // entries that are added afterwards are still found
+        int edge = g.edge(0, 1).getEdge();
+        turnCostStorage.set(carTurnCostEnc, edge, 1, 0, 2);
+        expected.put(Arrays.asList(edge, 1, 0), 2.0);
+        assertFalse(turnCostStorage.isIndexed());
+        assertTurnCosts(turnCostStorage, g, expected);
+        turnCostStorage.buildIndex();
+        assertTurnCosts(turnCostStorage, g, expected);
+        g.flush();
+        g.close();
+
+        g = new BaseGraph.Builder(manager).setDir(new RAMDirectory(location, true)).withTurnCosts(true).build();
+        assertTrue(g.loadExisting());
+        assertTrue(g.getTurnCostStorage().isIndexed());
+        assertTurnCosts(g.getTurnCostStorage(), g, expected);
+        // the stored index is outdated after adding an entry
+        g.getTurnCostStorage().set(carTurnCostEnc, edge, 0, 1, 1);
+        expected.put(Arrays.asList(edge, 0, 1), 1.0);
+        g.flush();
+        g.close();
+
+        // the outdated index is rebuilt for the loaded graph and can be flushed
+        g = new BaseGraph.Builder(manager).setDir(new RAMDirectory(location, true)).withTurnCosts(true).build();
+        assertTrue(g.loadExisting());
+        turnCostStorage = g.getTurnCostStorage();
+        assertFalse(turnCostStorage.isIndexed());
+        assertTurnCosts(turnCostStorage, g, expected);
+        turnCostStorage.buildIndex();
+        turnCostStorage.flushIndex();
+        assertTurnCosts(turnCostStorage, g, expected);
+        g.flush();
+        g.close();
+
+        g = new BaseGraph.Builder(manager).setDir(new RAMDirectory(location, true)).withTurnCosts(true).build();
+        assertTrue(g.loadExisting());
+        assertTrue(g.getTurnCostStorage().isIndexed());
+        assertTurnCosts(g.getTurnCostStorage(), g, expected);
+        g.close();
+        Helper.removeDir(new File(location));
+    }
+
+    private void assertTurnCosts(TurnCostStorage turnCostStorage, BaseGraph g, Map<List<Integer>, Double> expected) {
+        Random rnd = new Random(456);
+        for (Map.Entry<List<Integer>, Double> entry : expected.entrySet())
+            assertEquals(entry.getValue(), turnCostStorage.get(carTurnCostEnc, entry.getKey().get(0), entry.getKey().get(1), entry.getKey().get(2)), entry.getKey().toString());
+        for (int i = 0; i < 1000; i++) {
+            List<Integer> key = Arrays.asList(rnd.nextInt(g.getEdges()), rnd.nextInt(50), rnd.nextInt(g.getEdges()));
+            assertEquals(expected.getOrDefault(key, 0.0), turnCostStorage.get(carTurnCostEnc, key.get(0), key.get(1), key.get(2)), key.toString());
+        }
+    }
 }
@@ -127,6 +127,74 @@ public class LocationIndexTreeTest {
         assertEquals(new GHPoint(-0.441624, 0.317259), res.getSnappedPoint());
     }
 
+    @Test
+    public void testFindKClosest() {
+        Graph graph = createTestGraph(encodingManager, speedEnc);
+        LocationIndexTree index = (LocationIndexTree) createIndexNoPrepare(graph, 500000).prepareIndex();
+        // the closest edge is (1,3) with id 3, the second closest is (0,4) with id 2, and the snaps are sorted by distance
+        List<Snap> snaps = index.findKClosest(-0.2, 0.3, 3, EdgeFilter.ALL_EDGES);
+        assertEquals(3, snaps.size());
+        assertEquals(3, snaps.get(0).getClosestEdge().getEdge());
+        assertEquals(26936, snaps.get(0).getQueryDistance(), 1);
+        assertEquals(new GHPoint(-0.441624, 0.317259), snaps.get(0).getSnappedPoint());
+        assertEquals(2, snaps.get(1).getClosestEdge().getEdge());
+        assertEquals(27674, snaps.get(1).getQueryDistance(), 1);
+        assertTrue(snaps.get(1).getQueryDistance() <= snaps.get(2).getQueryDistance());
+
+        // for k=1 we get the same edge, snapped point and distance as from findClosest
+        Snap snap = index.findClosest(-0.2, 0.3, EdgeFilter.ALL_EDGES);
+        Snap kSnap = index.findKClosest(-0.2, 0.3, 1, EdgeFilter.ALL_EDGES).get(0);
+        assertEquals(snap.getClosestEdge().getEdge(), kSnap.getClosestEdge().getEdge());
+        assertEquals(snap.getSnappedPoint(), kSnap.getSnappedPoint());
+        assertEquals(snap.getQueryDistance(), kSnap.getQueryDistance(), 1.e-6);
+
+        // the graph has only seven edges, so we get one snap per edge but not k
+        assertEquals(7, index.findKClosest(-0.2, 0.3, 10, EdgeFilter.ALL_EDGES).size());
+    }
+
+    @Test
+    public void testFindClosestBatch() {
+        BaseGraph graph = new BaseGraph.Builder(encodingManager).create();
+        Random rnd = new Random(42);
+        GHUtility.buildRandomGraph(graph, rnd, 500, 2.2, true, speedEnc, null, 0.8, 0.8);
+        LocationIndexTree index = (LocationIndexTree) createIndexNoPrepare(graph, 500).prepareIndex();
+        BBox bounds = graph.getBounds();
+        int numPoints = 200;
+        double[] lats = new double[numPoints];
+        double[] lons = new double[numPoints];
+        for (int i = 0; i < numPoints; i++) {
+            lats[i] = bounds.minLat + rnd.nextDouble() * (bounds.maxLat - bounds.minLat);
+            lons[i] = bounds.minLon + rnd.nextDouble() * (bounds.maxLon - bounds.minLon);
+        }
+        Snap[] snaps = index.findClosest(lats, lons, EdgeFilter.ALL_EDGES);
+        assertEquals(numPoints, snaps.length);
+        for (int i = 0; i < numPoints; i++) {
+            Snap expected = index.findClosest(lats[i], lons[i], EdgeFilter.ALL_EDGES);
+            assertEquals(expected.isValid(), snaps[i].isValid());
+            if (!expected.isValid())
+                continue;
+            assertEquals(expected.getQueryPoint(), snaps[i].getQueryPoint());
+            assertEquals(expected.getSnappedPoint(), snaps[i].getSnappedPoint());
+            assertEquals(expected.getQueryDistance(), snaps[i].getQueryDistance(), 1.e-6);
+        }
+    }
+
+    @Test
+    public void testPrepareIndexWithThreads() {
+        BaseGraph graph = new BaseGraph.Builder(encodingManager).create();
+        GHUtility.buildRandomGraph(graph, new Random(123), 20_000, 2.2, true, speedEnc, null, 0.8, 0.8);
+        assertTrue(graph.getEdges() > 2 * 10_000);
+        LocationIndexTree serial = (LocationIndexTree) createIndexNoPrepare(graph, 500).prepareIndex();
+        LocationIndexTree parallel = createIndexNoPrepare(graph, 500).setThreads(3);
+        parallel.prepareIndex();
+        // the index must be exactly the same
+        assertEquals(serial.lineIntIndex.getSize(), parallel.lineIntIndex.getSize());
+        assertEquals(serial.lineIntIndex.getLeafs(), parallel.lineIntIndex.getLeafs());
+        assertEquals(serial.lineIntIndex.getCapacity(), parallel.lineIntIndex.getCapacity());
+        for (long pointer = 0; pointer < serial.lineIntIndex.getCapacity(); pointer += 4)
+            assertEquals(serial.lineIntIndex.dataAccess.getInt(pointer), parallel.lineIntIndex.dataAccess.getInt(pointer), "pointer: " + pointer);
+    }
+
     @Test
     public void testBoundingBoxQuery2() {
         Graph graph = createTestGraph2();
@@ -0,0 +1,60 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MiniPerfTestTest {
+
+    @Test
+    public void percentiles() {
+        // every call takes at least run * 10µs
+        MiniPerfTest perfTest = new MiniPerfTest().setIterations(100).start((warmup, run) -> {
+            long end = System.nanoTime() + run * 10_000L;
+            int count = 0;
+            while (System.nanoTime() < end)
+                count++;
+            return count;
+        });
+        assertTrue(perfTest.getPercentile(0.5) >= 0.49, "p50 " + perfTest.getPercentile(0.5));
+        assertTrue(perfTest.getPercentile(0.5) <= perfTest.getPercentile(0.99));
+        assertTrue(perfTest.getPercentile(0.99) <= perfTest.getPercentile(0.999));
+        assertEquals(perfTest.getMax(), perfTest.getPercentile(1));
+        assertEquals(perfTest.getMin(), perfTest.getPercentile(0.001));
+        assertThrows(IllegalArgumentException.class, () -> perfTest.getPercentile(0));
+    }
+
+    @Test
+    public void mergeAndAllocation() {
+        MiniPerfTest small = new MiniPerfTest().setIterations(10).start((warmup, run) -> new int[10].length);
+        MiniPerfTest large = new MiniPerfTest().setIterations(30).start((warmup, run) -> new int[10_000].length);
+        if (small.getAllocatedBytesPerCall() >= 0)
+            assertTrue(large.getAllocatedBytesPerCall() >= 40_000, "allocated " + large.getAllocatedBytesPerCall());
+
+        MiniPerfTest merged = MiniPerfTest.merge(List.of(small, large));
+        assertEquals(small.getDummySum() + large.getDummySum(), merged.getDummySum());
+        assertEquals(small.getSum() + large.getSum(), merged.getSum(), 1e-9);
+        assertEquals(merged.getSum() / 40, merged.getMean(), 1e-9);
+        assertEquals(Math.max(small.getMax(), large.getMax()), merged.getPercentile(1));
+        assertEquals(Math.min(small.getMin(), large.getMin()), merged.getMin());
+    }
+}
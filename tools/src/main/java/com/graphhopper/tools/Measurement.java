@@ -56,6 +56,7 @@ import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -182,6 +183,8 @@ public class Measurement {
             maxNode = g.getNodes();
 
             final boolean runSlow = args.getBool("measurement.run_slow_routing", true);
+            // the maximum number of threads for the throughput measurements, 0 disables them
+            final int throughputThreads = args.getInt("measurement.throughput.threads", 0);
             printGraphDetails(g, vehicle);
             measureGraphTraversal(g, accessEnc, count * 100);
             measureLocationIndex(g, hopper.getLocationIndex(), count);
@@ -247,6 +250,9 @@ public class Measurement {
                             withPoints(100).sod());
                     measureRouting(hopper, new QuerySettings("routingCH_via_100_full", count / 100, isCH, isLM).
                             withPoints(100).sod().withInstructions().simplify().pathDetails());
+                    if (throughputThreads > 0)
+                        measureThroughput(hopper, new QuerySettings("routingCH", count, isCH, isLM).
+                                withInstructions().sod(), throughputThreads);
                 }
                 RoutingCHGraph edgeBasedCH = hopper.getCHGraphs().get("profile_tc");
                 if (edgeBasedCH != null) {
@@ -263,6 +269,9 @@ public class Measurement {
                             withPoints(100).edgeBased().sod());
                     measureRouting(hopper, new QuerySettings("routingCH_edge_via_100_full", count / 100, isCH, isLM).
                             withPoints(100).edgeBased().sod().withInstructions().simplify().pathDetails());
+                    if (throughputThreads > 0)
+                        measureThroughput(hopper, new QuerySettings("routingCH_edge", count, isCH, isLM).
+                                edgeBased().withInstructions(), throughputThreads);
                 }
             }
             measureCountryAreaIndex(count);
@@ -355,6 +364,10 @@ public class Measurement {
             this.lm = isLM;
         }
 
+        String getProfileName() {
+            return edgeBased ? "profile_tc" : "profile_no_tc";
+        }
+
         QuerySettings withInstructions() {
             this.withInstructions = true;
             return this;
@@ -527,61 +540,20 @@ public class Measurement {
         final AtomicInteger failedCount = new AtomicInteger(0);
         final DistanceCalc distCalc = new DistanceCalcEarth();
 
-        String profileName = querySettings.edgeBased ? "profile_tc" : "profile_no_tc";
-        Weighting weighting = hopper.createWeighting(hopper.getProfile(profileName), new PMap());
-        final EdgeFilter edgeFilter = new DefaultSnapFilter(weighting, hopper.getEncodingManager().getBooleanEncodedValue(Subnetwork.key(profileName)));
-        final EdgeExplorer edgeExplorer = g.createEdgeExplorer(edgeFilter);
+        String profileName = querySettings.getProfileName();
+        final EdgeExplorer edgeExplorer = createProbeExplorer(hopper, profileName);
         final AtomicLong visitedNodesSum = new AtomicLong(0);
         final AtomicLong maxVisitedNodes = new AtomicLong(0);
         final Random rand = new Random(seed);
-        final NodeAccess na = g.getNodeAccess();
 
         MiniPerfTest miniPerf = new MiniPerfTest().setIterations(querySettings.count).start((warmup, run) -> {
-            GHRequest req = new GHRequest(querySettings.points);
-            IntArrayList nodes = new IntArrayList(querySettings.points);
-            List<GHPoint> points = new ArrayList<>();
-            List<String> pointHints = new ArrayList<>();
-            int tries = 0;
-            while (nodes.size() < querySettings.points) {
-                int node = rand.nextInt(maxNode);
-                if (++tries > g.getNodes())
-                    throw new RuntimeException("Could not find accessible points");
-                // probe location. it could be a pedestrian area or an edge removed in the subnetwork removal process
-                if (GHUtility.count(edgeExplorer.setBaseNode(node)) == 0)
-                    continue;
-                nodes.add(node);
-                points.add(new GHPoint(na.getLat(node), na.getLon(node)));
-                if (querySettings.withPointHints) {
-                    // we add some point hint to make sure the name similarity filter has to do some actual work
-                    pointHints.add("probably_not_found");
-                }
-            }
-            req.setPoints(points);
-            req.setPointHints(pointHints);
-            req.setProfile(profileName);
-            req.getHints().
-                    putObject(CH.DISABLE, !querySettings.ch).
-                    putObject("stall_on_demand", querySettings.sod).
-                    putObject(Landmark.DISABLE, !querySettings.lm).
-                    putObject(Landmark.ACTIVE_COUNT, querySettings.activeLandmarks).
-                    putObject("instructions", querySettings.withInstructions);
-
-            if (querySettings.alternative)
-                req.setAlgorithm(ALT_ROUTE);
-
-            if (querySettings.pathDetails)
-                req.setPathDetails(Arrays.asList(Parameters.Details.AVERAGE_SPEED, Parameters.Details.EDGE_ID,
-                        Parameters.Details.STREET_NAME, "access_conditional", "vehicle_conditional", "motor_vehicle_conditional"));
-
-            if (!querySettings.simplify)
-                req.getHints().putObject(Parameters.Routing.WAY_POINT_MAX_DISTANCE, 0);
-
+            GHRequest req = createRequest(g, edgeExplorer, rand, profileName, querySettings);
             GHResponse rsp;
             try {
                 rsp = hopper.route(req);
             } catch (Exception ex) {
                 // 'not found' can happen if import creates more than one subnetwork
-                throw new RuntimeException("Error while calculating route! nodes: " + nodes + ", request:" + req, ex);
+                throw new RuntimeException("Error while calculating route! request:" + req, ex);
             }
 
             if (rsp.hasErrors()) {
@@ -655,12 +627,118 @@ public class Measurement {
         print(prefix, miniPerf);
     }
 
+    /**
+     * Calculates the routes of the given query settings in 1, 2, 4, ... up to maxThreads threads at the same time to
+     * measure the throughput and the latency percentiles under concurrency. Every thread calculates its share of the
+     * routes with its own random generator, so the same seed always leads to the same routes.
+     */
+    private void measureThroughput(final GraphHopper hopper, final QuerySettings querySettings, int maxThreads) {
+        final Graph g = hopper.getBaseGraph();
+        final String profileName = querySettings.getProfileName();
+        for (int threads = 1; ; threads = Math.min(2 * threads, maxThreads)) {
+            final int count = Math.max(1, querySettings.count / threads);
+            final AtomicInteger failedCount = new AtomicInteger(0);
+            ExecutorService executorService = Executors.newFixedThreadPool(threads);
+            try {
+                List<Future<MiniPerfTest>> futures = new ArrayList<>();
+                for (int thread = 0; thread < threads; thread++) {
+                    final Random rand = new Random(seed + thread);
+                    futures.add(executorService.submit(() -> {
+                        EdgeExplorer edgeExplorer = createProbeExplorer(hopper, profileName);
+                        return new MiniPerfTest().setIterations(count).start((warmup, run) -> {
+                            GHResponse rsp = hopper.route(createRequest(g, edgeExplorer, rand, profileName, querySettings));
+                            if (rsp.hasErrors()) {
+                                if (!warmup)
+                                    failedCount.incrementAndGet();
+                                return 0;
+                            }
+                            return rsp.getBest().getPoints().size();
+                        });
+                    }));
+                }
+                List<MiniPerfTest> perfTests = new ArrayList<>();
+                double throughput = 0;
+                for (Future<MiniPerfTest> future : futures) {
+                    MiniPerfTest perfTest = future.get();
+                    perfTests.add(perfTest);
+                    // the threads run at the same time, so their throughputs add up
+                    throughput += count / (perfTest.getSum() / 1000);
+                }
+                String prefix = querySettings.prefix + "_threads" + threads;
+                put(prefix + ".failed_count", failedCount.get());
+                put(prefix + ".throughput", throughput);
+                print(prefix, MiniPerfTest.merge(perfTests));
+            } catch (InterruptedException | ExecutionException ex) {
+                throw new RuntimeException("Error while measuring the throughput of " + querySettings.prefix, ex);
+            } finally {
+                executorService.shutdown();
+            }
+            if (threads == maxThreads)
+                break;
+        }
+    }
+
+    private EdgeExplorer createProbeExplorer(GraphHopper hopper, String profileName) {
+        Weighting weighting = hopper.createWeighting(hopper.getProfile(profileName), new PMap());
+        EdgeFilter edgeFilter = new DefaultSnapFilter(weighting, hopper.getEncodingManager().getBooleanEncodedValue(Subnetwork.key(profileName)));
+        return hopper.getBaseGraph().createEdgeExplorer(edgeFilter);
+    }
+
+    private GHRequest createRequest(Graph g, EdgeExplorer edgeExplorer, Random rand, String profileName, QuerySettings querySettings) {
+        NodeAccess na = g.getNodeAccess();
+        GHRequest req = new GHRequest(querySettings.points);
+        IntArrayList nodes = new IntArrayList(querySettings.points);
+        List<GHPoint> points = new ArrayList<>();
+        List<String> pointHints = new ArrayList<>();
+        int tries = 0;
+        while (nodes.size() < querySettings.points) {
+            int node = rand.nextInt(maxNode);
+            if (++tries > g.getNodes())
+                throw new RuntimeException("Could not find accessible points");
+            // probe location. it could be a pedestrian area or an edge removed in the subnetwork removal process
+            if (GHUtility.count(edgeExplorer.setBaseNode(node)) == 0)
+                continue;
+            nodes.add(node);
+            points.add(new GHPoint(na.getLat(node), na.getLon(node)));
+            if (querySettings.withPointHints) {
+                // we add some point hint to make sure the name similarity filter has to do some actual work
+                pointHints.add("probably_not_found");
+            }
+        }
+        req.setPoints(points);
+        req.setPointHints(pointHints);
+        req.setProfile(profileName);
+        req.getHints().
+                putObject(CH.DISABLE, !querySettings.ch).
+                putObject("stall_on_demand", querySettings.sod).
+                putObject(Landmark.DISABLE, !querySettings.lm).
+                putObject(Landmark.ACTIVE_COUNT, querySettings.activeLandmarks).
+                putObject("instructions", querySettings.withInstructions);
+
+        if (querySettings.alternative)
+            req.setAlgorithm(ALT_ROUTE);
+
+        if (querySettings.pathDetails)
+            req.setPathDetails(Arrays.asList(Parameters.Details.AVERAGE_SPEED, Parameters.Details.EDGE_ID,
+                    Parameters.Details.STREET_NAME, "access_conditional", "vehicle_conditional", "motor_vehicle_conditional"));
+
+        if (!querySettings.simplify)
+            req.getHints().putObject(Parameters.Routing.WAY_POINT_MAX_DISTANCE, 0);
+        return req;
+    }
+
     void print(String prefix, MiniPerfTest perf) {
         logger.info(prefix + ": " + perf.getReport());
         put(prefix + ".sum", perf.getSum());
         put(prefix + ".min", perf.getMin());
         put(prefix + ".mean", perf.getMean());
         put(prefix + ".max", perf.getMax());
+        put(prefix + ".p50", perf.getPercentile(0.5));
+        put(prefix + ".p90", perf.getPercentile(0.9));
+        put(prefix + ".p99", perf.getPercentile(0.99));
+        put(prefix + ".p999", perf.getPercentile(0.999));
+        if (perf.getAllocatedBytesPerCall() >= 0)
+            put(prefix + ".allocated_bytes_per_call", perf.getAllocatedBytesPerCall());
     }
 
     void put(String key, Object val) {
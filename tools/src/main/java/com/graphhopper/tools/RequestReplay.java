@@ -0,0 +1,432 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.tools;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import com.graphhopper.GHRequest;
+import com.graphhopper.GHResponse;
+import com.graphhopper.GraphHopper;
+import com.graphhopper.GraphHopperConfig;
+import com.graphhopper.api.GraphHopperWeb;
+import com.graphhopper.jackson.Jackson;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.PMap;
+import com.graphhopper.util.shapes.GHPoint;
+import okhttp3.ConnectionPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays a log of route requests against an embedded GraphHopper or a running server, e.g. to compare the latencies
+ * of a new graph build or of other JVM settings under a production-like load. Every line of the log is either the URL
+ * of a GET request like /route?point=51.1,12.3&point=51.2,12.4&profile=car, a JSON object with this URL as 'url', the
+ * JSON body of a POST request to /route or a JSON object with the 'endpoint' and the 'body' of a POST request. Lines
+ * for other endpoints than /route are skipped.
+ * <p>
+ * With replay.rate the requests are sent open-loop, i.e. at this rate no matter how long the previous requests take,
+ * and the latency includes the time a request waited for one of the replay.concurrency threads. Without a rate every
+ * thread sends the next request as soon as its previous request is finished. Usage:
+ * <pre>
+ * java -cp tools/target/graphhopper-tools-*-jar-with-dependencies.jar com.graphhopper.tools.RequestReplay \
+ *   replay.file=requests.jsonl replay.url=http://localhost:8989/route replay.concurrency=8 replay.rate=100 \
+ *   replay.output=replay.json
+ * </pre>
+ * Use replay.config=config.yml instead of replay.url to load the graph of this server configuration and replay the
+ * requests against an embedded GraphHopper.
+ */
+public class RequestReplay {
+    private static final Logger logger = LoggerFactory.getLogger(RequestReplay.class);
+    private static final String ROUTE = "/route";
+
+    private final Target target;
+    private final int concurrency;
+    private final double rate;
+    private final Map<String, Latencies> latencies = new ConcurrentHashMap<>();
+    private final Latencies allLatencies = new Latencies();
+
+    public static void main(String[] strs) throws Exception {
+        PMap args = PMap.read(strs);
+        String file = args.getString("replay.file", "");
+        if (file.isEmpty())
+            throw new IllegalArgumentException("replay.file is required");
+        int concurrency = args.getInt("replay.concurrency", 1);
+        double rate = args.getDouble("replay.rate", 0);
+        int repeat = args.getInt("replay.repeat", 1);
+        int warmup = args.getInt("replay.warmup", 0);
+        String output = args.getString("replay.output", "");
+
+        ObjectMapper objectMapper = Jackson.newObjectMapper();
+        List<ReplayRequest> requests = new ArrayList<>();
+        int skipped = 0;
+        for (String line : Files.readAllLines(Paths.get(file))) {
+            ReplayRequest request = ReplayRequest.parse(line, objectMapper);
+            if (request == null)
+                continue;
+            if (ROUTE.equals(request.endpoint))
+                requests.add(request);
+            else
+                skipped++;
+        }
+        if (skipped > 0)
+            logger.warn("skipped {} requests for other endpoints than " + ROUTE, skipped);
+        if (requests.isEmpty())
+            throw new IllegalArgumentException("No requests found in " + file);
+
+        Target target;
+        GraphHopper hopper = null;
+        if (args.has("replay.url")) {
+            target = createServerTarget(args.getString("replay.url", ""), concurrency);
+        } else if (args.has("replay.config")) {
+            hopper = new GraphHopper().init(readConfig(args.getString("replay.config", ""))).importOrLoad();
+            target = createEmbeddedTarget(hopper);
+        } else {
+            throw new IllegalArgumentException("Either replay.url or replay.config is required");
+        }
+
+        try {
+            RequestReplay replay = new RequestReplay(target, concurrency, rate);
+            if (warmup > 0) {
+                logger.info("warming up with {} requests", warmup);
+                new RequestReplay(target, concurrency, 0).run(requests.subList(0, Math.min(warmup, requests.size())));
+            }
+            List<ReplayRequest> replayed = new ArrayList<>(requests.size() * repeat);
+            for (int i = 0; i < repeat; i++)
+                replayed.addAll(requests);
+            logger.info("replaying {} requests with {} threads{}", replayed.size(), concurrency,
+                    rate > 0 ? " at " + rate + " requests/s" : "");
+            Map<String, Object> result = replay.run(replayed);
+            result.put("file", file);
+            result.put("target", args.getString("replay.url", args.getString("replay.config", "")));
+            result.put("concurrency", concurrency);
+            result.put("rate", rate);
+            if (!output.isEmpty()) {
+                logger.info("storing results in {}", output);
+                new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(new File(output), result);
+            }
+        } finally {
+            if (hopper != null)
+                hopper.close();
+        }
+    }
+
+    public RequestReplay(Target target, int concurrency, double rate) {
+        if (concurrency < 1)
+            throw new IllegalArgumentException("concurrency must be at least 1 but was " + concurrency);
+        this.target = target;
+        this.concurrency = concurrency;
+        this.rate = rate;
+    }
+
+    /**
+     * Sends the requests and returns the throughput and the latencies of every endpoint, the durations are in ms.
+     */
+    public Map<String, Object> run(List<ReplayRequest> requests) throws InterruptedException {
+        ExecutorService executorService = Executors.newFixedThreadPool(concurrency);
+        long start = System.nanoTime();
+        if (rate > 0) {
+            double intervalNanos = 1e9 / rate;
+            for (int i = 0; i < requests.size(); i++) {
+                final ReplayRequest request = requests.get(i);
+                final long scheduled = start + Math.round(i * intervalNanos);
+                long delay;
+                while ((delay = scheduled - System.nanoTime()) > 0)
+                    LockSupport.parkNanos(delay);
+                executorService.execute(() -> send(request, scheduled));
+            }
+        } else {
+            AtomicInteger next = new AtomicInteger();
+            for (int thread = 0; thread < concurrency; thread++)
+                executorService.execute(() -> {
+                    int i;
+                    while ((i = next.getAndIncrement()) < requests.size())
+                        send(requests.get(i), System.nanoTime());
+                });
+        }
+        executorService.shutdown();
+        executorService.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("requests", requests.size());
+        result.put("seconds", seconds);
+        result.put("throughput", requests.size() / seconds);
+        result.put("all", allLatencies.toMap());
+        logger.info("all: {} requests in {}s, {} requests/s, {}", requests.size(), String.format(Locale.ROOT, "%.1f", seconds),
+                String.format(Locale.ROOT, "%.1f", requests.size() / seconds), allLatencies);
+        Map<String, Object> endpoints = new TreeMap<>();
+        for (Map.Entry<String, Latencies> entry : new TreeMap<>(latencies).entrySet()) {
+            endpoints.put(entry.getKey(), entry.getValue().toMap());
+            logger.info("{}: {}", entry.getKey(), entry.getValue());
+        }
+        result.put("endpoints", endpoints);
+        return result;
+    }
+
+    private void send(ReplayRequest request, long scheduled) {
+        long start = System.nanoTime();
+        boolean error;
+        try {
+            GHResponse rsp = target.route(request);
+            error = rsp.hasErrors();
+            if (error)
+                logger.debug("error for {}: {}", request, rsp.getErrors());
+        } catch (Exception ex) {
+            logger.debug("error for {}", request, ex);
+            error = true;
+        }
+        long end = System.nanoTime();
+        latencies.computeIfAbsent(request.getKey(), k -> new Latencies()).add(end - scheduled, end - start, error);
+        allLatencies.add(end - scheduled, end - start, error);
+    }
+
+    static GraphHopperConfig readConfig(String configFile) throws IOException {
+        ObjectMapper yaml = Jackson.initObjectMapper(new ObjectMapper(new YAMLFactory()));
+        yaml.enable(MapperFeature.ALLOW_EXPLICIT_PROPERTY_RENAMING);
+        JsonNode graphhopper = yaml.readTree(new File(configFile)).get("graphhopper");
+        if (graphhopper == null)
+            throw new IllegalArgumentException("No 'graphhopper' section in " + configFile);
+        return yaml.treeToValue(graphhopper, GraphHopperConfig.class);
+    }
+
+    static Target createEmbeddedTarget(GraphHopper hopper) {
+        return request -> hopper.route(request.createGHRequest());
+    }
+
+    static Target createServerTarget(String url, int concurrency) {
+        GraphHopperWeb getClient = new GraphHopperWeb(url).setPostRequest(false);
+        // keep a connection for every thread
+        getClient.setDownloader(getClient.getDownloader().newBuilder().
+                connectionPool(new ConnectionPool(concurrency, 5, TimeUnit.MINUTES)).build());
+        GraphHopperWeb postClient = new GraphHopperWeb(url).setPostRequest(true).setDownloader(getClient.getDownloader());
+        return request -> (request.isPost() ? postClient : getClient).route(request.createGHRequest());
+    }
+
+    public interface Target {
+        GHResponse route(ReplayRequest request);
+    }
+
+    /**
+     * One line of the request log. A new GHRequest is created for every replay, because routing may modify it.
+     */
+    public static class ReplayRequest {
+        private final String endpoint;
+        private final String query;
+        private final JsonNode body;
+        private final ObjectMapper objectMapper;
+
+        private ReplayRequest(String endpoint, String query, JsonNode body, ObjectMapper objectMapper) {
+            this.endpoint = endpoint;
+            this.query = query;
+            this.body = body;
+            this.objectMapper = objectMapper;
+        }
+
+        /**
+         * @return the request of the given line or null for empty lines and comments
+         */
+        public static ReplayRequest parse(String line, ObjectMapper objectMapper) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#"))
+                return null;
+            if (!line.startsWith("{"))
+                return fromUrl(line, objectMapper);
+            JsonNode json;
+            try {
+                json = objectMapper.readTree(line);
+            } catch (IOException ex) {
+                throw new IllegalArgumentException("Invalid JSON: " + line, ex);
+            }
+            if (json.has("url"))
+                return fromUrl(json.get("url").asText(), objectMapper);
+            if (json.has("body"))
+                return new ReplayRequest(normalizeEndpoint(json.path("endpoint").asText(ROUTE)), null, json.get("body"), objectMapper);
+            return new ReplayRequest(ROUTE, null, json, objectMapper);
+        }
+
+        private static ReplayRequest fromUrl(String url, ObjectMapper objectMapper) {
+            int index = url.indexOf('?');
+            String path = index < 0 ? url : url.substring(0, index);
+            return new ReplayRequest(normalizeEndpoint(path), index < 0 ? "" : url.substring(index + 1), null, objectMapper);
+        }
+
+        /**
+         * @return the last segment of the path, e.g. /route for http://localhost:8989/api/1/route/
+         */
+        private static String normalizeEndpoint(String path) {
+            if (path.endsWith("/"))
+                path = path.substring(0, path.length() - 1);
+            return "/" + path.substring(path.lastIndexOf('/') + 1);
+        }
+
+        public String getEndpoint() {
+            return endpoint;
+        }
+
+        public boolean isPost() {
+            return body != null;
+        }
+
+        String getKey() {
+            return (isPost() ? "POST " : "GET ") + endpoint;
+        }
+
+        public GHRequest createGHRequest() {
+            if (isPost()) {
+                try {
+                    return objectMapper.treeToValue(body, GHRequest.class);
+                } catch (IOException ex) {
+                    throw new IllegalArgumentException("Invalid request body: " + body, ex);
+                }
+            }
+            GHRequest request = new GHRequest();
+            for (String param : query.split("&")) {
+                if (param.isEmpty())
+                    continue;
+                int index = param.indexOf('=');
+                String key = URLDecoder.decode(index < 0 ? param : param.substring(0, index), StandardCharsets.UTF_8);
+                String value = index < 0 ? "" : URLDecoder.decode(param.substring(index + 1), StandardCharsets.UTF_8);
+                switch (key) {
+                    case "point" -> request.addPoint(GHPoint.fromString(value));
+                    case "profile" -> request.setProfile(value);
+                    case "algorithm" -> request.setAlgorithm(value);
+                    case "locale" -> request.setLocale(value);
+                    case "heading" -> request.getHeadings().add(Double.parseDouble(value));
+                    case "point_hint" -> request.getPointHints().add(value);
+                    case "curbside" -> request.getCurbsides().add(value);
+                    case "snap_prevention" -> request.getSnapPreventions().add(value);
+                    case "details" -> request.getPathDetails().add(value);
+                    // the key belongs to the captured client and the response type does not matter here
+                    case "key", "type" -> {
+                    }
+                    default -> request.putHint(Helper.camelCaseToUnderScore(key), Helper.toObject(value));
+                }
+            }
+            return request;
+        }
+
+        @Override
+        public String toString() {
+            return getKey() + (isPost() ? " " + body : "?" + query);
+        }
+    }
+
+    /**
+     * The latencies of all requests of one endpoint. The latency is measured from the time the request was scheduled,
+     * while the service time starts when the request was actually sent.
+     */
+    static class Latencies {
+        private long[] latencies = new long[1024];
+        private long[] serviceTimes = new long[1024];
+        private int count;
+        private int errors;
+
+        synchronized void add(long latencyNanos, long serviceNanos, boolean error) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, 2 * count);
+                serviceTimes = Arrays.copyOf(serviceTimes, 2 * count);
+            }
+            latencies[count] = latencyNanos;
+            serviceTimes[count] = serviceNanos;
+            count++;
+            if (error)
+                errors++;
+        }
+
+        synchronized Map<String, Object> toMap() {
+            long[] sortedLatencies = Arrays.copyOf(latencies, count);
+            Arrays.sort(sortedLatencies);
+            long[] sortedServiceTimes = Arrays.copyOf(serviceTimes, count);
+            Arrays.sort(sortedServiceTimes);
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("count", count);
+            map.put("errors", errors);
+            map.put("latency", percentiles(sortedLatencies));
+            map.put("service_time", percentiles(sortedServiceTimes));
+            map.put("latency_histogram", histogram(sortedLatencies));
+            return map;
+        }
+
+        private static Map<String, Double> percentiles(long[] sorted) {
+            Map<String, Double> map = new LinkedHashMap<>();
+            if (sorted.length == 0)
+                return map;
+            long sum = 0;
+            for (long value : sorted)
+                sum += value;
+            map.put("mean", sum / 1e6 / sorted.length);
+            map.put("p50", percentile(sorted, 0.5));
+            map.put("p90", percentile(sorted, 0.9));
+            map.put("p99", percentile(sorted, 0.99));
+            map.put("p999", percentile(sorted, 0.999));
+            map.put("max", sorted[sorted.length - 1] / 1e6);
+            return map;
+        }
+
+        static double percentile(long[] sorted, double percentile) {
+            int index = (int) Math.ceil(percentile * sorted.length) - 1;
+            return sorted[Math.max(0, index)] / 1e6;
+        }
+
+        /**
+         * @return the number of requests per latency bucket, the keys are the upper bounds of the buckets in ms
+         */
+        static Map<String, Integer> histogram(long[] sorted) {
+            Map<String, Integer> histogram = new LinkedHashMap<>();
+            long upperBoundMillis = 1;
+            int index = 0;
+            while (index < sorted.length) {
+                int bucketCount = 0;
+                while (index < sorted.length && sorted[index] <= upperBoundMillis * 1_000_000L) {
+                    bucketCount++;
+                    index++;
+                }
+                histogram.put("<=" + upperBoundMillis, bucketCount);
+                upperBoundMillis *= 2;
+            }
+            return histogram;
+        }
+
+        @Override
+        public synchronized String toString() {
+            long[] sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+            if (count == 0)
+                return "no requests";
+            return String.format(Locale.ROOT, "count: %d, errors: %d, latency p50: %.1fms, p90: %.1fms, p99: %.1fms, p999: %.1fms, max: %.1fms",
+                    count, errors, percentile(sorted, 0.5), percentile(sorted, 0.9), percentile(sorted, 0.99),
+                    percentile(sorted, 0.999), sorted[count - 1] / 1e6);
+        }
+    }
+}
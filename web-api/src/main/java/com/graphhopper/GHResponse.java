@@ -34,6 +34,7 @@ public class GHResponse {
     private PMap hintsMap = new PMap();
     private final List<ResponsePath> responsePaths = new ArrayList<>(5);
     private String debugInfo = "";
+    private RouteStats stats;
 
     public GHResponse() {
     }
@@ -149,6 +150,18 @@ public class GHResponse {
         return hintsMap;
     }
 
+    /**
+     * @return the statistics of the route calculation or null, e.g. if the response was taken from a cache
+     */
+    public RouteStats getStats() {
+        return stats;
+    }
+
+    public GHResponse setStats(RouteStats stats) {
+        this.stats = stats;
+        return this;
+    }
+
     public String getHeader(String key, String defaultValue) {
         Object val = hintsMap.getObject(key.toLowerCase(Locale.ROOT), null);
         if (val instanceof List && !((List) val).isEmpty())
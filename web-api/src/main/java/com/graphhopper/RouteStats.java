@@ -0,0 +1,114 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Statistics about the calculation of a route, e.g. for a slow-query log. They are filled by the Router and are not
+ * part of the serialized response.
+ */
+public class RouteStats {
+    private final GHRequest request;
+    private final String profile;
+    private final String solver;
+    private final Map<String, Long> phaseNanos = new LinkedHashMap<>();
+    private long visitedNodesForward;
+    private long visitedNodesBackward;
+    private int virtualNodes;
+    private long nanos;
+
+    public RouteStats(GHRequest request, String profile, String solver) {
+        this.request = request;
+        this.profile = profile;
+        this.solver = solver;
+    }
+
+    public GHRequest getRequest() {
+        return request;
+    }
+
+    public String getProfile() {
+        return profile;
+    }
+
+    public String getSolver() {
+        return solver;
+    }
+
+    public RouteStats addPhaseNanos(String phase, long nanos) {
+        phaseNanos.merge(phase, nanos, Long::sum);
+        return this;
+    }
+
+    /**
+     * @return the time spent in the different phases of the calculation in the order they were executed
+     */
+    public Map<String, Long> getPhaseNanos() {
+        return Collections.unmodifiableMap(phaseNanos);
+    }
+
+    public RouteStats setVisitedNodes(long forward, long backward) {
+        this.visitedNodesForward = forward;
+        this.visitedNodesBackward = backward;
+        return this;
+    }
+
+    /**
+     * @return the nodes visited by the forward search, or by the only search of unidirectional algorithms
+     */
+    public long getVisitedNodesForward() {
+        return visitedNodesForward;
+    }
+
+    public long getVisitedNodesBackward() {
+        return visitedNodesBackward;
+    }
+
+    public RouteStats setVirtualNodes(int virtualNodes) {
+        this.virtualNodes = virtualNodes;
+        return this;
+    }
+
+    /**
+     * @return the number of virtual nodes the QueryGraph created for the snapped points
+     */
+    public int getVirtualNodes() {
+        return virtualNodes;
+    }
+
+    public RouteStats setNanos(long nanos) {
+        this.nanos = nanos;
+        return this;
+    }
+
+    /**
+     * @return the total time of the calculation including the phases that are not listed in {@link #getPhaseNanos()}
+     */
+    public long getNanos() {
+        return nanos;
+    }
+
+    @Override
+    public String toString() {
+        return "profile: " + profile + ", solver: " + solver + ", visited nodes: " + visitedNodesForward + "/" + visitedNodesBackward
+                + ", virtual nodes: " + virtualNodes + ", phases: " + phaseNanos + ", nanos: " + nanos;
+    }
+}
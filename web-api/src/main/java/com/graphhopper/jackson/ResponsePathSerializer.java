@@ -18,15 +18,21 @@
 
 package com.graphhopper.jackson;
 
-import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializerProvider;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 import com.graphhopper.GHResponse;
 import com.graphhopper.ResponsePath;
 import com.graphhopper.util.Helper;
 import com.graphhopper.util.PointList;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.text.NumberFormat;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
 
@@ -41,85 +47,156 @@ import java.util.Locale;
  * @author Peter Karich
  */
 public class ResponsePathSerializer {
+    private static final ObjectMapper TREE_READER = new ObjectMapper();
 
     public static String encodePolyline(PointList poly, boolean includeElevation, double multiplier) {
-        if (multiplier < 1)
-            throw new IllegalArgumentException("multiplier cannot be smaller than 1 but was " + multiplier + " for polyline");
-
-        StringBuilder sb = new StringBuilder(Math.max(20, poly.size() * 3));
-        int size = poly.size();
-        int prevLat = 0;
-        int prevLon = 0;
-        int prevEle = 0;
-        for (int i = 0; i < size; i++) {
-            int num = (int) Math.round(poly.getLat(i) * multiplier);
-            encodeNumber(sb, num - prevLat);
-            prevLat = num;
-            num = (int) Math.round(poly.getLon(i) * multiplier);
-            encodeNumber(sb, num - prevLon);
-            prevLon = num;
-            if (includeElevation) {
-                num = (int) Math.round(poly.getEle(i) * 100);
-                encodeNumber(sb, num - prevEle);
-                prevEle = num;
-            }
-        }
-        return sb.toString();
+        PolylineBuffer buffer = new PolylineBuffer();
+        buffer.encode(poly, includeElevation, multiplier);
+        return new String(buffer.chars, 0, buffer.length);
     }
 
-    private static void encodeNumber(StringBuilder sb, int num) {
-        num = num << 1;
-        if (num < 0) {
-            num = ~num;
-        }
-        while (num >= 0x20) {
-            int nextValue = (0x20 | (num & 0x1f)) + 63;
-            sb.append((char) (nextValue));
-            num >>= 5;
-        }
-        num += 63;
-        sb.append((char) (num));
+    public record Info(List<String> copyrights, long took, String roadDataTimestamp) {
     }
 
-    public record Info(List<String> copyrights, long took, String roadDataTimestamp) {
+    /**
+     * The response of the routing API together with the options for its output. As JSON it is written directly to the
+     * output by {@link RouteResponseSerializer} instead of building the tree of {@link #jsonObject} in memory first.
+     * The web module can write it in other formats like protobuf, too.
+     */
+    public record RouteResponse(GHResponse ghRsp, Info info, boolean enableInstructions, boolean calcPoints,
+                                boolean enableElevation, boolean pointsEncoded, double pointsMultiplier) {
     }
 
-    public static ObjectNode jsonObject(GHResponse ghRsp, Info info, boolean enableInstructions,
-                                        boolean calcPoints, boolean enableElevation, boolean pointsEncoded, double pointsMultiplier) {
-        ObjectNode json = JsonNodeFactory.instance.objectNode();
-        json.putPOJO("hints", ghRsp.getHints().toMap());
-        json.putPOJO("info", info);
-        ArrayNode jsonPathList = json.putArray("paths");
+    public static class RouteResponseSerializer extends JsonSerializer<RouteResponse> {
+        @Override
+        public void serialize(RouteResponse value, JsonGenerator gen, SerializerProvider serializers) throws IOException {
+            writeJson(gen, value.ghRsp(), value.info(), value.enableInstructions(), value.calcPoints(),
+                    value.enableElevation(), value.pointsEncoded(), value.pointsMultiplier());
+        }
+    }
+
+    /**
+     * Writes the JSON response directly to the given generator. The generator needs a codec that is initialized via
+     * {@link Jackson#initObjectMapper} for the instructions, details and geometries.
+     */
+    public static void writeJson(JsonGenerator gen, GHResponse ghRsp, Info info, boolean enableInstructions,
+                                 boolean calcPoints, boolean enableElevation, boolean pointsEncoded, double pointsMultiplier) throws IOException {
+        PolylineBuffer polylineBuffer = new PolylineBuffer();
+        gen.writeStartObject();
+        gen.writeObjectField("hints", ghRsp.getHints().toMap());
+        gen.writeObjectField("info", info);
+        gen.writeArrayFieldStart("paths");
         for (ResponsePath p : ghRsp.getAll()) {
-            ObjectNode jsonPath = jsonPathList.addObject();
-            jsonPath.put("distance", Helper.round(p.getDistance(), 3));
-            jsonPath.put("weight", Helper.round6(p.getRouteWeight()));
-            jsonPath.put("time", p.getTime());
-            jsonPath.put("transfers", p.getNumChanges());
+            gen.writeStartObject();
+            gen.writeNumberField("distance", Helper.round(p.getDistance(), 3));
+            gen.writeNumberField("weight", Helper.round6(p.getRouteWeight()));
+            gen.writeNumberField("time", p.getTime());
+            gen.writeNumberField("transfers", p.getNumChanges());
             if (!p.getDescription().isEmpty()) {
-                jsonPath.putPOJO("description", p.getDescription());
+                gen.writeObjectField("description", p.getDescription());
             }
 
             // for points and snapped_waypoints:
-            jsonPath.put("points_encoded", pointsEncoded);
-            if (pointsEncoded) jsonPath.put("points_encoded_multiplier", pointsMultiplier);
+            gen.writeBooleanField("points_encoded", pointsEncoded);
+            if (pointsEncoded) gen.writeNumberField("points_encoded_multiplier", pointsMultiplier);
 
             if (calcPoints) {
-                jsonPath.putPOJO("bbox", p.calcBBox2D());
-                jsonPath.putPOJO("points", pointsEncoded ? encodePolyline(p.getPoints(), enableElevation, pointsMultiplier) : p.getPoints().toLineString(enableElevation));
+                gen.writeObjectField("bbox", p.calcBBox2D());
+                if (pointsEncoded)
+                    polylineBuffer.write(gen, "points", p.getPoints(), enableElevation, pointsMultiplier);
+                else
+                    gen.writeObjectField("points", p.getPoints().toLineString(enableElevation));
                 if (enableInstructions) {
-                    jsonPath.putPOJO("instructions", p.getInstructions());
+                    gen.writeObjectField("instructions", p.getInstructions());
                 }
-                jsonPath.putPOJO("legs", p.getLegs());
-                jsonPath.putPOJO("details", p.getPathDetails());
-                jsonPath.put("ascend", p.getAscend());
-                jsonPath.put("descend", p.getDescend());
+                gen.writeObjectField("legs", p.getLegs());
+                gen.writeObjectField("details", p.getPathDetails());
+                gen.writeNumberField("ascend", p.getAscend());
+                gen.writeNumberField("descend", p.getDescend());
             }
-            jsonPath.putPOJO("snapped_waypoints", pointsEncoded ? encodePolyline(p.getWaypoints(), enableElevation, pointsMultiplier) : p.getWaypoints().toLineString(enableElevation));
+            if (pointsEncoded)
+                polylineBuffer.write(gen, "snapped_waypoints", p.getWaypoints(), enableElevation, pointsMultiplier);
+            else
+                gen.writeObjectField("snapped_waypoints", p.getWaypoints().toLineString(enableElevation));
             if (p.getFare() != null) {
-                jsonPath.put("fare", NumberFormat.getCurrencyInstance(Locale.ROOT).format(p.getFare()));
+                gen.writeStringField("fare", NumberFormat.getCurrencyInstance(Locale.ROOT).format(p.getFare()));
             }
+            gen.writeEndObject();
+        }
+        gen.writeEndArray();
+        gen.writeEndObject();
+    }
+
+    /**
+     * Encodes polylines into a char array that is reused for all polylines of a response and that can be written to the
+     * generator without creating a String.
+     */
+    private static class PolylineBuffer {
+        private char[] chars = new char[64];
+        private int length;
+
+        void write(JsonGenerator gen, String fieldName, PointList poly, boolean includeElevation, double multiplier) throws IOException {
+            encode(poly, includeElevation, multiplier);
+            gen.writeFieldName(fieldName);
+            gen.writeString(chars, 0, length);
+        }
+
+        void encode(PointList poly, boolean includeElevation, double multiplier) {
+            if (multiplier < 1)
+                throw new IllegalArgumentException("multiplier cannot be smaller than 1 but was " + multiplier + " for polyline");
+
+            length = 0;
+            int size = poly.size();
+            int prevLat = 0;
+            int prevLon = 0;
+            int prevEle = 0;
+            for (int i = 0; i < size; i++) {
+                int num = (int) Math.round(poly.getLat(i) * multiplier);
+                encodeNumber(num - prevLat);
+                prevLat = num;
+                num = (int) Math.round(poly.getLon(i) * multiplier);
+                encodeNumber(num - prevLon);
+                prevLon = num;
+                if (includeElevation) {
+                    num = (int) Math.round(poly.getEle(i) * 100);
+                    encodeNumber(num - prevEle);
+                    prevEle = num;
+                }
+            }
+        }
+
+        private void encodeNumber(int num) {
+            // an int needs at most 7 chars
+            if (length + 7 > chars.length)
+                chars = Arrays.copyOf(chars, 2 * chars.length);
+            num = num << 1;
+            if (num < 0) {
+                num = ~num;
+            }
+            while (num >= 0x20) {
+                int nextValue = (0x20 | (num & 0x1f)) + 63;
+                chars[length++] = (char) nextValue;
+                num >>= 5;
+            }
+            num += 63;
+            chars[length++] = (char) num;
+        }
+    }
+
+    /**
+     * Creates the JSON response as tree, e.g. to add more fields to it. It is built from {@link #writeJson}, so both
+     * always contain the same fields. Objects like the instructions are kept as POJO nodes and are serialized together
+     * with the tree.
+     */
+    public static ObjectNode jsonObject(GHResponse ghRsp, Info info, boolean enableInstructions,
+                                        boolean calcPoints, boolean enableElevation, boolean pointsEncoded, double pointsMultiplier) {
+        // without a codec the buffer keeps the objects instead of serializing them
+        TokenBuffer buffer = new TokenBuffer(null, false);
+        try {
+            writeJson(buffer, ghRsp, info, enableInstructions, calcPoints, enableElevation, pointsEncoded, pointsMultiplier);
+            return (ObjectNode) TREE_READER.readTree(buffer.asParser());
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
         }
-        return json;
     }
 }
@@ -0,0 +1,520 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.protobuf;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+import com.graphhopper.GHResponse;
+import com.graphhopper.ResponsePath;
+import com.graphhopper.jackson.ResponsePathSerializer;
+import com.graphhopper.util.*;
+import com.graphhopper.util.details.PathDetail;
+import org.locationtech.jts.geom.Envelope;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.*;
+
+/**
+ * Reads and writes the protobuf representation of the routing API response, see route_response.proto in this
+ * package for the schema. The points are delta-encoded integers like in the encoded polyline of the JSON response,
+ * but they are stored as packed varints and need no base64-like text encoding and no JSON parsing on the client.
+ * <p>
+ * The messages are written and read field by field with {@link CodedOutputStream} and {@link CodedInputStream}, so
+ * no generated classes are necessary.
+ */
+public class RouteResponseProtobuf {
+    public static final String MEDIA_TYPE = "application/x-protobuf";
+
+    /**
+     * Writes the same information as {@link ResponsePathSerializer#jsonObject}.
+     */
+    public static void write(OutputStream os, GHResponse ghRsp, ResponsePathSerializer.Info info, boolean enableInstructions,
+                             boolean calcPoints, boolean enableElevation, double pointsMultiplier) throws IOException {
+        if (pointsMultiplier < 1)
+            throw new IllegalArgumentException("multiplier cannot be smaller than 1 but was " + pointsMultiplier);
+        CodedOutputStream out = CodedOutputStream.newInstance(os);
+        for (ResponsePath p : ghRsp.getAll())
+            writeMessage(out, 1, o -> writePath(o, p, enableInstructions, calcPoints, enableElevation, pointsMultiplier));
+        for (Map.Entry<String, Object> hint : ghRsp.getHints().toMap().entrySet())
+            writeMessage(out, 2, o -> writeEntry(o, hint.getKey(), hint.getValue()));
+        writeMessage(out, 3, o -> {
+            for (String copyright : info.copyrights())
+                o.writeString(1, copyright);
+            o.writeInt64(2, info.took());
+            if (info.roadDataTimestamp() != null)
+                o.writeString(3, info.roadDataTimestamp());
+        });
+        out.flush();
+    }
+
+    private static void writePath(CodedOutputStream out, ResponsePath p, boolean enableInstructions, boolean calcPoints,
+                                  boolean enableElevation, double multiplier) throws IOException {
+        out.writeDouble(1, Helper.round(p.getDistance(), 3));
+        out.writeDouble(2, Helper.round6(p.getRouteWeight()));
+        out.writeInt64(3, p.getTime());
+        out.writeInt32(4, p.getNumChanges());
+        for (String description : p.getDescription())
+            out.writeString(5, description);
+        out.writeDouble(6, multiplier);
+        out.writeBool(7, enableElevation);
+        if (calcPoints) {
+            writePoints(out, 8, p.getPoints(), enableElevation, multiplier);
+            Envelope bbox = p.calcBBox2D();
+            for (double value : new double[]{bbox.getMinX(), bbox.getMinY(), bbox.getMaxX(), bbox.getMaxY()})
+                out.writeDouble(10, value);
+            if (enableInstructions) {
+                InstructionList instructions = p.getInstructions();
+                int pointsIndex = 0;
+                for (Instruction instruction : instructions) {
+                    int from = pointsIndex;
+                    int to = pointsIndex + instruction.getLength();
+                    writeMessage(out, 11, o -> {
+                        o.writeString(1, Helper.firstBig(instruction.getTurnDescription(instructions.getTr())));
+                        if (instruction.getName() != null)
+                            o.writeString(2, instruction.getName());
+                        o.writeInt64(3, instruction.getTime());
+                        o.writeDouble(4, Helper.round(instruction.getDistance(), 3));
+                        o.writeSInt32(5, instruction.getSign());
+                        o.writeInt32(6, from);
+                        o.writeInt32(7, to);
+                        for (Map.Entry<String, Object> extra : instruction.getExtraInfoJSON().entrySet())
+                            writeMessage(o, 8, eo -> writeEntry(eo, extra.getKey(), extra.getValue()));
+                    });
+                    pointsIndex = to;
+                }
+            }
+            for (Map.Entry<String, List<PathDetail>> detail : p.getPathDetails().entrySet()) {
+                writeMessage(out, 12, o -> {
+                    o.writeString(1, detail.getKey());
+                    for (PathDetail pd : detail.getValue())
+                        writeMessage(o, 2, io -> {
+                            io.writeInt32(1, pd.getFirst());
+                            io.writeInt32(2, pd.getLast());
+                            if (pd.getValue() != null)
+                                writeMessage(io, 3, vo -> writeValue(vo, pd.getValue()));
+                        });
+                });
+            }
+            out.writeDouble(13, p.getAscend());
+            out.writeDouble(14, p.getDescend());
+        }
+        writePoints(out, 9, p.getWaypoints(), enableElevation, multiplier);
+        if (p.getFare() != null)
+            out.writeString(15, p.getFare().toPlainString());
+    }
+
+    /**
+     * Writes the points as packed field, i.e. the length of all values followed by the values.
+     */
+    private static void writePoints(CodedOutputStream out, int field, PointList points, boolean includeElevation,
+                                    double multiplier) throws IOException {
+        int dims = includeElevation ? 3 : 2;
+        int[] values = new int[points.size() * dims];
+        int prevLat = 0, prevLon = 0, prevEle = 0;
+        for (int i = 0, j = 0; i < points.size(); i++) {
+            int lat = (int) Math.round(points.getLat(i) * multiplier);
+            int lon = (int) Math.round(points.getLon(i) * multiplier);
+            values[j++] = lat - prevLat;
+            values[j++] = lon - prevLon;
+            prevLat = lat;
+            prevLon = lon;
+            if (includeElevation) {
+                int ele = (int) Math.round(points.getEle(i) * 100);
+                values[j++] = ele - prevEle;
+                prevEle = ele;
+            }
+        }
+        if (values.length == 0)
+            return;
+        int size = 0;
+        for (int value : values)
+            size += CodedOutputStream.computeSInt32SizeNoTag(value);
+        out.writeTag(field, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+        out.writeUInt32NoTag(size);
+        for (int value : values)
+            out.writeSInt32NoTag(value);
+    }
+
+    private static void writeEntry(CodedOutputStream out, String key, Object value) throws IOException {
+        out.writeString(1, key);
+        if (value != null)
+            writeMessage(out, 2, o -> writeValue(o, value));
+    }
+
+    private static void writeValue(CodedOutputStream out, Object value) throws IOException {
+        if (value instanceof Double || value instanceof Float)
+            out.writeDouble(1, ((Number) value).doubleValue());
+        else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte)
+            out.writeSInt64(2, ((Number) value).longValue());
+        else if (value instanceof Boolean)
+            out.writeBool(3, (Boolean) value);
+        else if (value instanceof String)
+            out.writeString(4, (String) value);
+        else if (value instanceof Map)
+            writeMessage(out, 5, o -> {
+                for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet())
+                    writeMessage(o, 1, eo -> writeEntry(eo, entry.getKey().toString(), entry.getValue()));
+            });
+        else if (value instanceof Collection)
+            writeMessage(out, 6, o -> {
+                for (Object item : (Collection<?>) value)
+                    // a list cannot contain missing values, use an empty value instead
+                    writeMessage(o, 1, vo -> {
+                        if (item != null)
+                            writeValue(vo, item);
+                    });
+            });
+        else
+            out.writeString(4, value.toString());
+    }
+
+    private interface MessageWriter {
+        void write(CodedOutputStream out) throws IOException;
+    }
+
+    /**
+     * Nested messages are prefixed with their length, so we write them into a buffer first.
+     */
+    private static void writeMessage(CodedOutputStream out, int field, MessageWriter writer) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        CodedOutputStream nested = CodedOutputStream.newInstance(buffer);
+        writer.write(nested);
+        nested.flush();
+        out.writeByteArray(field, buffer.toByteArray());
+    }
+
+    /**
+     * Reads the response like GraphHopperWeb does for the JSON response. The info is skipped.
+     *
+     * @param turnDescription if false the instructions contain the street name instead of the turn description
+     */
+    public static GHResponse read(InputStream is, boolean turnDescription) throws IOException {
+        CodedInputStream in = CodedInputStream.newInstance(is);
+        GHResponse rsp = new GHResponse();
+        while (true) {
+            int tag = in.readTag();
+            if (tag == 0)
+                break;
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case 1 -> {
+                    int limit = in.pushLimit(in.readRawVarint32());
+                    rsp.add(readPath(in, turnDescription));
+                    in.popLimit(limit);
+                }
+                case 2 -> {
+                    int limit = in.pushLimit(in.readRawVarint32());
+                    Map.Entry<String, Object> hint = readEntry(in);
+                    rsp.getHints().putObject(hint.getKey(), hint.getValue());
+                    in.popLimit(limit);
+                }
+                default -> in.skipField(tag);
+            }
+        }
+        return rsp;
+    }
+
+    private record RawInstruction(String text, String streetName, long time, double distance, int sign,
+                                  int from, int to, Map<String, Object> extraInfo) {
+    }
+
+    private static ResponsePath readPath(CodedInputStream in, boolean turnDescription) throws IOException {
+        ResponsePath path = new ResponsePath();
+        List<String> description = new ArrayList<>();
+        IntBuffer points = new IntBuffer(), snappedWaypoints = new IntBuffer();
+        List<RawInstruction> rawInstructions = new ArrayList<>();
+        Map<String, List<PathDetail>> details = new HashMap<>();
+        double multiplier = 1e5;
+        boolean elevation = false;
+        while (true) {
+            int tag = in.readTag();
+            if (tag == 0)
+                break;
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case 1 -> path.setDistance(in.readDouble());
+                case 2 -> path.setRouteWeight(in.readDouble());
+                case 3 -> path.setTime(in.readInt64());
+                case 4 -> path.setNumChanges(in.readInt32());
+                case 5 -> description.add(in.readString());
+                case 6 -> multiplier = in.readDouble();
+                case 7 -> elevation = in.readBool();
+                case 8 -> readPackedSInt32(in, tag, points);
+                case 9 -> readPackedSInt32(in, tag, snappedWaypoints);
+                case 11 -> {
+                    int limit = in.pushLimit(in.readRawVarint32());
+                    rawInstructions.add(readInstruction(in));
+                    in.popLimit(limit);
+                }
+                case 12 -> {
+                    int limit = in.pushLimit(in.readRawVarint32());
+                    readDetail(in, details);
+                    in.popLimit(limit);
+                }
+                case 13 -> path.setAscend(in.readDouble());
+                case 14 -> path.setDescend(in.readDouble());
+                case 15 -> path.setFare(new BigDecimal(in.readString()));
+                default -> in.skipField(tag);
+            }
+        }
+        if (!description.isEmpty())
+            path.setDescription(description);
+        path.setWaypoints(toPointList(snappedWaypoints, elevation, multiplier));
+        if (points.size > 0) {
+            PointList pointList = toPointList(points, elevation, multiplier);
+            path.setPoints(pointList);
+            if (!rawInstructions.isEmpty())
+                path.setInstructions(createInstructions(rawInstructions, pointList, turnDescription));
+            path.addPathDetails(details);
+        }
+        List<Integer> pointsOrder = new ArrayList<>(path.getWaypoints().size());
+        for (int i = 0; i < path.getWaypoints().size(); i++)
+            pointsOrder.add(i);
+        path.setPointsOrder(pointsOrder);
+        return path;
+    }
+
+    private static InstructionList createInstructions(List<RawInstruction> rawInstructions, PointList pointList, boolean turnDescription) {
+        InstructionList il = new InstructionList(null);
+        int viaCount = 1;
+        for (RawInstruction raw : rawInstructions) {
+            String text = turnDescription ? raw.text() : raw.streetName();
+            PointList instPL = new PointList(raw.to() - raw.from(), pointList.is3D());
+            for (int j = raw.from(); j <= raw.to(); j++)
+                instPL.add(pointList, j);
+
+            Instruction instr;
+            Map<String, Object> extraInfo = raw.extraInfo();
+            if (raw.sign() == Instruction.USE_ROUNDABOUT || raw.sign() == Instruction.LEAVE_ROUNDABOUT) {
+                RoundaboutInstruction ri = new RoundaboutInstruction(raw.sign(), text, instPL);
+                if (extraInfo.get("exit_number") instanceof Number exitNumber)
+                    ri.setExitNumber(exitNumber.intValue());
+                if (Boolean.TRUE.equals(extraInfo.get("exited")))
+                    ri.setExited();
+                if (extraInfo.get("turn_angle") instanceof Number turnAngle) {
+                    double angle = turnAngle.doubleValue();
+                    ri.setDirOfRotation(angle);
+                    ri.setRadian((angle < 0 ? -Math.PI : Math.PI) - angle);
+                }
+                instr = ri;
+            } else if (raw.sign() == Instruction.REACHED_VIA) {
+                ViaInstruction viaInstr = new ViaInstruction(text, instPL);
+                viaInstr.setViaCount(viaCount);
+                viaCount++;
+                instr = viaInstr;
+            } else if (raw.sign() == Instruction.FINISH) {
+                instr = new FinishInstruction(text, instPL, 0);
+                instr.setExtraInfo("last_heading", extraInfo.get("last_heading"));
+            } else {
+                instr = new Instruction(raw.sign(), text, instPL);
+                instr.setExtraInfo("heading", extraInfo.get("heading"));
+            }
+            // see ResponsePathDeserializerHelper: the text is already the turn description of the routing service
+            if (turnDescription)
+                instr.setUseRawName();
+            instr.setDistance(raw.distance()).setTime(raw.time());
+            il.add(instr);
+        }
+        return il;
+    }
+
+    private static RawInstruction readInstruction(CodedInputStream in) throws IOException {
+        String text = "", streetName = "";
+        long time = 0;
+        double distance = 0;
+        int sign = 0, from = 0, to = 0;
+        Map<String, Object> extraInfo = new HashMap<>();
+        while (true) {
+            int tag = in.readTag();
+            if (tag == 0)
+                break;
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case 1 -> text = in.readString();
+                case 2 -> streetName = in.readString();
+                case 3 -> time = in.readInt64();
+                case 4 -> distance = in.readDouble();
+                case 5 -> sign = in.readSInt32();
+                case 6 -> from = in.readInt32();
+                case 7 -> to = in.readInt32();
+                case 8 -> {
+                    int limit = in.pushLimit(in.readRawVarint32());
+                    Map.Entry<String, Object> entry = readEntry(in);
+                    extraInfo.put(entry.getKey(), entry.getValue());
+                    in.popLimit(limit);
+                }
+                default -> in.skipField(tag);
+            }
+        }
+        return new RawInstruction(text, streetName, time, distance, sign, from, to, extraInfo);
+    }
+
+    private static void readDetail(CodedInputStream in, Map<String, List<PathDetail>> details) throws IOException {
+        String name = "";
+        List<PathDetail> intervals = new ArrayList<>();
+        while (true) {
+            int tag = in.readTag();
+            if (tag == 0)
+                break;
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case 1 -> name = in.readString();
+                case 2 -> {
+                    int limit = in.pushLimit(in.readRawVarint32());
+                    int first = 0, last = 0;
+                    Object value = null;
+                    while (true) {
+                        int intervalTag = in.readTag();
+                        if (intervalTag == 0)
+                            break;
+                        switch (WireFormat.getTagFieldNumber(intervalTag)) {
+                            case 1 -> first = in.readInt32();
+                            case 2 -> last = in.readInt32();
+                            case 3 -> value = readValueMessage(in);
+                            default -> in.skipField(intervalTag);
+                        }
+                    }
+                    in.popLimit(limit);
+                    PathDetail pd = new PathDetail(value);
+                    pd.setFirst(first);
+                    pd.setLast(last);
+                    intervals.add(pd);
+                }
+                default -> in.skipField(tag);
+            }
+        }
+        details.put(name, intervals);
+    }
+
+    private static Map.Entry<String, Object> readEntry(CodedInputStream in) throws IOException {
+        String key = "";
+        Object value = null;
+        while (true) {
+            int tag = in.readTag();
+            if (tag == 0)
+                break;
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case 1 -> key = in.readString();
+                case 2 -> value = readValueMessage(in);
+                default -> in.skipField(tag);
+            }
+        }
+        return new AbstractMap.SimpleEntry<>(key, value);
+    }
+
+    /**
+     * Reads a length-delimited Value message. Integers are returned as Long like for the JSON response.
+     */
+    private static Object readValueMessage(CodedInputStream in) throws IOException {
+        int limit = in.pushLimit(in.readRawVarint32());
+        Object value = null;
+        while (true) {
+            int tag = in.readTag();
+            if (tag == 0)
+                break;
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case 1 -> value = in.readDouble();
+                case 2 -> value = in.readSInt64();
+                case 3 -> value = in.readBool();
+                case 4 -> value = in.readString();
+                case 5 -> {
+                    int mapLimit = in.pushLimit(in.readRawVarint32());
+                    Map<String, Object> map = new LinkedHashMap<>();
+                    while (true) {
+                        int entryTag = in.readTag();
+                        if (entryTag == 0)
+                            break;
+                        if (WireFormat.getTagFieldNumber(entryTag) == 1) {
+                            int entryLimit = in.pushLimit(in.readRawVarint32());
+                            Map.Entry<String, Object> entry = readEntry(in);
+                            map.put(entry.getKey(), entry.getValue());
+                            in.popLimit(entryLimit);
+                        } else {
+                            in.skipField(entryTag);
+                        }
+                    }
+                    in.popLimit(mapLimit);
+                    value = map;
+                }
+                case 6 -> {
+                    int listLimit = in.pushLimit(in.readRawVarint32());
+                    List<Object> list = new ArrayList<>();
+                    while (true) {
+                        int itemTag = in.readTag();
+                        if (itemTag == 0)
+                            break;
+                        if (WireFormat.getTagFieldNumber(itemTag) == 1)
+                            list.add(readValueMessage(in));
+                        else
+                            in.skipField(itemTag);
+                    }
+                    in.popLimit(listLimit);
+                    value = list;
+                }
+                default -> in.skipField(tag);
+            }
+        }
+        in.popLimit(limit);
+        return value;
+    }
+
+    /**
+     * Reads packed values and, as required for protobuf parsers, also unpacked ones.
+     */
+    private static void readPackedSInt32(CodedInputStream in, int tag, IntBuffer values) throws IOException {
+        if (WireFormat.getTagWireType(tag) == WireFormat.WIRETYPE_LENGTH_DELIMITED) {
+            int limit = in.pushLimit(in.readRawVarint32());
+            while (!in.isAtEnd())
+                values.add(in.readSInt32());
+            in.popLimit(limit);
+        } else {
+            values.add(in.readSInt32());
+        }
+    }
+
+    private static PointList toPointList(IntBuffer values, boolean elevation, double multiplier) {
+        int dims = elevation ? 3 : 2;
+        if (values.size % dims != 0)
+            throw new IllegalArgumentException("Number of point values " + values.size + " is not a multiple of " + dims);
+        PointList pointList = new PointList(values.size / dims, elevation);
+        int lat = 0, lon = 0, ele = 0;
+        for (int i = 0; i < values.size; i += dims) {
+            lat += values.values[i];
+            lon += values.values[i + 1];
+            if (elevation) {
+                ele += values.values[i + 2];
+                pointList.add(lat / multiplier, lon / multiplier, ele / 100.0);
+            } else {
+                pointList.add(lat / multiplier, lon / multiplier);
+            }
+        }
+        return pointList;
+    }
+
+    private static class IntBuffer {
+        int[] values = new int[16];
+        int size;
+
+        void add(int value) {
+            if (size == values.length)
+                values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+    }
+}
@@ -66,6 +66,18 @@ public class Parameters {
             public static final String MAX_WEIGHT = ALT_ROUTE + ".max_weight_factor";
 
             public static final String MAX_SHARE = ALT_ROUTE + ".max_share_factor";
+
+            /**
+             * The method to find alternatives for flexible and landmark profiles, either the default bidirectional
+             * search with a large exploration or {@link #PLATEAU}.
+             */
+            public static final String METHOD = ALT_ROUTE + ".method";
+
+            /**
+             * Finds the alternatives on the plateaus of a forward and a backward shortest path tree, which is faster
+             * for long routes.
+             */
+            public static final String PLATEAU = "plateau";
         }
 
         public static final class AStar {
@@ -129,6 +141,11 @@ public class Parameters {
          */
         public static final double DEFAULT_HEADING_PENALTY = 300;
         public static final String HEADING_PENALTY = "heading_penalty";
+        /**
+         * the departure time as ISO-8601 date-time with offset or as milliseconds since the epoch. Routes with a
+         * departure time consider the speed profiles of the edges (not for CH)
+         */
+        public static final String DEPARTURE_TIME = "departure_time";
     }
 
     /**
@@ -58,6 +58,15 @@ public class ResponsePathRepresentationTest {
         assertEquals(list, ResponsePathDeserializerHelper.decodePolyline(str, list.size(), false, 1e5));
     }
 
+    @Test
+    public void testLongPolyline() {
+        PointList list = new PointList(1000, true);
+        for (int i = 0; i < 1000; i++)
+            list.add(-80 + i * 0.16, -170 + i * 0.34, i % 2 == 0 ? -100 : 5000);
+        String str = ResponsePathSerializer.encodePolyline(list, true, 1e5);
+        assertEquals(list, ResponsePathDeserializerHelper.decodePolyline(str, list.size(), true, 1e5));
+    }
+
     @Test
     public void testDecode3D() {
         PointList list = ResponsePathDeserializerHelper.decodePolyline("_p~iF~ps|Uo}@", 1, true, 1e5);
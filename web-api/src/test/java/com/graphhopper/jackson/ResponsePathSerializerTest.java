@@ -0,0 +1,47 @@
+package com.graphhopper.jackson;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.graphhopper.GHResponse;
+import com.graphhopper.ResponsePath;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.details.PathDetail;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ResponsePathSerializerTest {
+    private final ObjectMapper objectMapper = Jackson.newObjectMapper();
+
+    @Test
+    public void streamingEqualsTree() throws Exception {
+        GHResponse rsp = new GHResponse();
+        rsp.getHints().putObject("visited_nodes.sum", 42);
+        for (int i = 0; i < 2; i++) {
+            ResponsePath path = new ResponsePath();
+            path.setPoints(Helper.createPointList3D(38.5, -120.2, 10, 40.7, -120.95, 1234 + i, 43.252, -126.453, 1234));
+            path.setWaypoints(Helper.createPointList3D(38.5, -120.2, 10, 43.252, -126.453, 1234));
+            path.setDistance(1234.5678 + i).setTime(3600_000).setRouteWeight(123.4567891).setAscend(1224).setDescend(0);
+            path.setDescription(List.of("main street"));
+            PathDetail detail = new PathDetail(50.0);
+            detail.setFirst(0);
+            detail.setLast(2);
+            path.addPathDetails(Map.of("max_speed", List.of(detail)));
+            path.setFare(new BigDecimal("2.5"));
+            rsp.add(path);
+        }
+        ResponsePathSerializer.Info info = new ResponsePathSerializer.Info(List.of("GraphHopper", "OpenStreetMap contributors"), 12, "2024-01-01T00:00:00Z");
+        for (boolean calcPoints : new boolean[]{true, false})
+            for (boolean pointsEncoded : new boolean[]{true, false})
+                for (boolean enableElevation : new boolean[]{true, false}) {
+                    JsonNode expected = ResponsePathSerializer.jsonObject(rsp, info, false, calcPoints, enableElevation, pointsEncoded, 1e5);
+                    String streamed = objectMapper.writeValueAsString(new ResponsePathSerializer.RouteResponse(rsp, info, false,
+                            calcPoints, enableElevation, pointsEncoded, 1e5));
+                    assertEquals(objectMapper.writeValueAsString(expected), streamed);
+                }
+    }
+}
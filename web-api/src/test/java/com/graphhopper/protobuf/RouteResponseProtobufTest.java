@@ -0,0 +1,129 @@
+package com.graphhopper.protobuf;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.graphhopper.GHResponse;
+import com.graphhopper.ResponsePath;
+import com.graphhopper.jackson.Jackson;
+import com.graphhopper.jackson.ResponsePathDeserializerHelper;
+import com.graphhopper.jackson.ResponsePathSerializer;
+import com.graphhopper.util.*;
+import com.graphhopper.util.details.PathDetail;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RouteResponseProtobufTest {
+    private final ObjectMapper objectMapper = Jackson.newObjectMapper();
+
+    @Test
+    public void decodedLikeJson() throws Exception {
+        GHResponse rsp = new GHResponse();
+        rsp.getHints().putObject("visited_nodes.sum", 42);
+        rsp.getHints().putObject("visited_nodes.average", 21.5);
+        rsp.add(createPath(0));
+        rsp.add(createPath(1));
+        ResponsePathSerializer.Info info = new ResponsePathSerializer.Info(List.of("GraphHopper"), 12, null);
+        for (boolean enableElevation : new boolean[]{true, false}) {
+            JsonNode json = objectMapper.readTree(objectMapper.writeValueAsString(
+                    ResponsePathSerializer.jsonObject(rsp, info, true, true, enableElevation, true, 1e6)));
+            GHResponse decoded = writeAndRead(rsp, info, true, true, enableElevation);
+            assertEquals(42, decoded.getHints().getInt("visited_nodes.sum", 0));
+            assertEquals(21.5, decoded.getHints().getDouble("visited_nodes.average", 0));
+            assertEquals(2, decoded.getAll().size());
+            for (int i = 0; i < 2; i++) {
+                ResponsePath expected = ResponsePathDeserializerHelper.createResponsePath(objectMapper, json.get("paths").get(i), enableElevation, true);
+                ResponsePath actual = decoded.getAll().get(i);
+                assertEquals(expected.getDistance(), actual.getDistance());
+                assertEquals(expected.getRouteWeight(), actual.getRouteWeight());
+                assertEquals(expected.getTime(), actual.getTime());
+                assertEquals(expected.getAscend(), actual.getAscend());
+                assertEquals(expected.getDescend(), actual.getDescend());
+                assertEquals(expected.getDescription(), actual.getDescription());
+                assertEquals(expected.getPoints(), actual.getPoints());
+                assertEquals(expected.getWaypoints(), actual.getWaypoints());
+                assertEquals(expected.getPointsOrder(), actual.getPointsOrder());
+                assertEquals(expected.getPathDetails().toString(), actual.getPathDetails().toString());
+                assertEquals(new BigDecimal("2.5"), actual.getFare());
+
+                assertEquals(expected.getInstructions().size(), actual.getInstructions().size());
+                for (int j = 0; j < expected.getInstructions().size(); j++) {
+                    Instruction expectedInstr = expected.getInstructions().get(j);
+                    Instruction actualInstr = actual.getInstructions().get(j);
+                    assertEquals(expectedInstr.getClass(), actualInstr.getClass());
+                    assertEquals(expectedInstr.getSign(), actualInstr.getSign());
+                    assertEquals(expectedInstr.getTurnDescription(null), actualInstr.getTurnDescription(null));
+                    assertEquals(expectedInstr.getDistance(), actualInstr.getDistance());
+                    assertEquals(expectedInstr.getTime(), actualInstr.getTime());
+                    assertEquals(expectedInstr.getPoints(), actualInstr.getPoints());
+                    assertEquals(expectedInstr.getExtraInfoJSON(), actualInstr.getExtraInfoJSON());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void withoutPoints() throws Exception {
+        GHResponse rsp = new GHResponse();
+        rsp.add(createPath(0));
+        GHResponse decoded = writeAndRead(rsp, new ResponsePathSerializer.Info(List.of(), 0, null), false, false, false);
+        ResponsePath path = decoded.getBest();
+        assertEquals(2, path.getWaypoints().size());
+        assertTrue(path.getPoints().isEmpty());
+        assertTrue(path.getPathDetails().isEmpty());
+        assertEquals(1234.568, path.getDistance());
+    }
+
+    private GHResponse writeAndRead(GHResponse rsp, ResponsePathSerializer.Info info, boolean enableInstructions,
+                                    boolean calcPoints, boolean enableElevation) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RouteResponseProtobuf.write(out, rsp, info, enableInstructions, calcPoints, enableElevation, 1e6);
+        return RouteResponseProtobuf.read(new ByteArrayInputStream(out.toByteArray()), true);
+    }
+
+    private static ResponsePath createPath(int offset) {
+        ResponsePath path = new ResponsePath();
+        PointList points = Helper.createPointList3D(38.5, -120.2, 10, 38.6, -120.3, 12.5, 38.7, -120.35 - offset, 1234,
+                38.71, -120.36, 1230, 38.8, -120.4, 1200);
+        path.setPoints(points);
+        path.setWaypoints(Helper.createPointList3D(38.5, -120.2, 10, 38.8, -120.4, 1200));
+        path.setDistance(1234.5678 + offset).setTime(3600_000).setRouteWeight(123.4567891).setAscend(1224).setDescend(34);
+        path.setDescription(List.of("main street"));
+        path.setFare(new BigDecimal("2.5"));
+
+        InstructionList instructions = new InstructionList(null);
+        Instruction continueInstr = new Instruction(Instruction.CONTINUE_ON_STREET, "main street", points.copy(0, 2));
+        continueInstr.setExtraInfo("heading", 270.5);
+        RoundaboutInstruction roundabout = new RoundaboutInstruction(Instruction.USE_ROUNDABOUT, "circle", points.copy(2, 4));
+        roundabout.setExitNumber(2).setDirOfRotation(-1).setRadian(-Math.PI + 1.5).setExited();
+        FinishInstruction finish = new FinishInstruction("", points, 4);
+        for (Instruction instruction : List.of(continueInstr, roundabout, finish)) {
+            instruction.setUseRawName();
+            instruction.setDistance(100 + offset).setTime(10_000);
+            instructions.add(instruction);
+        }
+        path.setInstructions(instructions);
+
+        PathDetail maxSpeed = new PathDetail(50.0);
+        maxSpeed.setFirst(0);
+        maxSpeed.setLast(4);
+        PathDetail streetName = new PathDetail("main street");
+        streetName.setFirst(0);
+        streetName.setLast(2);
+        PathDetail noStreetName = new PathDetail(null);
+        noStreetName.setFirst(2);
+        noStreetName.setLast(4);
+        PathDetail intersection = new PathDetail(Map.of("bearings", List.of(90L, 270L), "in", 1L));
+        intersection.setFirst(2);
+        intersection.setLast(3);
+        path.addPathDetails(Map.of("max_speed", List.of(maxSpeed), "street_name", List.of(streetName, noStreetName),
+                "intersection", List.of(intersection)));
+        return path;
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Separates the CPU-bound parts of requests from waiting for I/O. With virtual threads, see server.enableVirtualThreads,
+ * the number of request threads is no longer limited by the thread pool, so the resources acquire a permit of this
+ * class only for their calculation and the number of threads that calculate at the same time stays close to the
+ * number of CPU cores. Reading the request and streaming the response happen outside the permit.
+ * <p>
+ * The background executors of the bundles are created here as well, so that they follow the same model.
+ */
+public class ComputeLimiter {
+    private static final Logger logger = LoggerFactory.getLogger(ComputeLimiter.class);
+    private final Semaphore semaphore;
+    private final Timer waitTimer;
+    private final boolean virtualThreads;
+
+    /**
+     * Creates an instance that does not limit the calculations and uses platform threads.
+     */
+    public ComputeLimiter() {
+        this.semaphore = null;
+        this.waitTimer = null;
+        this.virtualThreads = false;
+    }
+
+    /**
+     * @param permits        the number of calculations that run at the same time, 0 for no limit
+     * @param virtualThreads true if the background executors should use virtual threads. This requires Java 21 and
+     *                       is ignored otherwise.
+     */
+    public ComputeLimiter(int permits, boolean virtualThreads, MetricRegistry metrics) {
+        if (permits < 0)
+            throw new IllegalArgumentException("The number of compute permits must not be negative, was: " + permits);
+        this.virtualThreads = virtualThreads && Runtime.version().feature() >= 21;
+        if (virtualThreads && !this.virtualThreads)
+            logger.warn("Virtual threads are not supported by Java " + Runtime.version().feature() + ", using platform threads");
+        if (permits == 0) {
+            this.semaphore = null;
+            this.waitTimer = null;
+            return;
+        }
+        Semaphore semaphore = new Semaphore(permits, true);
+        this.semaphore = semaphore;
+        this.waitTimer = metrics.timer("graphhopper.compute.wait");
+        metrics.register("graphhopper.compute.active", (Gauge<Integer>) () -> permits - semaphore.availablePermits());
+        metrics.register("graphhopper.compute.queued", (Gauge<Integer>) semaphore::getQueueLength);
+    }
+
+    /**
+     * Waits until the calling thread may calculate. Use it after waiting for other resources like the
+     * {@link RouteAdmission} so that waiting requests do not block the CPU for others.
+     */
+    public Permit acquire() {
+        if (semaphore == null)
+            return Permit.NONE;
+        if (!semaphore.tryAcquire()) {
+            try (Timer.Context ignored = waitTimer.time()) {
+                semaphore.acquireUninterruptibly();
+            }
+        }
+        return semaphore::release;
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * @return an executor for background tasks that mostly wait for I/O. It runs every task in a new virtual thread
+     * if they are enabled, otherwise in a single platform thread with the given name.
+     */
+    public ExecutorService newBackgroundExecutor(String name) {
+        if (virtualThreads)
+            return newVirtualThreadPerTaskExecutor();
+        AtomicInteger counter = new AtomicInteger();
+        ThreadFactory threadFactory = r -> {
+            Thread thread = new Thread(r, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        return Executors.newSingleThreadExecutor(threadFactory);
+    }
+
+    /**
+     * We still compile for Java 17, so we look up the virtual threads at runtime.
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException ex) {
+            throw new IllegalStateException("Cannot create virtual threads", ex);
+        }
+    }
+}
@@ -18,11 +18,13 @@
 
 package com.graphhopper.http;
 
+import com.codahale.metrics.Gauge;
 import com.fasterxml.jackson.databind.MapperFeature;
 import com.fasterxml.jackson.databind.util.StdDateFormat;
 import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
 import com.graphhopper.GraphHopper;
 import com.graphhopper.GraphHopperConfig;
+import com.graphhopper.config.Profile;
 import com.graphhopper.gtfs.*;
 import com.graphhopper.http.health.GraphHopperHealthCheck;
 import com.graphhopper.isochrone.algorithm.JTSTriangulator;
@@ -30,19 +32,27 @@ import com.graphhopper.isochrone.algorithm.Triangulator;
 import com.graphhopper.jackson.Jackson;
 import com.graphhopper.matching.MapMatching;
 import com.graphhopper.resources.*;
+import com.graphhopper.routing.RouteCache;
+import com.graphhopper.routing.SnapCache;
 import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.weighting.TrafficOverlay;
+import com.graphhopper.routing.weighting.custom.CustomModelParser;
 import com.graphhopper.storage.BaseGraph;
 import com.graphhopper.storage.index.LocationIndex;
 import com.graphhopper.util.PMap;
 import com.graphhopper.util.TranslationMap;
 import com.graphhopper.util.details.PathDetailsBuilderFactory;
+import io.dropwizard.core.Configuration;
 import io.dropwizard.core.ConfiguredBundle;
+import io.dropwizard.core.server.AbstractServerFactory;
 import io.dropwizard.core.setup.Bootstrap;
 import io.dropwizard.core.setup.Environment;
 import org.glassfish.hk2.api.Factory;
 import org.glassfish.hk2.utilities.binding.AbstractBinder;
 
 import javax.inject.Inject;
+import java.nio.file.Paths;
+import java.util.stream.Collectors;
 
 public class GraphHopperBundle implements ConfiguredBundle<GraphHopperBundleConfiguration> {
 
@@ -250,18 +260,38 @@ public class GraphHopperBundle implements ConfiguredBundle<GraphHopperBundleConf
         environment.jersey().register(new MultiExceptionMapper());
         environment.jersey().register(new MultiExceptionGPXMessageBodyWriter());
 
+        // Writes the route response as protobuf for 'Accept: application/x-protobuf'
+        environment.jersey().register(new RouteProtobufMessageBodyWriter());
+
         // This makes an IllegalArgumentException come out as a MultiException with
         // a single entry.
         environment.jersey().register(new IllegalArgumentExceptionMapper());
+        environment.jersey().register(new TooManyRequestsExceptionMapper());
 
         final GraphHopperManaged graphHopperManaged = new GraphHopperManaged(configuration.getGraphHopperConfiguration());
         environment.lifecycle().manage(graphHopperManaged);
         final GraphHopper graphHopper = graphHopperManaged.getGraphHopper();
+        // the durations of the phases of the route requests and of the serialization of their responses
+        graphHopper.setRouteListener(new MetricsRouteListener(environment.metrics()));
+        SlowQueryLog slowQueryLog = null;
+        long slowQueryThreshold = configuration.getGraphHopperConfiguration().getLong("routing.slow_query_log.threshold_ms", -1);
+        if (slowQueryThreshold >= 0) {
+            slowQueryLog = new SlowQueryLog(Paths.get(configuration.getGraphHopperConfiguration().getString("routing.slow_query_log.file", "logs/slow_queries.log")),
+                    slowQueryThreshold, configuration.getGraphHopperConfiguration().getInt("routing.slow_query_log.queue_size", 1000));
+            environment.lifecycle().manage(slowQueryLog);
+            environment.metrics().register("graphhopper.slow_query_log.logged", (Gauge<Long>) slowQueryLog::getLogged);
+            environment.metrics().register("graphhopper.slow_query_log.dropped", (Gauge<Long>) slowQueryLog::getDropped);
+        }
+        environment.jersey().register(new RouteSerializationTimer(environment.metrics(), slowQueryLog));
+        final RouteAdmission routeAdmission = createRouteAdmission(configuration.getGraphHopperConfiguration(), environment);
+        final ComputeLimiter computeLimiter = createComputeLimiter(configuration, environment);
         environment.jersey().register(new AbstractBinder() {
             @Override
             protected void configure() {
                 bind(configuration.getGraphHopperConfiguration()).to(GraphHopperConfig.class);
                 bind(graphHopper).to(GraphHopper.class);
+                bind(routeAdmission).to(RouteAdmission.class);
+                bind(computeLimiter).to(ComputeLimiter.class);
 
                 bind(new JTSTriangulator(graphHopper.getRouterConfig())).to(Triangulator.class);
                 bindFactory(MapMatchingRouterFactoryFactory.class).to(MapMatchingResource.MapMatchingRouterFactory.class);
@@ -307,5 +337,74 @@ public class GraphHopperBundle implements ConfiguredBundle<GraphHopperBundleConf
         environment.healthChecks().register("graphhopper", new GraphHopperHealthCheck(graphHopper));
         environment.jersey().register(environment.healthChecks());
         environment.jersey().register(HealthCheckResource.class);
+
+        if (graphHopper.getRouterConfig().getSnapCacheSize() > 0) {
+            // the cache is only created once the graph is loaded, so we have to look it up lazily
+            environment.metrics().register("graphhopper.snap_cache.hit_rate", (Gauge<Double>) () -> {
+                SnapCache snapCache = graphHopper.getSnapCache();
+                return snapCache == null ? 0 : snapCache.getHitRate();
+            });
+            environment.metrics().register("graphhopper.snap_cache.evictions", (Gauge<Long>) () -> {
+                SnapCache snapCache = graphHopper.getSnapCache();
+                return snapCache == null ? 0 : snapCache.getEvictions();
+            });
+            environment.metrics().register("graphhopper.snap_cache.size", (Gauge<Integer>) () -> {
+                SnapCache snapCache = graphHopper.getSnapCache();
+                return snapCache == null ? 0 : snapCache.getSize();
+            });
+        }
+        if (graphHopper.getRouterConfig().getRouteCacheSize() > 0) {
+            environment.metrics().register("graphhopper.route_cache.hit_rate", (Gauge<Double>) () -> {
+                RouteCache routeCache = graphHopper.getRouteCache();
+                return routeCache == null ? 0 : routeCache.getHitRate();
+            });
+            environment.metrics().register("graphhopper.route_cache.evictions", (Gauge<Long>) () -> {
+                RouteCache routeCache = graphHopper.getRouteCache();
+                return routeCache == null ? 0 : routeCache.getEvictions();
+            });
+            environment.metrics().register("graphhopper.route_cache.size", (Gauge<Integer>) () -> {
+                RouteCache routeCache = graphHopper.getRouteCache();
+                return routeCache == null ? 0 : routeCache.getSize();
+            });
+        }
+        if (configuration.getGraphHopperConfiguration().getBool("routing.traffic_overlay", false)) {
+            environment.admin().addServlet("traffic", new TrafficUpdateServlet(graphHopper)).addMapping("/traffic");
+            environment.metrics().register("graphhopper.traffic.updates", (Gauge<Long>) () -> {
+                TrafficOverlay trafficOverlay = graphHopper.getTrafficOverlay();
+                return trafficOverlay == null ? 0 : trafficOverlay.getUpdates();
+            });
+        }
+        environment.admin().addServlet("memory", new MemoryServlet(graphHopper)).addMapping("/memory");
+        environment.metrics().register("graphhopper.custom_model.cache_hits", (Gauge<Long>) CustomModelParser::getCacheHits);
+        environment.metrics().register("graphhopper.custom_model.cache_misses", (Gauge<Long>) CustomModelParser::getCacheMisses);
+        environment.metrics().register("graphhopper.custom_model.compilations", (Gauge<Long>) CustomModelParser::getCompilations);
+        environment.metrics().register("graphhopper.custom_model.compilation_time_ms",
+                (Gauge<Long>) () -> CustomModelParser.getCompilationNanos() / 1_000_000);
+        environment.metrics().register("graphhopper.custom_model.interpreted", (Gauge<Long>) CustomModelParser::getInterpretedWeightings);
+        environment.metrics().register("graphhopper.custom_model.pending_compilations", (Gauge<Integer>) CustomModelParser::getPendingCompilations);
+    }
+
+    /**
+     * With server.enableVirtualThreads the number of request threads is unbounded, so by default we limit the number of
+     * concurrent calculations to the number of CPU cores.
+     */
+    private static ComputeLimiter createComputeLimiter(GraphHopperBundleConfiguration configuration, Environment environment) {
+        boolean virtualThreads = configuration instanceof Configuration dropwizardConfig
+                && dropwizardConfig.getServerFactory() instanceof AbstractServerFactory serverFactory
+                && serverFactory.isEnableVirtualThreads();
+        int permits = configuration.getGraphHopperConfiguration().getInt("routing.compute_permits",
+                virtualThreads ? Runtime.getRuntime().availableProcessors() : 0);
+        if (!virtualThreads && permits == 0)
+            return new ComputeLimiter();
+        return new ComputeLimiter(permits, virtualThreads, environment.metrics());
+    }
+
+    private static RouteAdmission createRouteAdmission(GraphHopperConfig config, Environment environment) {
+        int maxConcurrent = config.getInt("routing.admission.max_concurrent", 0);
+        if (maxConcurrent <= 0)
+            return new RouteAdmission();
+        return new RouteAdmission(config.getProfiles().stream().map(Profile::getName).collect(Collectors.toList()), maxConcurrent,
+                config.getInt("routing.admission.max_queued", maxConcurrent),
+                config.getLong("routing.admission.queue_timeout_ms", 1000), environment.metrics());
     }
 }
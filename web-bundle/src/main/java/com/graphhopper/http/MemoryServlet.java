@@ -0,0 +1,79 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.graphhopper.GraphHopper;
+import com.graphhopper.jackson.Jackson;
+import com.graphhopper.storage.MemoryReport;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Lists the capacity and the resident bytes of every DataAccess and the estimated heap size of the caches on the
+ * admin port, see {@link MemoryReport}. Useful to find out how many profiles fit on a server. Example:
+ * <pre>curl localhost:8990/memory</pre>
+ */
+public class MemoryServlet extends HttpServlet {
+    private final ObjectMapper objectMapper = Jackson.newObjectMapper();
+    private final GraphHopper graphHopper;
+
+    public MemoryServlet(GraphHopper graphHopper) {
+        this.graphHopper = graphHopper;
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        resp.setContentType("application/json");
+        if (!graphHopper.getFullyLoaded()) {
+            resp.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            resp.getWriter().print("{\"message\":\"GraphHopper is not loaded yet\"}");
+            return;
+        }
+        MemoryReport report = graphHopper.getMemoryReport();
+        ObjectNode json = objectMapper.createObjectNode();
+        json.put("heap_bytes", report.getHeapBytes());
+        json.put("mmap_bytes", report.getMMapBytes());
+        json.put("mmap_resident_bytes", report.getMMapResidentBytes());
+        Runtime runtime = Runtime.getRuntime();
+        json.put("jvm_heap_used_bytes", runtime.totalMemory() - runtime.freeMemory());
+        json.put("jvm_heap_max_bytes", runtime.maxMemory());
+        ArrayNode das = json.putArray("data_accesses");
+        for (MemoryReport.Entry entry : report.getDataAccesses()) {
+            ObjectNode da = das.addObject();
+            da.put("name", entry.getName());
+            da.put("type", entry.getType().toString());
+            da.put("mmap", entry.getType().isMMap());
+            da.put("capacity", entry.getCapacity());
+            da.put("resident_bytes", entry.getResidentBytes());
+            da.put("segments", entry.getSegments());
+            da.put("segment_size", entry.getSegmentSize());
+        }
+        ObjectNode caches = json.putObject("caches");
+        for (Map.Entry<String, Long> cache : report.getCaches().entrySet()) {
+            caches.put(cache.getKey(), cache.getValue());
+        }
+        objectMapper.writeValue(resp.getWriter(), json);
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.graphhopper.routing.RouteListener;
+import com.graphhopper.util.Helper;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the phases of the route requests as timers named graphhopper.route.&lt;solver&gt;.&lt;profile&gt;.&lt;phase&gt;,
+ * e.g. graphhopper.route.ch.car.search, and the visited nodes as histogram and counter. The metrics are looked up in the
+ * registry only once and then reused for all requests.
+ */
+public class MetricsRouteListener implements RouteListener {
+    private static final Phase[] PHASES = Phase.values();
+    private final MetricRegistry metrics;
+    private final Map<String, Map<String, ProfileMetrics>> metricsBySolver = new ConcurrentHashMap<>();
+
+    public MetricsRouteListener(MetricRegistry metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void onPhase(String profile, String solver, Phase phase, long nanos) {
+        getProfileMetrics(solver, profile).getTimer(phase).update(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void onVisitedNodes(String profile, String solver, long visitedNodes) {
+        ProfileMetrics profileMetrics = getProfileMetrics(solver, profile);
+        profileMetrics.getVisitedNodes().update(visitedNodes);
+        profileMetrics.getVisitedNodesTotal().inc(visitedNodes);
+    }
+
+    private ProfileMetrics getProfileMetrics(String solver, String profile) {
+        return metricsBySolver.computeIfAbsent(solver, s -> new ConcurrentHashMap<>())
+                .computeIfAbsent(profile, p -> new ProfileMetrics(metrics, MetricRegistry.name("graphhopper.route", solver, p)));
+    }
+
+    /**
+     * The metrics are only registered when they are used for the first time. Concurrent requests might both look them
+     * up, but the registry returns the same instance.
+     */
+    private static class ProfileMetrics {
+        private final MetricRegistry metrics;
+        private final String prefix;
+        private final Timer[] phaseTimers = new Timer[PHASES.length];
+        private Histogram visitedNodes;
+        private Counter visitedNodesTotal;
+
+        ProfileMetrics(MetricRegistry metrics, String prefix) {
+            this.metrics = metrics;
+            this.prefix = prefix;
+        }
+
+        Timer getTimer(Phase phase) {
+            Timer timer = phaseTimers[phase.ordinal()];
+            if (timer == null)
+                phaseTimers[phase.ordinal()] = timer = metrics.timer(MetricRegistry.name(prefix, Helper.toLowerCase(phase.name())));
+            return timer;
+        }
+
+        Histogram getVisitedNodes() {
+            if (visitedNodes == null)
+                visitedNodes = metrics.histogram(MetricRegistry.name(prefix, "visited_nodes"));
+            return visitedNodes;
+        }
+
+        Counter getVisitedNodesTotal() {
+            if (visitedNodesTotal == null)
+                visitedNodesTotal = metrics.counter(MetricRegistry.name(prefix, "visited_nodes_total"));
+            return visitedNodesTotal;
+        }
+    }
+}
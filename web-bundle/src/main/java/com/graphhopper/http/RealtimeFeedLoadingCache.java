@@ -42,7 +42,6 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 public class RealtimeFeedLoadingCache implements Factory<RealtimeFeed>, Managed {
@@ -52,17 +51,19 @@ public class RealtimeFeedLoadingCache implements Factory<RealtimeFeed>, Managed
     private final EncodingManager encodingManager;
     private final GtfsStorage gtfsStorage;
     private final RealtimeBundleConfiguration bundleConfiguration;
+    private final ComputeLimiter computeLimiter;
     private ExecutorService executor;
     private LoadingCache<String, RealtimeFeed> cache;
     private Map<String, Transfers> transfers;
 
     @Inject
-    RealtimeFeedLoadingCache(BaseGraph baseGraph, EncodingManager encodingManager, GtfsStorage gtfsStorage, HttpClient httpClient, RealtimeBundleConfiguration bundleConfiguration) {
+    RealtimeFeedLoadingCache(BaseGraph baseGraph, EncodingManager encodingManager, GtfsStorage gtfsStorage, HttpClient httpClient, RealtimeBundleConfiguration bundleConfiguration, ComputeLimiter computeLimiter) {
         this.baseGraph = baseGraph;
         this.encodingManager = encodingManager;
         this.gtfsStorage = gtfsStorage;
         this.bundleConfiguration = bundleConfiguration;
         this.httpClient = httpClient;
+        this.computeLimiter = computeLimiter;
     }
 
     @Override
@@ -71,7 +72,8 @@ public class RealtimeFeedLoadingCache implements Factory<RealtimeFeed>, Managed
         for (Map.Entry<String, GTFSFeed> entry : this.gtfsStorage.getGtfsFeeds().entrySet()) {
             this.transfers.put(entry.getKey(), new Transfers(entry.getValue()));
         }
-        this.executor = Executors.newSingleThreadExecutor();
+        // fetching the feeds mostly waits for the network
+        this.executor = computeLimiter.newBackgroundExecutor("gtfs-realtime");
         this.cache = CacheBuilder.newBuilder()
                 .maximumSize(1)
                 .refreshAfterWrite(1, TimeUnit.MINUTES)
@@ -119,7 +121,9 @@ public class RealtimeFeedLoadingCache implements Factory<RealtimeFeed>, Managed
                 throw new RuntimeException(e);
             }
         }
-        return RealtimeFeed.fromProtobuf(gtfsStorage, this.transfers, feedMessageMap);
+        try (Permit ignored = computeLimiter.acquire()) {
+            return RealtimeFeed.fromProtobuf(gtfsStorage, this.transfers, feedMessageMap);
+        }
     }
 
 }
@@ -0,0 +1,117 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Limits the number of route requests that are calculated at the same time per profile. Further requests wait in a
+ * queue for up to queueTimeoutMillis and are rejected with a {@link TooManyRequestsException} if the queue is full
+ * or if they waited too long. This way a burst of expensive requests for one profile cannot starve the others and
+ * clients get a fast answer instead of waiting for a timeout when the server is saturated.
+ */
+public class RouteAdmission {
+    private final Map<String, Limiter> limiters = new HashMap<>();
+    private final int maxQueued;
+    private final long queueTimeoutMillis;
+
+    /**
+     * Creates an instance that does not limit any request.
+     */
+    public RouteAdmission() {
+        this.maxQueued = 0;
+        this.queueTimeoutMillis = 0;
+    }
+
+    /**
+     * @param maxConcurrent the number of requests per profile that are calculated at the same time
+     * @param maxQueued     the number of requests per profile that wait for one of the running requests
+     */
+    public RouteAdmission(Collection<String> profiles, int maxConcurrent, int maxQueued, long queueTimeoutMillis, MetricRegistry metrics) {
+        if (maxConcurrent < 1)
+            throw new IllegalArgumentException("routing.admission.max_concurrent must be at least 1, was: " + maxConcurrent);
+        if (maxQueued < 0)
+            throw new IllegalArgumentException("routing.admission.max_queued must not be negative, was: " + maxQueued);
+        this.maxQueued = maxQueued;
+        this.queueTimeoutMillis = queueTimeoutMillis;
+        for (String profile : profiles) {
+            Limiter limiter = new Limiter(new Semaphore(maxConcurrent, true),
+                    metrics.counter("graphhopper.route.admission." + profile + ".rejected"),
+                    metrics.timer("graphhopper.route.admission." + profile + ".wait"));
+            metrics.register("graphhopper.route.admission." + profile + ".active",
+                    (Gauge<Integer>) () -> maxConcurrent - limiter.semaphore.availablePermits());
+            metrics.register("graphhopper.route.admission." + profile + ".queued", (Gauge<Integer>) limiter.queued::get);
+            limiters.put(profile, limiter);
+        }
+    }
+
+    /**
+     * Waits until a request for the given profile may be calculated. The returned permit has to be closed once the
+     * calculation is done. Unknown profiles are not limited, because the Router rejects them anyway.
+     */
+    public Permit acquire(String profile) {
+        Limiter limiter = limiters.get(profile);
+        if (limiter == null)
+            return Permit.NONE;
+        if (limiter.semaphore.tryAcquire())
+            return limiter.semaphore::release;
+
+        if (limiter.queued.incrementAndGet() > maxQueued) {
+            limiter.queued.decrementAndGet();
+            limiter.rejected.inc();
+            throw new TooManyRequestsException("Too many requests for profile '" + profile + "', try again later");
+        }
+        boolean acquired;
+        try (Timer.Context ignored = limiter.wait.time()) {
+            acquired = limiter.semaphore.tryAcquire(queueTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        } finally {
+            limiter.queued.decrementAndGet();
+        }
+        if (!acquired) {
+            limiter.rejected.inc();
+            throw new TooManyRequestsException("Too many requests for profile '" + profile + "', try again later");
+        }
+        return limiter.semaphore::release;
+    }
+
+    private static class Limiter {
+        final Semaphore semaphore;
+        final AtomicInteger queued = new AtomicInteger();
+        final Counter rejected;
+        final Timer wait;
+
+        Limiter(Semaphore semaphore, Counter rejected, Timer wait) {
+            this.semaphore = semaphore;
+            this.rejected = rejected;
+            this.wait = wait;
+        }
+    }
+}
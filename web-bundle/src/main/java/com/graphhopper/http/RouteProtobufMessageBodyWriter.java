@@ -0,0 +1,56 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import com.graphhopper.jackson.ResponsePathSerializer;
+import com.graphhopper.protobuf.RouteResponseProtobuf;
+
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+/**
+ * Writes the route response as protobuf if the client requested it via 'Accept: application/x-protobuf'.
+ */
+@Provider
+@Produces(RouteResponseProtobuf.MEDIA_TYPE)
+public class RouteProtobufMessageBodyWriter implements MessageBodyWriter<ResponsePathSerializer.RouteResponse> {
+
+    @Override
+    public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return type == ResponsePathSerializer.RouteResponse.class;
+    }
+
+    @Override
+    public long getSize(ResponsePathSerializer.RouteResponse rsp, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return -1;
+    }
+
+    @Override
+    public void writeTo(ResponsePathSerializer.RouteResponse rsp, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType, MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream) throws IOException, WebApplicationException {
+        RouteResponseProtobuf.write(entityStream, rsp.ghRsp(), rsp.info(), rsp.enableInstructions(), rsp.calcPoints(),
+                rsp.enableElevation(), rsp.pointsMultiplier());
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.io.CountingOutputStream;
+import com.graphhopper.RouteStats;
+import com.graphhopper.jackson.ResponsePathSerializer;
+import com.graphhopper.protobuf.RouteResponseProtobuf;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.ext.Provider;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The route responses are written after RouteResource returns, so we measure the serialization here. This includes
+ * the time to send the response to the client, because it is streamed. If a {@link SlowQueryLog} is given the slow
+ * requests are logged here as well, because only now we know the size of their responses.
+ */
+@Provider
+public class RouteSerializationTimer implements WriterInterceptor {
+    private final Timer jsonTimer;
+    private final Timer protobufTimer;
+    private final SlowQueryLog slowQueryLog;
+
+    public RouteSerializationTimer(MetricRegistry metrics) {
+        this(metrics, null);
+    }
+
+    public RouteSerializationTimer(MetricRegistry metrics, SlowQueryLog slowQueryLog) {
+        this.slowQueryLog = slowQueryLog;
+        jsonTimer = metrics.timer("graphhopper.route.serialization.json");
+        protobufTimer = metrics.timer("graphhopper.route.serialization.protobuf");
+    }
+
+    @Override
+    public void aroundWriteTo(WriterInterceptorContext context) throws IOException, WebApplicationException {
+        if (!(context.getEntity() instanceof ResponsePathSerializer.RouteResponse)) {
+            context.proceed();
+            return;
+        }
+        boolean protobuf = RouteResponseProtobuf.MEDIA_TYPE.equals(context.getMediaType().getType() + "/" + context.getMediaType().getSubtype());
+        RouteStats stats = ((ResponsePathSerializer.RouteResponse) context.getEntity()).ghRsp().getStats();
+        if (slowQueryLog == null || stats == null) {
+            try (Timer.Context ignored = (protobuf ? protobufTimer : jsonTimer).time()) {
+                context.proceed();
+            }
+            return;
+        }
+        CountingOutputStream out = new CountingOutputStream(context.getOutputStream());
+        context.setOutputStream(out);
+        long start = System.nanoTime();
+        context.proceed();
+        long nanos = System.nanoTime() - start;
+        (protobuf ? protobufTimer : jsonTimer).update(nanos, TimeUnit.NANOSECONDS);
+        slowQueryLog.log(stats, protobuf ? "protobuf" : "json", nanos, out.getCount());
+    }
+}
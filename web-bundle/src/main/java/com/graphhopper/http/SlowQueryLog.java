@@ -0,0 +1,173 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.graphhopper.GHRequest;
+import com.graphhopper.RouteStats;
+import com.graphhopper.jackson.Jackson;
+import com.graphhopper.util.Helper;
+import io.dropwizard.lifecycle.Managed;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Writes the statistics of route requests that took longer than a threshold as JSON lines to a file. The lines are
+ * written by a background thread, so the request threads never wait for the disk. If the writer falls behind by
+ * more than queueSize lines the newest lines are dropped.
+ */
+public class SlowQueryLog implements Managed {
+    private static final Logger logger = LoggerFactory.getLogger(SlowQueryLog.class);
+    private final ObjectMapper objectMapper = Jackson.newObjectMapper();
+    private final Path file;
+    private final long thresholdNanos;
+    private final ThreadPoolExecutor executor;
+    private final LongAdder logged = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private Writer writer;
+
+    public SlowQueryLog(Path file, long thresholdMillis, int queueSize) {
+        if (thresholdMillis < 0)
+            throw new IllegalArgumentException("The threshold of the slow-query log must not be negative, was: " + thresholdMillis);
+        this.file = file;
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+        this.executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueSize), r -> {
+            Thread thread = new Thread(r, "slow-query-log");
+            thread.setDaemon(true);
+            return thread;
+        }, (r, e) -> dropped.increment());
+    }
+
+    @Override
+    public void start() throws IOException {
+        if (file.getParent() != null)
+            Files.createDirectories(file.getParent());
+        writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    @Override
+    public void stop() throws Exception {
+        executor.shutdown();
+        if (!executor.awaitTermination(10, TimeUnit.SECONDS))
+            logger.warn("Slow-query log did not finish writing within 10s");
+        if (writer != null)
+            writer.close();
+    }
+
+    /**
+     * Logs the given request if the calculation and the serialization took longer than the threshold together.
+     *
+     * @param format             the format of the response, json or protobuf
+     * @param serializationNanos the time to serialize and send the response
+     * @param responseBytes      the size of the response body
+     */
+    public void log(RouteStats stats, String format, long serializationNanos, long responseBytes) {
+        if (stats.getNanos() + serializationNanos < thresholdNanos)
+            return;
+        Instant time = Instant.now();
+        executor.execute(() -> write(createLine(time, stats, format, serializationNanos, responseBytes)));
+    }
+
+    ObjectNode createLine(Instant time, RouteStats stats, String format, long serializationNanos, long responseBytes) {
+        ObjectNode line = objectMapper.createObjectNode();
+        line.put("time", time.toString());
+        line.put("fingerprint", fingerprint(stats.getRequest()));
+        line.put("profile", stats.getProfile());
+        line.put("solver", stats.getSolver());
+        line.put("points", stats.getRequest().getPoints().size());
+        line.put("took_ms", millis(stats.getNanos() + serializationNanos));
+        line.put("routing_ms", millis(stats.getNanos()));
+        line.put("serialization_ms", millis(serializationNanos));
+        ObjectNode phases = line.putObject("phases_ms");
+        for (Map.Entry<String, Long> phase : stats.getPhaseNanos().entrySet())
+            phases.put(phase.getKey(), millis(phase.getValue()));
+        ObjectNode visitedNodes = line.putObject("visited_nodes");
+        visitedNodes.put("forward", stats.getVisitedNodesForward());
+        visitedNodes.put("backward", stats.getVisitedNodesBackward());
+        line.put("virtual_nodes", stats.getVirtualNodes());
+        line.put("response_format", format);
+        line.put("response_bytes", responseBytes);
+        return line;
+    }
+
+    private void write(ObjectNode line) {
+        try {
+            writer.write(objectMapper.writeValueAsString(line));
+            writer.write('\n');
+            writer.flush();
+            logged.increment();
+        } catch (IOException ex) {
+            logger.error("Cannot write to slow-query log " + file, ex);
+        }
+    }
+
+    /**
+     * @return a hash of the parameters that influence the route calculation. Requests with the same fingerprint are
+     * the same request, e.g. repeated by a client.
+     */
+    static String fingerprint(GHRequest request) {
+        String str = request.getPoints() + "|" + request.getProfile() + "|" + request.getAlgorithm()
+                + "|" + request.getHeadings() + "|" + request.getCurbsides() + "|" + request.getPointHints()
+                + "|" + request.getSnapPreventions() + "|" + request.getPathDetails() + "|" + request.getHints()
+                + "|" + request.getCustomModel() + "|" + request.getLocale();
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(str.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(16);
+            for (int i = 0; i < 8; i++)
+                sb.append(String.format("%02x", hash[i]));
+            return sb.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static double millis(long nanos) {
+        return Helper.round(nanos / 1e6, 3);
+    }
+
+    public long getThresholdMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(thresholdNanos);
+    }
+
+    public long getLogged() {
+        return logged.sum();
+    }
+
+    /**
+     * @return the number of slow requests that were not logged, because the queue was full
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import com.graphhopper.GraphHopper;
+import com.graphhopper.routing.weighting.TrafficOverlay;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Accepts binary batches of live traffic speeds on the admin port, see
+ * {@link TrafficOverlay#applyUpdates(java.io.InputStream, long)} for the format. With customize_ch=true the CH
+ * preparations are customized for the new speeds afterwards, see {@link GraphHopper#customizeCHForTraffic()}. Example:
+ * <pre>curl -H "Content-Type: application/octet-stream" --data-binary @updates.bin "localhost:8990/traffic?customize_ch=true"</pre>
+ */
+public class TrafficUpdateServlet extends HttpServlet {
+    private static final Logger logger = LoggerFactory.getLogger(TrafficUpdateServlet.class);
+    private final GraphHopper graphHopper;
+
+    public TrafficUpdateServlet(GraphHopper graphHopper) {
+        this.graphHopper = graphHopper;
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        resp.setContentType("application/json");
+        int updated;
+        try {
+            updated = graphHopper.applyTrafficUpdates(req.getInputStream());
+            if (Boolean.parseBoolean(req.getParameter("customize_ch")))
+                graphHopper.customizeCHForTraffic();
+        } catch (IllegalArgumentException | IllegalStateException ex) {
+            resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            resp.getWriter().print("{\"message\":\"" + ex.getMessage().replace("\"", "'") + "\"}");
+            return;
+        }
+        logger.info("Applied traffic updates for " + updated + " edge directions");
+        resp.getWriter().print("{\"updated\":" + updated + "}");
+    }
+}
@@ -27,6 +27,8 @@ import com.graphhopper.GraphHopper;
 import com.graphhopper.GraphHopperConfig;
 import com.graphhopper.ResponsePath;
 import com.graphhopper.gpx.GpxConversions;
+import com.graphhopper.http.ComputeLimiter;
+import com.graphhopper.http.Permit;
 import com.graphhopper.http.ProfileResolver;
 import com.graphhopper.jackson.Gpx;
 import com.graphhopper.jackson.Jackson;
@@ -69,16 +71,18 @@ public class MapMatchingResource {
     private final ProfileResolver profileResolver;
     private final TranslationMap trMap;
     private final MapMatchingRouterFactory mapMatchingRouterFactory;
+    private final ComputeLimiter computeLimiter;
     private final ObjectMapper objectMapper = Jackson.newObjectMapper();
     private final String osmDate;
 
     @Inject
-    public MapMatchingResource(GraphHopperConfig config, GraphHopper graphHopper, ProfileResolver profileResolver, TranslationMap trMap, MapMatchingRouterFactory mapMatchingRouterFactory) {
+    public MapMatchingResource(GraphHopperConfig config, GraphHopper graphHopper, ProfileResolver profileResolver, TranslationMap trMap, MapMatchingRouterFactory mapMatchingRouterFactory, ComputeLimiter computeLimiter) {
         this.config = config;
         this.graphHopper = graphHopper;
         this.profileResolver = profileResolver;
         this.trMap = trMap;
         this.mapMatchingRouterFactory = mapMatchingRouterFactory;
+        this.computeLimiter = computeLimiter;
         this.osmDate = graphHopper.getProperties().getAll().get("datareader.data.date");
     }
 
@@ -130,7 +134,10 @@ public class MapMatchingResource {
         matching.setMeasurementErrorSigma(gpsAccuracy);
 
         List<Observation> measurements = GpxConversions.getEntries(gpx.trk.get(0));
-        MatchResult matchResult = matching.match(measurements);
+        MatchResult matchResult;
+        try (Permit ignored = computeLimiter.acquire()) {
+            matchResult = matching.match(measurements);
+        }
 
         sw.stop();
         logger.info(objectMapper.createObjectNode()
@@ -19,6 +19,7 @@ package com.graphhopper.resources;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.graphhopper.GraphHopperConfig;
 import com.graphhopper.routing.util.EdgeFilter;
 import com.graphhopper.storage.index.LocationIndex;
 import com.graphhopper.storage.index.Snap;
@@ -29,8 +30,11 @@ import com.graphhopper.util.shapes.GHPoint3D;
 
 import javax.inject.Inject;
 import javax.inject.Named;
+import javax.validation.constraints.NotNull;
 import javax.ws.rs.*;
 import javax.ws.rs.core.MediaType;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * @author svantulden
@@ -43,11 +47,13 @@ public class NearestResource {
     private final DistanceCalc calc = DistanceCalcEarth.DIST_EARTH;
     private final LocationIndex index;
     private final boolean hasElevation;
+    private final int maxPoints;
 
     @Inject
-    NearestResource(LocationIndex index, @Named("hasElevation") Boolean hasElevation) {
+    NearestResource(GraphHopperConfig config, LocationIndex index, @Named("hasElevation") Boolean hasElevation) {
         this.index = index;
         this.hasElevation = hasElevation;
+        this.maxPoints = config.getInt("nearest.max_points", 1000);
     }
 
     public static class Response {
@@ -62,16 +68,69 @@ public class NearestResource {
         }
     }
 
+    public static class BatchRequest {
+        public final List<GHPoint> points;
+        public final boolean elevation;
+
+        @JsonCreator
+        BatchRequest(@JsonProperty("points") List<GHPoint> points, @JsonProperty("elevation") boolean elevation) {
+            this.points = points;
+            this.elevation = elevation;
+        }
+    }
+
+    public static class BatchResponse {
+        // contains null for points that cannot be snapped
+        public final List<Response> results;
+
+        @JsonCreator
+        BatchResponse(@JsonProperty("results") List<Response> results) {
+            this.results = results;
+        }
+    }
+
     @GET
     public Response doGet(@QueryParam("point") GHPoint point, @QueryParam("elevation") @DefaultValue("false") boolean elevation) {
         Snap snap = index.findClosest(point.lat, point.lon, EdgeFilter.ALL_EDGES);
         if (snap.isValid()) {
-            GHPoint3D snappedPoint = snap.getSnappedPoint();
-            double[] coordinates = hasElevation && elevation ? new double[]{snappedPoint.lon, snappedPoint.lat, snappedPoint.ele} : new double[]{snappedPoint.lon, snappedPoint.lat};
-            return new Response(coordinates, calc.calcDist(point.lat, point.lon, snappedPoint.lat, snappedPoint.lon));
+            return toResponse(point, snap, elevation);
         } else {
             throw new WebApplicationException("Nearest point cannot be found!");
         }
     }
 
+    /**
+     * Snaps many points with a single request. The points are given in GeoJSON order, i.e. [lon, lat], and are snapped
+     * together so nearby points can share the work of the index lookup. The number of points is limited by
+     * nearest.max_points.
+     */
+    @POST
+    @Consumes(MediaType.APPLICATION_JSON)
+    public BatchResponse doPost(@NotNull BatchRequest request) {
+        if (request.points == null || request.points.isEmpty())
+            throw new IllegalArgumentException("You have to specify at least one point");
+        if (request.points.size() > maxPoints)
+            throw new IllegalArgumentException("Too many points: " + request.points.size() + ", the maximum is " + maxPoints);
+        double[] lats = new double[request.points.size()];
+        double[] lons = new double[request.points.size()];
+        for (int i = 0; i < request.points.size(); i++) {
+            GHPoint point = request.points.get(i);
+            if (point == null || !point.isValid())
+                throw new IllegalArgumentException("Point " + i + " is invalid: " + point);
+            lats[i] = point.lat;
+            lons[i] = point.lon;
+        }
+        Snap[] snaps = index.findClosest(lats, lons, EdgeFilter.ALL_EDGES);
+        List<Response> results = new ArrayList<>(snaps.length);
+        for (int i = 0; i < snaps.length; i++)
+            results.add(snaps[i].isValid() ? toResponse(request.points.get(i), snaps[i], request.elevation) : null);
+        return new BatchResponse(results);
+    }
+
+    private Response toResponse(GHPoint point, Snap snap, boolean elevation) {
+        GHPoint3D snappedPoint = snap.getSnappedPoint();
+        double[] coordinates = hasElevation && elevation ? new double[]{snappedPoint.lon, snappedPoint.lat, snappedPoint.ele} : new double[]{snappedPoint.lon, snappedPoint.lat};
+        return new Response(coordinates, calc.calcDist(point.lat, point.lon, snappedPoint.lat, snappedPoint.lon));
+    }
+
 }
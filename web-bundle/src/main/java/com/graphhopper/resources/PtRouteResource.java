@@ -24,9 +24,11 @@ import com.graphhopper.GraphHopperConfig;
 import com.graphhopper.gtfs.GHLocation;
 import com.graphhopper.gtfs.PtRouter;
 import com.graphhopper.gtfs.Request;
+import com.graphhopper.http.ComputeLimiter;
 import com.graphhopper.http.DurationParam;
 import com.graphhopper.http.GHLocationParam;
 import com.graphhopper.http.OffsetDateTimeParam;
+import com.graphhopper.http.Permit;
 import com.graphhopper.jackson.ResponsePathSerializer;
 import com.graphhopper.util.Helper;
 import com.graphhopper.util.StopWatch;
@@ -48,11 +50,13 @@ public class PtRouteResource {
 
     private final GraphHopperConfig config;
     private final PtRouter ptRouter;
+    private final ComputeLimiter computeLimiter;
 
     @Inject
-    public PtRouteResource(GraphHopperConfig config, PtRouter ptRouter) {
+    public PtRouteResource(GraphHopperConfig config, PtRouter ptRouter, ComputeLimiter computeLimiter) {
         this.config = config;
         this.ptRouter = ptRouter;
+        this.computeLimiter = computeLimiter;
     }
 
     @GET
@@ -89,7 +93,10 @@ public class PtRouteResource {
         Optional.ofNullable(egressProfile).ifPresent(request::setEgressProfile);
         Optional.ofNullable(betaEgressTime).ifPresent(request::setBetaEgressTime);
 
-        GHResponse route = ptRouter.route(request);
+        GHResponse route;
+        try (Permit ignored = computeLimiter.acquire()) {
+            route = ptRouter.route(request);
+        }
         return ResponsePathSerializer.jsonObject(route, new ResponsePathSerializer.Info(config.getCopyrights(), Math.round(stopWatch.stop().getMillis()), null), true, true, false, false, -1);
     }
 
@@ -17,16 +17,21 @@
  */
 package com.graphhopper.resources;
 
+import com.codahale.metrics.annotation.Timed;
 import com.graphhopper.GHRequest;
 import com.graphhopper.GHResponse;
 import com.graphhopper.GraphHopper;
 import com.graphhopper.GraphHopperConfig;
 import com.graphhopper.gpx.GpxConversions;
+import com.graphhopper.http.ComputeLimiter;
 import com.graphhopper.http.GHPointParam;
 import com.graphhopper.http.GHRequestTransformer;
+import com.graphhopper.http.Permit;
 import com.graphhopper.http.ProfileResolver;
+import com.graphhopper.http.RouteAdmission;
 import com.graphhopper.jackson.MultiException;
 import com.graphhopper.jackson.ResponsePathSerializer;
+import com.graphhopper.protobuf.RouteResponseProtobuf;
 import com.graphhopper.util.*;
 import com.graphhopper.util.shapes.GHPoint;
 import io.dropwizard.jersey.params.AbstractParam;
@@ -62,21 +67,26 @@ public class RouteResource {
     private final GraphHopper graphHopper;
     private final ProfileResolver profileResolver;
     private final GHRequestTransformer ghRequestTransformer;
+    private final RouteAdmission routeAdmission;
+    private final ComputeLimiter computeLimiter;
     private final Boolean hasElevation;
     private final String osmDate;
 
     @Inject
-    public RouteResource(GraphHopperConfig config, GraphHopper graphHopper, ProfileResolver profileResolver, GHRequestTransformer ghRequestTransformer, @Named("hasElevation") Boolean hasElevation) {
+    public RouteResource(GraphHopperConfig config, GraphHopper graphHopper, ProfileResolver profileResolver, GHRequestTransformer ghRequestTransformer, @Named("hasElevation") Boolean hasElevation, RouteAdmission routeAdmission, ComputeLimiter computeLimiter) {
         this.config = config;
         this.graphHopper = graphHopper;
         this.profileResolver = profileResolver;
         this.ghRequestTransformer = ghRequestTransformer;
+        this.routeAdmission = routeAdmission;
+        this.computeLimiter = computeLimiter;
         this.hasElevation = hasElevation;
         this.osmDate = graphHopper.getProperties().getAll().get("datareader.data.date");
     }
 
     @GET
-    @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML, "application/gpx+xml"})
+    @Timed
+    @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML, "application/gpx+xml", RouteResponseProtobuf.MEDIA_TYPE})
     public Response doGet(
             @Context HttpServletRequest httpReq,
             @Context UriInfo uriInfo,
@@ -138,7 +148,10 @@ public class RouteResource {
         removeLegacyParameters(request.getHints());
         request.setProfile(profileName);
 
-        GHResponse ghResponse = graphHopper.route(request);
+        GHResponse ghResponse;
+        try (Permit admission = routeAdmission.acquire(request.getProfile()); Permit compute = computeLimiter.acquire()) {
+            ghResponse = graphHopper.route(request);
+        }
 
         double took = sw.stop().getMillisDouble();
         String logStr = (httpReq.getRemoteAddr() + " " + httpReq.getLocale() + " " + httpReq.getHeader("User-Agent")) + " " + points + ", took: " + String.format("%.1f", took) + "ms, algo: " + algoStr + ", profile: " + profileName;
@@ -161,16 +174,17 @@ public class RouteResource {
                             header("X-GH-Took", "" + Math.round(took)).
                             build()
                     :
-                    Response.ok(ResponsePathSerializer.jsonObject(ghResponse, new ResponsePathSerializer.Info(config.getCopyrights(), Math.round(took), osmDate), instructions, calcPoints, enableElevation, pointsEncoded, pointsEncodedMultiplier)).
+                    Response.ok(new ResponsePathSerializer.RouteResponse(ghResponse, new ResponsePathSerializer.Info(config.getCopyrights(), Math.round(took), osmDate), instructions, calcPoints, enableElevation, pointsEncoded, pointsEncodedMultiplier)).
                             header("X-GH-Took", "" + Math.round(took)).
-                            type(MediaType.APPLICATION_JSON).
+                            type(responseType(httpReq)).
                             build();
         }
     }
 
     @POST
+    @Timed
     @Consumes(MediaType.APPLICATION_JSON)
-    @Produces(MediaType.APPLICATION_JSON)
+    @Produces({MediaType.APPLICATION_JSON, RouteResponseProtobuf.MEDIA_TYPE})
     public Response doPost(@NotNull GHRequest request, @Context HttpServletRequest httpReq) {
         StopWatch sw = new StopWatch().start();
         request = ghRequestTransformer.transformRequest(request);
@@ -185,7 +199,10 @@ public class RouteResource {
         request.setProfile(profileResolver.resolveProfile(profileResolverHints));
         removeLegacyParameters(request.getHints());
 
-        GHResponse ghResponse = graphHopper.route(request);
+        GHResponse ghResponse;
+        try (Permit admission = routeAdmission.acquire(request.getProfile()); Permit compute = computeLimiter.acquire()) {
+            ghResponse = graphHopper.route(request);
+        }
         boolean instructions = request.getHints().getBool(INSTRUCTIONS, true);
         boolean enableElevation = request.getHints().getBool("elevation", false);
         boolean calcPoints = request.getHints().getBool(CALC_POINTS, true);
@@ -207,13 +224,25 @@ public class RouteResource {
                     + ", time0: " + Math.round(ghResponse.getBest().getTime() / 60000f) + "min"
                     + ", points0: " + ghResponse.getBest().getPoints().size()
                     + ", debugInfo: " + ghResponse.getDebugInfo());
-            return Response.ok(ResponsePathSerializer.jsonObject(ghResponse, new ResponsePathSerializer.Info(config.getCopyrights(), Math.round(took), osmDate), instructions, calcPoints, enableElevation, pointsEncoded, pointsEncodedMultiplier)).
+            return Response.ok(new ResponsePathSerializer.RouteResponse(ghResponse, new ResponsePathSerializer.Info(config.getCopyrights(), Math.round(took), osmDate), instructions, calcPoints, enableElevation, pointsEncoded, pointsEncodedMultiplier)).
                     header("X-GH-Took", "" + Math.round(took)).
-                    type(MediaType.APPLICATION_JSON).
+                    type(responseType(httpReq)).
                     build();
         }
     }
 
+    /**
+     * The route response is JSON unless the client explicitly accepts protobuf, see RouteProtobufMessageBodyWriter.
+     */
+    static String responseType(HttpServletRequest httpReq) {
+        String accept = httpReq.getHeader(HttpHeaders.ACCEPT);
+        if (accept != null)
+            for (String type : accept.split(","))
+                if (type.split(";")[0].trim().equalsIgnoreCase(RouteResponseProtobuf.MEDIA_TYPE))
+                    return RouteResponseProtobuf.MEDIA_TYPE;
+        return MediaType.APPLICATION_JSON;
+    }
+
     public static void removeLegacyParameters(PMap hints) {
         // these parameters should only be used to resolve the profile, but should not be passed to GraphHopper
         hints.remove("weighting");
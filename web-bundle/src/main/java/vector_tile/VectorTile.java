@@ -1,6 +1,7 @@
 // Generated by the protocol buffer compiler.  DO NOT EDIT!
 // source: src/main/resources/vector_tile.proto
 
+// Protobuf Java Version: 3.25.5
 package vector_tile;
 
 public final class VectorTile {
@@ -46,7 +47,7 @@ public final class VectorTile {
   /**
    * Protobuf type {@code vector_tile.Tile}
    */
-  public  static final class Tile extends
+  public static final class Tile extends
       com.google.protobuf.GeneratedMessageV3.ExtendableMessage<
         Tile> implements
       // @@protoc_insertion_point(message_implements:vector_tile.Tile)
@@ -61,60 +62,12 @@ public final class VectorTile {
     }
 
     @java.lang.Override
-    public final com.google.protobuf.UnknownFieldSet
-    getUnknownFields() {
-      return this.unknownFields;
-    }
-    private Tile(
-        com.google.protobuf.CodedInputStream input,
-        com.google.protobuf.ExtensionRegistryLite extensionRegistry)
-        throws com.google.protobuf.InvalidProtocolBufferException {
-      this();
-      if (extensionRegistry == null) {
-        throw new java.lang.NullPointerException();
-      }
-      int mutable_bitField0_ = 0;
-      com.google.protobuf.UnknownFieldSet.Builder unknownFields =
-          com.google.protobuf.UnknownFieldSet.newBuilder();
-      try {
-        boolean done = false;
-        while (!done) {
-          int tag = input.readTag();
-          switch (tag) {
-            case 0:
-              done = true;
-              break;
-            case 26: {
-              if (!((mutable_bitField0_ & 0x00000001) == 0x00000001)) {
-                layers_ = new java.util.ArrayList<vector_tile.VectorTile.Tile.Layer>();
-                mutable_bitField0_ |= 0x00000001;
-              }
-              layers_.add(
-                  input.readMessage(vector_tile.VectorTile.Tile.Layer.PARSER, extensionRegistry));
-              break;
-            }
-            default: {
-              if (!parseUnknownField(
-                  input, unknownFields, extensionRegistry, tag)) {
-                done = true;
-              }
-              break;
-            }
-          }
-        }
-      } catch (com.google.protobuf.InvalidProtocolBufferException e) {
-        throw e.setUnfinishedMessage(this);
-      } catch (java.io.IOException e) {
-        throw new com.google.protobuf.InvalidProtocolBufferException(
-            e).setUnfinishedMessage(this);
-      } finally {
-        if (((mutable_bitField0_ & 0x00000001) == 0x00000001)) {
-          layers_ = java.util.Collections.unmodifiableList(layers_);
-        }
-        this.unknownFields = unknownFields.build();
-        makeExtensionsImmutable();
-      }
+    @SuppressWarnings({"unused"})
+    protected java.lang.Object newInstance(
+        UnusedPrivateParameter unused) {
+      return new Tile();
     }
+
     public static final com.google.protobuf.Descriptors.Descriptor
         getDescriptor() {
       return vector_tile.VectorTile.internal_static_vector_tile_Tile_descriptor;
@@ -129,10 +82,6 @@ public final class VectorTile {
     }
 
     /**
-     * <pre>
-     * GeomType is described in section 4.3.4 of the specification
-     * </pre>
-     *
      * Protobuf enum {@code vector_tile.Tile.GeomType}
      */
     public enum GeomType
@@ -178,6 +127,8 @@ public final class VectorTile {
       }
 
       /**
+       * @param value The numeric wire value of the corresponding enum entry.
+       * @return The enum associated with the given numeric wire value.
        * @deprecated Use {@link #forNumber(int)} instead.
        */
       @java.lang.Deprecated
@@ -185,6 +136,10 @@ public final class VectorTile {
         return forNumber(value);
       }
 
+      /**
+       * @param value The numeric wire value of the corresponding enum entry.
+       * @return The enum associated with the given numeric wire value.
+       */
       public static GeomType forNumber(int value) {
         switch (value) {
           case 0: return UNKNOWN;
@@ -246,94 +201,92 @@ public final class VectorTile {
             ExtendableMessageOrBuilder<Value> {
 
       /**
-       * <pre>
-       * Exactly one of these values must be present in a valid message
-       * </pre>
-       *
        * <code>optional string string_value = 1;</code>
+       * @return Whether the stringValue field is set.
        */
       boolean hasStringValue();
       /**
-       * <pre>
-       * Exactly one of these values must be present in a valid message
-       * </pre>
-       *
        * <code>optional string string_value = 1;</code>
+       * @return The stringValue.
        */
       java.lang.String getStringValue();
       /**
-       * <pre>
-       * Exactly one of these values must be present in a valid message
-       * </pre>
-       *
        * <code>optional string string_value = 1;</code>
+       * @return The bytes for stringValue.
        */
       com.google.protobuf.ByteString
           getStringValueBytes();
 
       /**
        * <code>optional float float_value = 2;</code>
+       * @return Whether the floatValue field is set.
        */
       boolean hasFloatValue();
       /**
        * <code>optional float float_value = 2;</code>
+       * @return The floatValue.
        */
       float getFloatValue();
 
       /**
        * <code>optional double double_value = 3;</code>
+       * @return Whether the doubleValue field is set.
        */
       boolean hasDoubleValue();
       /**
        * <code>optional double double_value = 3;</code>
+       * @return The doubleValue.
        */
       double getDoubleValue();
 
       /**
        * <code>optional int64 int_value = 4;</code>
+       * @return Whether the intValue field is set.
        */
       boolean hasIntValue();
       /**
        * <code>optional int64 int_value = 4;</code>
+       * @return The intValue.
        */
       long getIntValue();
 
       /**
        * <code>optional uint64 uint_value = 5;</code>
+       * @return Whether the uintValue field is set.
        */
       boolean hasUintValue();
       /**
        * <code>optional uint64 uint_value = 5;</code>
+       * @return The uintValue.
        */
       long getUintValue();
 
       /**
        * <code>optional sint64 sint_value = 6;</code>
+       * @return Whether the sintValue field is set.
        */
       boolean hasSintValue();
       /**
        * <code>optional sint64 sint_value = 6;</code>
+       * @return The sintValue.
        */
       long getSintValue();
 
       /**
        * <code>optional bool bool_value = 7;</code>
+       * @return Whether the boolValue field is set.
        */
       boolean hasBoolValue();
       /**
        * <code>optional bool bool_value = 7;</code>
+       * @return The boolValue.
        */
       boolean getBoolValue();
     }
     /**
-     * <pre>
-     * Variant type encoding
-     * The use of values is described in section 4.1 of the specification
-     * </pre>
-     *
      * Protobuf type {@code vector_tile.Tile.Value}
      */
-    public  static final class Value extends
+    public static final class Value extends
         com.google.protobuf.GeneratedMessageV3.ExtendableMessage<
           Value> implements
         // @@protoc_insertion_point(message_implements:vector_tile.Tile.Value)
@@ -345,93 +298,15 @@ public final class VectorTile {
       }
       private Value() {
         stringValue_ = "";
-        floatValue_ = 0F;
-        doubleValue_ = 0D;
-        intValue_ = 0L;
-        uintValue_ = 0L;
-        sintValue_ = 0L;
-        boolValue_ = false;
       }
 
       @java.lang.Override
-      public final com.google.protobuf.UnknownFieldSet
-      getUnknownFields() {
-        return this.unknownFields;
-      }
-      private Value(
-          com.google.protobuf.CodedInputStream input,
-          com.google.protobuf.ExtensionRegistryLite extensionRegistry)
-          throws com.google.protobuf.InvalidProtocolBufferException {
-        this();
-        if (extensionRegistry == null) {
-          throw new java.lang.NullPointerException();
-        }
-        int mutable_bitField0_ = 0;
-        com.google.protobuf.UnknownFieldSet.Builder unknownFields =
-            com.google.protobuf.UnknownFieldSet.newBuilder();
-        try {
-          boolean done = false;
-          while (!done) {
-            int tag = input.readTag();
-            switch (tag) {
-              case 0:
-                done = true;
-                break;
-              case 10: {
-                com.google.protobuf.ByteString bs = input.readBytes();
-                bitField0_ |= 0x00000001;
-                stringValue_ = bs;
-                break;
-              }
-              case 21: {
-                bitField0_ |= 0x00000002;
-                floatValue_ = input.readFloat();
-                break;
-              }
-              case 25: {
-                bitField0_ |= 0x00000004;
-                doubleValue_ = input.readDouble();
-                break;
-              }
-              case 32: {
-                bitField0_ |= 0x00000008;
-                intValue_ = input.readInt64();
-                break;
-              }
-              case 40: {
-                bitField0_ |= 0x00000010;
-                uintValue_ = input.readUInt64();
-                break;
-              }
-              case 48: {
-                bitField0_ |= 0x00000020;
-                sintValue_ = input.readSInt64();
-                break;
-              }
-              case 56: {
-                bitField0_ |= 0x00000040;
-                boolValue_ = input.readBool();
-                break;
-              }
-              default: {
-                if (!parseUnknownField(
-                    input, unknownFields, extensionRegistry, tag)) {
-                  done = true;
-                }
-                break;
-              }
-            }
-          }
-        } catch (com.google.protobuf.InvalidProtocolBufferException e) {
-          throw e.setUnfinishedMessage(this);
-        } catch (java.io.IOException e) {
-          throw new com.google.protobuf.InvalidProtocolBufferException(
-              e).setUnfinishedMessage(this);
-        } finally {
-          this.unknownFields = unknownFields.build();
-          makeExtensionsImmutable();
-        }
+      @SuppressWarnings({"unused"})
+      protected java.lang.Object newInstance(
+          UnusedPrivateParameter unused) {
+        return new Value();
       }
+
       public static final com.google.protobuf.Descriptors.Descriptor
           getDescriptor() {
         return vector_tile.VectorTile.internal_static_vector_tile_Tile_Value_descriptor;
@@ -447,24 +322,21 @@ public final class VectorTile {
 
       private int bitField0_;
       public static final int STRING_VALUE_FIELD_NUMBER = 1;
-      private volatile java.lang.Object stringValue_;
+      @SuppressWarnings("serial")
+      private volatile java.lang.Object stringValue_ = "";
       /**
-       * <pre>
-       * Exactly one of these values must be present in a valid message
-       * </pre>
-       *
        * <code>optional string string_value = 1;</code>
+       * @return Whether the stringValue field is set.
        */
+      @java.lang.Override
       public boolean hasStringValue() {
-        return ((bitField0_ & 0x00000001) == 0x00000001);
+        return ((bitField0_ & 0x00000001) != 0);
       }
       /**
-       * <pre>
-       * Exactly one of these values must be present in a valid message
-       * </pre>
-       *
        * <code>optional string string_value = 1;</code>
+       * @return The stringValue.
        */
+      @java.lang.Override
       public java.lang.String getStringValue() {
         java.lang.Object ref = stringValue_;
         if (ref instanceof java.lang.String) {
@@ -480,12 +352,10 @@ public final class VectorTile {
         }
       }
       /**
-       * <pre>
-       * Exactly one of these values must be present in a valid message
-       * </pre>
-       *
        * <code>optional string string_value = 1;</code>
+       * @return The bytes for stringValue.
        */
+      @java.lang.Override
       public com.google.protobuf.ByteString
           getStringValueBytes() {
         java.lang.Object ref = stringValue_;
@@ -501,91 +371,115 @@ public final class VectorTile {
       }
 
       public static final int FLOAT_VALUE_FIELD_NUMBER = 2;
-      private float floatValue_;
+      private float floatValue_ = 0F;
       /**
        * <code>optional float float_value = 2;</code>
+       * @return Whether the floatValue field is set.
        */
+      @java.lang.Override
       public boolean hasFloatValue() {
-        return ((bitField0_ & 0x00000002) == 0x00000002);
+        return ((bitField0_ & 0x00000002) != 0);
       }
       /**
        * <code>optional float float_value = 2;</code>
+       * @return The floatValue.
        */
+      @java.lang.Override
       public float getFloatValue() {
         return floatValue_;
       }
 
       public static final int DOUBLE_VALUE_FIELD_NUMBER = 3;
-      private double doubleValue_;
+      private double doubleValue_ = 0D;
       /**
        * <code>optional double double_value = 3;</code>
+       * @return Whether the doubleValue field is set.
        */
+      @java.lang.Override
       public boolean hasDoubleValue() {
-        return ((bitField0_ & 0x00000004) == 0x00000004);
+        return ((bitField0_ & 0x00000004) != 0);
       }
       /**
        * <code>optional double double_value = 3;</code>
+       * @return The doubleValue.
        */
+      @java.lang.Override
       public double getDoubleValue() {
         return doubleValue_;
       }
 
       public static final int INT_VALUE_FIELD_NUMBER = 4;
-      private long intValue_;
+      private long intValue_ = 0L;
       /**
        * <code>optional int64 int_value = 4;</code>
+       * @return Whether the intValue field is set.
        */
+      @java.lang.Override
       public boolean hasIntValue() {
-        return ((bitField0_ & 0x00000008) == 0x00000008);
+        return ((bitField0_ & 0x00000008) != 0);
       }
       /**
        * <code>optional int64 int_value = 4;</code>
+       * @return The intValue.
        */
+      @java.lang.Override
       public long getIntValue() {
         return intValue_;
       }
 
       public static final int UINT_VALUE_FIELD_NUMBER = 5;
-      private long uintValue_;
+      private long uintValue_ = 0L;
       /**
        * <code>optional uint64 uint_value = 5;</code>
+       * @return Whether the uintValue field is set.
        */
+      @java.lang.Override
       public boolean hasUintValue() {
-        return ((bitField0_ & 0x00000010) == 0x00000010);
+        return ((bitField0_ & 0x00000010) != 0);
       }
       /**
        * <code>optional uint64 uint_value = 5;</code>
+       * @return The uintValue.
        */
+      @java.lang.Override
       public long getUintValue() {
         return uintValue_;
       }
 
       public static final int SINT_VALUE_FIELD_NUMBER = 6;
-      private long sintValue_;
+      private long sintValue_ = 0L;
       /**
        * <code>optional sint64 sint_value = 6;</code>
+       * @return Whether the sintValue field is set.
        */
+      @java.lang.Override
       public boolean hasSintValue() {
-        return ((bitField0_ & 0x00000020) == 0x00000020);
+        return ((bitField0_ & 0x00000020) != 0);
       }
       /**
        * <code>optional sint64 sint_value = 6;</code>
+       * @return The sintValue.
        */
+      @java.lang.Override
       public long getSintValue() {
         return sintValue_;
       }
 
       public static final int BOOL_VALUE_FIELD_NUMBER = 7;
-      private boolean boolValue_;
+      private boolean boolValue_ = false;
       /**
        * <code>optional bool bool_value = 7;</code>
+       * @return Whether the boolValue field is set.
        */
+      @java.lang.Override
       public boolean hasBoolValue() {
-        return ((bitField0_ & 0x00000040) == 0x00000040);
+        return ((bitField0_ & 0x00000040) != 0);
       }
       /**
        * <code>optional bool bool_value = 7;</code>
+       * @return The boolValue.
        */
+      @java.lang.Override
       public boolean getBoolValue() {
         return boolValue_;
       }
@@ -611,29 +505,29 @@ public final class VectorTile {
         com.google.protobuf.GeneratedMessageV3
           .ExtendableMessage<vector_tile.VectorTile.Tile.Value>.ExtensionWriter
             extensionWriter = newExtensionWriter();
-        if (((bitField0_ & 0x00000001) == 0x00000001)) {
+        if (((bitField0_ & 0x00000001) != 0)) {
           com.google.protobuf.GeneratedMessageV3.writeString(output, 1, stringValue_);
         }
-        if (((bitField0_ & 0x00000002) == 0x00000002)) {
+        if (((bitField0_ & 0x00000002) != 0)) {
           output.writeFloat(2, floatValue_);
         }
-        if (((bitField0_ & 0x00000004) == 0x00000004)) {
+        if (((bitField0_ & 0x00000004) != 0)) {
           output.writeDouble(3, doubleValue_);
         }
-        if (((bitField0_ & 0x00000008) == 0x00000008)) {
+        if (((bitField0_ & 0x00000008) != 0)) {
           output.writeInt64(4, intValue_);
         }
-        if (((bitField0_ & 0x00000010) == 0x00000010)) {
+        if (((bitField0_ & 0x00000010) != 0)) {
           output.writeUInt64(5, uintValue_);
         }
-        if (((bitField0_ & 0x00000020) == 0x00000020)) {
+        if (((bitField0_ & 0x00000020) != 0)) {
           output.writeSInt64(6, sintValue_);
         }
-        if (((bitField0_ & 0x00000040) == 0x00000040)) {
+        if (((bitField0_ & 0x00000040) != 0)) {
           output.writeBool(7, boolValue_);
         }
         extensionWriter.writeUntil(536870912, output);
-        unknownFields.writeTo(output);
+        getUnknownFields().writeTo(output);
       }
 
       @java.lang.Override
@@ -642,35 +536,35 @@ public final class VectorTile {
         if (size != -1) return size;
 
         size = 0;
-        if (((bitField0_ & 0x00000001) == 0x00000001)) {
+        if (((bitField0_ & 0x00000001) != 0)) {
           size += com.google.protobuf.GeneratedMessageV3.computeStringSize(1, stringValue_);
         }
-        if (((bitField0_ & 0x00000002) == 0x00000002)) {
+        if (((bitField0_ & 0x00000002) != 0)) {
           size += com.google.protobuf.CodedOutputStream
             .computeFloatSize(2, floatValue_);
         }
-        if (((bitField0_ & 0x00000004) == 0x00000004)) {
+        if (((bitField0_ & 0x00000004) != 0)) {
           size += com.google.protobuf.CodedOutputStream
             .computeDoubleSize(3, doubleValue_);
         }
-        if (((bitField0_ & 0x00000008) == 0x00000008)) {
+        if (((bitField0_ & 0x00000008) != 0)) {
           size += com.google.protobuf.CodedOutputStream
             .computeInt64Size(4, intValue_);
         }
-        if (((bitField0_ & 0x00000010) == 0x00000010)) {
+        if (((bitField0_ & 0x00000010) != 0)) {
           size += com.google.protobuf.CodedOutputStream
             .computeUInt64Size(5, uintValue_);
         }
-        if (((bitField0_ & 0x00000020) == 0x00000020)) {
+        if (((bitField0_ & 0x00000020) != 0)) {
           size += com.google.protobuf.CodedOutputStream
             .computeSInt64Size(6, sintValue_);
         }
-        if (((bitField0_ & 0x00000040) == 0x00000040)) {
+        if (((bitField0_ & 0x00000040) != 0)) {
           size += com.google.protobuf.CodedOutputStream
             .computeBoolSize(7, boolValue_);
         }
         size += extensionsSerializedSize();
-        size += unknownFields.getSerializedSize();
+        size += getUnknownFields().getSerializedSize();
         memoizedSize = size;
         return size;
       }
@@ -685,50 +579,47 @@ public final class VectorTile {
         }
         vector_tile.VectorTile.Tile.Value other = (vector_tile.VectorTile.Tile.Value) obj;
 
-        boolean result = true;
-        result = result && (hasStringValue() == other.hasStringValue());
+        if (hasStringValue() != other.hasStringValue()) return false;
         if (hasStringValue()) {
-          result = result && getStringValue()
-              .equals(other.getStringValue());
+          if (!getStringValue()
+              .equals(other.getStringValue())) return false;
         }
-        result = result && (hasFloatValue() == other.hasFloatValue());
+        if (hasFloatValue() != other.hasFloatValue()) return false;
         if (hasFloatValue()) {
-          result = result && (
-              java.lang.Float.floatToIntBits(getFloatValue())
-              == java.lang.Float.floatToIntBits(
-                  other.getFloatValue()));
+          if (java.lang.Float.floatToIntBits(getFloatValue())
+              != java.lang.Float.floatToIntBits(
+                  other.getFloatValue())) return false;
         }
-        result = result && (hasDoubleValue() == other.hasDoubleValue());
+        if (hasDoubleValue() != other.hasDoubleValue()) return false;
         if (hasDoubleValue()) {
-          result = result && (
-              java.lang.Double.doubleToLongBits(getDoubleValue())
-              == java.lang.Double.doubleToLongBits(
-                  other.getDoubleValue()));
+          if (java.lang.Double.doubleToLongBits(getDoubleValue())
+              != java.lang.Double.doubleToLongBits(
+                  other.getDoubleValue())) return false;
         }
-        result = result && (hasIntValue() == other.hasIntValue());
+        if (hasIntValue() != other.hasIntValue()) return false;
         if (hasIntValue()) {
-          result = result && (getIntValue()
-              == other.getIntValue());
+          if (getIntValue()
+              != other.getIntValue()) return false;
         }
-        result = result && (hasUintValue() == other.hasUintValue());
+        if (hasUintValue() != other.hasUintValue()) return false;
         if (hasUintValue()) {
-          result = result && (getUintValue()
-              == other.getUintValue());
+          if (getUintValue()
+              != other.getUintValue()) return false;
         }
-        result = result && (hasSintValue() == other.hasSintValue());
+        if (hasSintValue() != other.hasSintValue()) return false;
         if (hasSintValue()) {
-          result = result && (getSintValue()
-              == other.getSintValue());
+          if (getSintValue()
+              != other.getSintValue()) return false;
         }
-        result = result && (hasBoolValue() == other.hasBoolValue());
+        if (hasBoolValue() != other.hasBoolValue()) return false;
         if (hasBoolValue()) {
-          result = result && (getBoolValue()
-              == other.getBoolValue());
+          if (getBoolValue()
+              != other.getBoolValue()) return false;
         }
-        result = result && unknownFields.equals(other.unknownFields);
-        result = result &&
-            getExtensionFields().equals(other.getExtensionFields());
-        return result;
+        if (!getUnknownFields().equals(other.getUnknownFields())) return false;
+        if (!getExtensionFields().equals(other.getExtensionFields()))
+          return false;
+        return true;
       }
 
       @java.lang.Override
@@ -773,7 +664,7 @@ public final class VectorTile {
               getBoolValue());
         }
         hash = hashFields(hash, getExtensionFields());
-        hash = (29 * hash) + unknownFields.hashCode();
+        hash = (29 * hash) + getUnknownFields().hashCode();
         memoizedHashCode = hash;
         return hash;
       }
@@ -822,11 +713,13 @@ public final class VectorTile {
         return com.google.protobuf.GeneratedMessageV3
             .parseWithIOException(PARSER, input, extensionRegistry);
       }
+
       public static vector_tile.VectorTile.Tile.Value parseDelimitedFrom(java.io.InputStream input)
           throws java.io.IOException {
         return com.google.protobuf.GeneratedMessageV3
             .parseDelimitedWithIOException(PARSER, input);
       }
+
       public static vector_tile.VectorTile.Tile.Value parseDelimitedFrom(
           java.io.InputStream input,
           com.google.protobuf.ExtensionRegistryLite extensionRegistry)
@@ -869,11 +762,6 @@ public final class VectorTile {
         return builder;
       }
       /**
-       * <pre>
-       * Variant type encoding
-       * The use of values is described in section 4.1 of the specification
-       * </pre>
-       *
        * Protobuf type {@code vector_tile.Tile.Value}
        */
       public static final class Builder extends
@@ -896,36 +784,25 @@ public final class VectorTile {
 
         // Construct using vector_tile.VectorTile.Tile.Value.newBuilder()
         private Builder() {
-          maybeForceBuilderInitialization();
+
         }
 
         private Builder(
             com.google.protobuf.GeneratedMessageV3.BuilderParent parent) {
           super(parent);
-          maybeForceBuilderInitialization();
-        }
-        private void maybeForceBuilderInitialization() {
-          if (com.google.protobuf.GeneratedMessageV3
-                  .alwaysUseFieldBuilders) {
-          }
+
         }
         @java.lang.Override
         public Builder clear() {
           super.clear();
+          bitField0_ = 0;
           stringValue_ = "";
-          bitField0_ = (bitField0_ & ~0x00000001);
           floatValue_ = 0F;
-          bitField0_ = (bitField0_ & ~0x00000002);
           doubleValue_ = 0D;
-          bitField0_ = (bitField0_ & ~0x00000004);
           intValue_ = 0L;
-          bitField0_ = (bitField0_ & ~0x00000008);
           uintValue_ = 0L;
-          bitField0_ = (bitField0_ & ~0x00000010);
           sintValue_ = 0L;
-          bitField0_ = (bitField0_ & ~0x00000020);
           boolValue_ = false;
-          bitField0_ = (bitField0_ & ~0x00000040);
           return this;
         }
 
@@ -952,99 +829,103 @@ public final class VectorTile {
         @java.lang.Override
         public vector_tile.VectorTile.Tile.Value buildPartial() {
           vector_tile.VectorTile.Tile.Value result = new vector_tile.VectorTile.Tile.Value(this);
+          if (bitField0_ != 0) { buildPartial0(result); }
+          onBuilt();
+          return result;
+        }
+
+        private void buildPartial0(vector_tile.VectorTile.Tile.Value result) {
           int from_bitField0_ = bitField0_;
           int to_bitField0_ = 0;
-          if (((from_bitField0_ & 0x00000001) == 0x00000001)) {
+          if (((from_bitField0_ & 0x00000001) != 0)) {
+            result.stringValue_ = stringValue_;
             to_bitField0_ |= 0x00000001;
           }
-          result.stringValue_ = stringValue_;
-          if (((from_bitField0_ & 0x00000002) == 0x00000002)) {
+          if (((from_bitField0_ & 0x00000002) != 0)) {
+            result.floatValue_ = floatValue_;
             to_bitField0_ |= 0x00000002;
           }
-          result.floatValue_ = floatValue_;
-          if (((from_bitField0_ & 0x00000004) == 0x00000004)) {
+          if (((from_bitField0_ & 0x00000004) != 0)) {
+            result.doubleValue_ = doubleValue_;
             to_bitField0_ |= 0x00000004;
           }
-          result.doubleValue_ = doubleValue_;
-          if (((from_bitField0_ & 0x00000008) == 0x00000008)) {
+          if (((from_bitField0_ & 0x00000008) != 0)) {
+            result.intValue_ = intValue_;
             to_bitField0_ |= 0x00000008;
           }
-          result.intValue_ = intValue_;
-          if (((from_bitField0_ & 0x00000010) == 0x00000010)) {
+          if (((from_bitField0_ & 0x00000010) != 0)) {
+            result.uintValue_ = uintValue_;
             to_bitField0_ |= 0x00000010;
           }
-          result.uintValue_ = uintValue_;
-          if (((from_bitField0_ & 0x00000020) == 0x00000020)) {
+          if (((from_bitField0_ & 0x00000020) != 0)) {
+            result.sintValue_ = sintValue_;
             to_bitField0_ |= 0x00000020;
           }
-          result.sintValue_ = sintValue_;
-          if (((from_bitField0_ & 0x00000040) == 0x00000040)) {
+          if (((from_bitField0_ & 0x00000040) != 0)) {
+            result.boolValue_ = boolValue_;
             to_bitField0_ |= 0x00000040;
           }
-          result.boolValue_ = boolValue_;
-          result.bitField0_ = to_bitField0_;
-          onBuilt();
-          return result;
+          result.bitField0_ |= to_bitField0_;
         }
 
         @java.lang.Override
         public Builder clone() {
-          return (Builder) super.clone();
+          return super.clone();
         }
         @java.lang.Override
         public Builder setField(
             com.google.protobuf.Descriptors.FieldDescriptor field,
             java.lang.Object value) {
-          return (Builder) super.setField(field, value);
+          return super.setField(field, value);
         }
         @java.lang.Override
         public Builder clearField(
             com.google.protobuf.Descriptors.FieldDescriptor field) {
-          return (Builder) super.clearField(field);
+          return super.clearField(field);
         }
         @java.lang.Override
         public Builder clearOneof(
             com.google.protobuf.Descriptors.OneofDescriptor oneof) {
-          return (Builder) super.clearOneof(oneof);
+          return super.clearOneof(oneof);
         }
         @java.lang.Override
         public Builder setRepeatedField(
             com.google.protobuf.Descriptors.FieldDescriptor field,
             int index, java.lang.Object value) {
-          return (Builder) super.setRepeatedField(field, index, value);
+          return super.setRepeatedField(field, index, value);
         }
         @java.lang.Override
         public Builder addRepeatedField(
             com.google.protobuf.Descriptors.FieldDescriptor field,
             java.lang.Object value) {
-          return (Builder) super.addRepeatedField(field, value);
+          return super.addRepeatedField(field, value);
         }
         @java.lang.Override
         public <Type> Builder setExtension(
             com.google.protobuf.GeneratedMessage.GeneratedExtension<
                 vector_tile.VectorTile.Tile.Value, Type> extension,
             Type value) {
-          return (Builder) super.setExtension(extension, value);
+          return super.setExtension(extension, value);
         }
         @java.lang.Override
         public <Type> Builder setExtension(
             com.google.protobuf.GeneratedMessage.GeneratedExtension<
                 vector_tile.VectorTile.Tile.Value, java.util.List<Type>> extension,
             int index, Type value) {
-          return (Builder) super.setExtension(extension, index, value);
+          return super.setExtension(extension, index, value);
         }
         @java.lang.Override
         public <Type> Builder addExtension(
             com.google.protobuf.GeneratedMessage.GeneratedExtension<
                 vector_tile.VectorTile.Tile.Value, java.util.List<Type>> extension,
             Type value) {
-          return (Builder) super.addExtension(extension, value);
+          return super.addExtension(extension, value);
         }
         @java.lang.Override
-        public <Type> Builder clearExtension(
+        public <T> Builder clearExtension(
             com.google.protobuf.GeneratedMessage.GeneratedExtension<
-                vector_tile.VectorTile.Tile.Value, ?> extension) {
-          return (Builder) super.clearExtension(extension);
+                vector_tile.VectorTile.Tile.Value, T> extension) {
+          return super.clearExtension(extension);
         }
         @java.lang.Override
         public Builder mergeFrom(com.google.protobuf.Message other) {
@@ -1059,8 +940,8 @@ public final class VectorTile {
         public Builder mergeFrom(vector_tile.VectorTile.Tile.Value other) {
           if (other == vector_tile.VectorTile.Tile.Value.getDefaultInstance()) return this;
           if (other.hasStringValue()) {
-            bitField0_ |= 0x00000001;
             stringValue_ = other.stringValue_;
+            bitField0_ |= 0x00000001;
             onChanged();
           }
           if (other.hasFloatValue()) {
@@ -1082,7 +963,7 @@ public final class VectorTile {
             setBoolValue(other.getBoolValue());
           }
           this.mergeExtensionFields(other);
-          this.mergeUnknownFields(other.unknownFields);
+          this.mergeUnknownFields(other.getUnknownFields());
           onChanged();
           return this;
         }
@@ -1100,38 +981,80 @@ public final class VectorTile {
             com.google.protobuf.CodedInputStream input,
             com.google.protobuf.ExtensionRegistryLite extensionRegistry)
             throws java.io.IOException {
-          vector_tile.VectorTile.Tile.Value parsedMessage = null;
+          if (extensionRegistry == null) {
+            throw new java.lang.NullPointerException();
+          }
           try {
-            parsedMessage = PARSER.parsePartialFrom(input, extensionRegistry);
+            boolean done = false;
+            while (!done) {
+              int tag = input.readTag();
+              switch (tag) {
+                case 0:
+                  done = true;
+                  break;
+                case 10: {
+                  stringValue_ = input.readBytes();
+                  bitField0_ |= 0x00000001;
+                  break;
+                } // case 10
+                case 21: {
+                  floatValue_ = input.readFloat();
+                  bitField0_ |= 0x00000002;
+                  break;
+                } // case 21
+                case 25: {
+                  doubleValue_ = input.readDouble();
+                  bitField0_ |= 0x00000004;
+                  break;
+                } // case 25
+                case 32: {
+                  intValue_ = input.readInt64();
+                  bitField0_ |= 0x00000008;
+                  break;
+                } // case 32
+                case 40: {
+                  uintValue_ = input.readUInt64();
+                  bitField0_ |= 0x00000010;
+                  break;
+                } // case 40
+                case 48: {
+                  sintValue_ = input.readSInt64();
+                  bitField0_ |= 0x00000020;
+                  break;
+                } // case 48
+                case 56: {
+                  boolValue_ = input.readBool();
+                  bitField0_ |= 0x00000040;
+                  break;
+                } // case 56
+                default: {
+                  if (!super.parseUnknownField(input, extensionRegistry, tag)) {
+                    done = true; // was an endgroup tag
+                  }
+                  break;
+                } // default:
+              } // switch (tag)
+            } // while (!done)
           } catch (com.google.protobuf.InvalidProtocolBufferException e) {
-            parsedMessage = (vector_tile.VectorTile.Tile.Value) e.getUnfinishedMessage();
             throw e.unwrapIOException();
           } finally {
-            if (parsedMessage != null) {
-              mergeFrom(parsedMessage);
-            }
-          }
+            onChanged();
+          } // finally
           return this;
         }
         private int bitField0_;
 
         private java.lang.Object stringValue_ = "";
         /**
-         * <pre>
-         * Exactly one of these values must be present in a valid message
-         * </pre>
-         *
          * <code>optional string string_value = 1;</code>
+         * @return Whether the stringValue field is set.
          */
         public boolean hasStringValue() {
-          return ((bitField0_ & 0x00000001) == 0x00000001);
+          return ((bitField0_ & 0x00000001) != 0);
         }
         /**
-         * <pre>
-         * Exactly one of these values must be present in a valid message
-         * </pre>
-         *
          * <code>optional string string_value = 1;</code>
+         * @return The stringValue.
          */
         public java.lang.String getStringValue() {
           java.lang.Object ref = stringValue_;
@@ -1148,11 +1071,8 @@ public final class VectorTile {
           }
         }
         /**
-         * <pre>
-         * Exactly one of these values must be present in a valid message
-         * </pre>
-         *
          * <code>optional string string_value = 1;</code>
+         * @return The bytes for stringValue.
          */
         public com.google.protobuf.ByteString
             getStringValueBytes() {
@@ -1168,49 +1088,38 @@ public final class VectorTile {
           }
         }
         /**
-         * <pre>
-         * Exactly one of these values must be present in a valid message
-         * </pre>
-         *
          * <code>optional string string_value = 1;</code>
+         * @param value The stringValue to set.
+         * @return This builder for chaining.
          */
         public Builder setStringValue(
             java.lang.String value) {
-          if (value == null) {
-    throw new NullPointerException();
-  }
-  bitField0_ |= 0x00000001;
+          if (value == null) { throw new NullPointerException(); }
           stringValue_ = value;
+          bitField0_ |= 0x00000001;
           onChanged();
           return this;
         }
         /**
-         * <pre>
-         * Exactly one of these values must be present in a valid message
-         * </pre>
-         *
          * <code>optional string string_value = 1;</code>
+         * @return This builder for chaining.
          */
         public Builder clearStringValue() {
-          bitField0_ = (bitField0_ & ~0x00000001);
           stringValue_ = getDefaultInstance().getStringValue();
+          bitField0_ = (bitField0_ & ~0x00000001);
           onChanged();
           return this;
         }
         /**
-         * <pre>
-         * Exactly one of these values must be present in a valid message
-         * </pre>
-         *
          * <code>optional string string_value = 1;</code>
+         * @param value The bytes for stringValue to set.
+         * @return This builder for chaining.
          */
         public Builder setStringValueBytes(
             com.google.protobuf.ByteString value) {
-          if (value == null) {
-    throw new NullPointerException();
-  }
-  bitField0_ |= 0x00000001;
+          if (value == null) { throw new NullPointerException(); }
           stringValue_ = value;
+          bitField0_ |= 0x00000001;
           onChanged();
           return this;
         }
@@ -1218,27 +1127,35 @@ public final class VectorTile {
         private float floatValue_ ;
         /**
          * <code>optional float float_value = 2;</code>
+         * @return Whether the floatValue field is set.
          */
+        @java.lang.Override
         public boolean hasFloatValue() {
-          return ((bitField0_ & 0x00000002) == 0x00000002);
+          return ((bitField0_ & 0x00000002) != 0);
         }
         /**
          * <code>optional float float_value = 2;</code>
+         * @return The floatValue.
          */
+        @java.lang.Override
         public float getFloatValue() {
           return floatValue_;
         }
         /**
          * <code>optional float float_value = 2;</code>
+         * @param value The floatValue to set.
+         * @return This builder for chaining.
          */
         public Builder setFloatValue(float value) {
-          bitField0_ |= 0x00000002;
+
           floatValue_ = value;
+          bitField0_ |= 0x00000002;
           onChanged();
           return this;
         }
         /**
          * <code>optional float float_value = 2;</code>
+         * @return This builder for chaining.
          */
         public Builder clearFloatValue() {
           bitField0_ = (bitField0_ & ~0x00000002);
@@ -1250,27 +1167,35 @@ public final class VectorTile {
         private double doubleValue_ ;
         /**
          * <code>optional double double_value = 3;</code>
+         * @return Whether the doubleValue field is set.
          */
+        @java.lang.Override
         public boolean hasDoubleValue() {
-          return ((bitField0_ & 0x00000004) == 0x00000004);
+          return ((bitField0_ & 0x00000004) != 0);
         }
         /**
          * <code>optional double double_value = 3;</code>
+         * @return The doubleValue.
          */
+        @java.lang.Override
         public double getDoubleValue() {
           return doubleValue_;
         }
         /**
          * <code>optional double double_value = 3;</code>
+         * @param value The doubleValue to set.
+         * @return This builder for chaining.
          */
         public Builder setDoubleValue(double value) {
-          bitField0_ |= 0x00000004;
+
           doubleValue_ = value;
+          bitField0_ |= 0x00000004;
           onChanged();
           return this;
         }
         /**
          * <code>optional double double_value = 3;</code>
+         * @return This builder for chaining.
          */
         public Builder clearDoubleValue() {
           bitField0_ = (bitField0_ & ~0x00000004);
@@ -1282,27 +1207,35 @@ public final class VectorTile {
         private long intValue_ ;
         /**
          * <code>optional int64 int_value = 4;</code>
+         * @return Whether the intValue field is set.
          */
+        @java.lang.Override
         public boolean hasIntValue() {
-          return ((bitField0_ & 0x00000008) == 0x00000008);
+          return ((bitField0_ & 0x00000008) != 0);
         }
         /**
          * <code>optional int64 int_value = 4;</code>
+         * @return The intValue.
          */
+        @java.lang.Override
         public long getIntValue() {
           return intValue_;
         }
         /**
          * <code>optional int64 int_value = 4;</code>
+         * @param value The intValue to set.
+         * @return This builder for chaining.
          */
         public Builder setIntValue(long value) {
-          bitField0_ |= 0x00000008;
+
           intValue_ = value;
+          bitField0_ |= 0x00000008;
           onChanged();
           return this;
         }
         /**
          * <code>optional int64 int_value = 4;</code>
+         * @return This builder for chaining.
          */
         public Builder clearIntValue() {
           bitField0_ = (bitField0_ & ~0x00000008);
@@ -1314,27 +1247,35 @@ public final class VectorTile {
         private long uintValue_ ;
         /**
          * <code>optional uint64 uint_value = 5;</code>
+         * @return Whether the uintValue field is set.
          */
+        @java.lang.Override
         public boolean hasUintValue() {
-          return ((bitField0_ & 0x00000010) == 0x00000010);
+          return ((bitField0_ & 0x00000010) != 0);
         }
         /**
          * <code>optional uint64 uint_value = 5;</code>
+         * @return The uintValue.
          */
+        @java.lang.Override
         public long getUintValue() {
           return uintValue_;
         }
         /**
          * <code>optional uint64 uint_value = 5;</code>
+         * @param value The uintValue to set.
+         * @return This builder for chaining.
          */
         public Builder setUintValue(long value) {
-          bitField0_ |= 0x00000010;
+
           uintValue_ = value;
+          bitField0_ |= 0x00000010;
           onChanged();
           return this;
         }
         /**
          * <code>optional uint64 uint_value = 5;</code>
+         * @return This builder for chaining.
          */
         public Builder clearUintValue() {
           bitField0_ = (bitField0_ & ~0x00000010);
@@ -1346,27 +1287,35 @@ public final class VectorTile {
         private long sintValue_ ;
         /**
          * <code>optional sint64 sint_value = 6;</code>
+         * @return Whether the sintValue field is set.
          */
+        @java.lang.Override
         public boolean hasSintValue() {
-          return ((bitField0_ & 0x00000020) == 0x00000020);
+          return ((bitField0_ & 0x00000020) != 0);
         }
         /**
          * <code>optional sint64 sint_value = 6;</code>
+         * @return The sintValue.
          */
+        @java.lang.Override
         public long getSintValue() {
           return sintValue_;
         }
         /**
          * <code>optional sint64 sint_value = 6;</code>
+         * @param value The sintValue to set.
+         * @return This builder for chaining.
          */
         public Builder setSintValue(long value) {
-          bitField0_ |= 0x00000020;
+
           sintValue_ = value;
+          bitField0_ |= 0x00000020;
           onChanged();
           return this;
         }
         /**
          * <code>optional sint64 sint_value = 6;</code>
+         * @return This builder for chaining.
          */
         public Builder clearSintValue() {
           bitField0_ = (bitField0_ & ~0x00000020);
@@ -1378,27 +1327,35 @@ public final class VectorTile {
         private boolean boolValue_ ;
         /**
          * <code>optional bool bool_value = 7;</code>
+         * @return Whether the boolValue field is set.
          */
+        @java.lang.Override
         public boolean hasBoolValue() {
-          return ((bitField0_ & 0x00000040) == 0x00000040);
+          return ((bitField0_ & 0x00000040) != 0);
         }
         /**
          * <code>optional bool bool_value = 7;</code>
+         * @return The boolValue.
          */
+        @java.lang.Override
         public boolean getBoolValue() {
           return boolValue_;
         }
         /**
          * <code>optional bool bool_value = 7;</code>
+         * @param value The boolValue to set.
+         * @return This builder for chaining.
          */
         public Builder setBoolValue(boolean value) {
-          bitField0_ |= 0x00000040;
+
           boolValue_ = value;
+          bitField0_ |= 0x00000040;
           onChanged();
           return this;
         }
         /**
          * <code>optional bool bool_value = 7;</code>
+         * @return This builder for chaining.
          */
         public Builder clearBoolValue() {
           bitField0_ = (bitField0_ & ~0x00000040);
@@ -1439,7 +1396,18 @@ public final class VectorTile {
             com.google.protobuf.CodedInputStream input,
             com.google.protobuf.ExtensionRegistryLite extensionRegistry)
             throws com.google.protobuf.InvalidProtocolBufferException {
-          return new Value(input, extensionRegistry);
+          Builder builder = newBuilder();
+          try {
+            builder.mergeFrom(input, extensionRegistry);
+          } catch (com.google.protobuf.InvalidProtocolBufferException e) {
+            throw e.setUnfinishedMessage(builder.buildPartial());
+          } catch (com.google.protobuf.UninitializedMessageException e) {
+            throw e.asInvalidProtocolBufferException().setUnfinishedMessage(builder.buildPartial());
+          } catch (java.io.IOException e) {
+            throw new com.google.protobuf.InvalidProtocolBufferException(e)
+                .setUnfinishedMessage(builder.buildPartial());
+          }
+          return builder.buildPartial();
         }
       };
 
@@ -1465,103 +1433,64 @@ public final class VectorTile {
 
       /**
        * <code>optional uint64 id = 1 [default = 0];</code>
+       * @return Whether the id field is set.
        */
       boolean hasId();
       /**
        * <code>optional uint64 id = 1 [default = 0];</code>
+       * @return The id.
        */
       long getId();
 
       /**
-       * <pre>
-       * Tags of this feature are encoded as repeated pairs of
-       * integers.
-       * A detailed description of tags is located in sections
-       * 4.2 and 4.4 of the specification
-       * </pre>
-       *
        * <code>repeated uint32 tags = 2 [packed = true];</code>
+       * @return A list containing the tags.
        */
       java.util.List<java.lang.Integer> getTagsList();
       /**
-       * <pre>
-       * Tags of this feature are encoded as repeated pairs of
-       * integers.
-       * A detailed description of tags is located in sections
-       * 4.2 and 4.4 of the specification
-       * </pre>
-       *
        * <code>repeated uint32 tags = 2 [packed = true];</code>
+       * @return The count of tags.
        */
       int getTagsCount();
       /**
-       * <pre>
-       * Tags of this feature are encoded as repeated pairs of
-       * integers.
-       * A detailed description of tags is located in sections
-       * 4.2 and 4.4 of the specification
-       * </pre>
-       *
        * <code>repeated uint32 tags = 2 [packed = true];</code>
+       * @param index The index of the element to return.
+       * @return The tags at the given index.
        */
       int getTags(int index);
 
       /**
-       * <pre>
-       * The type of geometry stored in this feature.
-       * </pre>
-       *
        * <code>optional .vector_tile.Tile.GeomType type = 3 [default = UNKNOWN];</code>
+       * @return Whether the type field is set.
        */
       boolean hasType();
       /**
-       * <pre>
-       * The type of geometry stored in this feature.
-       * </pre>
-       *
        * <code>optional .vector_tile.Tile.GeomType type = 3 [default = UNKNOWN];</code>
+       * @return The type.
        */
       vector_tile.VectorTile.Tile.GeomType getType();
 
       /**
-       * <pre>
-       * Contains a stream of commands and parameters (vertices).
-       * A detailed description on geometry encoding is located in 
-       * section 4.3 of the specification.
-       * </pre>
-       *
        * <code>repeated uint32 geometry = 4 [packed = true];</code>
+       * @return A list containing the geometry.
        */
       java.util.List<java.lang.Integer> getGeometryList();
       /**
-       * <pre>
-       * Contains a stream of commands and parameters (vertices).
-       * A detailed description on geometry encoding is located in 
-       * section 4.3 of the specification.
-       * </pre>
-       *
        * <code>repeated uint32 geometry = 4 [packed = true];</code>
+       * @return The count of geometry.
        */
       int getGeometryCount();
       /**
-       * <pre>
-       * Contains a stream of commands and parameters (vertices).
-       * A detailed description on geometry encoding is located in 
-       * section 4.3 of the specification.
-       * </pre>
-       *
        * <code>repeated uint32 geometry = 4 [packed = true];</code>
+       * @param index The index of the element to return.
+       * @return The geometry at the given index.
        */
       int getGeometry(int index);
     }
     /**
-     * <pre>
-     * Features are described in section 4.2 of the specification
-     * </pre>
-     *
      * Protobuf type {@code vector_tile.Tile.Feature}
      */
-    public  static final class Feature extends
+    public static final class Feature extends
         com.google.protobuf.GeneratedMessageV3 implements
         // @@protoc_insertion_point(message_implements:vector_tile.Tile.Feature)
         FeatureOrBuilder {
@@ -1571,120 +1500,18 @@ public final class VectorTile {
         super(builder);
       }
       private Feature() {
-        id_ = 0L;
-        tags_ = java.util.Collections.emptyList();
+        tags_ = emptyIntList();
         type_ = 0;
-        geometry_ = java.util.Collections.emptyList();
+        geometry_ = emptyIntList();
       }
 
       @java.lang.Override
-      public final com.google.protobuf.UnknownFieldSet
-      getUnknownFields() {
-        return this.unknownFields;
-      }
-      private Feature(
-          com.google.protobuf.CodedInputStream input,
-          com.google.protobuf.ExtensionRegistryLite extensionRegistry)
-          throws com.google.protobuf.InvalidProtocolBufferException {
-        this();
-        if (extensionRegistry == null) {
-          throw new java.lang.NullPointerException();
-        }
-        int mutable_bitField0_ = 0;
-        com.google.protobuf.UnknownFieldSet.Builder unknownFields =
-            com.google.protobuf.UnknownFieldSet.newBuilder();
-        try {
-          boolean done = false;
-          while (!done) {
-            int tag = input.readTag();
-            switch (tag) {
-              case 0:
-                done = true;
-                break;
-              case 8: {
-                bitField0_ |= 0x00000001;
-                id_ = input.readUInt64();
-                break;
-              }
-              case 16: {
-                if (!((mutable_bitField0_ & 0x00000002) == 0x00000002)) {
-                  tags_ = new java.util.ArrayList<java.lang.Integer>();
-                  mutable_bitField0_ |= 0x00000002;
-                }
-                tags_.add(input.readUInt32());
-                break;
-              }
-              case 18: {
-                int length = input.readRawVarint32();
-                int limit = input.pushLimit(length);
-                if (!((mutable_bitField0_ & 0x00000002) == 0x00000002) && input.getBytesUntilLimit() > 0) {
-                  tags_ = new java.util.ArrayList<java.lang.Integer>();
-                  mutable_bitField0_ |= 0x00000002;
-                }
-                while (input.getBytesUntilLimit() > 0) {
-                  tags_.add(input.readUInt32());
-                }
-                input.popLimit(limit);
-                break;
-              }
-              case 24: {
-                int rawValue = input.readEnum();
-                  @SuppressWarnings("deprecation")
-                vector_tile.VectorTile.Tile.GeomType value = vector_tile.VectorTile.Tile.GeomType.valueOf(rawValue);
-                if (value == null) {
-                  unknownFields.mergeVarintField(3, rawValue);
-                } else {
-                  bitField0_ |= 0x00000002;
-                  type_ = rawValue;
-                }
-                break;
-              }
-              case 32: {
-                if (!((mutable_bitField0_ & 0x00000008) == 0x00000008)) {
-                  geometry_ = new java.util.ArrayList<java.lang.Integer>();
-                  mutable_bitField0_ |= 0x00000008;
-                }
-                geometry_.add(input.readUInt32());
-                break;
-              }
-              case 34: {
-                int length = input.readRawVarint32();
-                int limit = input.pushLimit(length);
-                if (!((mutable_bitField0_ & 0x00000008) == 0x00000008) && input.getBytesUntilLimit() > 0) {
-                  geometry_ = new java.util.ArrayList<java.lang.Integer>();
-                  mutable_bitField0_ |= 0x00000008;
-                }
-                while (input.getBytesUntilLimit() > 0) {
-                  geometry_.add(input.readUInt32());
-                }
-                input.popLimit(limit);
-                break;
-              }
-              default: {
-                if (!parseUnknownField(
-                    input, unknownFields, extensionRegistry, tag)) {
-                  done = true;
-                }
-                break;
-              }
-            }
-          }
-        } catch (com.google.protobuf.InvalidProtocolBufferException e) {
-          throw e.setUnfinishedMessage(this);
-        } catch (java.io.IOException e) {
-          throw new com.google.protobuf.InvalidProtocolBufferException(
-              e).setUnfinishedMessage(this);
-        } finally {
-          if (((mutable_bitField0_ & 0x00000002) == 0x00000002)) {
-            tags_ = java.util.Collections.unmodifiableList(tags_);
-          }
-          if (((mutable_bitField0_ & 0x00000008) == 0x00000008)) {
-            geometry_ = java.util.Collections.unmodifiableList(geometry_);
-          }
-          this.unknownFields = unknownFields.build();
-          makeExtensionsImmutable();
-        }
+      @SuppressWarnings({"unused"})
+      protected java.lang.Object newInstance(
+          UnusedPrivateParameter unused) {
+        return new Feature();
       }
+
       public static final com.google.protobuf.Descriptors.Descriptor
           getDescriptor() {
         return vector_tile.VectorTile.internal_static_vector_tile_Tile_Feature_descriptor;
@@ -1700,127 +1527,99 @@ public final class VectorTile {
 
       private int bitField0_;
       public static final int ID_FIELD_NUMBER = 1;
-      private long id_;
+      private long id_ = 0L;
       /**
        * <code>optional uint64 id = 1 [default = 0];</code>
+       * @return Whether the id field is set.
        */
+      @java.lang.Override
       public boolean hasId() {
-        return ((bitField0_ & 0x00000001) == 0x00000001);
+        return ((bitField0_ & 0x00000001) != 0);
       }
       /**
        * <code>optional uint64 id = 1 [default = 0];</code>
+       * @return The id.
        */
+      @java.lang.Override
       public long getId() {
         return id_;
       }
 
       public static final int TAGS_FIELD_NUMBER = 2;
-      private java.util.List<java.lang.Integer> tags_;
+      @SuppressWarnings("serial")
+      private com.google.protobuf.Internal.IntList tags_ =
+          emptyIntList();
       /**
-       * <pre>
-       * Tags of this feature are encoded as repeated pairs of
-       * integers.
-       * A detailed description of tags is located in sections
-       * 4.2 and 4.4 of the specification
-       * </pre>
-       *
        * <code>repeated uint32 tags = 2 [packed = true];</code>
+       * @return A list containing the tags.
        */
+      @java.lang.Override
       public java.util.List<java.lang.Integer>
           getTagsList() {
         return tags_;
       }
       /**
-       * <pre>
-       * Tags of this feature are encoded as repeated pairs of
-       * integers.
-       * A detailed description of tags is located in sections
-       * 4.2 and 4.4 of the specification
-       * </pre>
-       *
        * <code>repeated uint32 tags = 2 [packed = true];</code>
+       * @return The count of tags.
        */
       public int getTagsCount() {
         return tags_.size();
       }
       /**
-       * <pre>
-       * Tags of this feature are encoded as repeated pairs of
-       * integers.
-       * A detailed description of tags is located in sections
-       * 4.2 and 4.4 of the specification
-       * </pre>
-       *
        * <code>repeated uint32 tags = 2 [packed = true];</code>
+       * @param index The index of the element to return.
+       * @return The tags at the given index.
        */
       public int getTags(int index) {
-        return tags_.get(index);
+        return tags_.getInt(index);
       }
       private int tagsMemoizedSerializedSize = -1;
 
       public static final int TYPE_FIELD_NUMBER = 3;
-      private int type_;
+      private int type_ = 0;
       /**
-       * <pre>
-       * The type of geometry stored in this feature.
-       * </pre>
-       *
        * <code>optional .vector_tile.Tile.GeomType type = 3 [default = UNKNOWN];</code>
+       * @return Whether the type field is set.
        */
-      public boolean hasType() {
-        return ((bitField0_ & 0x00000002) == 0x00000002);
+      @java.lang.Override public boolean hasType() {
+        return ((bitField0_ & 0x00000002) != 0);
       }
       /**
-       * <pre>
-       * The type of geometry stored in this feature.
-       * </pre>
-       *
        * <code>optional .vector_tile.Tile.GeomType type = 3 [default = UNKNOWN];</code>
+       * @return The type.
        */
-      public vector_tile.VectorTile.Tile.GeomType getType() {
-        @SuppressWarnings("deprecation")
-        vector_tile.VectorTile.Tile.GeomType result = vector_tile.VectorTile.Tile.GeomType.valueOf(type_);
+      @java.lang.Override public vector_tile.VectorTile.Tile.GeomType getType() {
+        vector_tile.VectorTile.Tile.GeomType result = vector_tile.VectorTile.Tile.GeomType.forNumber(type_);
         return result == null ? vector_tile.VectorTile.Tile.GeomType.UNKNOWN : result;
       }
 
       public static final int GEOMETRY_FIELD_NUMBER = 4;
-      private java.util.List<java.lang.Integer> geometry_;
+      @SuppressWarnings("serial")
+      private com.google.protobuf.Internal.IntList geometry_ =
+          emptyIntList();
       /**
-       * <pre>
-       * Contains a stream of commands and parameters (vertices).
-       * A detailed description on geometry encoding is located in 
-       * section 4.3 of the specification.
-       * </pre>
-       *
        * <code>repeated uint32 geometry = 4 [packed = true];</code>
+       * @return A list containing the geometry.
        */
+      @java.lang.Override
       public java.util.List<java.lang.Integer>
           getGeometryList() {
         return geometry_;
       }
       /**
-       * <pre>
-       * Contains a stream of commands and parameters (vertices).
-       * A detailed description on geometry encoding is located in 
-       * section 4.3 of the specification.
-       * </pre>
-       *
        * <code>repeated uint32 geometry = 4 [packed = true];</code>
+       * @return The count of geometry.
        */
       public int getGeometryCount() {
         return geometry_.size();
       }
       /**
-       * <pre>
-       * Contains a stream of commands and parameters (vertices).
-       * A detailed description on geometry encoding is located in 
-       * section 4.3 of the specification.
-       * </pre>
-       *
        * <code>repeated uint32 geometry = 4 [packed = true];</code>
+       * @param index The index of the element to return.
+       * @return The geometry at the given index.
        */
       public int getGeometry(int index) {
-        return geometry_.get(index);
+        return geometry_.getInt(index);
       }
       private int geometryMemoizedSerializedSize = -1;
 
@@ -1839,7 +1638,7 @@ public final class VectorTile {
       public void writeTo(com.google.protobuf.CodedOutputStream output)
                           throws java.io.IOException {
         getSerializedSize();
-        if (((bitField0_ & 0x00000001) == 0x00000001)) {
+        if (((bitField0_ & 0x00000001) != 0)) {
           output.writeUInt64(1, id_);
         }
         if (getTagsList().size() > 0) {
@@ -1847,9 +1646,9 @@ public final class VectorTile {
           output.writeUInt32NoTag(tagsMemoizedSerializedSize);
         }
         for (int i = 0; i < tags_.size(); i++) {
-          output.writeUInt32NoTag(tags_.get(i));
+          output.writeUInt32NoTag(tags_.getInt(i));
         }
-        if (((bitField0_ & 0x00000002) == 0x00000002)) {
+        if (((bitField0_ & 0x00000002) != 0)) {
           output.writeEnum(3, type_);
         }
         if (getGeometryList().size() > 0) {
@@ -1857,9 +1656,9 @@ public final class VectorTile {
           output.writeUInt32NoTag(geometryMemoizedSerializedSize);
         }
         for (int i = 0; i < geometry_.size(); i++) {
-          output.writeUInt32NoTag(geometry_.get(i));
+          output.writeUInt32NoTag(geometry_.getInt(i));
         }
-        unknownFields.writeTo(output);
+        getUnknownFields().writeTo(output);
       }
 
       @java.lang.Override
@@ -1868,7 +1667,7 @@ public final class VectorTile {
         if (size != -1) return size;
 
         size = 0;
-        if (((bitField0_ & 0x00000001) == 0x00000001)) {
+        if (((bitField0_ & 0x00000001) != 0)) {
           size += com.google.protobuf.CodedOutputStream
             .computeUInt64Size(1, id_);
         }
@@ -1876,7 +1675,7 @@ public final class VectorTile {
           int dataSize = 0;
           for (int i = 0; i < tags_.size(); i++) {
             dataSize += com.google.protobuf.CodedOutputStream
-              .computeUInt32SizeNoTag(tags_.get(i));
+              .computeUInt32SizeNoTag(tags_.getInt(i));
           }
           size += dataSize;
           if (!getTagsList().isEmpty()) {
@@ -1886,7 +1685,7 @@ public final class VectorTile {
           }
           tagsMemoizedSerializedSize = dataSize;
         }
-        if (((bitField0_ & 0x00000002) == 0x00000002)) {
+        if (((bitField0_ & 0x00000002) != 0)) {
           size += com.google.protobuf.CodedOutputStream
             .computeEnumSize(3, type_);
         }
@@ -1894,7 +1693,7 @@ public final class VectorTile {
           int dataSize = 0;
           for (int i = 0; i < geometry_.size(); i++) {
             dataSize += com.google.protobuf.CodedOutputStream
-              .computeUInt32SizeNoTag(geometry_.get(i));
+              .computeUInt32SizeNoTag(geometry_.getInt(i));
           }
           size += dataSize;
           if (!getGeometryList().isEmpty()) {
@@ -1904,7 +1703,7 @@ public final class VectorTile {
           }
           geometryMemoizedSerializedSize = dataSize;
         }
-        size += unknownFields.getSerializedSize();
+        size += getUnknownFields().getSerializedSize();
         memoizedSize = size;
         return size;
       }
@@ -1919,22 +1718,21 @@ public final class VectorTile {
         }
         vector_tile.VectorTile.Tile.Feature other = (vector_tile.VectorTile.Tile.Feature) obj;
 
-        boolean result = true;
-        result = result && (hasId() == other.hasId());
+        if (hasId() != other.hasId()) return false;
         if (hasId()) {
-          result = result && (getId()
-              == other.getId());
+          if (getId()
+              != other.getId()) return false;
         }
-        result = result && getTagsList()
-            .equals(other.getTagsList());
-        result = result && (hasType() == other.hasType());
+        if (!getTagsList()
+            .equals(other.getTagsList())) return false;
+        if (hasType() != other.hasType()) return false;
         if (hasType()) {
-          result = result && type_ == other.type_;
+          if (type_ != other.type_) return false;
         }
-        result = result && getGeometryList()
-            .equals(other.getGeometryList());
-        result = result && unknownFields.equals(other.unknownFields);
-        return result;
+        if (!getGeometryList()
+            .equals(other.getGeometryList())) return false;
+        if (!getUnknownFields().equals(other.getUnknownFields())) return false;
+        return true;
       }
 
       @java.lang.Override
@@ -1961,7 +1759,7 @@ public final class VectorTile {
           hash = (37 * hash) + GEOMETRY_FIELD_NUMBER;
           hash = (53 * hash) + getGeometryList().hashCode();
         }
-        hash = (29 * hash) + unknownFields.hashCode();
+        hash = (29 * hash) + getUnknownFields().hashCode();
         memoizedHashCode = hash;
         return hash;
       }
@@ -2010,11 +1808,13 @@ public final class VectorTile {
         return com.google.protobuf.GeneratedMessageV3
             .parseWithIOException(PARSER, input, extensionRegistry);
       }
+
       public static vector_tile.VectorTile.Tile.Feature parseDelimitedFrom(java.io.InputStream input)
           throws java.io.IOException {
         return com.google.protobuf.GeneratedMessageV3
             .parseDelimitedWithIOException(PARSER, input);
       }
+
       public static vector_tile.VectorTile.Tile.Feature parseDelimitedFrom(
           java.io.InputStream input,
           com.google.protobuf.ExtensionRegistryLite extensionRegistry)
@@ -2057,10 +1857,6 @@ public final class VectorTile {
         return builder;
       }
       /**
-       * <pre>
-       * Features are described in section 4.2 of the specification
-       * </pre>
-       *
        * Protobuf type {@code vector_tile.Tile.Feature}
        */
       public static final class Builder extends
@@ -2082,30 +1878,22 @@ public final class VectorTile {
 
         // Construct using vector_tile.VectorTile.Tile.Feature.newBuilder()
         private Builder() {
-          maybeForceBuilderInitialization();
+
         }
 
         private Builder(
             com.google.protobuf.GeneratedMessageV3.BuilderParent parent) {
           super(parent);
-          maybeForceBuilderInitialization();
-        }
-        private void maybeForceBuilderInitialization() {
-          if (com.google.protobuf.GeneratedMessageV3
-                  .alwaysUseFieldBuilders) {
-          }
+
         }
         @java.lang.Override
         public Builder clear() {
           super.clear();
+          bitField0_ = 0;
           id_ = 0L;
-          bitField0_ = (bitField0_ & ~0x00000001);
-          tags_ = java.util.Collections.emptyList();
-          bitField0_ = (bitField0_ & ~0x00000002);
+          tags_ = emptyIntList();
           type_ = 0;
-          bitField0_ = (bitField0_ & ~0x00000004);
-          geometry_ = java.util.Collections.emptyList();
-          bitField0_ = (bitField0_ & ~0x00000008);
+          geometry_ = emptyIntList();
           return this;
         }
 
@@ -2132,62 +1920,64 @@ public final class VectorTile {
         @java.lang.Override
         public vector_tile.VectorTile.Tile.Feature buildPartial() {
           vector_tile.VectorTile.Tile.Feature result = new vector_tile.VectorTile.Tile.Feature(this);
+          if (bitField0_ != 0) { buildPartial0(result); }
+          onBuilt();
+          return result;
+        }
+
+        private void buildPartial0(vector_tile.VectorTile.Tile.Feature result) {
           int from_bitField0_ = bitField0_;
           int to_bitField0_ = 0;
-          if (((from_bitField0_ & 0x00000001) == 0x00000001)) {
+          if (((from_bitField0_ & 0x00000001) != 0)) {
+            result.id_ = id_;
             to_bitField0_ |= 0x00000001;
           }
-          result.id_ = id_;
-          if (((bitField0_ & 0x00000002) == 0x00000002)) {
-            tags_ = java.util.Collections.unmodifiableList(tags_);
-            bitField0_ = (bitField0_ & ~0x00000002);
+          if (((from_bitField0_ & 0x00000002) != 0)) {
+            tags_.makeImmutable();
+            result.tags_ = tags_;
           }
-          result.tags_ = tags_;
-          if (((from_bitField0_ & 0x00000004) == 0x00000004)) {
+          if (((from_bitField0_ & 0x00000004) != 0)) {
+            result.type_ = type_;
             to_bitField0_ |= 0x00000002;
           }
-          result.type_ = type_;
-          if (((bitField0_ & 0x00000008) == 0x00000008)) {
-            geometry_ = java.util.Collections.unmodifiableList(geometry_);
-            bitField0_ = (bitField0_ & ~0x00000008);
+          if (((from_bitField0_ & 0x00000008) != 0)) {
+            geometry_.makeImmutable();
+            result.geometry_ = geometry_;
           }
-          result.geometry_ = geometry_;
-          result.bitField0_ = to_bitField0_;
-          onBuilt();
-          return result;
+          result.bitField0_ |= to_bitField0_;
         }
 
         @java.lang.Override
         public Builder clone() {
-          return (Builder) super.clone();
+          return super.clone();
         }
         @java.lang.Override
         public Builder setField(
             com.google.protobuf.Descriptors.FieldDescriptor field,
             java.lang.Object value) {
-          return (Builder) super.setField(field, value);
+          return super.setField(field, value);
         }
         @java.lang.Override
         public Builder clearField(
             com.google.protobuf.Descriptors.FieldDescriptor field) {
-          return (Builder) super.clearField(field);
+          return super.clearField(field);
         }
         @java.lang.Override
         public Builder clearOneof(
             com.google.protobuf.Descriptors.OneofDescriptor oneof) {
-          return (Builder) super.clearOneof(oneof);
+          return super.clearOneof(oneof);
         }
         @java.lang.Override
         public Builder setRepeatedField(
             com.google.protobuf.Descriptors.FieldDescriptor field,
             int index, java.lang.Object value) {
-          return (Builder) super.setRepeatedField(field, index, value);
+          return super.setRepeatedField(field, index, value);
         }
         @java.lang.Override
         public Builder addRepeatedField(
             com.google.protobuf.Descriptors.FieldDescriptor field,
             java.lang.Object value) {
-          return (Builder) super.addRepeatedField(field, value);
+          return super.addRepeatedField(field, value);
         }
         @java.lang.Override
         public Builder mergeFrom(com.google.protobuf.Message other) {
@@ -2207,7 +1997,8 @@ public final class VectorTile {
           if (!other.tags_.isEmpty()) {
             if (tags_.isEmpty()) {
               tags_ = other.tags_;
-              bitField0_ = (bitField0_ & ~0x00000002);
+              tags_.makeImmutable();
+              bitField0_ |= 0x00000002;
             } else {
               ensureTagsIsMutable();
               tags_.addAll(other.tags_);
@@ -2220,14 +2011,15 @@ public final class VectorTile {
           if (!other.geometry_.isEmpty()) {
             if (geometry_.isEmpty()) {
               geometry_ = other.geometry_;
-              bitField0_ = (bitField0_ & ~0x00000008);
+              geometry_.makeImmutable();
+              bitField0_ |= 0x00000008;
             } else {
               ensureGeometryIsMutable();
               geometry_.addAll(other.geometry_);
             }
             onChanged();
           }
-          this.mergeUnknownFields(other.unknownFields);
+          this.mergeUnknownFields(other.getUnknownFields());
           onChanged();
           return this;
         }
@@ -2242,17 +2034,79 @@ public final class VectorTile {
             com.google.protobuf.CodedInputStream input,
             com.google.protobuf.ExtensionRegistryLite extensionRegistry)
             throws java.io.IOException {
-          vector_tile.VectorTile.Tile.Feature parsedMessage = null;
+          if (extensionRegistry == null) {
+            throw new java.lang.NullPointerException();
+          }
           try {
-            parsedMessage = PARSER.parsePartialFrom(input, extensionRegistry);
+            boolean done = false;
+            while (!done) {
+              int tag = input.readTag();
+              switch (tag) {
+                case 0:
+                  done = true;
+                  break;
+                case 8: {
+                  id_ = input.readUInt64();
+                  bitField0_ |= 0x00000001;
+                  break;
+                } // case 8
+                case 16: {
+                  int v = input.readUInt32();
+                  ensureTagsIsMutable();
+                  tags_.addInt(v);
+                  break;
+                } // case 16
+                case 18: {
+                  int length = input.readRawVarint32();
+                  int limit = input.pushLimit(length);
+                  ensureTagsIsMutable();
+                  while (input.getBytesUntilLimit() > 0) {
+                    tags_.addInt(input.readUInt32());
+                  }
+                  input.popLimit(limit);
+                  break;
+                } // case 18
+                case 24: {
+                  int tmpRaw = input.readEnum();
+                  vector_tile.VectorTile.Tile.GeomType tmpValue =
+                      vector_tile.VectorTile.Tile.GeomType.forNumber(tmpRaw);
+                  if (tmpValue == null) {
+                    mergeUnknownVarintField(3, tmpRaw);
+                  } else {
+                    type_ = tmpRaw;
+                    bitField0_ |= 0x00000004;
+                  }
+                  break;
+                } // case 24
+                case 32: {
+                  int v = input.readUInt32();
+                  ensureGeometryIsMutable();
+                  geometry_.addInt(v);
+                  break;
+                } // case 32
+                case 34: {
+                  int length = input.readRawVarint32();
+                  int limit = input.pushLimit(length);
+                  ensureGeometryIsMutable();
+                  while (input.getBytesUntilLimit() > 0) {
+                    geometry_.addInt(input.readUInt32());
+                  }
+                  input.popLimit(limit);
+                  break;
+                } // case 34
+                default: {
+                  if (!super.parseUnknownField(input, extensionRegistry, tag)) {
+                    done = true; // was an endgroup tag
+                  }
+                  break;
+                } // default:
+              } // switch (tag)
+            } // while (!done)
           } catch (com.google.protobuf.InvalidProtocolBufferException e) {
-            parsedMessage = (vector_tile.VectorTile.Tile.Feature) e.getUnfinishedMessage();
             throw e.unwrapIOException();
           } finally {
-            if (parsedMessage != null) {
-              mergeFrom(parsedMessage);
-            }
-          }
+            onChanged();
+          } // finally
           return this;
         }
         private int bitField0_;
@@ -2260,27 +2114,35 @@ public final class VectorTile {
         private long id_ ;
         /**
          * <code>optional uint64 id = 1 [default = 0];</code>
+         * @return Whether the id field is set.
          */
+        @java.lang.Override
         public boolean hasId() {
-          return ((bitField0_ & 0x00000001) == 0x00000001);
+          return ((bitField0_ & 0x00000001) != 0);
         }
         /**
          * <code>optional uint64 id = 1 [default = 0];</code>
+         * @return The id.
          */
+        @java.lang.Override
         public long getId() {
           return id_;
         }
         /**
          * <code>optional uint64 id = 1 [default = 0];</code>
+         * @param value The id to set.
+         * @return This builder for chaining.
          */
         public Builder setId(long value) {
-          bitField0_ |= 0x00000001;
+
           id_ = value;
+          bitField0_ |= 0x00000001;
           onChanged();
           return this;
         }
         /**
          * <code>optional uint64 id = 1 [default = 0];</code>
+         * @return This builder for chaining.
          */
         public Builder clearId() {
           bitField0_ = (bitField0_ & ~0x00000001);
@@ -2289,116 +2151,85 @@ public final class VectorTile {
           return this;
         }
 
-        private java.util.List<java.lang.Integer> tags_ = java.util.Collections.emptyList();
+        private com.google.protobuf.Internal.IntList tags_ = emptyIntList();
         private void ensureTagsIsMutable() {
-          if (!((bitField0_ & 0x00000002) == 0x00000002)) {
-            tags_ = new java.util.ArrayList<java.lang.Integer>(tags_);
-            bitField0_ |= 0x00000002;
-           }
+          if (!tags_.isModifiable()) {
+            tags_ = makeMutableCopy(tags_);
+          }
+          bitField0_ |= 0x00000002;
         }
         /**
-         * <pre>
-         * Tags of this feature are encoded as repeated pairs of
-         * integers.
-         * A detailed description of tags is located in sections
-         * 4.2 and 4.4 of the specification
-         * </pre>
-         *
          * <code>repeated uint32 tags = 2 [packed = true];</code>
+         * @return A list containing the tags.
          */
         public java.util.List<java.lang.Integer>
             getTagsList() {
-          return java.util.Collections.unmodifiableList(tags_);
+          tags_.makeImmutable();
+          return tags_;
         }
         /**
-         * <pre>
-         * Tags of this feature are encoded as repeated pairs of
-         * integers.
-         * A detailed description of tags is located in sections
-         * 4.2 and 4.4 of the specification
-         * </pre>
-         *
          * <code>repeated uint32 tags = 2 [packed = true];</code>
+         * @return The count of tags.
          */
         public int getTagsCount() {
           return tags_.size();
         }
         /**
-         * <pre>
-         * Tags of this feature are encoded as repeated pairs of
-         * integers.
-         * A detailed description of tags is located in sections
-         * 4.2 and 4.4 of the specification
-         * </pre>
-         *
          * <code>repeated uint32 tags = 2 [packed = true];</code>
+         * @param index The index of the element to return.
+         * @return The tags at the given index.
          */
         public int getTags(int index) {
-          return tags_.get(index);
+          return tags_.getInt(index);
         }
         /**
-         * <pre>
-         * Tags of this feature are encoded as repeated pairs of
-         * integers.
-         * A detailed description of tags is located in sections
-         * 4.2 and 4.4 of the specification
-         * </pre>
-         *
          * <code>repeated uint32 tags = 2 [packed = true];</code>
+         * @param index The index to set the value at.
+         * @param value The tags to set.
+         * @return This builder for chaining.
          */
         public Builder setTags(
             int index, int value) {
+
           ensureTagsIsMutable();
-          tags_.set(index, value);
+          tags_.setInt(index, value);
+          bitField0_ |= 0x00000002;
           onChanged();
           return this;
         }
         /**
-         * <pre>
-         * Tags of this feature are encoded as repeated pairs of
-         * integers.
-         * A detailed description of tags is located in sections
-         * 4.2 and 4.4 of the specification
-         * </pre>
-         *
          * <code>repeated uint32 tags = 2 [packed = true];</code>
+         * @param value The tags to add.
+         * @return This builder for chaining.
          */
         public Builder addTags(int value) {
+
           ensureTagsIsMutable();
-          tags_.add(value);
+          tags_.addInt(value);
+          bitField0_ |= 0x00000002;
           onChanged();
           return this;
         }
         /**
-         * <pre>
-         * Tags of this feature are encoded as repeated pairs of
-         * integers.
-         * A detailed description of tags is located in sections
-         * 4.2 and 4.4 of the specification
-         * </pre>
-         *
          * <code>repeated uint32 tags = 2 [packed = true];</code>
+         * @param values The tags to add.
+         * @return This builder for chaining.
          */
         public Builder addAllTags(
             java.lang.Iterable<? extends java.lang.Integer> values) {
           ensureTagsIsMutable();
           com.google.protobuf.AbstractMessageLite.Builder.addAll(
               values, tags_);
+          bitField0_ |= 0x00000002;
           onChanged();
           return this;
         }
         /**
-         * <pre>
-         * Tags of this feature are encoded as repeated pairs of
-         * integers.
-         * A detailed description of tags is located in sections
-         * 4.2 and 4.4 of the specification
-         * </pre>
-         *
          * <code>repeated uint32 tags = 2 [packed = true];</code>
+         * @return This builder for chaining.
          */
         public Builder clearTags() {
-          tags_ = java.util.Collections.emptyList();
+          tags_ = emptyIntList();
           bitField0_ = (bitField0_ & ~0x00000002);
           onChanged();
           return this;
@@ -2406,33 +2237,25 @@ public final class VectorTile {
 
         private int type_ = 0;
         /**
-         * <pre>
-         * The type of geometry stored in this feature.
-         * </pre>
-         *
          * <code>optional .vector_tile.Tile.GeomType type = 3 [default = UNKNOWN];</code>
+         * @return Whether the type field is set.
          */
-        public boolean hasType() {
-          return ((bitField0_ & 0x00000004) == 0x00000004);
+        @java.lang.Override public boolean hasType() {
+          return ((bitField0_ & 0x00000004) != 0);
         }
         /**
-         * <pre>
-         * The type of geometry stored in this feature.
-         * </pre>
-         *
          * <code>optional .vector_tile.Tile.GeomType type = 3 [default = UNKNOWN];</code>
+         * @return The type.
          */
+        @java.lang.Override
         public vector_tile.VectorTile.Tile.GeomType getType() {
-          @SuppressWarnings("deprecation")
-          vector_tile.VectorTile.Tile.GeomType result = vector_tile.VectorTile.Tile.GeomType.valueOf(type_);
+          vector_tile.VectorTile.Tile.GeomType result = vector_tile.VectorTile.Tile.GeomType.forNumber(type_);
           return result == null ? vector_tile.VectorTile.Tile.GeomType.UNKNOWN : result;
         }
         /**
-         * <pre>
-         * The type of geometry stored in this feature.
-         * </pre>
-         *
          * <code>optional .vector_tile.Tile.GeomType type = 3 [default = UNKNOWN];</code>
+         * @param value The type to set.
+         * @return This builder for chaining.
          */
         public Builder setType(vector_tile.VectorTile.Tile.GeomType value) {
           if (value == null) {
@@ -2444,11 +2267,8 @@ public final class VectorTile {
           return this;
         }
         /**
-         * <pre>
-         * The type of geometry stored in this feature.
-         * </pre>
-         *
          * <code>optional .vector_tile.Tile.GeomType type = 3 [default = UNKNOWN];</code>
+         * @return This builder for chaining.
          */
         public Builder clearType() {
           bitField0_ = (bitField0_ & ~0x00000004);
@@ -2457,109 +2277,85 @@ public final class VectorTile {
           return this;
         }
 
-        private java.util.List<java.lang.Integer> geometry_ = java.util.Collections.emptyList();
+        private com.google.protobuf.Internal.IntList geometry_ = emptyIntList();
         private void ensureGeometryIsMutable() {
-          if (!((bitField0_ & 0x00000008) == 0x00000008)) {
-            geometry_ = new java.util.ArrayList<java.lang.Integer>(geometry_);
-            bitField0_ |= 0x00000008;
-           }
+          if (!geometry_.isModifiable()) {
+            geometry_ = makeMutableCopy(geometry_);
+          }
+          bitField0_ |= 0x00000008;
         }
         /**
-         * <pre>
-         * Contains a stream of commands and parameters (vertices).
-         * A detailed description on geometry encoding is located in 
-         * section 4.3 of the specification.
-         * </pre>
-         *
          * <code>repeated uint32 geometry = 4 [packed = true];</code>
+         * @return A list containing the geometry.
          */
         public java.util.List<java.lang.Integer>
             getGeometryList() {
-          return java.util.Collections.unmodifiableList(geometry_);
+          geometry_.makeImmutable();
+          return geometry_;
         }
         /**
-         * <pre>
-         * Contains a stream of commands and parameters (vertices).
-         * A detailed description on geometry encoding is located in 
-         * section 4.3 of the specification.
-         * </pre>
-         *
          * <code>repeated uint32 geometry = 4 [packed = true];</code>
+         * @return The count of geometry.
          */
         public int getGeometryCount() {
           return geometry_.size();
         }
         /**
-         * <pre>
-         * Contains a stream of commands and parameters (vertices).
-         * A detailed description on geometry encoding is located in 
-         * section 4.3 of the specification.
-         * </pre>
-         *
          * <code>repeated uint32 geometry = 4 [packed = true];</code>
+         * @param index The index of the element to return.
+         * @return The geometry at the given index.
          */
         public int getGeometry(int index) {
-          return geometry_.get(index);
+          return geometry_.getInt(index);
         }
         /**
-         * <pre>
-         * Contains a stream of commands and parameters (vertices).
-         * A detailed description on geometry encoding is located in 
-         * section 4.3 of the specification.
-         * </pre>
-         *
          * <code>repeated uint32 geometry = 4 [packed = true];</code>
+         * @param index The index to set the value at.
+         * @param value The geometry to set.
+         * @return This builder for chaining.
          */
         public Builder setGeometry(
             int index, int value) {
+
           ensureGeometryIsMutable();
-          geometry_.set(index, value);
+          geometry_.setInt(index, value);
+          bitField0_ |= 0x00000008;
           onChanged();
           return this;
         }
         /**
-         * <pre>
-         * Contains a stream of commands and parameters (vertices).
-         * A detailed description on geometry encoding is located in 
-         * section 4.3 of the specification.
-         * </pre>
-         *
          * <code>repeated uint32 geometry = 4 [packed = true];</code>
+         * @param value The geometry to add.
+         * @return This builder for chaining.
          */
         public Builder addGeometry(int value) {
+
           ensureGeometryIsMutable();
-          geometry_.add(value);
+          geometry_.addInt(value);
+          bitField0_ |= 0x00000008;
           onChanged();
           return this;
         }
         /**
-         * <pre>
-         * Contains a stream of commands and parameters (vertices).
-         * A detailed description on geometry encoding is located in 
-         * section 4.3 of the specification.
-         * </pre>
-         *
          * <code>repeated uint32 geometry = 4 [packed = true];</code>
+         * @param values The geometry to add.
+         * @return This builder for chaining.
          */
         public Builder addAllGeometry(
             java.lang.Iterable<? extends java.lang.Integer> values) {
           ensureGeometryIsMutable();
           com.google.protobuf.AbstractMessageLite.Builder.addAll(
               values, geometry_);
+          bitField0_ |= 0x00000008;
           onChanged();
           return this;
         }
         /**
-         * <pre>
-         * Contains a stream of commands and parameters (vertices).
-         * A detailed description on geometry encoding is located in 
-         * section 4.3 of the specification.
-         * </pre>
-         *
          * <code>repeated uint32 geometry = 4 [packed = true];</code>
+         * @return This builder for chaining.
          */
         public Builder clearGeometry() {
-          geometry_ = java.util.Collections.emptyList();
+          geometry_ = emptyIntList();
           bitField0_ = (bitField0_ & ~0x00000008);
           onChanged();
           return this;
@@ -2597,7 +2393,18 @@ public final class VectorTile {
             com.google.protobuf.CodedInputStream input,
             com.google.protobuf.ExtensionRegistryLite extensionRegistry)
             throws com.google.protobuf.InvalidProtocolBufferException {
-          return new Feature(input, extensionRegistry);
+          Builder builder = newBuilder();
+          try {
+            builder.mergeFrom(input, extensionRegistry);
+          } catch (com.google.protobuf.InvalidProtocolBufferException e) {
+            throw e.setUnfinishedMessage(builder.buildPartial());
+          } catch (com.google.protobuf.UninitializedMessageException e) {
+            throw e.asInvalidProtocolBufferException().setUnfinishedMessage(builder.buildPartial());
+          } catch (java.io.IOException e) {
+            throw new com.google.protobuf.InvalidProtocolBufferException(e)
+                .setUnfinishedMessage(builder.buildPartial());
+          }
+          return builder.buildPartial();
         }
       };
 
@@ -2623,192 +2430,121 @@ public final class VectorTile {
             ExtendableMessageOrBuilder<Layer> {
 
       /**
-       * <pre>
-       * Any compliant implementation must first read the version
-       * number encoded in this message and choose the correct
-       * implementation for this version number before proceeding to
-       * decode other parts of this message.
-       * </pre>
-       *
        * <code>required uint32 version = 15 [default = 1];</code>
+       * @return Whether the version field is set.
        */
       boolean hasVersion();
       /**
-       * <pre>
-       * Any compliant implementation must first read the version
-       * number encoded in this message and choose the correct
-       * implementation for this version number before proceeding to
-       * decode other parts of this message.
-       * </pre>
-       *
        * <code>required uint32 version = 15 [default = 1];</code>
+       * @return The version.
        */
       int getVersion();
 
       /**
        * <code>required string name = 1;</code>
+       * @return Whether the name field is set.
        */
       boolean hasName();
       /**
        * <code>required string name = 1;</code>
+       * @return The name.
        */
       java.lang.String getName();
       /**
        * <code>required string name = 1;</code>
+       * @return The bytes for name.
        */
       com.google.protobuf.ByteString
           getNameBytes();
 
       /**
-       * <pre>
-       * The actual features in this tile.
-       * </pre>
-       *
        * <code>repeated .vector_tile.Tile.Feature features = 2;</code>
        */
       java.util.List<vector_tile.VectorTile.Tile.Feature> 
           getFeaturesList();
       /**
-       * <pre>
-       * The actual features in this tile.
-       * </pre>
-       *
        * <code>repeated .vector_tile.Tile.Feature features = 2;</code>
        */
       vector_tile.VectorTile.Tile.Feature getFeatures(int index);
       /**
-       * <pre>
-       * The actual features in this tile.
-       * </pre>
-       *
        * <code>repeated .vector_tile.Tile.Feature features = 2;</code>
        */
       int getFeaturesCount();
       /**
-       * <pre>
-       * The actual features in this tile.
-       * </pre>
-       *
        * <code>repeated .vector_tile.Tile.Feature features = 2;</code>
        */
       java.util.List<? extends vector_tile.VectorTile.Tile.FeatureOrBuilder> 
           getFeaturesOrBuilderList();
       /**
-       * <pre>
-       * The actual features in this tile.
-       * </pre>
-       *
        * <code>repeated .vector_tile.Tile.Feature features = 2;</code>
        */
       vector_tile.VectorTile.Tile.FeatureOrBuilder getFeaturesOrBuilder(
           int index);
 
       /**
-       * <pre>
-       * Dictionary encoding for keys
-       * </pre>
-       *
        * <code>repeated string keys = 3;</code>
+       * @return A list containing the keys.
        */
       java.util.List<java.lang.String>
           getKeysList();
       /**
-       * <pre>
-       * Dictionary encoding for keys
-       * </pre>
-       *
        * <code>repeated string keys = 3;</code>
+       * @return The count of keys.
        */
       int getKeysCount();
       /**
-       * <pre>
-       * Dictionary encoding for keys
-       * </pre>
-       *
        * <code>repeated string keys = 3;</code>
+       * @param index The index of the element to return.
+       * @return The keys at the given index.
        */
       java.lang.String getKeys(int index);
       /**
-       * <pre>
-       * Dictionary encoding for keys
-       * </pre>
-       *
        * <code>repeated string keys = 3;</code>
+       * @param index The index of the value to return.
+       * @return The bytes of the keys at the given index.
        */
       com.google.protobuf.ByteString
           getKeysBytes(int index);
 
       /**
-       * <pre>
-       * Dictionary encoding for values
-       * </pre>
-       *
        * <code>repeated .vector_tile.Tile.Value values = 4;</code>
        */
       java.util.List<vector_tile.VectorTile.Tile.Value> 
           getValuesList();
       /**
-       * <pre>
-       * Dictionary encoding for values
-       * </pre>
-       *
        * <code>repeated .vector_tile.Tile.Value values = 4;</code>
        */
       vector_tile.VectorTile.Tile.Value getValues(int index);
       /**
-       * <pre>
-       * Dictionary encoding for values
-       * </pre>
-       *
        * <code>repeated .vector_tile.Tile.Value values = 4;</code>
        */
       int getValuesCount();
       /**
-       * <pre>
-       * Dictionary encoding for values
-       * </pre>
-       *
        * <code>repeated .vector_tile.Tile.Value values = 4;</code>
        */
       java.util.List<? extends vector_tile.VectorTile.Tile.ValueOrBuilder> 
           getValuesOrBuilderList();
       /**
-       * <pre>
-       * Dictionary encoding for values
-       * </pre>
-       *
        * <code>repeated .vector_tile.Tile.Value values = 4;</code>
        */
       vector_tile.VectorTile.Tile.ValueOrBuilder getValuesOrBuilder(
           int index);
 
       /**
-       * <pre>
-       * Although this is an "optional" field it is required by the specification.
-       * See https://github.com/mapbox/vector-tile-spec/issues/47
-       * </pre>
-       *
        * <code>optional uint32 extent = 5 [default = 4096];</code>
+       * @return Whether the extent field is set.
        */
       boolean hasExtent();
       /**
-       * <pre>
-       * Although this is an "optional" field it is required by the specification.
-       * See https://github.com/mapbox/vector-tile-spec/issues/47
-       * </pre>
-       *
        * <code>optional uint32 extent = 5 [default = 4096];</code>
+       * @return The extent.
        */
       int getExtent();
     }
     /**
-     * <pre>
-     * Layers are described in section 4.1 of the specification
-     * </pre>
-     *
      * Protobuf type {@code vector_tile.Tile.Layer}
      */
-    public  static final class Layer extends
+    public static final class Layer extends
         com.google.protobuf.GeneratedMessageV3.ExtendableMessage<
           Layer> implements
         // @@protoc_insertion_point(message_implements:vector_tile.Tile.Layer)
@@ -2822,106 +2558,19 @@ public final class VectorTile {
         version_ = 1;
         name_ = "";
         features_ = java.util.Collections.emptyList();
-        keys_ = com.google.protobuf.LazyStringArrayList.EMPTY;
+        keys_ =
+            com.google.protobuf.LazyStringArrayList.emptyList();
         values_ = java.util.Collections.emptyList();
         extent_ = 4096;
       }
 
       @java.lang.Override
-      public final com.google.protobuf.UnknownFieldSet
-      getUnknownFields() {
-        return this.unknownFields;
-      }
-      private Layer(
-          com.google.protobuf.CodedInputStream input,
-          com.google.protobuf.ExtensionRegistryLite extensionRegistry)
-          throws com.google.protobuf.InvalidProtocolBufferException {
-        this();
-        if (extensionRegistry == null) {
-          throw new java.lang.NullPointerException();
-        }
-        int mutable_bitField0_ = 0;
-        com.google.protobuf.UnknownFieldSet.Builder unknownFields =
-            com.google.protobuf.UnknownFieldSet.newBuilder();
-        try {
-          boolean done = false;
-          while (!done) {
-            int tag = input.readTag();
-            switch (tag) {
-              case 0:
-                done = true;
-                break;
-              case 10: {
-                com.google.protobuf.ByteString bs = input.readBytes();
-                bitField0_ |= 0x00000002;
-                name_ = bs;
-                break;
-              }
-              case 18: {
-                if (!((mutable_bitField0_ & 0x00000004) == 0x00000004)) {
-                  features_ = new java.util.ArrayList<vector_tile.VectorTile.Tile.Feature>();
-                  mutable_bitField0_ |= 0x00000004;
-                }
-                features_.add(
-                    input.readMessage(vector_tile.VectorTile.Tile.Feature.PARSER, extensionRegistry));
-                break;
-              }
-              case 26: {
-                com.google.protobuf.ByteString bs = input.readBytes();
-                if (!((mutable_bitField0_ & 0x00000008) == 0x00000008)) {
-                  keys_ = new com.google.protobuf.LazyStringArrayList();
-                  mutable_bitField0_ |= 0x00000008;
-                }
-                keys_.add(bs);
-                break;
-              }
-              case 34: {
-                if (!((mutable_bitField0_ & 0x00000010) == 0x00000010)) {
-                  values_ = new java.util.ArrayList<vector_tile.VectorTile.Tile.Value>();
-                  mutable_bitField0_ |= 0x00000010;
-                }
-                values_.add(
-                    input.readMessage(vector_tile.VectorTile.Tile.Value.PARSER, extensionRegistry));
-                break;
-              }
-              case 40: {
-                bitField0_ |= 0x00000004;
-                extent_ = input.readUInt32();
-                break;
-              }
-              case 120: {
-                bitField0_ |= 0x00000001;
-                version_ = input.readUInt32();
-                break;
-              }
-              default: {
-                if (!parseUnknownField(
-                    input, unknownFields, extensionRegistry, tag)) {
-                  done = true;
-                }
-                break;
-              }
-            }
-          }
-        } catch (com.google.protobuf.InvalidProtocolBufferException e) {
-          throw e.setUnfinishedMessage(this);
-        } catch (java.io.IOException e) {
-          throw new com.google.protobuf.InvalidProtocolBufferException(
-              e).setUnfinishedMessage(this);
-        } finally {
-          if (((mutable_bitField0_ & 0x00000004) == 0x00000004)) {
-            features_ = java.util.Collections.unmodifiableList(features_);
-          }
-          if (((mutable_bitField0_ & 0x00000008) == 0x00000008)) {
-            keys_ = keys_.getUnmodifiableView();
-          }
-          if (((mutable_bitField0_ & 0x00000010) == 0x00000010)) {
-            values_ = java.util.Collections.unmodifiableList(values_);
-          }
-          this.unknownFields = unknownFields.build();
-          makeExtensionsImmutable();
-        }
+      @SuppressWarnings({"unused"})
+      protected java.lang.Object newInstance(
+          UnusedPrivateParameter unused) {
+        return new Layer();
       }
+
       public static final com.google.protobuf.Descriptors.Descriptor
           getDescriptor() {
         return vector_tile.VectorTile.internal_static_vector_tile_Tile_Layer_descriptor;
@@ -2937,45 +2586,40 @@ public final class VectorTile {
 
       private int bitField0_;
       public static final int VERSION_FIELD_NUMBER = 15;
-      private int version_;
+      private int version_ = 1;
       /**
-       * <pre>
-       * Any compliant implementation must first read the version
-       * number encoded in this message and choose the correct
-       * implementation for this version number before proceeding to
-       * decode other parts of this message.
-       * </pre>
-       *
        * <code>required uint32 version = 15 [default = 1];</code>
+       * @return Whether the version field is set.
        */
+      @java.lang.Override
       public boolean hasVersion() {
-        return ((bitField0_ & 0x00000001) == 0x00000001);
+        return ((bitField0_ & 0x00000001) != 0);
       }
       /**
-       * <pre>
-       * Any compliant implementation must first read the version
-       * number encoded in this message and choose the correct
-       * implementation for this version number before proceeding to
-       * decode other parts of this message.
-       * </pre>
-       *
        * <code>required uint32 version = 15 [default = 1];</code>
+       * @return The version.
        */
+      @java.lang.Override
       public int getVersion() {
         return version_;
       }
 
       public static final int NAME_FIELD_NUMBER = 1;
-      private volatile java.lang.Object name_;
+      @SuppressWarnings("serial")
+      private volatile java.lang.Object name_ = "";
       /**
        * <code>required string name = 1;</code>
+       * @return Whether the name field is set.
        */
+      @java.lang.Override
       public boolean hasName() {
-        return ((bitField0_ & 0x00000002) == 0x00000002);
+        return ((bitField0_ & 0x00000002) != 0);
       }
       /**
        * <code>required string name = 1;</code>
+       * @return The name.
        */
+      @java.lang.Override
       public java.lang.String getName() {
         java.lang.Object ref = name_;
         if (ref instanceof java.lang.String) {
@@ -2992,7 +2636,9 @@ public final class VectorTile {
       }
       /**
        * <code>required string name = 1;</code>
+       * @return The bytes for name.
        */
+      @java.lang.Override
       public com.google.protobuf.ByteString
           getNameBytes() {
         java.lang.Object ref = name_;
@@ -3008,99 +2654,77 @@ public final class VectorTile {
       }
 
       public static final int FEATURES_FIELD_NUMBER = 2;
+      @SuppressWarnings("serial")
       private java.util.List<vector_tile.VectorTile.Tile.Feature> features_;
       /**
-       * <pre>
-       * The actual features in this tile.
-       * </pre>
-       *
        * <code>repeated .vector_tile.Tile.Feature features = 2;</code>
        */
+      @java.lang.Override
       public java.util.List<vector_tile.VectorTile.Tile.Feature> getFeaturesList() {
         return features_;
       }
       /**
-       * <pre>
-       * The actual features in this tile.
-       * </pre>
-       *
        * <code>repeated .vector_tile.Tile.Feature features = 2;</code>
        */
+      @java.lang.Override
       public java.util.List<? extends vector_tile.VectorTile.Tile.FeatureOrBuilder> 
           getFeaturesOrBuilderList() {
         return features_;
       }
       /**
-       * <pre>
-       * The actual features in this tile.
-       * </pre>
-       *
        * <code>repeated .vector_tile.Tile.Feature features = 2;</code>
        */
+      @java.lang.Override
       public int getFeaturesCount() {
         return features_.size();
       }
       /**
-       * <pre>
-       * The actual features in this tile.
-       * </pre>
-       *
        * <code>repeated .vector_tile.Tile.Feature features = 2;</code>
        */
+      @java.lang.Override
       public vector_tile.VectorTile.Tile.Feature getFeatures(int index) {
         return features_.get(index);
       }
       /**
-       * <pre>
-       * The actual features in this tile.
-       * </pre>
-       *
        * <code>repeated .vector_tile.Tile.Feature features = 2;</code>
        */
+      @java.lang.Override
       public vector_tile.VectorTile.Tile.FeatureOrBuilder getFeaturesOrBuilder(
           int index) {
         return features_.get(index);
       }
 
       public static final int KEYS_FIELD_NUMBER = 3;
-      private com.google.protobuf.LazyStringList keys_;
+      @SuppressWarnings("serial")
+      private com.google.protobuf.LazyStringArrayList keys_ =
+          com.google.protobuf.LazyStringArrayList.emptyList();
       /**
-       * <pre>
-       * Dictionary encoding for keys
-       * </pre>
-       *
        * <code>repeated string keys = 3;</code>
+       * @return A list containing the keys.
        */
       public com.google.protobuf.ProtocolStringList
           getKeysList() {
         return keys_;
       }
       /**
-       * <pre>
-       * Dictionary encoding for keys
-       * </pre>
-       *
        * <code>repeated string keys = 3;</code>
+       * @return The count of keys.
        */
       public int getKeysCount() {
         return keys_.size();
       }
       /**
-       * <pre>
-       * Dictionary encoding for keys
-       * </pre>
-       *
        * <code>repeated string keys = 3;</code>
+       * @param index The index of the element to return.
+       * @return The keys at the given index.
        */
       public java.lang.String getKeys(int index) {
         return keys_.get(index);
       }
       /**
-       * <pre>
-       * Dictionary encoding for keys
-       * </pre>
-       *
        * <code>repeated string keys = 3;</code>
+       * @param index The index of the value to return.
+       * @return The bytes of the keys at the given index.
        */
       public com.google.protobuf.ByteString
           getKeysBytes(int index) {
@@ -3108,81 +2732,61 @@ public final class VectorTile {
       }
 
       public static final int VALUES_FIELD_NUMBER = 4;
+      @SuppressWarnings("serial")
       private java.util.List<vector_tile.VectorTile.Tile.Value> values_;
       /**
-       * <pre>
-       * Dictionary encoding for values
-       * </pre>
-       *
        * <code>repeated .vector_tile.Tile.Value values = 4;</code>
        */
+      @java.lang.Override
       public java.util.List<vector_tile.VectorTile.Tile.Value> getValuesList() {
         return values_;
       }
       /**
-       * <pre>
-       * Dictionary encoding for values
-       * </pre>
-       *
        * <code>repeated .vector_tile.Tile.Value values = 4;</code>
        */
+      @java.lang.Override
       public java.util.List<? extends vector_tile.VectorTile.Tile.ValueOrBuilder> 
           getValuesOrBuilderList() {
         return values_;
       }
       /**
-       * <pre>
-       * Dictionary encoding for values
-       * </pre>
-       *
        * <code>repeated .vector_tile.Tile.Value values = 4;</code>
        */
+      @java.lang.Override
       public int getValuesCount() {
         return values_.size();
       }
       /**
-       * <pre>
-       * Dictionary encoding for values
-       * </pre>
-       *
        * <code>repeated .vector_tile.Tile.Value values = 4;</code>
        */
+      @java.lang.Override
       public vector_tile.VectorTile.Tile.Value getValues(int index) {
         return values_.get(index);
       }
       /**
-       * <pre>
-       * Dictionary encoding for values
-       * </pre>
-       *
        * <code>repeated .vector_tile.Tile.Value values = 4;</code>
        */
+      @java.lang.Override
       public vector_tile.VectorTile.Tile.ValueOrBuilder getValuesOrBuilder(
           int index) {
         return values_.get(index);
       }
 
       public static final int EXTENT_FIELD_NUMBER = 5;
-      private int extent_;
+      private int extent_ = 4096;
       /**
-       * <pre>
-       * Although this is an "optional" field it is required by the specification.
-       * See https://github.com/mapbox/vector-tile-spec/issues/47
-       * </pre>
-       *
        * <code>optional uint32 extent = 5 [default = 4096];</code>
+       * @return Whether the extent field is set.
        */
+      @java.lang.Override
       public boolean hasExtent() {
-        return ((bitField0_ & 0x00000004) == 0x00000004);
+        return ((bitField0_ & 0x00000004) != 0);
       }
       /**
-       * <pre>
-       * Although this is an "optional" field it is required by the specification.
-       * See https://github.com/mapbox/vector-tile-spec/issues/47
-       * </pre>
-       *
        * <code>optional uint32 extent = 5 [default = 4096];</code>
+       * @return The extent.
        */
+      @java.lang.Override
       public int getExtent() {
         return extent_;
       }
@@ -3222,7 +2826,7 @@ public final class VectorTile {
         com.google.protobuf.GeneratedMessageV3
           .ExtendableMessage<vector_tile.VectorTile.Tile.Layer>.ExtensionWriter
             extensionWriter = newExtensionWriter();
-        if (((bitField0_ & 0x00000002) == 0x00000002)) {
+        if (((bitField0_ & 0x00000002) != 0)) {
           com.google.protobuf.GeneratedMessageV3.writeString(output, 1, name_);
         }
         for (int i = 0; i < features_.size(); i++) {
@@ -3234,14 +2838,14 @@ public final class VectorTile {
         for (int i = 0; i < values_.size(); i++) {
           output.writeMessage(4, values_.get(i));
         }
-        if (((bitField0_ & 0x00000004) == 0x00000004)) {
+        if (((bitField0_ & 0x00000004) != 0)) {
           output.writeUInt32(5, extent_);
         }
-        if (((bitField0_ & 0x00000001) == 0x00000001)) {
+        if (((bitField0_ & 0x00000001) != 0)) {
           output.writeUInt32(15, version_);
         }
         extensionWriter.writeUntil(536870912, output);
-        unknownFields.writeTo(output);
+        getUnknownFields().writeTo(output);
       }
 
       @java.lang.Override
@@ -3250,7 +2854,7 @@ public final class VectorTile {
         if (size != -1) return size;
 
         size = 0;
-        if (((bitField0_ & 0x00000002) == 0x00000002)) {
+        if (((bitField0_ & 0x00000002) != 0)) {
           size += com.google.protobuf.GeneratedMessageV3.computeStringSize(1, name_);
         }
         for (int i = 0; i < features_.size(); i++) {
@@ -3269,16 +2873,16 @@ public final class VectorTile {
           size += com.google.protobuf.CodedOutputStream
             .computeMessageSize(4, values_.get(i));
         }
-        if (((bitField0_ & 0x00000004) == 0x00000004)) {
+        if (((bitField0_ & 0x00000004) != 0)) {
           size += com.google.protobuf.CodedOutputStream
             .computeUInt32Size(5, extent_);
         }
-        if (((bitField0_ & 0x00000001) == 0x00000001)) {
+        if (((bitField0_ & 0x00000001) != 0)) {
           size += com.google.protobuf.CodedOutputStream
             .computeUInt32Size(15, version_);
         }
         size += extensionsSerializedSize();
-        size += unknownFields.getSerializedSize();
+        size += getUnknownFields().getSerializedSize();
         memoizedSize = size;
         return size;
       }
@@ -3293,32 +2897,31 @@ public final class VectorTile {
         }
         vector_tile.VectorTile.Tile.Layer other = (vector_tile.VectorTile.Tile.Layer) obj;
 
-        boolean result = true;
-        result = result && (hasVersion() == other.hasVersion());
+        if (hasVersion() != other.hasVersion()) return false;
         if (hasVersion()) {
-          result = result && (getVersion()
-              == other.getVersion());
+          if (getVersion()
+              != other.getVersion()) return false;
         }
-        result = result && (hasName() == other.hasName());
+        if (hasName() != other.hasName()) return false;
         if (hasName()) {
-          result = result && getName()
-              .equals(other.getName());
-        }
-        result = result && getFeaturesList()
-            .equals(other.getFeaturesList());
-        result = result && getKeysList()
-            .equals(other.getKeysList());
-        result = result && getValuesList()
-            .equals(other.getValuesList());
-        result = result && (hasExtent() == other.hasExtent());
+          if (!getName()
+              .equals(other.getName())) return false;
+        }
+        if (!getFeaturesList()
+            .equals(other.getFeaturesList())) return false;
+        if (!getKeysList()
+            .equals(other.getKeysList())) return false;
+        if (!getValuesList()
+            .equals(other.getValuesList())) return false;
+        if (hasExtent() != other.hasExtent()) return false;
         if (hasExtent()) {
-          result = result && (getExtent()
-              == other.getExtent());
+          if (getExtent()
+              != other.getExtent()) return false;
         }
-        result = result && unknownFields.equals(other.unknownFields);
-        result = result &&
-            getExtensionFields().equals(other.getExtensionFields());
-        return result;
+        if (!getUnknownFields().equals(other.getUnknownFields())) return false;
+        if (!getExtensionFields().equals(other.getExtensionFields()))
+          return false;
+        return true;
       }
 
       @java.lang.Override
@@ -3353,7 +2956,7 @@ public final class VectorTile {
           hash = (53 * hash) + getExtent();
         }
         hash = hashFields(hash, getExtensionFields());
-        hash = (29 * hash) + unknownFields.hashCode();
+        hash = (29 * hash) + getUnknownFields().hashCode();
         memoizedHashCode = hash;
         return hash;
       }
@@ -3402,11 +3005,13 @@ public final class VectorTile {
         return com.google.protobuf.GeneratedMessageV3
             .parseWithIOException(PARSER, input, extensionRegistry);
       }
+
       public static vector_tile.VectorTile.Tile.Layer parseDelimitedFrom(java.io.InputStream input)
           throws java.io.IOException {
         return com.google.protobuf.GeneratedMessageV3
             .parseDelimitedWithIOException(PARSER, input);
       }
+
       public static vector_tile.VectorTile.Tile.Layer parseDelimitedFrom(
           java.io.InputStream input,
           com.google.protobuf.ExtensionRegistryLite extensionRegistry)
@@ -3449,10 +3054,6 @@ public final class VectorTile {
         return builder;
       }
       /**
-       * <pre>
-       * Layers are described in section 4.1 of the specification
-       * </pre>
-       *
        * Protobuf type {@code vector_tile.Tile.Layer}
        */
       public static final class Builder extends
@@ -3475,44 +3076,37 @@ public final class VectorTile {
 
         // Construct using vector_tile.VectorTile.Tile.Layer.newBuilder()
         private Builder() {
-          maybeForceBuilderInitialization();
+
         }
 
         private Builder(
             com.google.protobuf.GeneratedMessageV3.BuilderParent parent) {
           super(parent);
-          maybeForceBuilderInitialization();
-        }
-        private void maybeForceBuilderInitialization() {
-          if (com.google.protobuf.GeneratedMessageV3
-                  .alwaysUseFieldBuilders) {
-            getFeaturesFieldBuilder();
-            getValuesFieldBuilder();
-          }
+
         }
         @java.lang.Override
         public Builder clear() {
           super.clear();
+          bitField0_ = 0;
           version_ = 1;
-          bitField0_ = (bitField0_ & ~0x00000001);
           name_ = "";
-          bitField0_ = (bitField0_ & ~0x00000002);
           if (featuresBuilder_ == null) {
             features_ = java.util.Collections.emptyList();
-            bitField0_ = (bitField0_ & ~0x00000004);
           } else {
+            features_ = null;
             featuresBuilder_.clear();
           }
-          keys_ = com.google.protobuf.LazyStringArrayList.EMPTY;
-          bitField0_ = (bitField0_ & ~0x00000008);
+          bitField0_ = (bitField0_ & ~0x00000004);
+          keys_ =
+              com.google.protobuf.LazyStringArrayList.emptyList();
           if (valuesBuilder_ == null) {
             values_ = java.util.Collections.emptyList();
-            bitField0_ = (bitField0_ & ~0x00000010);
           } else {
+            values_ = null;
             valuesBuilder_.clear();
           }
+          bitField0_ = (bitField0_ & ~0x00000010);
           extent_ = 4096;
-          bitField0_ = (bitField0_ & ~0x00000020);
           return this;
         }
 
@@ -3539,18 +3133,15 @@ public final class VectorTile {
         @java.lang.Override
         public vector_tile.VectorTile.Tile.Layer buildPartial() {
           vector_tile.VectorTile.Tile.Layer result = new vector_tile.VectorTile.Tile.Layer(this);
-          int from_bitField0_ = bitField0_;
-          int to_bitField0_ = 0;
-          if (((from_bitField0_ & 0x00000001) == 0x00000001)) {
-            to_bitField0_ |= 0x00000001;
-          }
-          result.version_ = version_;
-          if (((from_bitField0_ & 0x00000002) == 0x00000002)) {
-            to_bitField0_ |= 0x00000002;
-          }
-          result.name_ = name_;
+          buildPartialRepeatedFields(result);
+          if (bitField0_ != 0) { buildPartial0(result); }
+          onBuilt();
+          return result;
+        }
+
+        private void buildPartialRepeatedFields(vector_tile.VectorTile.Tile.Layer result) {
           if (featuresBuilder_ == null) {
-            if (((bitField0_ & 0x00000004) == 0x00000004)) {
+            if (((bitField0_ & 0x00000004) != 0)) {
               features_ = java.util.Collections.unmodifiableList(features_);
               bitField0_ = (bitField0_ & ~0x00000004);
             }
@@ -3558,13 +3149,8 @@ public final class VectorTile {
           } else {
             result.features_ = featuresBuilder_.build();
           }
-          if (((bitField0_ & 0x00000008) == 0x00000008)) {
-            keys_ = keys_.getUnmodifiableView();
-            bitField0_ = (bitField0_ & ~0x00000008);
-          }
-          result.keys_ = keys_;
           if (valuesBuilder_ == null) {
-            if (((bitField0_ & 0x00000010) == 0x00000010)) {
+            if (((bitField0_ & 0x00000010) != 0)) {
               values_ = java.util.Collections.unmodifiableList(values_);
               bitField0_ = (bitField0_ & ~0x00000010);
             }
@@ -3572,73 +3158,88 @@ public final class VectorTile {
           } else {
             result.values_ = valuesBuilder_.build();
           }
-          if (((from_bitField0_ & 0x00000020) == 0x00000020)) {
+        }
+
+        private void buildPartial0(vector_tile.VectorTile.Tile.Layer result) {
+          int from_bitField0_ = bitField0_;
+          int to_bitField0_ = 0;
+          if (((from_bitField0_ & 0x00000001) != 0)) {
+            result.version_ = version_;
+            to_bitField0_ |= 0x00000001;
+          }
+          if (((from_bitField0_ & 0x00000002) != 0)) {
+            result.name_ = name_;
+            to_bitField0_ |= 0x00000002;
+          }
+          if (((from_bitField0_ & 0x00000008) != 0)) {
+            keys_.makeImmutable();
+            result.keys_ = keys_;
+          }
+          if (((from_bitField0_ & 0x00000020) != 0)) {
+            result.extent_ = extent_;
             to_bitField0_ |= 0x00000004;
           }
-          result.extent_ = extent_;
-          result.bitField0_ = to_bitField0_;
-          onBuilt();
-          return result;
+          result.bitField0_ |= to_bitField0_;
         }
 
         @java.lang.Override
         public Builder clone() {
-          return (Builder) super.clone();
+          return super.clone();
         }
         @java.lang.Override
         public Builder setField(
             com.google.protobuf.Descriptors.FieldDescriptor field,
             java.lang.Object value) {
-          return (Builder) super.setField(field, value);
+          return super.setField(field, value);
         }
         @java.lang.Override
         public Builder clearField(
             com.google.protobuf.Descriptors.FieldDescriptor field) {
-          return (Builder) super.clearField(field);
+          return super.clearField(field);
         }
         @java.lang.Override
         public Builder clearOneof(
             com.google.protobuf.Descriptors.OneofDescriptor oneof) {
-          return (Builder) super.clearOneof(oneof);
+          return super.clearOneof(oneof);
         }
         @java.lang.Override
         public Builder setRepeatedField(
             com.google.protobuf.Descriptors.FieldDescriptor field,
             int index, java.lang.Object value) {
-          return (Builder) super.setRepeatedField(field, index, value);
+          return super.setRepeatedField(field, index, value);
         }
         @java.lang.Override
         public Builder addRepeatedField(
             com.google.protobuf.Descriptors.FieldDescriptor field,
             java.lang.Object value) {
-          return (Builder) super.addRepeatedField(field, value);
+          return super.addRepeatedField(field, value);
         }
         @java.lang.Override
         public <Type> Builder setExtension(
             com.google.protobuf.GeneratedMessage.GeneratedExtension<
                 vector_tile.VectorTile.Tile.Layer, Type> extension,
             Type value) {
-          return (Builder) super.setExtension(extension, value);
+          return super.setExtension(extension, value);
         }
         @java.lang.Override
         public <Type> Builder setExtension(
             com.google.protobuf.GeneratedMessage.GeneratedExtension<
                 vector_tile.VectorTile.Tile.Layer, java.util.List<Type>> extension,
             int index, Type value) {
-          return (Builder) super.setExtension(extension, index, value);
+          return super.setExtension(extension, index, value);
         }
         @java.lang.Override
         public <Type> Builder addExtension(
             com.google.protobuf.GeneratedMessage.GeneratedExtension<
                 vector_tile.VectorTile.Tile.Layer, java.util.List<Type>> extension,
             Type value) {
-          return (Builder) super.addExtension(extension, value);
+          return super.addExtension(extension, value);
         }
         @java.lang.Override
-        public <Type> Builder clearExtension(
+        public <T> Builder clearExtension(
             com.google.protobuf.GeneratedMessage.GeneratedExtension<
-                vector_tile.VectorTile.Tile.Layer, ?> extension) {
-          return (Builder) super.clearExtension(extension);
+                vector_tile.VectorTile.Tile.Layer, T> extension) {
+          return super.clearExtension(extension);
         }
         @java.lang.Override
         public Builder mergeFrom(com.google.protobuf.Message other) {
@@ -3656,8 +3257,8 @@ public final class VectorTile {
             setVersion(other.getVersion());
           }
           if (other.hasName()) {
-            bitField0_ |= 0x00000002;
             name_ = other.name_;
+            bitField0_ |= 0x00000002;
             onChanged();
           }
           if (featuresBuilder_ == null) {
@@ -3689,7 +3290,7 @@ public final class VectorTile {
           if (!other.keys_.isEmpty()) {
             if (keys_.isEmpty()) {
               keys_ = other.keys_;
-              bitField0_ = (bitField0_ & ~0x00000008);
+              bitField0_ |= 0x00000008;
             } else {
               ensureKeysIsMutable();
               keys_.addAll(other.keys_);
@@ -3726,7 +3327,7 @@ public final class VectorTile {
             setExtent(other.getExtent());
           }
           this.mergeExtensionFields(other);
-          this.mergeUnknownFields(other.unknownFields);
+          this.mergeUnknownFields(other.getUnknownFields());
           onChanged();
           return this;
         }
@@ -3755,73 +3356,113 @@ public final class VectorTile {
             com.google.protobuf.CodedInputStream input,
             com.google.protobuf.ExtensionRegistryLite extensionRegistry)
             throws java.io.IOException {
-          vector_tile.VectorTile.Tile.Layer parsedMessage = null;
+          if (extensionRegistry == null) {
+            throw new java.lang.NullPointerException();
+          }
           try {
-            parsedMessage = PARSER.parsePartialFrom(input, extensionRegistry);
+            boolean done = false;
+            while (!done) {
+              int tag = input.readTag();
+              switch (tag) {
+                case 0:
+                  done = true;
+                  break;
+                case 10: {
+                  name_ = input.readBytes();
+                  bitField0_ |= 0x00000002;
+                  break;
+                } // case 10
+                case 18: {
+                  vector_tile.VectorTile.Tile.Feature m =
+                      input.readMessage(
+                          vector_tile.VectorTile.Tile.Feature.PARSER,
+                          extensionRegistry);
+                  if (featuresBuilder_ == null) {
+                    ensureFeaturesIsMutable();
+                    features_.add(m);
+                  } else {
+                    featuresBuilder_.addMessage(m);
+                  }
+                  break;
+                } // case 18
+                case 26: {
+                  com.google.protobuf.ByteString bs = input.readBytes();
+                  ensureKeysIsMutable();
+                  keys_.add(bs);
+                  break;
+                } // case 26
+                case 34: {
+                  vector_tile.VectorTile.Tile.Value m =
+                      input.readMessage(
+                          vector_tile.VectorTile.Tile.Value.PARSER,
+                          extensionRegistry);
+                  if (valuesBuilder_ == null) {
+                    ensureValuesIsMutable();
+                    values_.add(m);
+                  } else {
+                    valuesBuilder_.addMessage(m);
+                  }
+                  break;
+                } // case 34
+                case 40: {
+                  extent_ = input.readUInt32();
+                  bitField0_ |= 0x00000020;
+                  break;
+                } // case 40
+                case 120: {
+                  version_ = input.readUInt32();
+                  bitField0_ |= 0x00000001;
+                  break;
+                } // case 120
+                default: {
+                  if (!super.parseUnknownField(input, extensionRegistry, tag)) {
+                    done = true; // was an endgroup tag
+                  }
+                  break;
+                } // default:
+              } // switch (tag)
+            } // while (!done)
           } catch (com.google.protobuf.InvalidProtocolBufferException e) {
-            parsedMessage = (vector_tile.VectorTile.Tile.Layer) e.getUnfinishedMessage();
             throw e.unwrapIOException();
           } finally {
-            if (parsedMessage != null) {
-              mergeFrom(parsedMessage);
-            }
-          }
+            onChanged();
+          } // finally
           return this;
         }
         private int bitField0_;
 
         private int version_ = 1;
         /**
-         * <pre>
-         * Any compliant implementation must first read the version
-         * number encoded in this message and choose the correct
-         * implementation for this version number before proceeding to
-         * decode other parts of this message.
-         * </pre>
-         *
          * <code>required uint32 version = 15 [default = 1];</code>
+         * @return Whether the version field is set.
          */
+        @java.lang.Override
         public boolean hasVersion() {
-          return ((bitField0_ & 0x00000001) == 0x00000001);
+          return ((bitField0_ & 0x00000001) != 0);
         }
         /**
-         * <pre>
-         * Any compliant implementation must first read the version
-         * number encoded in this message and choose the correct
-         * implementation for this version number before proceeding to
-         * decode other parts of this message.
-         * </pre>
-         *
          * <code>required uint32 version = 15 [default = 1];</code>
+         * @return The version.
          */
+        @java.lang.Override
         public int getVersion() {
           return version_;
         }
         /**
-         * <pre>
-         * Any compliant implementation must first read the version
-         * number encoded in this message and choose the correct
-         * implementation for this version number before proceeding to
-         * decode other parts of this message.
-         * </pre>
-         *
          * <code>required uint32 version = 15 [default = 1];</code>
+         * @param value The version to set.
+         * @return This builder for chaining.
          */
         public Builder setVersion(int value) {
-          bitField0_ |= 0x00000001;
+
           version_ = value;
+          bitField0_ |= 0x00000001;
           onChanged();
           return this;
         }
         /**
-         * <pre>
-         * Any compliant implementation must first read the version
-         * number encoded in this message and choose the correct
-         * implementation for this version number before proceeding to
-         * decode other parts of this message.
-         * </pre>
-         *
          * <code>required uint32 version = 15 [default = 1];</code>
+         * @return This builder for chaining.
          */
         public Builder clearVersion() {
           bitField0_ = (bitField0_ & ~0x00000001);
@@ -3833,12 +3474,14 @@ public final class VectorTile {
         private java.lang.Object name_ = "";
         /**
          * <code>required string name = 1;</code>
+         * @return Whether the name field is set.
          */
         public boolean hasName() {
-          return ((bitField0_ & 0x00000002) == 0x00000002);
+          return ((bitField0_ & 0x00000002) != 0);
         }
         /**
          * <code>required string name = 1;</code>
+         * @return The name.
          */
         public java.lang.String getName() {
           java.lang.Object ref = name_;
@@ -3856,6 +3499,7 @@ public final class VectorTile {
         }
         /**
          * <code>required string name = 1;</code>
+         * @return The bytes for name.
          */
         public com.google.protobuf.ByteString
             getNameBytes() {
@@ -3872,36 +3516,37 @@ public final class VectorTile {
         }
         /**
          * <code>required string name = 1;</code>
+         * @param value The name to set.
+         * @return This builder for chaining.
          */
         public Builder setName(
             java.lang.String value) {
-          if (value == null) {
-    throw new NullPointerException();
-  }
-  bitField0_ |= 0x00000002;
+          if (value == null) { throw new NullPointerException(); }
           name_ = value;
+          bitField0_ |= 0x00000002;
           onChanged();
           return this;
         }
         /**
          * <code>required string name = 1;</code>
+         * @return This builder for chaining.
          */
         public Builder clearName() {
-          bitField0_ = (bitField0_ & ~0x00000002);
           name_ = getDefaultInstance().getName();
+          bitField0_ = (bitField0_ & ~0x00000002);
           onChanged();
           return this;
         }
         /**
          * <code>required string name = 1;</code>
+         * @param value The bytes for name to set.
+         * @return This builder for chaining.
          */
         public Builder setNameBytes(
             com.google.protobuf.ByteString value) {
-          if (value == null) {
-    throw new NullPointerException();
-  }
-  bitField0_ |= 0x00000002;
+          if (value == null) { throw new NullPointerException(); }
           name_ = value;
+          bitField0_ |= 0x00000002;
           onChanged();
           return this;
         }
@@ -3909,7 +3554,7 @@ public final class VectorTile {
         private java.util.List<vector_tile.VectorTile.Tile.Feature> features_ =
           java.util.Collections.emptyList();
         private void ensureFeaturesIsMutable() {
-          if (!((bitField0_ & 0x00000004) == 0x00000004)) {
+          if (!((bitField0_ & 0x00000004) != 0)) {
             features_ = new java.util.ArrayList<vector_tile.VectorTile.Tile.Feature>(features_);
             bitField0_ |= 0x00000004;
            }
@@ -3919,10 +3564,6 @@ public final class VectorTile {
             vector_tile.VectorTile.Tile.Feature, vector_tile.VectorTile.Tile.Feature.Builder, vector_tile.VectorTile.Tile.FeatureOrBuilder> featuresBuilder_;
 
         /**
-         * <pre>
-         * The actual features in this tile.
-         * </pre>
-         *
          * <code>repeated .vector_tile.Tile.Feature features = 2;</code>
          */
         public java.util.List<vector_tile.VectorTile.Tile.Feature> getFeaturesList() {
@@ -3933,10 +3574,6 @@ public final class VectorTile {
           }
         }
         /**
-         * <pre>
-         * The actual features in this tile.
-         * </pre>
-         *
          * <code>repeated .vector_tile.Tile.Feature features = 2;</code>
          */
         public int getFeaturesCount() {
@@ -3947,10 +3584,6 @@ public final class VectorTile {
           }
         }
         /**
-         * <pre>
-         * The actual features in this tile.
-         * </pre>
-         *
          * <code>repeated .vector_tile.Tile.Feature features = 2;</code>
          */
         public vector_tile.VectorTile.Tile.Feature getFeatures(int index) {
@@ -3961,10 +3594,6 @@ public final class VectorTile {
           }
         }
         /**
-         * <pre>
-         * The actual features in this tile.
-         * </pre>
-         *
          * <code>repeated .vector_tile.Tile.Feature features = 2;</code>
          */
         public Builder setFeatures(
@@ -3982,10 +3611,6 @@ public final class VectorTile {
           return this;
         }
         /**
-         * <pre>
-         * The actual features in this tile.
-         * </pre>
-         *
          * <code>repeated .vector_tile.Tile.Feature features = 2;</code>
          */
         public Builder setFeatures(
@@ -4000,10 +3625,6 @@ public final class VectorTile {
           return this;
         }
         /**
-         * <pre>
-         * The actual features in this tile.
-         * </pre>
-         *
          * <code>repeated .vector_tile.Tile.Feature features = 2;</code>
          */
         public Builder addFeatures(vector_tile.VectorTile.Tile.Feature value) {
@@ -4020,10 +3641,6 @@ public final class VectorTile {
           return this;
         }
         /**
-         * <pre>
-         * The actual features in this tile.
-         * </pre>
-         *
          * <code>repeated .vector_tile.Tile.Feature features = 2;</code>
          */
         public Builder addFeatures(
@@ -4041,10 +3658,6 @@ public final class VectorTile {
           return this;
         }
         /**
-         * <pre>
-         * The actual features in this tile.
-         * </pre>
-         *
          * <code>repeated .vector_tile.Tile.Feature features = 2;</code>
          */
         public Builder addFeatures(
@@ -4059,10 +3672,6 @@ public final class VectorTile {
           return this;
         }
         /**
-         * <pre>
-         * The actual features in this tile.
-         * </pre>
-         *
          * <code>repeated .vector_tile.Tile.Feature features = 2;</code>
          */
         public Builder addFeatures(
@@ -4077,10 +3686,6 @@ public final class VectorTile {
           return this;
         }
         /**
-         * <pre>
-         * The actual features in this tile.
-         * </pre>
-         *
          * <code>repeated .vector_tile.Tile.Feature features = 2;</code>
          */
         public Builder addAllFeatures(
@@ -4096,10 +3701,6 @@ public final class VectorTile {
           return this;
         }
         /**
-         * <pre>
-         * The actual features in this tile.
-         * </pre>
-         *
          * <code>repeated .vector_tile.Tile.Feature features = 2;</code>
          */
         public Builder clearFeatures() {
@@ -4113,10 +3714,6 @@ public final class VectorTile {
           return this;
         }
         /**
-         * <pre>
-         * The actual features in this tile.
-         * </pre>
-         *
          * <code>repeated .vector_tile.Tile.Feature features = 2;</code>
          */
         public Builder removeFeatures(int index) {
@@ -4130,10 +3727,6 @@ public final class VectorTile {
           return this;
         }
         /**
-         * <pre>
-         * The actual features in this tile.
-         * </pre>
-         *
          * <code>repeated .vector_tile.Tile.Feature features = 2;</code>
          */
         public vector_tile.VectorTile.Tile.Feature.Builder getFeaturesBuilder(
@@ -4141,10 +3734,6 @@ public final class VectorTile {
           return getFeaturesFieldBuilder().getBuilder(index);
         }
         /**
-         * <pre>
-         * The actual features in this tile.
-         * </pre>
-         *
          * <code>repeated .vector_tile.Tile.Feature features = 2;</code>
          */
         public vector_tile.VectorTile.Tile.FeatureOrBuilder getFeaturesOrBuilder(
@@ -4155,10 +3744,6 @@ public final class VectorTile {
           }
         }
         /**
-         * <pre>
-         * The actual features in this tile.
-         * </pre>
-         *
          * <code>repeated .vector_tile.Tile.Feature features = 2;</code>
          */
         public java.util.List<? extends vector_tile.VectorTile.Tile.FeatureOrBuilder> 
@@ -4170,10 +3755,6 @@ public final class VectorTile {
           }
         }
         /**
-         * <pre>
-         * The actual features in this tile.
-         * </pre>
-         *
          * <code>repeated .vector_tile.Tile.Feature features = 2;</code>
          */
         public vector_tile.VectorTile.Tile.Feature.Builder addFeaturesBuilder() {
@@ -4181,10 +3762,6 @@ public final class VectorTile {
               vector_tile.VectorTile.Tile.Feature.getDefaultInstance());
         }
         /**
-         * <pre>
-         * The actual features in this tile.
-         * </pre>
-         *
          * <code>repeated .vector_tile.Tile.Feature features = 2;</code>
          */
         public vector_tile.VectorTile.Tile.Feature.Builder addFeaturesBuilder(
@@ -4193,10 +3770,6 @@ public final class VectorTile {
               index, vector_tile.VectorTile.Tile.Feature.getDefaultInstance());
         }
         /**
-         * <pre>
-         * The actual features in this tile.
-         * </pre>
-         *
          * <code>repeated .vector_tile.Tile.Feature features = 2;</code>
          */
         public java.util.List<vector_tile.VectorTile.Tile.Feature.Builder> 
@@ -4210,7 +3783,7 @@ public final class VectorTile {
             featuresBuilder_ = new com.google.protobuf.RepeatedFieldBuilderV3<
                 vector_tile.VectorTile.Tile.Feature, vector_tile.VectorTile.Tile.Feature.Builder, vector_tile.VectorTile.Tile.FeatureOrBuilder>(
                     features_,
-                    ((bitField0_ & 0x00000004) == 0x00000004),
+                    ((bitField0_ & 0x00000004) != 0),
                     getParentForChildren(),
                     isClean());
             features_ = null;
@@ -4218,131 +3791,112 @@ public final class VectorTile {
           return featuresBuilder_;
         }
 
-        private com.google.protobuf.LazyStringList keys_ = com.google.protobuf.LazyStringArrayList.EMPTY;
+        private com.google.protobuf.LazyStringArrayList keys_ =
+            com.google.protobuf.LazyStringArrayList.emptyList();
         private void ensureKeysIsMutable() {
-          if (!((bitField0_ & 0x00000008) == 0x00000008)) {
+          if (!keys_.isModifiable()) {
             keys_ = new com.google.protobuf.LazyStringArrayList(keys_);
-            bitField0_ |= 0x00000008;
-           }
+          }
+          bitField0_ |= 0x00000008;
         }
         /**
-         * <pre>
-         * Dictionary encoding for keys
-         * </pre>
-         *
          * <code>repeated string keys = 3;</code>
+         * @return A list containing the keys.
          */
         public com.google.protobuf.ProtocolStringList
             getKeysList() {
-          return keys_.getUnmodifiableView();
+          keys_.makeImmutable();
+          return keys_;
         }
         /**
-         * <pre>
-         * Dictionary encoding for keys
-         * </pre>
-         *
          * <code>repeated string keys = 3;</code>
+         * @return The count of keys.
          */
         public int getKeysCount() {
           return keys_.size();
         }
         /**
-         * <pre>
-         * Dictionary encoding for keys
-         * </pre>
-         *
          * <code>repeated string keys = 3;</code>
+         * @param index The index of the element to return.
+         * @return The keys at the given index.
          */
         public java.lang.String getKeys(int index) {
           return keys_.get(index);
         }
         /**
-         * <pre>
-         * Dictionary encoding for keys
-         * </pre>
-         *
          * <code>repeated string keys = 3;</code>
+         * @param index The index of the value to return.
+         * @return The bytes of the keys at the given index.
          */
         public com.google.protobuf.ByteString
             getKeysBytes(int index) {
           return keys_.getByteString(index);
         }
         /**
-         * <pre>
-         * Dictionary encoding for keys
-         * </pre>
-         *
          * <code>repeated string keys = 3;</code>
+         * @param index The index to set the value at.
+         * @param value The keys to set.
+         * @return This builder for chaining.
          */
         public Builder setKeys(
             int index, java.lang.String value) {
-          if (value == null) {
-    throw new NullPointerException();
-  }
-  ensureKeysIsMutable();
+          if (value == null) { throw new NullPointerException(); }
+          ensureKeysIsMutable();
           keys_.set(index, value);
+          bitField0_ |= 0x00000008;
           onChanged();
           return this;
         }
         /**
-         * <pre>
-         * Dictionary encoding for keys
-         * </pre>
-         *
          * <code>repeated string keys = 3;</code>
+         * @param value The keys to add.
+         * @return This builder for chaining.
          */
         public Builder addKeys(
             java.lang.String value) {
-          if (value == null) {
-    throw new NullPointerException();
-  }
-  ensureKeysIsMutable();
+          if (value == null) { throw new NullPointerException(); }
+          ensureKeysIsMutable();
           keys_.add(value);
+          bitField0_ |= 0x00000008;
           onChanged();
           return this;
         }
         /**
-         * <pre>
-         * Dictionary encoding for keys
-         * </pre>
-         *
          * <code>repeated string keys = 3;</code>
+         * @param values The keys to add.
+         * @return This builder for chaining.
          */
         public Builder addAllKeys(
             java.lang.Iterable<java.lang.String> values) {
           ensureKeysIsMutable();
           com.google.protobuf.AbstractMessageLite.Builder.addAll(
               values, keys_);
+          bitField0_ |= 0x00000008;
           onChanged();
           return this;
         }
         /**
-         * <pre>
-         * Dictionary encoding for keys
-         * </pre>
-         *
          * <code>repeated string keys = 3;</code>
+         * @return This builder for chaining.
          */
         public Builder clearKeys() {
-          keys_ = com.google.protobuf.LazyStringArrayList.EMPTY;
-          bitField0_ = (bitField0_ & ~0x00000008);
+          keys_ =
+            com.google.protobuf.LazyStringArrayList.emptyList();
+          bitField0_ = (bitField0_ & ~0x00000008);;
           onChanged();
           return this;
         }
         /**
-         * <pre>
-         * Dictionary encoding for keys
-         * </pre>
-         *
          * <code>repeated string keys = 3;</code>
+         * @param value The bytes of the keys to add.
+         * @return This builder for chaining.
          */
         public Builder addKeysBytes(
             com.google.protobuf.ByteString value) {
-          if (value == null) {
-    throw new NullPointerException();
-  }
-  ensureKeysIsMutable();
+          if (value == null) { throw new NullPointerException(); }
+          ensureKeysIsMutable();
           keys_.add(value);
+          bitField0_ |= 0x00000008;
           onChanged();
           return this;
         }
@@ -4350,7 +3904,7 @@ public final class VectorTile {
         private java.util.List<vector_tile.VectorTile.Tile.Value> values_ =
           java.util.Collections.emptyList();
         private void ensureValuesIsMutable() {
-          if (!((bitField0_ & 0x00000010) == 0x00000010)) {
+          if (!((bitField0_ & 0x00000010) != 0)) {
             values_ = new java.util.ArrayList<vector_tile.VectorTile.Tile.Value>(values_);
             bitField0_ |= 0x00000010;
            }
@@ -4360,10 +3914,6 @@ public final class VectorTile {
             vector_tile.VectorTile.Tile.Value, vector_tile.VectorTile.Tile.Value.Builder, vector_tile.VectorTile.Tile.ValueOrBuilder> valuesBuilder_;
 
         /**
-         * <pre>
-         * Dictionary encoding for values
-         * </pre>
-         *
          * <code>repeated .vector_tile.Tile.Value values = 4;</code>
          */
         public java.util.List<vector_tile.VectorTile.Tile.Value> getValuesList() {
@@ -4374,10 +3924,6 @@ public final class VectorTile {
           }
         }
         /**
-         * <pre>
-         * Dictionary encoding for values
-         * </pre>
-         *
          * <code>repeated .vector_tile.Tile.Value values = 4;</code>
          */
         public int getValuesCount() {
@@ -4388,10 +3934,6 @@ public final class VectorTile {
           }
         }
         /**
-         * <pre>
-         * Dictionary encoding for values
-         * </pre>
-         *
          * <code>repeated .vector_tile.Tile.Value values = 4;</code>
          */
         public vector_tile.VectorTile.Tile.Value getValues(int index) {
@@ -4402,10 +3944,6 @@ public final class VectorTile {
           }
         }
         /**
-         * <pre>
-         * Dictionary encoding for values
-         * </pre>
-         *
          * <code>repeated .vector_tile.Tile.Value values = 4;</code>
          */
         public Builder setValues(
@@ -4423,10 +3961,6 @@ public final class VectorTile {
           return this;
         }
         /**
-         * <pre>
-         * Dictionary encoding for values
-         * </pre>
-         *
          * <code>repeated .vector_tile.Tile.Value values = 4;</code>
          */
         public Builder setValues(
@@ -4441,10 +3975,6 @@ public final class VectorTile {
           return this;
         }
         /**
-         * <pre>
-         * Dictionary encoding for values
-         * </pre>
-         *
          * <code>repeated .vector_tile.Tile.Value values = 4;</code>
          */
         public Builder addValues(vector_tile.VectorTile.Tile.Value value) {
@@ -4461,10 +3991,6 @@ public final class VectorTile {
           return this;
         }
         /**
-         * <pre>
-         * Dictionary encoding for values
-         * </pre>
-         *
          * <code>repeated .vector_tile.Tile.Value values = 4;</code>
          */
         public Builder addValues(
@@ -4482,10 +4008,6 @@ public final class VectorTile {
           return this;
         }
         /**
-         * <pre>
-         * Dictionary encoding for values
-         * </pre>
-         *
          * <code>repeated .vector_tile.Tile.Value values = 4;</code>
          */
         public Builder addValues(
@@ -4500,10 +4022,6 @@ public final class VectorTile {
           return this;
         }
         /**
-         * <pre>
-         * Dictionary encoding for values
-         * </pre>
-         *
          * <code>repeated .vector_tile.Tile.Value values = 4;</code>
          */
         public Builder addValues(
@@ -4518,10 +4036,6 @@ public final class VectorTile {
           return this;
         }
         /**
-         * <pre>
-         * Dictionary encoding for values
-         * </pre>
-         *
          * <code>repeated .vector_tile.Tile.Value values = 4;</code>
          */
         public Builder addAllValues(
@@ -4537,10 +4051,6 @@ public final class VectorTile {
           return this;
         }
         /**
-         * <pre>
-         * Dictionary encoding for values
-         * </pre>
-         *
          * <code>repeated .vector_tile.Tile.Value values = 4;</code>
          */
         public Builder clearValues() {
@@ -4554,10 +4064,6 @@ public final class VectorTile {
           return this;
         }
         /**
-         * <pre>
-         * Dictionary encoding for values
-         * </pre>
-         *
          * <code>repeated .vector_tile.Tile.Value values = 4;</code>
          */
         public Builder removeValues(int index) {
@@ -4571,10 +4077,6 @@ public final class VectorTile {
           return this;
         }
         /**
-         * <pre>
-         * Dictionary encoding for values
-         * </pre>
-         *
          * <code>repeated .vector_tile.Tile.Value values = 4;</code>
          */
         public vector_tile.VectorTile.Tile.Value.Builder getValuesBuilder(
@@ -4582,10 +4084,6 @@ public final class VectorTile {
           return getValuesFieldBuilder().getBuilder(index);
         }
         /**
-         * <pre>
-         * Dictionary encoding for values
-         * </pre>
-         *
          * <code>repeated .vector_tile.Tile.Value values = 4;</code>
          */
         public vector_tile.VectorTile.Tile.ValueOrBuilder getValuesOrBuilder(
@@ -4596,10 +4094,6 @@ public final class VectorTile {
           }
         }
         /**
-         * <pre>
-         * Dictionary encoding for values
-         * </pre>
-         *
          * <code>repeated .vector_tile.Tile.Value values = 4;</code>
          */
         public java.util.List<? extends vector_tile.VectorTile.Tile.ValueOrBuilder> 
@@ -4611,10 +4105,6 @@ public final class VectorTile {
           }
         }
         /**
-         * <pre>
-         * Dictionary encoding for values
-         * </pre>
-         *
          * <code>repeated .vector_tile.Tile.Value values = 4;</code>
          */
         public vector_tile.VectorTile.Tile.Value.Builder addValuesBuilder() {
@@ -4622,10 +4112,6 @@ public final class VectorTile {
               vector_tile.VectorTile.Tile.Value.getDefaultInstance());
         }
         /**
-         * <pre>
-         * Dictionary encoding for values
-         * </pre>
-         *
          * <code>repeated .vector_tile.Tile.Value values = 4;</code>
          */
         public vector_tile.VectorTile.Tile.Value.Builder addValuesBuilder(
@@ -4634,10 +4120,6 @@ public final class VectorTile {
               index, vector_tile.VectorTile.Tile.Value.getDefaultInstance());
         }
         /**
-         * <pre>
-         * Dictionary encoding for values
-         * </pre>
-         *
          * <code>repeated .vector_tile.Tile.Value values = 4;</code>
          */
         public java.util.List<vector_tile.VectorTile.Tile.Value.Builder> 
@@ -4651,7 +4133,7 @@ public final class VectorTile {
             valuesBuilder_ = new com.google.protobuf.RepeatedFieldBuilderV3<
                 vector_tile.VectorTile.Tile.Value, vector_tile.VectorTile.Tile.Value.Builder, vector_tile.VectorTile.Tile.ValueOrBuilder>(
                     values_,
-                    ((bitField0_ & 0x00000010) == 0x00000010),
+                    ((bitField0_ & 0x00000010) != 0),
                     getParentForChildren(),
                     isClean());
             values_ = null;
@@ -4661,48 +4143,36 @@ public final class VectorTile {
 
         private int extent_ = 4096;
         /**
-         * <pre>
-         * Although this is an "optional" field it is required by the specification.
-         * See https://github.com/mapbox/vector-tile-spec/issues/47
-         * </pre>
-         *
          * <code>optional uint32 extent = 5 [default = 4096];</code>
+         * @return Whether the extent field is set.
          */
+        @java.lang.Override
         public boolean hasExtent() {
-          return ((bitField0_ & 0x00000020) == 0x00000020);
+          return ((bitField0_ & 0x00000020) != 0);
         }
         /**
-         * <pre>
-         * Although this is an "optional" field it is required by the specification.
-         * See https://github.com/mapbox/vector-tile-spec/issues/47
-         * </pre>
-         *
          * <code>optional uint32 extent = 5 [default = 4096];</code>
+         * @return The extent.
          */
+        @java.lang.Override
         public int getExtent() {
           return extent_;
         }
         /**
-         * <pre>
-         * Although this is an "optional" field it is required by the specification.
-         * See https://github.com/mapbox/vector-tile-spec/issues/47
-         * </pre>
-         *
          * <code>optional uint32 extent = 5 [default = 4096];</code>
+         * @param value The extent to set.
+         * @return This builder for chaining.
          */
         public Builder setExtent(int value) {
-          bitField0_ |= 0x00000020;
+
           extent_ = value;
+          bitField0_ |= 0x00000020;
           onChanged();
           return this;
         }
         /**
-         * <pre>
-         * Although this is an "optional" field it is required by the specification.
-         * See https://github.com/mapbox/vector-tile-spec/issues/47
-         * </pre>
-         *
          * <code>optional uint32 extent = 5 [default = 4096];</code>
+         * @return This builder for chaining.
          */
         public Builder clearExtent() {
           bitField0_ = (bitField0_ & ~0x00000020);
@@ -4743,7 +4213,18 @@ public final class VectorTile {
             com.google.protobuf.CodedInputStream input,
             com.google.protobuf.ExtensionRegistryLite extensionRegistry)
             throws com.google.protobuf.InvalidProtocolBufferException {
-          return new Layer(input, extensionRegistry);
+          Builder builder = newBuilder();
+          try {
+            builder.mergeFrom(input, extensionRegistry);
+          } catch (com.google.protobuf.InvalidProtocolBufferException e) {
+            throw e.setUnfinishedMessage(builder.buildPartial());
+          } catch (com.google.protobuf.UninitializedMessageException e) {
+            throw e.asInvalidProtocolBufferException().setUnfinishedMessage(builder.buildPartial());
+          } catch (java.io.IOException e) {
+            throw new com.google.protobuf.InvalidProtocolBufferException(e)
+                .setUnfinishedMessage(builder.buildPartial());
+          }
+          return builder.buildPartial();
         }
       };
 
@@ -4764,16 +4245,19 @@ public final class VectorTile {
     }
 
     public static final int LAYERS_FIELD_NUMBER = 3;
+    @SuppressWarnings("serial")
     private java.util.List<vector_tile.VectorTile.Tile.Layer> layers_;
     /**
      * <code>repeated .vector_tile.Tile.Layer layers = 3;</code>
      */
+    @java.lang.Override
     public java.util.List<vector_tile.VectorTile.Tile.Layer> getLayersList() {
       return layers_;
     }
     /**
      * <code>repeated .vector_tile.Tile.Layer layers = 3;</code>
      */
+    @java.lang.Override
     public java.util.List<? extends vector_tile.VectorTile.Tile.LayerOrBuilder> 
         getLayersOrBuilderList() {
       return layers_;
@@ -4781,18 +4265,21 @@ public final class VectorTile {
     /**
      * <code>repeated .vector_tile.Tile.Layer layers = 3;</code>
      */
+    @java.lang.Override
     public int getLayersCount() {
       return layers_.size();
     }
     /**
      * <code>repeated .vector_tile.Tile.Layer layers = 3;</code>
      */
+    @java.lang.Override
     public vector_tile.VectorTile.Tile.Layer getLayers(int index) {
       return layers_.get(index);
     }
     /**
      * <code>repeated .vector_tile.Tile.Layer layers = 3;</code>
      */
+    @java.lang.Override
     public vector_tile.VectorTile.Tile.LayerOrBuilder getLayersOrBuilder(
         int index) {
       return layers_.get(index);
@@ -4829,7 +4316,7 @@ public final class VectorTile {
         output.writeMessage(3, layers_.get(i));
       }
       extensionWriter.writeUntil(8192, output);
-      unknownFields.writeTo(output);
+      getUnknownFields().writeTo(output);
     }
 
     @java.lang.Override
@@ -4843,7 +4330,7 @@ public final class VectorTile {
           .computeMessageSize(3, layers_.get(i));
       }
       size += extensionsSerializedSize();
-      size += unknownFields.getSerializedSize();
+      size += getUnknownFields().getSerializedSize();
       memoizedSize = size;
       return size;
     }
@@ -4858,13 +4345,12 @@ public final class VectorTile {
       }
       vector_tile.VectorTile.Tile other = (vector_tile.VectorTile.Tile) obj;
 
-      boolean result = true;
-      result = result && getLayersList()
-          .equals(other.getLayersList());
-      result = result && unknownFields.equals(other.unknownFields);
-      result = result &&
-          getExtensionFields().equals(other.getExtensionFields());
-      return result;
+      if (!getLayersList()
+          .equals(other.getLayersList())) return false;
+      if (!getUnknownFields().equals(other.getUnknownFields())) return false;
+      if (!getExtensionFields().equals(other.getExtensionFields()))
+        return false;
+      return true;
     }
 
     @java.lang.Override
@@ -4879,7 +4365,7 @@ public final class VectorTile {
         hash = (53 * hash) + getLayersList().hashCode();
       }
       hash = hashFields(hash, getExtensionFields());
-      hash = (29 * hash) + unknownFields.hashCode();
+      hash = (29 * hash) + getUnknownFields().hashCode();
       memoizedHashCode = hash;
       return hash;
     }
@@ -4928,11 +4414,13 @@ public final class VectorTile {
       return com.google.protobuf.GeneratedMessageV3
           .parseWithIOException(PARSER, input, extensionRegistry);
     }
+
     public static vector_tile.VectorTile.Tile parseDelimitedFrom(java.io.InputStream input)
         throws java.io.IOException {
       return com.google.protobuf.GeneratedMessageV3
           .parseDelimitedWithIOException(PARSER, input);
     }
+
     public static vector_tile.VectorTile.Tile parseDelimitedFrom(
         java.io.InputStream input,
         com.google.protobuf.ExtensionRegistryLite extensionRegistry)
@@ -4997,29 +4485,25 @@ public final class VectorTile {
 
       // Construct using vector_tile.VectorTile.Tile.newBuilder()
       private Builder() {
-        maybeForceBuilderInitialization();
+
       }
 
       private Builder(
           com.google.protobuf.GeneratedMessageV3.BuilderParent parent) {
         super(parent);
-        maybeForceBuilderInitialization();
-      }
-      private void maybeForceBuilderInitialization() {
-        if (com.google.protobuf.GeneratedMessageV3
-                .alwaysUseFieldBuilders) {
-          getLayersFieldBuilder();
-        }
+
       }
       @java.lang.Override
       public Builder clear() {
         super.clear();
+        bitField0_ = 0;
         if (layersBuilder_ == null) {
           layers_ = java.util.Collections.emptyList();
-          bitField0_ = (bitField0_ & ~0x00000001);
         } else {
+          layers_ = null;
           layersBuilder_.clear();
         }
+        bitField0_ = (bitField0_ & ~0x00000001);
         return this;
       }
 
@@ -5046,9 +4530,15 @@ public final class VectorTile {
       @java.lang.Override
       public vector_tile.VectorTile.Tile buildPartial() {
         vector_tile.VectorTile.Tile result = new vector_tile.VectorTile.Tile(this);
-        int from_bitField0_ = bitField0_;
+        buildPartialRepeatedFields(result);
+        if (bitField0_ != 0) { buildPartial0(result); }
+        onBuilt();
+        return result;
+      }
+
+      private void buildPartialRepeatedFields(vector_tile.VectorTile.Tile result) {
         if (layersBuilder_ == null) {
-          if (((bitField0_ & 0x00000001) == 0x00000001)) {
+          if (((bitField0_ & 0x00000001) != 0)) {
             layers_ = java.util.Collections.unmodifiableList(layers_);
             bitField0_ = (bitField0_ & ~0x00000001);
           }
@@ -5056,68 +4546,70 @@ public final class VectorTile {
         } else {
           result.layers_ = layersBuilder_.build();
         }
-        onBuilt();
-        return result;
+      }
+
+      private void buildPartial0(vector_tile.VectorTile.Tile result) {
+        int from_bitField0_ = bitField0_;
       }
 
       @java.lang.Override
       public Builder clone() {
-        return (Builder) super.clone();
+        return super.clone();
       }
       @java.lang.Override
       public Builder setField(
           com.google.protobuf.Descriptors.FieldDescriptor field,
           java.lang.Object value) {
-        return (Builder) super.setField(field, value);
+        return super.setField(field, value);
       }
       @java.lang.Override
       public Builder clearField(
           com.google.protobuf.Descriptors.FieldDescriptor field) {
-        return (Builder) super.clearField(field);
+        return super.clearField(field);
       }
       @java.lang.Override
       public Builder clearOneof(
           com.google.protobuf.Descriptors.OneofDescriptor oneof) {
-        return (Builder) super.clearOneof(oneof);
+        return super.clearOneof(oneof);
       }
       @java.lang.Override
       public Builder setRepeatedField(
           com.google.protobuf.Descriptors.FieldDescriptor field,
           int index, java.lang.Object value) {
-        return (Builder) super.setRepeatedField(field, index, value);
+        return super.setRepeatedField(field, index, value);
       }
       @java.lang.Override
       public Builder addRepeatedField(
           com.google.protobuf.Descriptors.FieldDescriptor field,
           java.lang.Object value) {
-        return (Builder) super.addRepeatedField(field, value);
+        return super.addRepeatedField(field, value);
       }
       @java.lang.Override
       public <Type> Builder setExtension(
           com.google.protobuf.GeneratedMessage.GeneratedExtension<
               vector_tile.VectorTile.Tile, Type> extension,
           Type value) {
-        return (Builder) super.setExtension(extension, value);
+        return super.setExtension(extension, value);
       }
       @java.lang.Override
       public <Type> Builder setExtension(
           com.google.protobuf.GeneratedMessage.GeneratedExtension<
               vector_tile.VectorTile.Tile, java.util.List<Type>> extension,
           int index, Type value) {
-        return (Builder) super.setExtension(extension, index, value);
+        return super.setExtension(extension, index, value);
       }
       @java.lang.Override
       public <Type> Builder addExtension(
           com.google.protobuf.GeneratedMessage.GeneratedExtension<
               vector_tile.VectorTile.Tile, java.util.List<Type>> extension,
           Type value) {
-        return (Builder) super.addExtension(extension, value);
+        return super.addExtension(extension, value);
       }
       @java.lang.Override
-      public <Type> Builder clearExtension(
+      public <T> Builder clearExtension(
           com.google.protobuf.GeneratedMessage.GeneratedExtension<
-              vector_tile.VectorTile.Tile, ?> extension) {
-        return (Builder) super.clearExtension(extension);
+              vector_tile.VectorTile.Tile, T> extension) {
+        return super.clearExtension(extension);
       }
       @java.lang.Override
       public Builder mergeFrom(com.google.protobuf.Message other) {
@@ -5158,7 +4650,7 @@ public final class VectorTile {
           }
         }
         this.mergeExtensionFields(other);
-        this.mergeUnknownFields(other.unknownFields);
+        this.mergeUnknownFields(other.getUnknownFields());
         onChanged();
         return this;
       }
@@ -5181,17 +4673,43 @@ public final class VectorTile {
           com.google.protobuf.CodedInputStream input,
           com.google.protobuf.ExtensionRegistryLite extensionRegistry)
           throws java.io.IOException {
-        vector_tile.VectorTile.Tile parsedMessage = null;
+        if (extensionRegistry == null) {
+          throw new java.lang.NullPointerException();
+        }
         try {
-          parsedMessage = PARSER.parsePartialFrom(input, extensionRegistry);
+          boolean done = false;
+          while (!done) {
+            int tag = input.readTag();
+            switch (tag) {
+              case 0:
+                done = true;
+                break;
+              case 26: {
+                vector_tile.VectorTile.Tile.Layer m =
+                    input.readMessage(
+                        vector_tile.VectorTile.Tile.Layer.PARSER,
+                        extensionRegistry);
+                if (layersBuilder_ == null) {
+                  ensureLayersIsMutable();
+                  layers_.add(m);
+                } else {
+                  layersBuilder_.addMessage(m);
+                }
+                break;
+              } // case 26
+              default: {
+                if (!super.parseUnknownField(input, extensionRegistry, tag)) {
+                  done = true; // was an endgroup tag
+                }
+                break;
+              } // default:
+            } // switch (tag)
+          } // while (!done)
         } catch (com.google.protobuf.InvalidProtocolBufferException e) {
-          parsedMessage = (vector_tile.VectorTile.Tile) e.getUnfinishedMessage();
           throw e.unwrapIOException();
         } finally {
-          if (parsedMessage != null) {
-            mergeFrom(parsedMessage);
-          }
-        }
+          onChanged();
+        } // finally
         return this;
       }
       private int bitField0_;
@@ -5199,7 +4717,7 @@ public final class VectorTile {
       private java.util.List<vector_tile.VectorTile.Tile.Layer> layers_ =
         java.util.Collections.emptyList();
       private void ensureLayersIsMutable() {
-        if (!((bitField0_ & 0x00000001) == 0x00000001)) {
+        if (!((bitField0_ & 0x00000001) != 0)) {
           layers_ = new java.util.ArrayList<vector_tile.VectorTile.Tile.Layer>(layers_);
           bitField0_ |= 0x00000001;
          }
@@ -5428,7 +4946,7 @@ public final class VectorTile {
           layersBuilder_ = new com.google.protobuf.RepeatedFieldBuilderV3<
               vector_tile.VectorTile.Tile.Layer, vector_tile.VectorTile.Tile.Layer.Builder, vector_tile.VectorTile.Tile.LayerOrBuilder>(
                   layers_,
-                  ((bitField0_ & 0x00000001) == 0x00000001),
+                  ((bitField0_ & 0x00000001) != 0),
                   getParentForChildren(),
                   isClean());
           layers_ = null;
@@ -5468,7 +4986,18 @@ public final class VectorTile {
           com.google.protobuf.CodedInputStream input,
           com.google.protobuf.ExtensionRegistryLite extensionRegistry)
           throws com.google.protobuf.InvalidProtocolBufferException {
-        return new Tile(input, extensionRegistry);
+        Builder builder = newBuilder();
+        try {
+          builder.mergeFrom(input, extensionRegistry);
+        } catch (com.google.protobuf.InvalidProtocolBufferException e) {
+          throw e.setUnfinishedMessage(builder.buildPartial());
+        } catch (com.google.protobuf.UninitializedMessageException e) {
+          throw e.asInvalidProtocolBufferException().setUnfinishedMessage(builder.buildPartial());
+        } catch (java.io.IOException e) {
+          throw new com.google.protobuf.InvalidProtocolBufferException(e)
+              .setUnfinishedMessage(builder.buildPartial());
+        }
+        return builder.buildPartial();
       }
     };
 
@@ -5534,18 +5063,10 @@ public final class VectorTile {
       "\n\010GeomType\022\013\n\007UNKNOWN\020\000\022\t\n\005POINT\020\001\022\016\n\nLI" +
       "NESTRING\020\002\022\013\n\007POLYGON\020\003*\005\010\020\020\200@"
     };
-    com.google.protobuf.Descriptors.FileDescriptor.InternalDescriptorAssigner assigner =
-        new com.google.protobuf.Descriptors.FileDescriptor.    InternalDescriptorAssigner() {
-          public com.google.protobuf.ExtensionRegistry assignDescriptors(
-              com.google.protobuf.Descriptors.FileDescriptor root) {
-            descriptor = root;
-            return null;
-          }
-        };
-    com.google.protobuf.Descriptors.FileDescriptor
+    descriptor = com.google.protobuf.Descriptors.FileDescriptor
       .internalBuildGeneratedFileFrom(descriptorData,
         new com.google.protobuf.Descriptors.FileDescriptor[] {
-        }, assigner);
+        });
     internal_static_vector_tile_Tile_descriptor =
       getDescriptor().getMessageTypes().get(0);
     internal_static_vector_tile_Tile_fieldAccessorTable = new
@@ -0,0 +1,73 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import com.codahale.metrics.MetricRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ComputeLimiterTest {
+
+    @Test
+    public void limitCalculations() throws Exception {
+        MetricRegistry metrics = new MetricRegistry();
+        ComputeLimiter limiter = new ComputeLimiter(1, false, metrics);
+        ExecutorService executor = limiter.newBackgroundExecutor("test");
+        try {
+            Permit permit = limiter.acquire();
+            assertEquals(1, metrics.getGauges().get("graphhopper.compute.active").getValue());
+            CountDownLatch calculated = new CountDownLatch(1);
+            Future<?> future = executor.submit(() -> {
+                try (Permit ignored = limiter.acquire()) {
+                    calculated.countDown();
+                }
+            });
+            while (!Integer.valueOf(1).equals(metrics.getGauges().get("graphhopper.compute.queued").getValue()))
+                Thread.sleep(1);
+            assertEquals(1, calculated.getCount());
+            permit.close();
+            assertTrue(calculated.await(10, TimeUnit.SECONDS));
+            future.get();
+            assertEquals(1, metrics.timer("graphhopper.compute.wait").getCount());
+            assertEquals(0, metrics.getGauges().get("graphhopper.compute.active").getValue());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void virtualThreads() throws Exception {
+        ComputeLimiter limiter = new ComputeLimiter(0, true, new MetricRegistry());
+        assertEquals(Runtime.version().feature() >= 21, limiter.isVirtualThreads());
+        ExecutorService executor = limiter.newBackgroundExecutor("test");
+        try {
+            assertEquals(42, executor.submit(() -> 42).get());
+        } finally {
+            executor.shutdown();
+        }
+        // without a limit every thread may calculate
+        for (int i = 0; i < 10; i++)
+            limiter.acquire();
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import com.codahale.metrics.MetricRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RouteAdmissionTest {
+
+    @Test
+    public void rejectWhenQueueIsFull() {
+        MetricRegistry metrics = new MetricRegistry();
+        RouteAdmission admission = new RouteAdmission(List.of("car", "foot"), 2, 0, 1000, metrics);
+        Permit first = admission.acquire("car");
+        Permit second = admission.acquire("car");
+        assertEquals(2, metrics.getGauges().get("graphhopper.route.admission.car.active").getValue());
+        assertThrows(TooManyRequestsException.class, () -> admission.acquire("car"));
+        assertEquals(1, metrics.counter("graphhopper.route.admission.car.rejected").getCount());
+
+        // the other profiles and unknown profiles are not affected
+        admission.acquire("foot").close();
+        admission.acquire("bike").close();
+
+        first.close();
+        admission.acquire("car").close();
+        second.close();
+        assertEquals(0, metrics.getGauges().get("graphhopper.route.admission.car.active").getValue());
+    }
+
+    @Test
+    public void queue() throws Exception {
+        MetricRegistry metrics = new MetricRegistry();
+        RouteAdmission admission = new RouteAdmission(List.of("car"), 1, 1, 10_000, metrics);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Permit permit = admission.acquire("car");
+            CountDownLatch acquired = new CountDownLatch(1);
+            Future<?> queued = executor.submit(() -> {
+                try (Permit ignored = admission.acquire("car")) {
+                    acquired.countDown();
+                }
+            });
+            while (!Integer.valueOf(1).equals(metrics.getGauges().get("graphhopper.route.admission.car.queued").getValue()))
+                Thread.sleep(1);
+            // the queue is full
+            assertThrows(TooManyRequestsException.class, () -> admission.acquire("car"));
+            assertEquals(1, acquired.getCount());
+            permit.close();
+            assertTrue(acquired.await(10, TimeUnit.SECONDS));
+            queued.get();
+            assertEquals(1, metrics.counter("graphhopper.route.admission.car.rejected").getCount());
+            assertEquals(1, metrics.timer("graphhopper.route.admission.car.wait").getCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void queueTimeout() {
+        MetricRegistry metrics = new MetricRegistry();
+        RouteAdmission admission = new RouteAdmission(List.of("car"), 1, 5, 10, metrics);
+        try (Permit ignored = admission.acquire("car")) {
+            assertThrows(TooManyRequestsException.class, () -> admission.acquire("car"));
+        }
+        assertEquals(1, metrics.counter("graphhopper.route.admission.car.rejected").getCount());
+        assertEquals(0, metrics.getGauges().get("graphhopper.route.admission.car.queued").getValue());
+    }
+
+    @Test
+    public void unlimited() {
+        RouteAdmission admission = new RouteAdmission();
+        for (int i = 0; i < 100; i++)
+            admission.acquire("car");
+    }
+}
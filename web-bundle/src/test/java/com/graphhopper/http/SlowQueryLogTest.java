@@ -0,0 +1,78 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.graphhopper.GHRequest;
+import com.graphhopper.RouteStats;
+import com.graphhopper.jackson.Jackson;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SlowQueryLogTest {
+
+    @Test
+    public void logOnlySlowRequests(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("logs/slow.log");
+        SlowQueryLog log = new SlowQueryLog(file, 100, 10);
+        log.start();
+        GHRequest request = new GHRequest(42.5, 1.5, 42.6, 1.6).setProfile("car");
+        RouteStats stats = new RouteStats(request, "car", "ch").
+                addPhaseNanos("snap", 2_000_000).addPhaseNanos("search", 95_500_000).
+                setVisitedNodes(120, 80).setVirtualNodes(2).setNanos(99_000_000);
+        log.log(stats, "json", 500_000, 1234);
+        log.log(stats, "protobuf", 2_000_000, 567);
+        log.stop();
+
+        assertEquals(1, log.getLogged());
+        assertEquals(0, log.getDropped());
+        List<String> lines = Files.readAllLines(file);
+        assertEquals(1, lines.size());
+        JsonNode line = Jackson.newObjectMapper().readTree(lines.get(0));
+        assertEquals(SlowQueryLog.fingerprint(request), line.get("fingerprint").asText());
+        assertEquals("car", line.get("profile").asText());
+        assertEquals("ch", line.get("solver").asText());
+        assertEquals(2, line.get("points").asInt());
+        assertEquals(101, line.get("took_ms").asDouble());
+        assertEquals(99, line.get("routing_ms").asDouble());
+        assertEquals(2, line.get("serialization_ms").asDouble());
+        assertEquals(95.5, line.get("phases_ms").get("search").asDouble());
+        assertEquals(120, line.get("visited_nodes").get("forward").asLong());
+        assertEquals(80, line.get("visited_nodes").get("backward").asLong());
+        assertEquals(2, line.get("virtual_nodes").asInt());
+        assertEquals("protobuf", line.get("response_format").asText());
+        assertEquals(567, line.get("response_bytes").asLong());
+    }
+
+    @Test
+    public void fingerprint() {
+        GHRequest request = new GHRequest(42.5, 1.5, 42.6, 1.6).setProfile("car");
+        String fingerprint = SlowQueryLog.fingerprint(request);
+        assertEquals(16, fingerprint.length());
+        assertEquals(fingerprint, SlowQueryLog.fingerprint(new GHRequest(42.5, 1.5, 42.6, 1.6).setProfile("car")));
+        assertNotEquals(fingerprint, SlowQueryLog.fingerprint(new GHRequest(42.5, 1.5, 42.6, 1.6).setProfile("bike")));
+        request.putHint("ch.disable", true);
+        assertNotEquals(fingerprint, SlowQueryLog.fingerprint(request));
+    }
+}
@@ -17,6 +17,7 @@
  */
 package com.graphhopper.application.resources;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.graphhopper.application.GraphHopperApplication;
 import com.graphhopper.application.GraphHopperServerConfiguration;
 import com.graphhopper.application.util.GraphHopperServerTestConfiguration;
@@ -30,11 +31,13 @@ import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.core.Response;
 import java.io.File;
 import java.util.List;
 
 import static com.graphhopper.application.util.TestUtils.clientTarget;
-import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.*;
 
 /**
  * @author svantulden
@@ -50,6 +53,7 @@ public class NearestResourceTest {
                 putObject("datareader.file", "../core/files/andorra.osm.pbf").
                 putObject("graph.location", dir).
                 putObject("import.osm.ignored_highways", "").
+                putObject("nearest.max_points", 3).
                 setProfiles(List.of(TestProfiles.constantSpeed("car")));
         return config;
     }
@@ -65,4 +69,25 @@ public class NearestResourceTest {
         NearestResource.Response json = clientTarget(app, "/nearest?point=42.554851,1.536198").request().get(NearestResource.Response.class);
         assertArrayEquals(new double[]{1.5363743623376815, 42.554839049600155}, json.coordinates, "nearest point");
     }
+
+    @Test
+    public void testBatchNearestQuery() {
+        String body = "{\"points\": [[1.536198, 42.554851], [1.531595, 42.515185], [1.536198, 42.554851]]}";
+        NearestResource.BatchResponse json = clientTarget(app, "/nearest").request().post(Entity.json(body), NearestResource.BatchResponse.class);
+        assertEquals(3, json.results.size());
+        assertArrayEquals(new double[]{1.5363743623376815, 42.554839049600155}, json.results.get(0).coordinates, "nearest point");
+        assertArrayEquals(json.results.get(0).coordinates, json.results.get(2).coordinates);
+        NearestResource.Response single = clientTarget(app, "/nearest?point=42.515185,1.531595").request().get(NearestResource.Response.class);
+        assertArrayEquals(single.coordinates, json.results.get(1).coordinates);
+        assertEquals(single.distance, json.results.get(1).distance, 1.e-6);
+    }
+
+    @Test
+    public void testBatchNearestQueryTooManyPoints() {
+        String body = "{\"points\": [[1.536198, 42.554851], [1.531595, 42.515185], [1.536198, 42.554851], [1.531595, 42.515185]]}";
+        Response response = clientTarget(app, "/nearest").request().post(Entity.json(body));
+        assertEquals(400, response.getStatus());
+        JsonNode json = response.readEntity(JsonNode.class);
+        assertTrue(json.get("message").asText().contains("Too many points: 4, the maximum is 3"), json.toString());
+    }
 }
@@ -17,6 +17,7 @@
  */
 package com.graphhopper.application.resources;
 
+import com.codahale.metrics.MetricRegistry;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.graphhopper.GHRequest;
 import com.graphhopper.GHResponse;
@@ -26,6 +27,8 @@ import com.graphhopper.application.GraphHopperApplication;
 import com.graphhopper.application.GraphHopperServerConfiguration;
 import com.graphhopper.application.util.GraphHopperServerTestConfiguration;
 import com.graphhopper.config.CHProfile;
+import com.graphhopper.jackson.ResponsePathDeserializerHelper;
+import com.graphhopper.protobuf.RouteResponseProtobuf;
 import com.graphhopper.routing.TestProfiles;
 import com.graphhopper.routing.ev.RoadClass;
 import com.graphhopper.routing.ev.RoadClassLink;
@@ -51,6 +54,8 @@ import javax.ws.rs.client.Entity;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.*;
 
 import static com.graphhopper.application.resources.Util.getWithStatus;
@@ -126,6 +131,39 @@ public class RouteResourceTest {
         assertEquals("[1.548191,42.510033,1.548191,42.510033]", path.get("bbox").toString());
     }
 
+    @Test
+    public void testMetrics() {
+        MetricRegistry metrics = app.getEnvironment().metrics();
+        long searches = metrics.timer("graphhopper.route.ch.my_car.search").getCount();
+        long serializations = metrics.timer("graphhopper.route.serialization.json").getCount();
+        JsonNode json = clientTarget(app, "/route?profile=my_car&point=42.554851,1.536198&point=42.510071,1.548128").request().get(JsonNode.class);
+        assertEquals(searches + 1, metrics.timer("graphhopper.route.ch.my_car.search").getCount());
+        assertEquals(serializations + 1, metrics.timer("graphhopper.route.serialization.json").getCount());
+        assertTrue(metrics.timer("graphhopper.route.ch.my_car.instructions").getCount() > 0);
+        assertTrue(metrics.counter("graphhopper.route.ch.my_car.visited_nodes_total").getCount() >= json.get("hints").get("visited_nodes.sum").asLong());
+    }
+
+    @Test
+    public void testProtobuf() throws IOException {
+        String jsonStr = "{ \"profile\": \"my_car\", \"points\": [[1.536198,42.554851], [1.548128, 42.510071]], \"points_encoded_multiplier\": 1e6 }";
+        JsonNode json = clientTarget(app, "/route").request().post(Entity.json(jsonStr), JsonNode.class);
+        Response response = clientTarget(app, "/route").request(RouteResponseProtobuf.MEDIA_TYPE).post(Entity.json(jsonStr));
+        assertEquals(200, response.getStatus());
+        assertEquals(RouteResponseProtobuf.MEDIA_TYPE, response.getMediaType().toString());
+        GHResponse rsp = RouteResponseProtobuf.read(response.readEntity(InputStream.class), true);
+        ResponsePath path = rsp.getBest();
+        assertEquals(json.get("paths").get(0).get("distance").asDouble(), path.getDistance());
+        assertEquals(json.get("paths").get(0).get("instructions").size(), path.getInstructions().size());
+        assertEquals(ResponsePathDeserializerHelper.decodePolyline(json.get("paths").get(0).get("points").asText(), 10, false, 1e6),
+                path.getPoints());
+
+        // errors are still returned as JSON
+        response = clientTarget(app, "/route").request(RouteResponseProtobuf.MEDIA_TYPE, MediaType.APPLICATION_JSON)
+                .post(Entity.json("{ \"profile\": \"my_car\", \"points\": [[1.536198,42.554851], [-10, 42.510071]] }"));
+        assertEquals(400, response.getStatus());
+        assertEquals(MediaType.APPLICATION_JSON_TYPE, response.getMediaType());
+    }
+
     @Test
     public void testBasicPostQuery() {
         String jsonStr = "{ \"profile\": \"my_car\", \"points\": [[1.536198,42.554851], [1.548128, 42.510071]] }";